@@ -67,6 +67,7 @@ import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.serialization.OSerializableStream;
 import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerStringAbstract;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerAnyStreamable;
+import com.orientechnologies.orient.core.sql.query.OSQLCursorQuery;
 import com.orientechnologies.orient.core.storage.OCluster;
 import com.orientechnologies.orient.core.storage.ODataSegment;
 import com.orientechnologies.orient.core.storage.OPhysicalPosition;
@@ -121,6 +122,7 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
   private final String                     clientId;
 
   private final int                        maxReadQueue;
+  private final int                        maxInflight;
 
   public OStorageRemote(final String iClientId, final String iURL, final String iMode) throws IOException {
     super(iURL, iURL, iMode);
@@ -136,6 +138,7 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
     asynchExecutor = Executors.newSingleThreadScheduledExecutor();
 
     maxReadQueue = Runtime.getRuntime().availableProcessors() - 1;
+    maxInflight = clientConfiguration.getValueAsInteger(OGlobalConfiguration.CLIENT_CHANNEL_MAX_INFLIGHT);
   }
 
   public int getSessionId() {
@@ -345,12 +348,14 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
           // ASYNCHRONOUS
           if (iCallback != null) {
             final int sessionId = getSessionId();
+            final int requestId = OStorageRemoteThreadLocal.INSTANCE.get().requestId;
             Callable<Object> response = new Callable<Object>() {
               public Object call() throws Exception {
                 final Long result;
 
                 try {
                   OStorageRemoteThreadLocal.INSTANCE.get().sessionId = sessionId;
+                  OStorageRemoteThreadLocal.INSTANCE.get().requestId = requestId;
                   System.out.println("BEGIN ASYNCH READ " + OStorageRemoteThreadLocal.INSTANCE.get().sessionId);
                   beginResponse(network);
                   result = network.readLong();
@@ -433,6 +438,99 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
     } while (true);
   }
 
+  public List<ORawBuffer> readRecords(final List<ORecordId> iRids, final String iFetchPlan, final boolean iIgnoreCache,
+      final ORecordCallback<ORawBuffer> iCallback) {
+    checkConnection();
+
+    if (OStorageRemoteThreadLocal.INSTANCE.get().commandExecuting || getServerProtocolVersion() < 13) {
+      // PENDING NETWORK OPERATION OR OLD SERVER: LOAD ONE RECORD PER TIME
+      final List<ORawBuffer> result = new ArrayList<ORawBuffer>(iRids.size());
+      for (ORecordId rid : iRids) {
+        final ORawBuffer buffer = readRecord(rid, iFetchPlan, iIgnoreCache, null);
+        result.add(buffer);
+        if (iCallback != null)
+          iCallback.call(rid, buffer);
+      }
+      return result;
+    }
+
+    do {
+      try {
+
+        OChannelBinaryClient network = null;
+        try {
+          network = beginRequest(OChannelBinaryProtocol.REQUEST_RECORD_LOAD_MULTI);
+          network.writeInt(iRids.size());
+          for (ORecordId rid : iRids)
+            network.writeRID(rid);
+          network.writeString(iFetchPlan != null ? iFetchPlan : "");
+          network.writeByte((byte) (iIgnoreCache ? 1 : 0));
+
+        } finally {
+          endRequest(network);
+        }
+
+        try {
+          beginResponse(network);
+
+          // THE RECORDS ARE SENT IN THE SAME ORDER OF THE REQUEST
+          final List<ORawBuffer> result = new ArrayList<ORawBuffer>(iRids.size());
+          String error = null;
+          for (ORecordId rid : iRids) {
+            final ORawBuffer buffer;
+            final byte status = network.readByte();
+            if (status == 1)
+              buffer = new ORawBuffer(network.readBytes(), network.readInt(), network.readByte());
+            else {
+              buffer = null;
+              if (status == -1) {
+                // ERROR ON LOADING THE RECORD: KEEP THE FIRST ONE AND CONSUME THE REST OF THE RESPONSE
+                final String message = "Error on read record " + rid + ": " + network.readString() + ": " + network.readString();
+                if (error == null)
+                  error = message;
+              }
+            }
+
+            result.add(buffer);
+            if (iCallback != null && error == null)
+              iCallback.call(rid, buffer);
+          }
+
+          final ODatabaseRecord database = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+          ORecordInternal<?> record;
+          while (network.readByte() == 2) {
+            record = (ORecordInternal<?>) OChannelBinaryProtocol.readIdentifiable(network);
+
+            if (database != null)
+              // PUT IN THE CLIENT LOCAL CACHE
+              database.getLevel1Cache().updateRecord(record);
+          }
+
+          if (error != null)
+            throw new OStorageException(error);
+
+          return result;
+
+        } finally {
+          endResponse(network);
+        }
+
+      } catch (Exception e) {
+        handleException("Error on read " + iRids.size() + " records", e);
+
+      }
+    } while (true);
+  }
+
+  /**
+   * Returns the protocol version of the server, or -1 if not connected.
+   */
+  protected int getServerProtocolVersion() {
+    synchronized (networkPool) {
+      return networkPool.isEmpty() ? -1 : networkPool.get(0).getSrvProtocolVersion();
+    }
+  }
+
   public int updateRecord(final ORecordId iRid, final byte[] iContent, final int iVersion, final byte iRecordType, int iMode,
       final ORecordCallback<Integer> iCallback) {
     checkConnection();
@@ -469,12 +567,14 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
           // ASYNCHRONOUS
           if (iCallback != null) {
             final int sessionId = getSessionId();
+            final int requestId = OStorageRemoteThreadLocal.INSTANCE.get().requestId;
             Callable<Object> response = new Callable<Object>() {
               public Object call() throws Exception {
                 int result;
 
                 try {
                   OStorageRemoteThreadLocal.INSTANCE.get().sessionId = sessionId;
+                  OStorageRemoteThreadLocal.INSTANCE.get().requestId = requestId;
                   beginResponse(network);
                   result = network.readInt();
                 } finally {
@@ -535,12 +635,14 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
           // ASYNCHRONOUS
           if (iCallback != null) {
             final int sessionId = getSessionId();
+            final int requestId = OStorageRemoteThreadLocal.INSTANCE.get().requestId;
             Callable<Object> response = new Callable<Object>() {
               public Object call() throws Exception {
                 Boolean result;
 
                 try {
                   OStorageRemoteThreadLocal.INSTANCE.get().sessionId = sessionId;
+                  OStorageRemoteThreadLocal.INSTANCE.get().requestId = requestId;
                   beginResponse(network);
                   result = network.readByte() == 1;
                 } finally {
@@ -796,6 +898,15 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
       throw new OCommandExecutionException("Cannot serialize the command to be executed to the server side.");
 
     OSerializableStream command = iCommand;
+
+    if (iCommand instanceof OSQLCursorQuery<?>) {
+      if (getServerProtocolVersion() >= 13)
+        return openCursor((OSQLCursorQuery<?>) iCommand);
+
+      // THE SERVER DOESN'T KNOW CURSORS: SEND THE SAME QUERY AS A PLAIN SYNCHRONOUS ONE
+      command = ((OSQLCursorQuery<?>) iCommand).toSynchQuery();
+    }
+
     Object result = null;
 
     final ODatabaseRecord database = ODatabaseRecordThreadLocal.INSTANCE.get();
@@ -905,6 +1016,130 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
     return result;
   }
 
+  /**
+   * Executes the query on a server side cursor. The returned list contains the first page and fetches the others while it's
+   * browsed.
+   */
+  protected <T> List<T> openCursor(final OSQLCursorQuery<T> iQuery) {
+    do {
+      try {
+
+        OChannelBinaryClient network = null;
+        try {
+          network = beginRequest(OChannelBinaryProtocol.REQUEST_COMMAND);
+          network.writeByte((byte) 'c'); // CURSOR
+          network.writeInt(iQuery.getPageSize());
+          network.writeBytes(OStreamSerializerAnyStreamable.INSTANCE.toStream(iQuery));
+
+        } finally {
+          endRequest(network);
+        }
+
+        try {
+          beginResponse(network);
+
+          final List<OIdentifiable> page = new ArrayList<OIdentifiable>();
+          final int cursorId = readCursorPage(network, page);
+          return new OStorageRemoteCursor<T>(this, getSessionId(), cursorId, iQuery.getPageSize(), page);
+
+        } finally {
+          endResponse(network);
+        }
+
+      } catch (Exception e) {
+        handleException("Error on opening the cursor of query: " + iQuery, e);
+
+      }
+    } while (true);
+  }
+
+  /**
+   * Fetches the next page of the cursor.
+   * 
+   * @param iPage
+   *          List where to append the records of the page
+   * @return The id of the cursor, or -1 if the cursor is at the end and has been closed by the server
+   */
+  public int fetchCursor(final int iCursorId, final int iPageSize, final List<OIdentifiable> iPage) {
+    checkConnection();
+
+    do {
+      try {
+
+        OChannelBinaryClient network = null;
+        try {
+          network = beginRequest(OChannelBinaryProtocol.REQUEST_CURSOR_FETCH);
+          network.writeInt(iCursorId);
+          network.writeInt(iPageSize);
+
+        } finally {
+          endRequest(network);
+        }
+
+        try {
+          beginResponse(network);
+          return readCursorPage(network, iPage);
+
+        } finally {
+          endResponse(network);
+        }
+
+      } catch (Exception e) {
+        handleException("Error on fetching the cursor " + iCursorId, e);
+
+      }
+    } while (true);
+  }
+
+  public void closeCursor(final int iCursorId) {
+    checkConnection();
+
+    do {
+      try {
+
+        OChannelBinaryClient network = null;
+        try {
+          network = beginRequest(OChannelBinaryProtocol.REQUEST_CURSOR_CLOSE);
+          network.writeInt(iCursorId);
+
+        } finally {
+          endRequest(network);
+        }
+
+        try {
+          beginResponse(network);
+          return;
+
+        } finally {
+          endResponse(network);
+        }
+
+      } catch (Exception e) {
+        handleException("Error on closing the cursor " + iCursorId, e);
+
+      }
+    } while (true);
+  }
+
+  protected int readCursorPage(final OChannelBinaryClient iNetwork, final List<OIdentifiable> iPage) throws IOException {
+    final ODatabaseRecord database = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+
+    byte status;
+    while ((status = iNetwork.readByte()) > 0) {
+      final OIdentifiable record = OChannelBinaryProtocol.readIdentifiable(iNetwork);
+
+      if (status == 1)
+        // PART OF THE RESULT SET
+        iPage.add(record);
+
+      if (database != null && record instanceof ORecord<?>)
+        // PUT IN THE CLIENT LOCAL CACHE
+        database.getLevel1Cache().updateRecord((ORecordInternal<?>) record);
+    }
+
+    return iNetwork.readInt();
+  }
+
   public void commit(final OTransaction iTx) {
     checkConnection();
 
@@ -1535,6 +1770,7 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
    */
   protected OChannelBinaryClient beginRequest(final byte iCommand) throws IOException {
     OChannelBinaryClient network = null;
+    boolean shareChannel = false;
 
     if (debug)
       System.out.println("-> req: " + getSessionId());
@@ -1565,7 +1801,12 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
         if (networkPoolCursor == beginCursor) {
           // COMPLETE ROUND AND NOT FREE CONNECTIONS FOUND
 
-          if (networkPool.size() < maxPool) {
+          if (networkPool.get(0).getSrvProtocolVersion() >= 13) {
+            // THE SERVER MATCHES RESPONSES BY REQUEST ID: THE CHANNEL IS BUSY ONLY WHILE WRITING, WAIT FOR IT. NEW CHANNELS ARE
+            // CREATED ONLY WHEN TOO MANY RESPONSES ARE WAITED ON THE SAME CHANNEL (SEE beginResponse())
+            network = networkPool.get(beginCursor < networkPool.size() ? beginCursor : 0);
+            shareChannel = true;
+          } else if (networkPool.size() < maxPool) {
             // CREATE NEW CONNECTION
             network = createNetworkConnection();
             network.getLockWrite().lock();
@@ -1577,7 +1818,7 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
             if (debug)
               System.out.println("-> req (waiting) : " + getSessionId());
 
-            final long startToWait = System.currentTimeMillis();
+            final long startToWait = Orient.instance().getProfiler().startChrono();
             try {
               networkPool.wait(5000);
             } catch (InterruptedException e) {
@@ -1596,8 +1837,19 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
       }
     }
 
+    if (shareChannel)
+      // OUTSIDE THE POOL LOCK TO LET OTHER THREADS PICK THE FREE CHANNELS
+      network.getLockWrite().lock();
+
+    final int sessionId = getSessionId();
     network.writeByte(iCommand);
-    network.writeInt(getSessionId());
+    network.writeInt(sessionId);
+
+    // TAG THE REQUEST TO MATCH THE RESPONSE ALSO IF THE SESSION HAS MORE REQUESTS IN FLIGHT
+    final int requestId = network.isRequestTagged(sessionId) ? network.nextRequestId() : -1;
+    if (requestId > -1)
+      network.writeInt(requestId);
+    OStorageRemoteThreadLocal.INSTANCE.get().requestId = requestId;
 
     return network;
   }
@@ -1651,9 +1903,9 @@ public class OStorageRemote extends OStorageAbstract implements OStorageProxy {
    * Starts listening the response.
    */
   protected void beginResponse(final OChannelBinaryClient iNetwork) throws IOException {
-    iNetwork.beginResponse(getSessionId());
+    iNetwork.beginResponse(getSessionId(), OStorageRemoteThreadLocal.INSTANCE.get().requestId, iNetwork.getLockTimeout());
 
-    if (iNetwork.getLockRead().getQueueLength() + 1 >= maxReadQueue)
+    if (iNetwork.getWaitingResponses() + 1 >= (iNetwork.getSrvProtocolVersion() >= 13 ? maxInflight : maxReadQueue))
       synchronized (networkPool) {
         if (networkPool.size() < maxPool) {
           // CREATE NEW CONNECTION
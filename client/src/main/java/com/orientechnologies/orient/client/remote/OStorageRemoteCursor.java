@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.client.remote;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+
+/**
+ * Result of a {@link com.orientechnologies.orient.core.sql.query.OSQLCursorQuery} executed by a remote server. The records are
+ * fetched from the server side cursor a page per time while the list is browsed: iterating it only fetches the pages needed, while
+ * {@link #size()} fetches all of them. Call {@link #close()} to release the cursor on the server without browsing it until the end.
+ * 
+ * @author Luca Garulli
+ * 
+ * @param <T>
+ */
+public class OStorageRemoteCursor<T> extends AbstractList<T> implements Closeable {
+  private final OStorageRemote storage;
+  private final int            sessionId;
+  private final int            pageSize;
+  private final List<T>        records;
+  private int                  cursorId;
+
+  @SuppressWarnings("unchecked")
+  public OStorageRemoteCursor(final OStorageRemote iStorage, final int iSessionId, final int iCursorId, final int iPageSize,
+      final List<?> iFirstPage) {
+    storage = iStorage;
+    sessionId = iSessionId;
+    cursorId = iCursorId;
+    pageSize = iPageSize;
+    records = (List<T>) iFirstPage;
+  }
+
+  @Override
+  public T get(final int iIndex) {
+    while (iIndex >= records.size() && fetchNextPage())
+      ;
+    return records.get(iIndex);
+  }
+
+  @Override
+  public int size() {
+    while (fetchNextPage())
+      ;
+    return records.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    while (records.isEmpty() && fetchNextPage())
+      ;
+    return records.isEmpty();
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int next = 0;
+
+      public boolean hasNext() {
+        while (next >= records.size() && fetchNextPage())
+          ;
+        return next < records.size();
+      }
+
+      public T next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        return records.get(next++);
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException("remove");
+      }
+    };
+  }
+
+  /**
+   * Returns true if the cursor is still open on the server, namely not all the records have been fetched.
+   */
+  public boolean isOpen() {
+    return cursorId > -1;
+  }
+
+  /**
+   * Closes the cursor on the server. The records already fetched are still available.
+   */
+  public void close() {
+    if (cursorId > -1) {
+      storage.setSessionId(sessionId);
+      storage.closeCursor(cursorId);
+      cursorId = -1;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean fetchNextPage() {
+    if (cursorId < 0)
+      return false;
+
+    storage.setSessionId(sessionId);
+    cursorId = storage.fetchCursor(cursorId, pageSize, (List<OIdentifiable>) records);
+    return true;
+  }
+}
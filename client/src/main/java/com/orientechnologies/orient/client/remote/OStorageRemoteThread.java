@@ -17,6 +17,7 @@ package com.orientechnologies.orient.client.remote;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -146,6 +147,12 @@ public class OStorageRemoteThread implements OStorageProxy {
     return delegate.readRecord(iRid, iFetchPlan, iIgnoreCache, null);
   }
 
+  public List<ORawBuffer> readRecords(final List<ORecordId> iRids, final String iFetchPlan, final boolean iIgnoreCache,
+      final ORecordCallback<ORawBuffer> iCallback) {
+    delegate.setSessionId(sessionId);
+    return delegate.readRecords(iRids, iFetchPlan, iIgnoreCache, iCallback);
+  }
+
   public int updateRecord(final ORecordId iRid, final byte[] iContent, final int iVersion, final byte iRecordType, final int iMode,
       ORecordCallback<Integer> iCallback) {
     delegate.setSessionId(sessionId);
@@ -71,6 +71,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
   transient int                            modCount            = 0;
   protected transient boolean              runtimeCheckEnabled = false;
   protected transient boolean              debug               = false;
+  protected transient boolean              appendMode          = false;
 
   protected Object                         lastSearchKey;
   protected OMVRBTreeEntry<K, V>           lastSearchNode;
@@ -582,15 +583,19 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 
     if (pageItemFound)
       return p;
+
     // NOT MATCHED, POSITION IS ALREADY TO THE NEXT ONE
-    else if (pageIndex < p.getSize()) {
-      if (key instanceof OCompositeKey)
-        return adjustSearchResult((OCompositeKey) key, partialSearchMode, p);
-      else
-        return p;
+    if (pageIndex >= p.getSize()) {
+      // AFTER THE LAST KEY OF THE NODE: GET THE FIRST KEY OF THE NEXT NODE
+      p = next(p);
+      if (p == null)
+        return null;
     }
 
-    return null;
+    if (key instanceof OCompositeKey)
+      return adjustSearchResult((OCompositeKey) key, partialSearchMode, p);
+    else
+      return p;
   }
 
   /**
@@ -673,7 +678,8 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
       // NOT MATCHED, POSITION IS ALREADY TO THE NEXT ONE
       return p;
 
-    return null;
+    // NOT MATCHED AFTER THE LAST KEY OF THE NODE: RETURN THE FIRST KEY OF THE NEXT NODE
+    return next(p);
   }
 
   /**
@@ -750,15 +756,22 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
         // INSERT INTO THE PAGE
         parentNode.insert(pageIndex, key, value);
       } else {
-        // CREATE NEW NODE AND COPY HALF OF VALUES FROM THE ORIGIN TO THE NEW ONE IN ORDER TO GET VALUES BALANCED
-        final OMVRBTreeEntry<K, V> newNode = createEntry(parentNode);
-
-        if (pageIndex < parentNode.getPageSplitItems())
-          // INSERT IN THE ORIGINAL NODE
-          parentNode.insert(pageIndex, key, value);
-        else
-          // INSERT IN THE NEW NODE
-          newNode.insert(pageIndex - parentNode.getPageSplitItems(), key, value);
+        final OMVRBTreeEntry<K, V> newNode;
+        if (appendMode && pageIndex >= parentNode.getSize() && successor(parentNode) == null)
+          // APPEND AFTER THE GREATEST KEY: LEAVE THE LAST NODE FULL AND START A NEW ONE, SO THE KEYS INSERTED IN ORDER FILL ALL
+          // THE NODES
+          newNode = createEntry(key, value);
+        else {
+          // CREATE NEW NODE AND COPY HALF OF VALUES FROM THE ORIGIN TO THE NEW ONE IN ORDER TO GET VALUES BALANCED
+          newNode = createEntry(parentNode);
+
+          if (pageIndex < parentNode.getPageSplitItems())
+            // INSERT IN THE ORIGINAL NODE
+            parentNode.insert(pageIndex, key, value);
+          else
+            // INSERT IN THE NEW NODE
+            newNode.insert(pageIndex - parentNode.getPageSplitItems(), key, value);
+        }
 
         OMVRBTreeEntry<K, V> node = parentNode.getRight();
         OMVRBTreeEntry<K, V> prevNode = parentNode;
@@ -1414,7 +1427,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
   /**
    * Compares two keys using the correct comparison method for this OMVRBTree.
    */
-  final int compare(final Object k1, final Object k2) {
+  protected final int compare(final Object k1, final Object k2) {
     return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2) : comparator.compare((K) k1, (K) k2);
   }
 
@@ -2857,6 +2870,19 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
     this.debug = debug;
   }
 
+  public boolean isAppendMode() {
+    return appendMode;
+  }
+
+  /**
+   * Tells the tree the keys are put in ascending order, as by the bulk loads. In append mode a key put after the greatest one
+   * leaves the last node full and starts a new node, instead of splitting the last node in half. Turn it off after the load: with
+   * random inserts the full nodes would be split soon.
+   */
+  public void setAppendMode(final boolean iAppendMode) {
+    this.appendMode = iAppendMode;
+  }
+
   protected OMVRBTreeEntry<K, V> getLastSearchNodeForSameKey(final Object key) {
     if (key != null && lastSearchKey != null) {
       if (key instanceof OCompositeKey)
@@ -17,7 +17,6 @@ package com.orientechnologies.common.concur.resource;
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.orientechnologies.common.concur.OTimeoutException;
@@ -31,7 +30,7 @@ import com.orientechnologies.common.concur.lock.OLockException;
  * 
  */
 public class OSharedResourceAdaptive {
-	private final ReadWriteLock	lock	= new ReentrantReadWriteLock();
+	private final ReentrantReadWriteLock	lock	= new ReentrantReadWriteLock();
 	private final AtomicInteger	users	= new AtomicInteger(0);
 	private final boolean				concurrent;
 	private final int						timeout;
@@ -138,6 +137,13 @@ public class OSharedResourceAdaptive {
 			lock.readLock().unlock();
 	}
 
+	/**
+	 * Tells if the current thread owns the lock, in shared or exclusive mode.
+	 */
+	protected boolean isLockedByCurrentThread() {
+		return concurrent && (lock.isWriteLockedByCurrentThread() || lock.getReadHoldCount() > 0);
+	}
+
 	public int getUsers() {
 		return users.get();
 	}
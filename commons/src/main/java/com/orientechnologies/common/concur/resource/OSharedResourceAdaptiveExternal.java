@@ -53,4 +53,9 @@ public class OSharedResourceAdaptiveExternal extends OSharedResourceAdaptive imp
 	public void releaseSharedLock() {
 		super.releaseSharedLock();
 	}
+
+	@Override
+	public boolean isLockedByCurrentThread() {
+		return super.isLockedByCurrentThread();
+	}
 }
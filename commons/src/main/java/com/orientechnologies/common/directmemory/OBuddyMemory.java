@@ -16,21 +16,21 @@
 
 package com.orientechnologies.common.directmemory;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
-import com.orientechnologies.common.serialization.OBinaryConverter;
-import com.orientechnologies.common.serialization.OBinaryConverterFactory;
 import com.orientechnologies.common.serialization.types.OBinarySerializer;
 
 /**
  * Buddy memory allocation algorithm.
  * 
+ * The pool is a direct {@link ByteBuffer}, so the allocated memory lives outside of the Java heap and is not scanned by the GC.
+ * 
  * @author Artem Orobets, Andrey Lomakin
  * @since 12.08.12
  */
 public class OBuddyMemory implements ODirectMemory {
-  private static final OBinaryConverter CONVERTER        = OBinaryConverterFactory.getConverter();
-
   public static final int               SYSTEM_INFO_SIZE = 2;
 
   private static final int              TAG_OFFSET       = 0;
@@ -41,7 +41,7 @@ public class OBuddyMemory implements ODirectMemory {
   public static final byte              TAG_FREE         = 0;
   public static final byte              TAG_ALLOCATED    = 1;
 
-  private final byte[]                  buffer;
+  private final ByteBuffer              buffer;
 
   private final int                     minChunkSize;
   private final int[]                   freeListHeader;
@@ -63,7 +63,7 @@ public class OBuddyMemory implements ODirectMemory {
 
       freeListHeader = new int[maxLevel + 1];
       freeListTail = new int[maxLevel + 1];
-      buffer = new byte[capacity];
+      buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
 
       initMemory();
     }
@@ -89,7 +89,7 @@ public class OBuddyMemory implements ODirectMemory {
     int pointer = freeListHeader[level];
     if (pointer != NULL_POINTER) {
       removeNodeFromHead(level);
-      buffer[pointer] = TAG_ALLOCATED;
+      buffer.put(pointer + TAG_OFFSET, TAG_ALLOCATED);
     } else {
       int currentLevel = level + 1;
       while (freeListHeader[currentLevel] == NULL_POINTER) {
@@ -106,8 +106,8 @@ public class OBuddyMemory implements ODirectMemory {
       do {
         pointer = split(pointer);
         currentLevel--;
-        buffer[pointer + TAG_OFFSET] = (currentLevel == level) ? TAG_ALLOCATED : TAG_FREE;
-        buffer[pointer + SIZE_OFFSET] = (byte) (currentLevel & 0xFF);
+        buffer.put(pointer + TAG_OFFSET, (currentLevel == level) ? TAG_ALLOCATED : TAG_FREE);
+        buffer.put(pointer + SIZE_OFFSET, (byte) (currentLevel & 0xFF));
       } while (currentLevel > level);
     }
 
@@ -115,9 +115,9 @@ public class OBuddyMemory implements ODirectMemory {
   }
 
   public synchronized void free(int pointer) {
-    int level = buffer[pointer + SIZE_OFFSET];
+    int level = buffer.get(pointer + SIZE_OFFSET);
     int buddy = buddy(pointer, level);
-    while (level < maxLevel && buffer[buddy + TAG_OFFSET] == TAG_FREE && buffer[buddy + SIZE_OFFSET] == level) {
+    while (level < maxLevel && buffer.get(buddy + TAG_OFFSET) == TAG_FREE && buffer.get(buddy + SIZE_OFFSET) == level) {
       removeFromFreeList(level, buddy);
 
       if (buddy < pointer) {
@@ -127,13 +127,13 @@ public class OBuddyMemory implements ODirectMemory {
       buddy = buddy(pointer, level);
     }
 
-    buffer[pointer + TAG_OFFSET] = TAG_FREE;
-    buffer[pointer + SIZE_OFFSET] = (byte) (level & 0xFF);
+    buffer.put(pointer + TAG_OFFSET, TAG_FREE);
+    buffer.put(pointer + SIZE_OFFSET, (byte) (level & 0xFF));
     addNodeToTail(level, pointer);
   }
 
   public int getActualSpace(int pointer) {
-    return (1 << buffer[pointer + SIZE_OFFSET]) * minChunkSize;
+    return (1 << buffer.get(pointer + SIZE_OFFSET)) * minChunkSize;
   }
 
   public byte[] get(int pointer, int offset, final int length) {
@@ -145,24 +145,31 @@ public class OBuddyMemory implements ODirectMemory {
     }
 
     byte[] dest = new byte[newLength];
-    System.arraycopy(buffer, pointer + SYSTEM_INFO_SIZE + offset, dest, 0, newLength);
+    final ByteBuffer view = buffer.duplicate();
+    view.position(pointer + SYSTEM_INFO_SIZE + offset);
+    view.get(dest);
     return dest;
   }
 
   public void set(int pointer, int offset, int length, byte[] content) {
-    System.arraycopy(content, 0, buffer, pointer + SYSTEM_INFO_SIZE + offset, length);
+    final ByteBuffer view = buffer.duplicate();
+    view.position(pointer + SYSTEM_INFO_SIZE + offset);
+    view.put(content, 0, length);
   }
 
   public <T> T get(int pointer, int offset, OBinarySerializer<T> serializer) {
-    return serializer.deserializeNative(buffer, pointer + SYSTEM_INFO_SIZE + offset);
+    // SERIALIZERS WORK ON HEAP ARRAYS: COPY THE REST OF THE CHUNK AND DESERIALIZE FROM THERE
+    return serializer.deserializeNative(get(pointer, offset, -1), 0);
   }
 
   public <T> void set(int pointer, int offset, T data, OBinarySerializer<T> serializer) {
-    serializer.serializeNative(data, buffer, pointer + SYSTEM_INFO_SIZE + offset);
+    final byte[] content = new byte[serializer.getObjectSize(data)];
+    serializer.serializeNative(data, content, 0);
+    set(pointer, offset, content.length, content);
   }
 
   public int capacity() {
-    return buffer.length - 1;
+    return buffer.capacity() - 1;
   }
 
   public synchronized int freeSpace() {
@@ -195,28 +202,34 @@ public class OBuddyMemory implements ODirectMemory {
   }
 
   public long getLong(int pointer, int offset) {
-    return CONVERTER.getLong(buffer, pointer + offset + SYSTEM_INFO_SIZE);
+    return buffer.getLong(pointer + offset + SYSTEM_INFO_SIZE);
   }
 
   public void setLong(int pointer, int offset, long value) {
-    CONVERTER.putLong(buffer, pointer + offset + SYSTEM_INFO_SIZE, value);
+    buffer.putLong(pointer + offset + SYSTEM_INFO_SIZE, value);
   }
 
   public byte getByte(int pointer, int offset) {
     int index = pointer + offset + SYSTEM_INFO_SIZE;
-    return buffer[index];
+    return buffer.get(index);
   }
 
   public void setByte(int pointer, int offset, byte value) {
     int index = pointer + offset + SYSTEM_INFO_SIZE;
-    buffer[index] = value;
+    buffer.put(index, value);
   }
 
   public void copyData(int srcPointer, int fromOffset, int destPointer, int toOffset, int len) {
     int fromIndex = srcPointer + fromOffset + SYSTEM_INFO_SIZE;
     int toIndex = destPointer + toOffset + SYSTEM_INFO_SIZE;
 
-    System.arraycopy(buffer, fromIndex, buffer, toIndex, len);
+    final ByteBuffer source = buffer.duplicate();
+    source.position(fromIndex);
+    source.limit(fromIndex + len);
+
+    final ByteBuffer target = buffer.duplicate();
+    target.position(toIndex);
+    target.put(source);
   }
 
   private void initMemory() {
@@ -225,13 +238,13 @@ public class OBuddyMemory implements ODirectMemory {
 
     int pointer = 0;
     byte level = (byte) maxLevel;
-    int availSpace = buffer.length;
+    int availSpace = buffer.capacity();
 
     while (level >= 0) {
       int chunkSize = (1 << level) * minChunkSize;
       if (availSpace > chunkSize) {
-        buffer[pointer + TAG_OFFSET] = TAG_FREE;
-        buffer[pointer + SIZE_OFFSET] = level;
+        buffer.put(pointer + TAG_OFFSET, TAG_FREE);
+        buffer.put(pointer + SIZE_OFFSET, level);
         addNodeToTail(level, pointer);
         availSpace -= chunkSize;
 
@@ -241,18 +254,19 @@ public class OBuddyMemory implements ODirectMemory {
     }
     assert availSpace == 1;
 
-    buffer[pointer + TAG_OFFSET] = TAG_ALLOCATED;
+    buffer.put(pointer + TAG_OFFSET, TAG_ALLOCATED);
   }
 
   private int split(int pointer) {
-    int level = --buffer[pointer + SIZE_OFFSET];
+    final byte level = (byte) (buffer.get(pointer + SIZE_OFFSET) - 1);
+    buffer.put(pointer + SIZE_OFFSET, level);
     addNodeToTail(level, pointer);
 
     return buddy(pointer, level);
   }
 
   private int size(int pointer) {
-    return (1 << buffer[pointer + SIZE_OFFSET]) * minChunkSize - SYSTEM_INFO_SIZE;
+    return (1 << buffer.get(pointer + SIZE_OFFSET)) * minChunkSize - SYSTEM_INFO_SIZE;
   }
 
   private int buddy(int pointer, int level) {
@@ -316,10 +330,10 @@ public class OBuddyMemory implements ODirectMemory {
   }
 
   private void writeInt(int pointer, int offset, int value) {
-    CONVERTER.putInt(buffer, pointer + offset, value);
+    buffer.putInt(pointer + offset, value);
   }
 
   private int readInt(int pointer, int offset) {
-    return CONVERTER.getInt(buffer, pointer + offset);
+    return buffer.getInt(pointer + offset);
   }
 }
@@ -36,16 +36,19 @@ import com.orientechnologies.common.profiler.OProfilerData.OProfilerEntry;
  * 
  * To start the recording use call startRecording(). By default record is turned off to avoid a run-time execution cost.
  * 
+ * Chronos, statistics and counters are recorded without taking any lock: the lock protects only the rotation of the snapshots and
+ * the reading of the data.
+ * 
  * @author Luca Garulli
  * @copyrights Orient Technologies.com
  */
 public class OProfiler extends OSharedResourceAbstract implements OProfilerMBean {
-  protected long                            recordingFrom           = -1;
+  protected volatile long                   recordingFrom           = -1;
   protected Map<OProfilerHookValue, String> hooks                   = new ConcurrentHashMap<OProfiler.OProfilerHookValue, String>();
   protected Date                            lastReset               = new Date();
 
   protected OProfilerData                   realTime                = new OProfilerData();
-  protected OProfilerData                   lastSnapshot;
+  protected volatile OProfilerData          lastSnapshot;
   protected List<OProfilerData>             snapshots               = new ArrayList<OProfilerData>();
   protected List<OProfilerData>             summaries               = new ArrayList<OProfilerData>();
 
@@ -172,13 +175,15 @@ public class OProfiler extends OSharedResourceAbstract implements OProfilerMBean
     try {
 
       synchronized (snapshots) {
-        // ARCHIVE IT
-        lastSnapshot.setHookValues(hookValuesSnapshots);
-        lastSnapshot.endRecording();
-        snapshots.add(lastSnapshot);
-
+        // SWITCH THE RECORDING TO A NEW SNAPSHOT BEFORE TO ARCHIVE THE CURRENT ONE
+        final OProfilerData snapshot = lastSnapshot;
         lastSnapshot = new OProfilerData();
 
+        // ARCHIVE IT
+        snapshot.setHookValues(hookValuesSnapshots);
+        snapshot.endRecording();
+        snapshots.add(snapshot);
+
         if (snapshots.size() >= maxSnapshots && maxSnapshots > 0) {
           // COPY ALL THE ARCHIVE AND RESET IT
 
@@ -208,26 +213,17 @@ public class OProfiler extends OSharedResourceAbstract implements OProfilerMBean
     if (iStatName == null || recordingFrom < 0)
       return;
 
-    acquireSharedLock();
-    try {
-      if (lastSnapshot != null)
-        lastSnapshot.updateCounter(iStatName, iPlus);
-      realTime.updateCounter(iStatName, iPlus);
-    } finally {
-      releaseSharedLock();
-    }
+    final OProfilerData snapshot = lastSnapshot;
+    if (snapshot != null)
+      snapshot.updateCounter(iStatName, iPlus);
+    realTime.updateCounter(iStatName, iPlus);
   }
 
   public long getCounter(final String iStatName) {
     if (iStatName == null || recordingFrom < 0)
       return -1;
 
-    acquireSharedLock();
-    try {
-      return realTime.getCounter(iStatName);
-    } finally {
-      releaseSharedLock();
-    }
+    return realTime.getCounter(iStatName);
   }
 
   public String toJSON(final String iQuery, final String iFrom, final String iTo) {
@@ -334,29 +330,32 @@ public class OProfiler extends OSharedResourceAbstract implements OProfilerMBean
     }
   }
 
+  /**
+   * Starts a chrono. The returned value comes from {@link System#nanoTime()}: it's meaningful only to be passed to
+   * {@link #stopChrono(String, long)}, not as a date.
+   */
   public long startChrono() {
     // CHECK IF CHRONOS ARE ACTIVED
     if (recordingFrom < 0)
       return -1;
 
-    return System.currentTimeMillis();
+    return System.nanoTime();
   }
 
+  /**
+   * Stops a chrono started with {@link #startChrono()}.
+   * 
+   * @return The elapsed time in milliseconds
+   */
   public long stopChrono(final String iName, final long iStartTime) {
     // CHECK IF CHRONOS ARE ACTIVED
     if (recordingFrom < 0)
       return -1;
 
-    acquireSharedLock();
-    try {
-
-      if (lastSnapshot != null)
-        lastSnapshot.stopChrono(iName, iStartTime);
-      return realTime.stopChrono(iName, iStartTime);
-
-    } finally {
-      releaseSharedLock();
-    }
+    final OProfilerData snapshot = lastSnapshot;
+    if (snapshot != null)
+      snapshot.stopChrono(iName, iStartTime);
+    return realTime.stopChrono(iName, iStartTime);
   }
 
   public long updateStat(final String iName, final long iValue) {
@@ -364,16 +363,10 @@ public class OProfiler extends OSharedResourceAbstract implements OProfilerMBean
     if (recordingFrom < 0)
       return -1;
 
-    acquireSharedLock();
-    try {
-
-      if (lastSnapshot != null)
-        lastSnapshot.updateStat(iName, iValue);
-      return realTime.updateStat(iName, iValue);
-
-    } finally {
-      releaseSharedLock();
-    }
+    final OProfilerData snapshot = lastSnapshot;
+    if (snapshot != null)
+      snapshot.updateStat(iName, iValue);
+    return realTime.updateStat(iName, iValue);
   }
 
   public String dumpCounters() {
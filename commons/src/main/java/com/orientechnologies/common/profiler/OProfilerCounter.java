@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.common.profiler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads the updates of concurrent threads across different cells, each one on its own cache line, to avoid
+ * contention. The cells are summed only when the value is read.
+ * 
+ * @author Luca Garulli
+ */
+public class OProfilerCounter {
+  /**
+   * Number of cells: the first power of 2 that covers the available processors.
+   */
+  public static final int      STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+  // ONE CELL EVERY 8 LONGS = 64 BYTES, THE SIZE OF A CACHE LINE
+  private static final int     PADDING = 8;
+
+  private final AtomicLongArray cells;
+  private final int            mask;
+
+  public OProfilerCounter() {
+    this(STRIPES);
+  }
+
+  /**
+   * @param iStripes
+   *          Number of cells, must be a power of 2. Use 1 for counters that are not updated concurrently.
+   */
+  public OProfilerCounter(final int iStripes) {
+    cells = new AtomicLongArray(iStripes * PADDING);
+    mask = iStripes - 1;
+  }
+
+  public void add(final long iValue) {
+    cells.addAndGet((threadIndex() & mask) * PADDING, iValue);
+  }
+
+  public long get() {
+    long total = 0;
+    for (int i = 0; i <= mask; ++i)
+      total += cells.get(i * PADDING);
+    return total;
+  }
+
+  /**
+   * Returns a hash of the current thread to pick the cell to update.
+   */
+  static int threadIndex() {
+    int h = (int) Thread.currentThread().getId();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+}
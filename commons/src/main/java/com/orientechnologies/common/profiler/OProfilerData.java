@@ -19,11 +19,12 @@ package com.orientechnologies.common.profiler;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.orientechnologies.common.log.OLogManager;
 
@@ -33,16 +34,23 @@ import com.orientechnologies.common.log.OLogManager;
  * 
  * To start the recording use call startRecording(). By default record is turned off to avoid a run-time execution cost.
  * 
+ * Counters and entries are striped by thread (see {@link OProfilerCounter} and {@link OProfilerHistogram}) so recording doesn't
+ * lock: the stripes are merged only when the data is read. Chronos are measured in nanoseconds, to get precise percentiles of
+ * short operations, but they are reported in milliseconds.
+ * 
  * @author Luca Garulli
  * @copyrights Orient Technologies.com
  */
 public class OProfilerData {
-  private long                        recordingFrom = 0;
-  private long                        recordingTo   = Long.MAX_VALUE;
-  private Map<String, Long>           counters;
-  private Map<String, OProfilerEntry> chronos;
-  private Map<String, OProfilerEntry> stats;
-  private Map<String, Object>         hooks;
+  private static final long                                 NANOS_PER_MILLI = 1000000;
+
+  private long                                              recordingFrom   = 0;
+  private long                                              recordingTo     = Long.MAX_VALUE;
+  private ConcurrentMap<String, OProfilerCounter>           counters;
+  private ConcurrentMap<String, OProfilerHistogram>         chronos;
+  private ConcurrentMap<String, OProfilerHistogram>         stats;
+  private Map<String, Object>                               hooks;
+  private volatile boolean                                  archived        = false;
 
   public class OProfilerEntry {
     public String name    = null;
@@ -52,6 +60,9 @@ public class OProfilerData {
     public long   max     = 0;
     public long   average = 0;
     public long   total   = 0;
+    public long   p50     = 0;
+    public long   p99     = 0;
+    public long   p999    = 0;
 
     public void toJSON(final StringBuilder buffer) {
       buffer.append(String.format("\"%s\":{", name));
@@ -60,21 +71,25 @@ public class OProfilerData {
       buffer.append(String.format("\"%s\":%d,", "min", min));
       buffer.append(String.format("\"%s\":%d,", "max", max));
       buffer.append(String.format("\"%s\":%d,", "average", average));
-      buffer.append(String.format("\"%s\":%d", "total", total));
+      buffer.append(String.format("\"%s\":%d,", "total", total));
+      buffer.append(String.format("\"%s\":%d,", "p50", p50));
+      buffer.append(String.format("\"%s\":%d,", "p99", p99));
+      buffer.append(String.format("\"%s\":%d", "p999", p999));
       buffer.append("}");
     }
 
     @Override
     public String toString() {
-      return String.format("Profiler entry [%s]: total=%d, average=%d, items=%d, last=%d, max=%d, min=%d", total, name, average,
-          entries, last, max, min);
+      return String.format(
+          "Profiler entry [%s]: total=%d, average=%d, items=%d, last=%d, max=%d, min=%d, p50=%d, p99=%d, p999=%d", name, total,
+          average, entries, last, max, min, p50, p99, p999);
     }
   }
 
   public OProfilerData() {
-    counters = new HashMap<String, Long>();
-    chronos = new HashMap<String, OProfilerEntry>();
-    stats = new HashMap<String, OProfilerEntry>();
+    counters = new ConcurrentHashMap<String, OProfilerCounter>();
+    chronos = new ConcurrentHashMap<String, OProfilerHistogram>();
+    stats = new ConcurrentHashMap<String, OProfilerHistogram>();
     hooks = new WeakHashMap<String, Object>();
     recordingFrom = System.currentTimeMillis();
   }
@@ -86,24 +101,39 @@ public class OProfilerData {
     hooks.clear();
   }
 
+  /**
+   * Closes the recording. Since no more values are expected, the striped counters and entries are collapsed in single cells to save
+   * memory.
+   */
   public long endRecording() {
     recordingTo = System.currentTimeMillis();
+    archived = true;
+
+    for (Entry<String, OProfilerCounter> entry : counters.entrySet()) {
+      final OProfilerCounter compacted = new OProfilerCounter(1);
+      compacted.add(entry.getValue().get());
+      entry.setValue(compacted);
+    }
+    for (Entry<String, OProfilerHistogram> entry : chronos.entrySet())
+      entry.setValue(entry.getValue().compact());
+    for (Entry<String, OProfilerHistogram> entry : stats.entrySet())
+      entry.setValue(entry.getValue().compact());
+
     return recordingTo;
   }
 
   public void mergeWith(final OProfilerData iToMerge) {
+    // MERGED DATA ARE NOT UPDATED CONCURRENTLY: DON'T STRIPE THEM
+    archived = true;
+
     if (iToMerge.recordingFrom < recordingFrom)
       recordingFrom = iToMerge.recordingFrom;
     if (iToMerge.recordingTo > recordingTo)
       recordingTo = iToMerge.recordingTo;
 
     // COUNTERS
-    for (Entry<String, Long> entry : iToMerge.counters.entrySet()) {
-      Long currentValue = counters.get(entry.getKey());
-      if (currentValue == null)
-        currentValue = 0l;
-      counters.put(entry.getKey(), currentValue + entry.getValue());
-    }
+    for (Entry<String, OProfilerCounter> entry : iToMerge.counters.entrySet())
+      getOrCreateCounter(entry.getKey()).add(entry.getValue().get());
 
     // HOOKS
     for (Entry<String, Object> entry : iToMerge.hooks.entrySet()) {
@@ -148,11 +178,14 @@ public class OProfilerData {
     // HOOKS
     buffer.append("\"hookValues\":{ ");
 
-    List<String> names = new ArrayList<String>(hooks.keySet());
+    List<String> names;
+    synchronized (hooks) {
+      names = new ArrayList<String>(hooks.keySet());
+    }
     Collections.sort(names);
     boolean firstItem = true;
     for (String k : names) {
-      final Object value = hooks.get(k);
+      final Object value = getHookValue(k);
       if (firstItem)
         firstItem = false;
       else
@@ -179,7 +212,7 @@ public class OProfilerData {
         firstItem = false;
       else
         buffer.append(',');
-      chronos.get(k).toJSON(buffer);
+      getEntry(chronos, k).toJSON(buffer);
     }
     buffer.append("}");
 
@@ -193,7 +226,7 @@ public class OProfilerData {
         firstItem = false;
       else
         buffer.append(',');
-      stats.get(k).toJSON(buffer);
+      getEntry(stats, k).toJSON(buffer);
     }
     buffer.append("}");
 
@@ -207,7 +240,7 @@ public class OProfilerData {
         firstItem = false;
       else
         buffer.append(',');
-      buffer.append(String.format("\"%s\":%d", k, counters.get(k)));
+      buffer.append(String.format("\"%s\":%d", k, getCounter(k)));
     }
     buffer.append("}");
 
@@ -232,49 +265,45 @@ public class OProfilerData {
     if (iStatName == null)
       return;
 
-    synchronized (counters) {
-      final Long stat = counters.get(iStatName);
-      final long oldValue = stat == null ? 0 : stat.longValue();
-      counters.put(iStatName, new Long(oldValue + iPlus));
-    }
+    getOrCreateCounter(iStatName).add(iPlus);
   }
 
   public long getCounter(final String iStatName) {
     if (iStatName == null)
       return -1;
 
-    synchronized (counters) {
-      final Long stat = counters.get(iStatName);
-      if (stat == null)
-        return -1;
+    final OProfilerCounter stat = counters.get(iStatName);
+    if (stat == null)
+      return -1;
 
-      return stat.longValue();
-    }
+    return stat.get();
   }
 
   public String dumpCounters() {
-    synchronized (counters) {
-      final StringBuilder buffer = new StringBuilder();
-      buffer.append("Dumping COUNTERS:");
+    final StringBuilder buffer = new StringBuilder();
+    buffer.append("Dumping COUNTERS:");
 
-      buffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
-      buffer.append(String.format("\n%50s | Value                                                             |", "Name"));
-      buffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
+    buffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
+    buffer.append(String.format("\n%50s | Value                                                             |", "Name"));
+    buffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
 
-      final List<String> keys = new ArrayList<String>(counters.keySet());
-      Collections.sort(keys);
+    final List<String> keys = new ArrayList<String>(counters.keySet());
+    Collections.sort(keys);
 
-      for (String k : keys) {
-        final Long stat = counters.get(k);
-        buffer.append(String.format("\n%-50s | %-65d |", k, stat));
-      }
-      buffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
-      return buffer.toString();
-    }
+    for (String k : keys)
+      buffer.append(String.format("\n%-50s | %-65d |", k, getCounter(k)));
+
+    buffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
+    return buffer.toString();
   }
 
+  /**
+   * Records the time elapsed since iStartTime, as returned by {@link System#nanoTime()}.
+   * 
+   * @return The elapsed time in milliseconds
+   */
   public long stopChrono(final String iName, final long iStartTime) {
-    return updateEntry(chronos, iName, System.currentTimeMillis() - iStartTime);
+    return updateEntry(chronos, iName, System.nanoTime() - iStartTime) / NANOS_PER_MILLI;
   }
 
   public String dumpChronos() {
@@ -333,44 +362,24 @@ public class OProfilerData {
   }
 
   public String[] getCountersAsString() {
-    synchronized (counters) {
-      final String[] output = new String[counters.size()];
-      int i = 0;
-      for (Entry<String, Long> entry : counters.entrySet()) {
-        output[i++] = entry.getKey() + ": " + entry.getValue().toString();
-      }
-      return output;
-    }
+    final List<String> output = new ArrayList<String>();
+    for (Entry<String, OProfilerCounter> entry : counters.entrySet())
+      output.add(entry.getKey() + ": " + entry.getValue().get());
+    return output.toArray(new String[output.size()]);
   }
 
   public String[] getChronosAsString() {
-    synchronized (chronos) {
-      final String[] output = new String[chronos.size()];
-      int i = 0;
-      for (Entry<String, OProfilerEntry> entry : chronos.entrySet()) {
-        output[i++] = entry.getKey() + ": " + entry.getValue().toString();
-      }
-      return output;
-    }
+    return getEntriesAsString(chronos);
   }
 
   public String[] getStatsAsString() {
-    synchronized (stats) {
-      final String[] output = new String[stats.size()];
-      int i = 0;
-      for (Entry<String, OProfilerEntry> entry : stats.entrySet()) {
-        output[i++] = entry.getKey() + ": " + entry.getValue().toString();
-      }
-      return output;
-    }
+    return getEntriesAsString(stats);
   }
 
   public List<String> getCounters() {
-    synchronized (counters) {
-      final List<String> list = new ArrayList<String>(counters.keySet());
-      Collections.sort(list);
-      return list;
-    }
+    final List<String> list = new ArrayList<String>(counters.keySet());
+    Collections.sort(list);
+    return list;
   }
 
   public List<String> getHooks() {
@@ -382,110 +391,131 @@ public class OProfilerData {
   }
 
   public List<String> getChronos() {
-    synchronized (chronos) {
-      final List<String> list = new ArrayList<String>(chronos.keySet());
-      Collections.sort(list);
-      return list;
-    }
+    final List<String> list = new ArrayList<String>(chronos.keySet());
+    Collections.sort(list);
+    return list;
   }
 
   public List<String> getStats() {
-    synchronized (stats) {
-      final List<String> list = new ArrayList<String>(stats.keySet());
-      Collections.sort(list);
-      return list;
-    }
+    final List<String> list = new ArrayList<String>(stats.keySet());
+    Collections.sort(list);
+    return list;
   }
 
   public OProfilerEntry getStat(final String iStatName) {
     if (iStatName == null)
       return null;
 
-    synchronized (stats) {
-      return stats.get(iStatName);
-    }
+    return getEntry(stats, iStatName);
   }
 
   public OProfilerEntry getChrono(final String iChronoName) {
     if (iChronoName == null)
       return null;
 
-    synchronized (chronos) {
-      return chronos.get(iChronoName);
-    }
+    return getEntry(chronos, iChronoName);
   }
 
-  protected synchronized long updateEntry(final Map<String, OProfilerEntry> iValues, final String iName, final long iValue) {
-    synchronized (iValues) {
-      OProfilerEntry c = iValues.get(iName);
+  protected long updateEntry(final ConcurrentMap<String, OProfilerHistogram> iValues, final String iName, final long iValue) {
+    OProfilerHistogram c = iValues.get(iName);
 
-      if (c == null) {
-        // CREATE NEW CHRONO
-        c = new OProfilerEntry();
-        iValues.put(iName, c);
-      }
+    if (c == null) {
+      // CREATE NEW CHRONO
+      c = archived ? new OProfilerHistogram(1) : new OProfilerHistogram();
+      final OProfilerHistogram previous = iValues.putIfAbsent(iName, c);
+      if (previous != null)
+        c = previous;
+    }
 
-      c.name = iName;
-      c.entries++;
-      c.last = iValue;
-      c.total += c.last;
-      c.average = c.total / c.entries;
+    c.record(iValue);
+    return iValue;
+  }
 
-      if (c.last < c.min)
-        c.min = c.last;
+  protected OProfilerEntry getEntry(final Map<String, OProfilerHistogram> iValues, final String iName) {
+    final OProfilerHistogram c = iValues.get(iName);
+    if (c == null)
+      return null;
 
-      if (c.last > c.max)
-        c.max = c.last;
+    final OProfilerEntry entry = new OProfilerEntry();
+    entry.name = iName;
+    c.fill(entry);
+
+    if (iValues == chronos) {
+      // CHRONOS ARE RECORDED IN NANOSECONDS
+      entry.last /= NANOS_PER_MILLI;
+      entry.min /= NANOS_PER_MILLI;
+      entry.max /= NANOS_PER_MILLI;
+      entry.average /= NANOS_PER_MILLI;
+      entry.total /= NANOS_PER_MILLI;
+      entry.p50 /= NANOS_PER_MILLI;
+      entry.p99 /= NANOS_PER_MILLI;
+      entry.p999 /= NANOS_PER_MILLI;
+    }
+    return entry;
+  }
 
-      return c.last;
+  protected String[] getEntriesAsString(final Map<String, OProfilerHistogram> iValues) {
+    final List<String> output = new ArrayList<String>();
+    for (String k : iValues.keySet()) {
+      final OProfilerEntry entry = getEntry(iValues, k);
+      if (entry != null)
+        output.add(k + ": " + entry.toString());
     }
+    return output.toArray(new String[output.size()]);
   }
 
-  protected synchronized String dumpEntries(final Map<String, OProfilerEntry> iValues, final StringBuilder iBuffer) {
+  protected String dumpEntries(final Map<String, OProfilerHistogram> iValues, final StringBuilder iBuffer) {
     // CHECK IF CHRONOS ARE ACTIVED
-    synchronized (iValues) {
-      if (iValues.size() == 0)
-        return "";
-
-      OProfilerEntry c;
-
-      iBuffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
-      iBuffer.append(String.format("\n%50s | %10s %10s %10s %10s %10s %10s |", "Name", "last", "total", "min", "max", "average",
-          "items"));
-      iBuffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
-
-      final List<String> keys = new ArrayList<String>(iValues.keySet());
-      Collections.sort(keys);
-
-      for (String k : keys) {
-        c = iValues.get(k);
-        iBuffer.append(String.format("\n%-50s | %10d %10d %10d %10d %10d %10d |", k, c.last, c.total, c.min, c.max, c.average,
-            c.entries));
-      }
-      iBuffer.append(String.format("\n%50s +-------------------------------------------------------------------+", ""));
-      return iBuffer.toString();
+    if (iValues.size() == 0)
+      return "";
+
+    OProfilerEntry c;
+
+    iBuffer.append(String.format(
+        "\n%50s +----------------------------------------------------------------------------------------------------+", ""));
+    iBuffer.append(String.format("\n%50s | %10s %10s %10s %10s %10s %10s %10s %10s %10s |", "Name", "last", "total", "min", "max",
+        "average", "p50", "p99", "p999", "items"));
+    iBuffer.append(String.format(
+        "\n%50s +----------------------------------------------------------------------------------------------------+", ""));
+
+    final List<String> keys = new ArrayList<String>(iValues.keySet());
+    Collections.sort(keys);
+
+    for (String k : keys) {
+      c = getEntry(iValues, k);
+      if (c != null)
+        iBuffer.append(String.format("\n%-50s | %10d %10d %10d %10d %10d %10d %10d %10d %10d |", k, c.last, c.total, c.min, c.max,
+            c.average, c.p50, c.p99, c.p999, c.entries));
     }
+    iBuffer.append(String.format(
+        "\n%50s +----------------------------------------------------------------------------------------------------+", ""));
+    return iBuffer.toString();
   }
 
-  protected void mergeEntries(final Map<String, OProfilerEntry> iMyEntries, final Map<String, OProfilerEntry> iOthersEntries) {
-    for (Entry<String, OProfilerEntry> entry : iOthersEntries.entrySet()) {
-      OProfilerEntry currentValue = iMyEntries.get(entry.getKey());
+  protected void mergeEntries(final ConcurrentMap<String, OProfilerHistogram> iMyEntries,
+      final Map<String, OProfilerHistogram> iOthersEntries) {
+    for (Entry<String, OProfilerHistogram> entry : iOthersEntries.entrySet()) {
+      OProfilerHistogram currentValue = iMyEntries.get(entry.getKey());
       if (currentValue == null) {
-        currentValue = entry.getValue();
+        currentValue = new OProfilerHistogram(1);
         iMyEntries.put(entry.getKey(), currentValue);
-      } else {
-        // MERGE IT
-        currentValue.entries += entry.getValue().entries;
-        currentValue.last = entry.getValue().last;
-        currentValue.min = Math.min(currentValue.min, entry.getValue().min);
-        currentValue.max = Math.max(currentValue.max, entry.getValue().max);
-        currentValue.average = (currentValue.total + entry.getValue().total) / currentValue.entries;
-        currentValue.total += entry.getValue().total;
       }
+      currentValue.mergeWith(entry.getValue());
     }
   }
 
   public boolean isInRange(final long from, final long to) {
     return recordingFrom >= from && recordingTo <= to;
   }
+
+  private OProfilerCounter getOrCreateCounter(final String iName) {
+    OProfilerCounter counter = counters.get(iName);
+    if (counter == null) {
+      counter = archived ? new OProfilerCounter(1) : new OProfilerCounter();
+      final OProfilerCounter previous = counters.putIfAbsent(iName, counter);
+      if (previous != null)
+        counter = previous;
+    }
+    return counter;
+  }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.common.profiler;
+
+/**
+ * Records the values of a chrono or a statistic. Besides entries, total, min, max and last value it keeps a log-linear histogram
+ * of the values with 8 buckets for every power of 2 (max error 12.5%) to compute the percentiles. Concurrent threads update
+ * different stripes, merged only when the values are read.
+ * 
+ * @author Luca Garulli
+ */
+public class OProfilerHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+  // VALUES OVER 2^48 FALL IN THE LAST BUCKET: 3 DAYS WHEN MEASURING NANOSECONDS
+  private static final int MAX_EXPONENT    = 47;
+  private static final int BUCKETS         = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  private static final int MAX_STRIPES     = 8;
+
+  private final Stripe[]   stripes;
+  private final int        mask;
+
+  private static class Stripe {
+    private long   entries = 0;
+    private long   last    = 0;
+    private long   min     = Long.MAX_VALUE;
+    private long   max     = Long.MIN_VALUE;
+    private long   total   = 0;
+    private long[] buckets;
+
+    private synchronized void record(final long iValue) {
+      if (buckets == null)
+        buckets = new long[BUCKETS];
+
+      entries++;
+      last = iValue;
+      total += iValue;
+      if (iValue < min)
+        min = iValue;
+      if (iValue > max)
+        max = iValue;
+      buckets[bucketOf(iValue)]++;
+    }
+
+    private synchronized void mergeInto(final Stripe iTarget) {
+      if (entries == 0)
+        return;
+
+      if (iTarget.buckets == null)
+        iTarget.buckets = new long[BUCKETS];
+
+      iTarget.entries += entries;
+      iTarget.last = last;
+      iTarget.total += total;
+      iTarget.min = Math.min(iTarget.min, min);
+      iTarget.max = Math.max(iTarget.max, max);
+      for (int i = 0; i < BUCKETS; ++i)
+        iTarget.buckets[i] += buckets[i];
+    }
+  }
+
+  public OProfilerHistogram() {
+    this(Math.min(OProfilerCounter.STRIPES, MAX_STRIPES));
+  }
+
+  /**
+   * @param iStripes
+   *          Number of stripes, must be a power of 2. Use 1 for histograms that are not updated concurrently.
+   */
+  public OProfilerHistogram(final int iStripes) {
+    stripes = new Stripe[iStripes];
+    for (int i = 0; i < iStripes; ++i)
+      stripes[i] = new Stripe();
+    mask = iStripes - 1;
+  }
+
+  public void record(final long iValue) {
+    stripes[OProfilerCounter.threadIndex() & mask].record(iValue);
+  }
+
+  /**
+   * Adds all the values recorded by another histogram.
+   */
+  public void mergeWith(final OProfilerHistogram iOther) {
+    final Stripe merged = iOther.merge();
+    synchronized (stripes[0]) {
+      merged.mergeInto(stripes[0]);
+    }
+  }
+
+  /**
+   * Returns a copy with a single stripe, used to archive the histograms no more updated.
+   */
+  public OProfilerHistogram compact() {
+    final OProfilerHistogram copy = new OProfilerHistogram(1);
+    copy.mergeWith(this);
+    return copy;
+  }
+
+  /**
+   * Fills the passed entry with the current values.
+   */
+  public void fill(final OProfilerData.OProfilerEntry iEntry) {
+    final Stripe s = merge();
+    iEntry.entries = s.entries;
+    iEntry.last = s.last;
+    iEntry.total = s.total;
+    if (s.entries > 0) {
+      iEntry.min = s.min;
+      iEntry.max = s.max;
+      iEntry.average = s.total / s.entries;
+      iEntry.p50 = percentile(s, 0.5);
+      iEntry.p99 = percentile(s, 0.99);
+      iEntry.p999 = percentile(s, 0.999);
+    }
+  }
+
+  private Stripe merge() {
+    final Stripe merged = new Stripe();
+    for (Stripe s : stripes)
+      s.mergeInto(merged);
+    return merged;
+  }
+
+  private static long percentile(final Stripe iStripe, final double iPercentile) {
+    final long target = Math.max(1, (long) Math.ceil(iStripe.entries * iPercentile));
+
+    long count = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      count += iStripe.buckets[i];
+      if (count >= target)
+        return Math.max(iStripe.min, Math.min(iStripe.max, upperBoundOf(i)));
+    }
+    return iStripe.max;
+  }
+
+  static int bucketOf(final long iValue) {
+    if (iValue < SUB_BUCKETS)
+      return iValue < 0 ? 0 : (int) iValue;
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(iValue);
+    if (exponent > MAX_EXPONENT)
+      return BUCKETS - 1;
+
+    final int subBucket = (int) (iValue >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundOf(final int iBucket) {
+    if (iBucket < SUB_BUCKETS)
+      return iBucket;
+
+    final int exponent = iBucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long lowerBound = ((long) (SUB_BUCKETS + iBucket % SUB_BUCKETS)) << (exponent - SUB_BUCKET_BITS);
+    return lowerBound + (1l << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.common.profiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.common.profiler.OProfilerData.OProfilerEntry;
+
+public class OProfilerDataTest {
+  @Test
+  public void testCountersFromManyThreads() throws Exception {
+    final OProfilerData data = new OProfilerData();
+
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; ++i)
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int k = 0; k < 10000; ++k)
+            data.updateCounter("test.counter", 1);
+        }
+      });
+
+    for (Thread t : threads)
+      t.start();
+    for (Thread t : threads)
+      t.join();
+
+    Assert.assertEquals(data.getCounter("test.counter"), 80000);
+    Assert.assertEquals(data.getCounter("test.missing"), -1);
+  }
+
+  @Test
+  public void testStatPercentiles() throws Exception {
+    final OProfilerData data = new OProfilerData();
+    for (int i = 1; i <= 1000; ++i)
+      data.updateStat("test.stat", i);
+
+    final OProfilerEntry entry = data.getStat("test.stat");
+    Assert.assertEquals(entry.entries, 1000);
+    Assert.assertEquals(entry.min, 1);
+    Assert.assertEquals(entry.max, 1000);
+    Assert.assertEquals(entry.last, 1000);
+    Assert.assertEquals(entry.total, 500500);
+    Assert.assertEquals(entry.average, 500);
+
+    // 8 BUCKETS FOR EVERY POWER OF 2: ERROR UP TO 12.5%
+    assertAbout(entry.p50, 500);
+    assertAbout(entry.p99, 990);
+    assertAbout(entry.p999, 999);
+    Assert.assertTrue(entry.p50 <= entry.p99 && entry.p99 <= entry.p999 && entry.p999 <= entry.max);
+  }
+
+  @Test
+  public void testChronosInMilliseconds() throws Exception {
+    final OProfilerData data = new OProfilerData();
+    // STARTED 5 MS AGO
+    final long elapsed = data.stopChrono("test.chrono", System.nanoTime() - 5000000);
+    Assert.assertTrue(elapsed >= 5 && elapsed < 1000, "Elapsed " + elapsed);
+
+    final OProfilerEntry entry = data.getChrono("test.chrono");
+    Assert.assertEquals(entry.entries, 1);
+    Assert.assertEquals(entry.last, elapsed);
+    Assert.assertEquals(entry.total, elapsed);
+    Assert.assertTrue(entry.p50 <= elapsed && entry.max == elapsed, entry.toString());
+
+    final StringBuilder json = new StringBuilder();
+    data.toJSON(json);
+    Assert.assertTrue(json.indexOf("\"last\":" + elapsed + ",") > -1, json.toString());
+    Assert.assertTrue(data.dumpChronos().startsWith("Dumping CHRONOS. Times in ms:"));
+  }
+
+  @Test
+  public void testHistogramBuckets() throws Exception {
+    for (long v = 0; v < 100000; v += 7) {
+      final int bucket = OProfilerHistogram.bucketOf(v);
+      Assert.assertTrue(OProfilerHistogram.upperBoundOf(bucket) >= v);
+      Assert.assertTrue(bucket == 0 || OProfilerHistogram.upperBoundOf(bucket - 1) < v);
+    }
+  }
+
+  @Test
+  public void testMergeAndArchive() throws Exception {
+    final OProfilerData first = new OProfilerData();
+    first.updateCounter("test.counter", 3);
+    first.updateStat("test.stat", 10);
+    first.endRecording();
+
+    final OProfilerData second = new OProfilerData();
+    second.updateCounter("test.counter", 4);
+    second.updateStat("test.stat", 30);
+    second.endRecording();
+
+    final OProfilerData summary = new OProfilerData();
+    summary.mergeWith(first);
+    summary.mergeWith(second);
+
+    Assert.assertEquals(summary.getCounter("test.counter"), 7);
+    final OProfilerEntry entry = summary.getStat("test.stat");
+    Assert.assertEquals(entry.entries, 2);
+    Assert.assertEquals(entry.min, 10);
+    Assert.assertEquals(entry.max, 30);
+    Assert.assertEquals(entry.average, 20);
+
+    final StringBuilder json = new StringBuilder();
+    summary.toJSON(json);
+    Assert.assertTrue(json.indexOf("\"test.counter\":7") > -1);
+    Assert.assertTrue(json.indexOf("\"p99\":30") > -1);
+  }
+
+  private void assertAbout(final long iValue, final long iExpected) {
+    Assert.assertTrue(Math.abs(iValue - iExpected) <= iExpected / 8, "Expected about " + iExpected + " but was " + iValue);
+  }
+}
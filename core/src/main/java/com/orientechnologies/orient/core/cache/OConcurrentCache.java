@@ -0,0 +1,249 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.memory.OMemoryWatchDog;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+
+/**
+ * Implementation of generic {@link OCache} interface designed for highly concurrent accesses. Records are kept in a
+ * {@link ConcurrentHashMap}, so reads never take an exclusive lock. The LRU order is approximated with the CLOCK algorithm: a hit
+ * just marks the entry as referenced, while the eviction sweeps the entries giving a second chance to the referenced ones.
+ * {@link #lock(ORID)} locks only the stripe the record id belongs to. To use it set "cache.level2.impl" to the name of this class.
+ * 
+ * @author Luca Garulli
+ */
+public class OConcurrentCache implements OCache {
+  private static final int                              DEFAULT_LIMIT = 1000;
+
+  private final ConcurrentHashMap<ORID, OCacheEntry>    cache;
+  private final int                                     limit;
+  private final AtomicBoolean                           enabled       = new AtomicBoolean(false);
+
+  private final Lock[]                                  stripes;
+  private final int                                     stripeMask;
+
+  private final Lock                                    evictionLock  = new ReentrantLock();
+  private Iterator<OCacheEntry>                         clockHand;
+
+  protected OMemoryWatchDog.Listener                    lowMemoryListener;
+
+  static final class OCacheEntry {
+    final ORecordInternal<?> record;
+    volatile boolean         referenced = true;
+
+    OCacheEntry(final ORecordInternal<?> iRecord) {
+      record = iRecord;
+    }
+  }
+
+  public OConcurrentCache(final String iName, final int initialLimit) {
+    final int initialCapacity = initialLimit > 0 ? initialLimit : DEFAULT_LIMIT;
+    limit = initialLimit;
+
+    final int concurrency = OGlobalConfiguration.ENVIRONMENT_CONCURRENT.getValueAsBoolean() ? Runtime.getRuntime()
+        .availableProcessors() * 4 : 1;
+    cache = new ConcurrentHashMap<ORID, OCacheEntry>(initialCapacity, 0.75f, concurrency);
+
+    int stripeCount = 1;
+    while (stripeCount < concurrency)
+      stripeCount <<= 1;
+    stripes = new Lock[stripeCount];
+    for (int i = 0; i < stripeCount; ++i)
+      stripes[i] = new ReentrantLock();
+    stripeMask = stripeCount - 1;
+  }
+
+  public void startup() {
+    lowMemoryListener = Orient.instance().getMemoryWatchDog().addListener(new OLowMemoryListener());
+    enable();
+  }
+
+  public void shutdown() {
+    Orient.instance().getMemoryWatchDog().removeListener(lowMemoryListener);
+    disable();
+  }
+
+  public boolean isEnabled() {
+    return enabled.get();
+  }
+
+  public boolean enable() {
+    return enabled.compareAndSet(false, true);
+  }
+
+  public boolean disable() {
+    clear();
+    return enabled.compareAndSet(true, false);
+  }
+
+  public ORecordInternal<?> get(final ORID id) {
+    if (!isEnabled())
+      return null;
+
+    final OCacheEntry entry = cache.get(id);
+    if (entry == null)
+      return null;
+
+    entry.referenced = true;
+    return entry.record;
+  }
+
+  public ORecordInternal<?> put(final ORecordInternal<?> record) {
+    if (!isEnabled())
+      return null;
+
+    final OCacheEntry previous = cache.put(record.getIdentity(), new OCacheEntry(record));
+
+    if (previous == null && limit > 0 && cache.size() > limit)
+      evictToLimit();
+
+    return previous != null ? previous.record : null;
+  }
+
+  public ORecordInternal<?> remove(final ORID id) {
+    if (!isEnabled())
+      return null;
+
+    final OCacheEntry entry = cache.remove(id);
+    return entry != null ? entry.record : null;
+  }
+
+  public void clear() {
+    if (!isEnabled())
+      return;
+
+    cache.clear();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  public Collection<ORID> keys() {
+    return new ArrayList<ORID>(cache.keySet());
+  }
+
+  public void lock(final ORID id) {
+    stripes[stripeIndex(id)].lock();
+  }
+
+  public void unlock(final ORID id) {
+    stripes[stripeIndex(id)].unlock();
+  }
+
+  /**
+   * Evicts the entries over the limit. Called by the writer that crossed the limit: it waits for the eviction in progress, if any,
+   * then evicts what is still over the limit, so concurrent writers can not make the cache grow past it.
+   */
+  private void evictToLimit() {
+    evictionLock.lock();
+    try {
+      evict(cache.size() - limit);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Removes up to the amount of entries requested following the CLOCK algorithm. Dirty and pinned records are never evicted. Only
+   * one thread at a time moves the clock hand: the other ones return immediately since the eviction is already in progress, unless
+   * they already own the eviction lock.
+   * 
+   * @return The number of entries removed
+   */
+  protected int evict(final int iAmount) {
+    if (iAmount <= 0 || !evictionLock.tryLock())
+      return 0;
+
+    try {
+      int removed = 0;
+      // TWO ROUNDS AT MAXIMUM: THE FIRST ONE COULD JUST RESET THE REFERENCED FLAGS
+      int toVisit = cache.size() * 2;
+
+      while (removed < iAmount && toVisit-- > 0) {
+        if (clockHand == null || !clockHand.hasNext()) {
+          clockHand = cache.values().iterator();
+          if (!clockHand.hasNext())
+            break;
+        }
+
+        final OCacheEntry entry = clockHand.next();
+        if (entry.referenced) {
+          // SECOND CHANCE
+          entry.referenced = false;
+          continue;
+        }
+
+        if (entry.record.isDirty() || entry.record.isPinned() == Boolean.TRUE)
+          continue;
+
+        if (cache.remove(entry.record.getIdentity(), entry))
+          removed++;
+      }
+      return removed;
+
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private int stripeIndex(final ORID id) {
+    int h = id.hashCode();
+    // SPREAD THE BITS, RIDS OF THE SAME CLUSTER DIFFER ONLY IN THE LOWER ONES
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return h & stripeMask;
+  }
+
+  class OLowMemoryListener implements OMemoryWatchDog.Listener {
+    public void memoryUsageLow(final long freeMemory, final long freeMemoryPercentage) {
+      try {
+        final int oldSize = size();
+        if (oldSize == 0)
+          return;
+
+        if (freeMemoryPercentage < 10) {
+          OLogManager.instance().debug(this, "Low memory (%d%%): clearing %d cached records", freeMemoryPercentage, size());
+          evict(oldSize);
+        } else {
+          final int newSize = (int) (oldSize * 0.9f);
+          evict(oldSize - newSize);
+          OLogManager.instance().debug(this, "Low memory (%d%%): reducing cached records number from %d to %d",
+              freeMemoryPercentage, oldSize, newSize);
+        }
+      } catch (Exception e) {
+        OLogManager.instance().error(this, "Error occurred during concurrent cache cleanup", e);
+      }
+    }
+  }
+}
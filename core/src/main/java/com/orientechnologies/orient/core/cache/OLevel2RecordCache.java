@@ -101,17 +101,20 @@ public class OLevel2RecordCache extends OAbstractRecordCache {
     if (!isEnabled() || iRID.getClusterId() == excludedCluster)
       return null;
 
+    // THE OFF-HEAP CACHE RE-CREATES THE RECORD AT EVERY HIT: READ IT IN PLACE INSTEAD OF POPPING IT OR PUTTING BACK A COPY
+    final boolean inPlace = underlying instanceof OOffHeapCache;
+
     ORecordInternal<?> record;
     underlying.lock(iRID);
     try {
-      record = underlying.remove(iRID);
+      record = inPlace ? underlying.get(iRID) : underlying.remove(iRID);
 
       if (record == null || record.isDirty()) {
         Orient.instance().getProfiler().updateCounter(CACHE_MISS, 1);
         return null;
       }
 
-      if (strategy == STRATEGY.COPY_RECORD) {
+      if (strategy == STRATEGY.COPY_RECORD && !inPlace) {
         final ORecordInternal<?> resident = OGlobalConfiguration.ENVIRONMENT_CONCURRENT.getValueAsBoolean() ? (ORecordInternal<?>) record
             .flatCopy() : record;
         // PUT BACK A COPY OR ThE ORIGINAL IF NOT MULTI-THREADS (THIS UPDATE ALSO THE LRU)
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.orientechnologies.common.concur.resource.OSharedResourceAdaptiveExternal;
+import com.orientechnologies.common.directmemory.OBuddyMemory;
+import com.orientechnologies.common.directmemory.ODirectMemory;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+
+/**
+ * Implementation of {@link OCache} that keeps the records outside of the Java heap. Only the serialized content, the version and
+ * the record type are stored in {@link OBuddyMemory} pools of up to 1GB each, for
+ * {@link OGlobalConfiguration#CACHE_LEVEL2_OFFHEAP_SIZE} bytes in total, so big caches don't weigh on the garbage collector and
+ * don't need to be cleared when the heap is running low. Records are re-created at every hit, reading the cached content in place
+ * under a shared lock: documents unmarshall their fields only when accessed.<br/>
+ * When the memory is full the least recently used records are evicted. Use it by setting
+ * <code>cache.level2.impl=com.orientechnologies.orient.core.cache.OOffHeapCache</code>.
+ * 
+ * @author Luca Garulli
+ */
+public class OOffHeapCache implements OCache {
+  private static final int                      MIN_CHUNK_SIZE = 64;
+  private static final int                      MAX_POOL_SIZE  = 1 << 30;
+
+  private static final int                      TYPE_OFFSET    = 0;
+  private static final int                      VERSION_OFFSET = 1;
+  private static final int                      LENGTH_OFFSET  = 5;
+  private static final int                      CONTENT_OFFSET = 9;
+
+  private final OSharedResourceAdaptiveExternal lock           = new OSharedResourceAdaptiveExternal(
+                                                                   OGlobalConfiguration.ENVIRONMENT_CONCURRENT
+                                                                       .getValueAsBoolean(), 0, true);
+  private final AtomicBoolean                   enabled        = new AtomicBoolean(false);
+
+  private final ODirectMemory[]                 pools;
+  private final LinkedHashMap<ORID, Long>       pointers;
+  private final Lock[]                          stripes;
+  private final int                             limit;
+  private final String                          profilerPrefix;
+  private long                                  memoryUsed;
+  private int                                   nextPool;
+
+  public OOffHeapCache(final String iName, final int initialLimit) {
+    this(iName, initialLimit, OGlobalConfiguration.CACHE_LEVEL2_OFFHEAP_SIZE.getValueAsLong());
+  }
+
+  public OOffHeapCache(final String iName, final int initialLimit, final long iMemorySize) {
+    this(iName, initialLimit, iMemorySize, MAX_POOL_SIZE);
+  }
+
+  /**
+   * Creates the cache splitting the memory in pools of the size passed at maximum: a single direct buffer can not be bigger than
+   * 2GB.
+   */
+  OOffHeapCache(final String iName, final int initialLimit, final long iMemorySize, final int iPoolSize) {
+    limit = initialLimit;
+
+    pools = new ODirectMemory[(int) Math.max(1, (iMemorySize + iPoolSize - 1) / iPoolSize)];
+    long memoryLeft = iMemorySize;
+    for (int i = 0; i < pools.length; ++i) {
+      pools[i] = new OBuddyMemory((int) Math.min(memoryLeft, iPoolSize), MIN_CHUNK_SIZE);
+      memoryLeft -= iPoolSize;
+    }
+
+    pointers = new LinkedHashMap<ORID, Long>(initialLimit > 0 ? initialLimit : 1000, 0.75f, true);
+
+    final int concurrency = OGlobalConfiguration.ENVIRONMENT_CONCURRENT.getValueAsBoolean() ? Runtime.getRuntime()
+        .availableProcessors() * 4 : 1;
+    stripes = new Lock[concurrency];
+    for (int i = 0; i < concurrency; ++i)
+      stripes[i] = new ReentrantLock();
+
+    profilerPrefix = "db." + iName + ".cache.level2.offHeap.";
+  }
+
+  public void startup() {
+    Orient.instance().getProfiler().registerHookValue(profilerPrefix + "memoryUsed", new OProfilerHookValue() {
+      public Object getValue() {
+        return getMemoryUsed();
+      }
+    });
+    Orient.instance().getProfiler().registerHookValue(profilerPrefix + "memoryMax", new OProfilerHookValue() {
+      public Object getValue() {
+        return getMemoryMax();
+      }
+    });
+    enable();
+  }
+
+  public void shutdown() {
+    Orient.instance().getProfiler().unregisterHookValue(profilerPrefix + "memoryUsed");
+    Orient.instance().getProfiler().unregisterHookValue(profilerPrefix + "memoryMax");
+    disable();
+  }
+
+  public boolean isEnabled() {
+    return enabled.get();
+  }
+
+  public boolean enable() {
+    return enabled.compareAndSet(false, true);
+  }
+
+  public boolean disable() {
+    clear();
+    return enabled.compareAndSet(true, false);
+  }
+
+  /**
+   * Re-creates the record reading its content in place. Concurrent hits share the lock: they only serialize to move the record
+   * to the most recently used position.
+   */
+  public ORecordInternal<?> get(final ORID id) {
+    if (!isEnabled())
+      return null;
+
+    lock.acquireSharedLock();
+    try {
+      final Long pointer;
+      synchronized (pointers) {
+        // UPDATES THE LRU ORDER
+        pointer = pointers.get(id);
+      }
+      return pointer != null ? unmarshall(id, pointer) : null;
+    } finally {
+      lock.releaseSharedLock();
+    }
+  }
+
+  public ORecordInternal<?> put(final ORecordInternal<?> record) {
+    if (!isEnabled())
+      return null;
+
+    final byte[] content;
+    try {
+      content = record.toStream();
+    } catch (Exception e) {
+      OLogManager.instance().debug(this, "Cannot serialize record %s: it will not be cached", e, record.getIdentity());
+      remove(record.getIdentity());
+      return null;
+    }
+
+    lock.acquireExclusiveLock();
+    try {
+      final ORecordInternal<?> previous = removeEntry(record.getIdentity());
+
+      final int size = CONTENT_OFFSET + (content != null ? content.length : 0);
+      long pointer = allocate(size);
+      while (pointer == ODirectMemory.NULL_POINTER && !pointers.isEmpty()) {
+        // NO SPACE LEFT: MAKE ROOM BY EVICTING THE LEAST RECENTLY USED RECORDS
+        evictEldest();
+        pointer = allocate(size);
+      }
+
+      if (pointer == ODirectMemory.NULL_POINTER)
+        // BIGGER THAN AN ENTIRE POOL
+        return previous;
+
+      final ODirectMemory memory = pool(pointer);
+      final int offset = offset(pointer);
+      memory.setByte(offset, TYPE_OFFSET, record.getRecordType());
+      memory.setInt(offset, VERSION_OFFSET, record.getVersion());
+      if (content != null) {
+        memory.setInt(offset, LENGTH_OFFSET, content.length);
+        memory.set(offset, CONTENT_OFFSET, content.length, content);
+      } else
+        memory.setInt(offset, LENGTH_OFFSET, -1);
+
+      pointers.put(record.getIdentity().copy(), pointer);
+      memoryUsed += memory.getActualSpace(offset);
+
+      if (limit > 0 && pointers.size() > limit)
+        evictEldest();
+
+      return previous;
+    } finally {
+      lock.releaseExclusiveLock();
+    }
+  }
+
+  public ORecordInternal<?> remove(final ORID id) {
+    if (!isEnabled())
+      return null;
+
+    lock.acquireExclusiveLock();
+    try {
+      return removeEntry(id);
+    } finally {
+      lock.releaseExclusiveLock();
+    }
+  }
+
+  public void clear() {
+    if (!isEnabled())
+      return;
+
+    lock.acquireExclusiveLock();
+    try {
+      for (Long pointer : pointers.values())
+        pool(pointer).free(offset(pointer));
+      pointers.clear();
+      memoryUsed = 0;
+    } finally {
+      lock.releaseExclusiveLock();
+    }
+  }
+
+  public int size() {
+    lock.acquireSharedLock();
+    try {
+      return pointers.size();
+    } finally {
+      lock.releaseSharedLock();
+    }
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  public Collection<ORID> keys() {
+    lock.acquireSharedLock();
+    try {
+      synchronized (pointers) {
+        return new ArrayList<ORID>(pointers.keySet());
+      }
+    } finally {
+      lock.releaseSharedLock();
+    }
+  }
+
+  /**
+   * Locks only the stripe the record id belongs to: the content of the cache is protected by its own lock.
+   */
+  public void lock(final ORID id) {
+    stripes[stripeIndex(id)].lock();
+  }
+
+  public void unlock(final ORID id) {
+    stripes[stripeIndex(id)].unlock();
+  }
+
+  /**
+   * Returns the bytes of off-heap memory currently taken by the cached records.
+   */
+  public long getMemoryUsed() {
+    lock.acquireSharedLock();
+    try {
+      return memoryUsed;
+    } finally {
+      lock.releaseSharedLock();
+    }
+  }
+
+  /**
+   * Returns the bytes of off-heap memory available to the cached records, summing all the pools.
+   */
+  public long getMemoryMax() {
+    long capacity = 0;
+    for (ODirectMemory memory : pools)
+      capacity += memory.capacity();
+    return capacity;
+  }
+
+  /**
+   * Allocates the space in the first pool with enough room, starting from the pool after the last one used.
+   * 
+   * @return The pool index in the high 32 bits and the pointer inside the pool in the low ones, or
+   *         {@link ODirectMemory#NULL_POINTER} if no pool has enough room
+   */
+  private long allocate(final int size) {
+    for (int i = 0; i < pools.length; ++i) {
+      final int poolIndex = (nextPool + i) % pools.length;
+      final int pointer = pools[poolIndex].allocate(size);
+      if (pointer != ODirectMemory.NULL_POINTER) {
+        nextPool = (poolIndex + 1) % pools.length;
+        return ((long) poolIndex << 32) | (pointer & 0xFFFFFFFFL);
+      }
+    }
+    return ODirectMemory.NULL_POINTER;
+  }
+
+  private ODirectMemory pool(final long pointer) {
+    return pools[(int) (pointer >>> 32)];
+  }
+
+  private static int offset(final long pointer) {
+    return (int) pointer;
+  }
+
+  private ORecordInternal<?> removeEntry(final ORID id) {
+    final Long pointer = pointers.remove(id);
+    if (pointer == null)
+      return null;
+
+    final ORecordInternal<?> record = unmarshall(id, pointer);
+    release(pointer);
+    return record;
+  }
+
+  private void evictEldest() {
+    final Iterator<Long> it = pointers.values().iterator();
+    release(it.next());
+    it.remove();
+
+    Orient.instance().getProfiler().updateCounter(profilerPrefix + "evictions", 1);
+  }
+
+  private void release(final long pointer) {
+    memoryUsed -= pool(pointer).getActualSpace(offset(pointer));
+    pool(pointer).free(offset(pointer));
+  }
+
+  private ORecordInternal<?> unmarshall(final ORID id, final long pointer) {
+    final ODirectMemory memory = pool(pointer);
+    final int offset = offset(pointer);
+
+    final int length = memory.getInt(offset, LENGTH_OFFSET);
+    final byte[] content;
+    if (length > 0)
+      content = memory.get(offset, CONTENT_OFFSET, length);
+    else
+      content = length == 0 ? new byte[0] : null;
+
+    final ORecordInternal<?> record = Orient.instance().getRecordFactoryManager()
+        .newInstance(memory.getByte(offset, TYPE_OFFSET));
+    record.fill((ORecordId) id, memory.getInt(offset, VERSION_OFFSET), content, false);
+    return record;
+  }
+
+  private int stripeIndex(final ORID id) {
+    return (id.hashCode() & Integer.MAX_VALUE) % stripes.length;
+  }
+}
@@ -59,6 +59,15 @@ public enum OGlobalConfiguration {
   STORAGE_RECORD_LOCK_TIMEOUT("storage.record.lockTimeout", "Maximum timeout in milliseconds to lock a shared record",
       Integer.class, 5000),
 
+  STORAGE_FINE_GRAINED_LOCKING(
+      "storage.fineGrainedLocking",
+      "Record operations against local storages lock only the involved cluster and data segment instead of the entire storage. Structural changes keep locking the entire storage",
+      Boolean.class, Boolean.FALSE),
+
+  STORAGE_COMPRESSION_MIN_SIZE("storage.compressionMinSize",
+      "Min size in bytes of the records compressed by the new data segments of local storages. Set it to -1 to disable it",
+      Integer.class, -1),
+
   // CACHE
   CACHE_LEVEL1_ENABLED("cache.level1.enabled", "Use the level-1 cache", Boolean.class, true),
 
@@ -71,6 +80,10 @@ public enum OGlobalConfiguration {
   CACHE_LEVEL2_IMPL("cache.level2.impl", "Actual implementation of secondary cache", String.class, ODefaultCache.class
       .getCanonicalName()),
 
+  CACHE_LEVEL2_OFFHEAP_SIZE("cache.level2.offHeap.size",
+      "Maximum amount of memory in bytes allocated outside the Java heap by the off-heap level-2 cache (OOffHeapCache)",
+      Long.class, 64L * 1024 * 1024),
+
   CACHE_LEVEL2_STRATEGY("cache.level2.strategy",
       "Strategy to use when a database requests a record: 0 = pop the record, 1 = copy the record", Integer.class, 0,
       new OConfigurationChangeCallback() {
@@ -94,6 +107,23 @@ public enum OGlobalConfiguration {
 
   DB_VALIDATION("db.validation", "Enables or disables validation of records", Boolean.class, true),
 
+  // QUERY
+  QUERY_SORT_BUFFER("query.sortBuffer",
+      "Maximum number of records kept in memory to sort the result of a query with ORDER BY and no LIMIT. "
+          + "Beyond it the records are sorted in temporary files, merged at the end", Integer.class, 100000),
+
+  QUERY_GROUP_BY_BUFFER("query.groupByBuffer",
+      "Maximum number of groups kept in memory to aggregate the result of a query with GROUP BY. "
+          + "Beyond it the records of the new groups are partitioned in temporary files, aggregated at the end", Integer.class,
+      100000),
+
+  QUERY_PARALLEL("query.parallel",
+      "Scans the clusters with more threads for the queries that cannot use indexes. A single query can ask for it with PARALLEL",
+      Boolean.class, false),
+
+  QUERY_PARALLEL_THREADS("query.parallel.threads", "Number of threads that scan the clusters of a parallel query. 0 means one per CPU",
+      Integer.class, 0),
+
   // SETTINGS OF NON-TRANSACTIONAL MODE
   NON_TX_RECORD_UPDATE_SYNCH("nonTX.recordUpdate.synch",
       "Executes a synch against the file-system at every record operation. This slows down records updates "
@@ -116,6 +146,11 @@ public enum OGlobalConfiguration {
 
   TX_COMMIT_SYNCH("tx.commit.synch", "Synchronizes the storage after transaction commit", Boolean.class, false),
 
+  TX_GROUP_COMMIT(
+      "tx.groupCommit",
+      "Groups concurrent commits against local storages: the synch of the storage and of the transaction log is executed once for all the transactions committed in the meanwhile",
+      Boolean.class, Boolean.FALSE),
+
   // GRAPH
   @Deprecated
   BLUEPRINTS_TX_MODE("blueprints.graph.txMode",
@@ -134,6 +169,20 @@ public enum OGlobalConfiguration {
       "Configure the TreeMaps for manual indexes as buffered or not. -1 means buffered until tx.commit() or db.close() are called",
       Integer.class, 1),
 
+  INDEX_HASH_BUCKET_LOAD("index.hash.bucketLoad",
+      "Average number of keys per bucket of hash indexes: when exceeded the hash grows by one bucket", Integer.class, 64),
+
+  INDEX_REBUILD_PARALLEL("index.rebuild.parallel",
+      "Rebuilds the indexes scanning the clusters with parallel threads and putting the keys in the index sorted", Boolean.class,
+      Boolean.FALSE),
+
+  INDEX_REBUILD_THREADS("index.rebuild.threads",
+      "Number of threads that scan the clusters on parallel index rebuilds. 0 means one thread per processor", Integer.class, 0),
+
+  INDEX_REBUILD_SORT_BUFFER("index.rebuild.sortBuffer",
+      "Number of keys sorted in memory on parallel index rebuilds. Beyond this the sorted keys are spilled to temporary files",
+      Integer.class, 500000),
+
   MVRBTREE_NODE_PAGE_SIZE("mvrbtree.nodePageSize",
       "Page size of each node. 256 means that 256 entries can be stored inside each node", Integer.class, 256),
 
@@ -173,7 +222,7 @@ public enum OGlobalConfiguration {
   // FILE
   FILE_LOCK("file.lock", "Locks files when used. Default is false", boolean.class, false),
 
-  FILE_DEFRAG_STRATEGY("file.defrag.strategy", "Strategy to recycle free space: 0 = synchronous defrag, 1 = asynchronous defrag, ",
+  FILE_DEFRAG_STRATEGY("file.defrag.strategy", "Strategy to recycle free space: 0 = synchronous defrag, 1 = background defrag",
       Integer.class, 0),
 
   FILE_DEFRAG_HOLE_MAX_DISTANCE(
@@ -181,6 +230,17 @@ public enum OGlobalConfiguration {
       "Max distance in bytes between holes to cause their defrag. Set it to -1 to use dynamic size. Beware that if the db is huge moving blocks to defrag could be expensive",
       Integer.class, 32768),
 
+  FILE_DEFRAG_INTERVAL("file.defrag.interval",
+      "Pause in ms between two steps of the background defrag of the data segments, used with file.defrag.strategy = 1",
+      Integer.class, 1000),
+
+  FILE_DEFRAG_STEP_TIME("file.defrag.stepTime",
+      "Max time in ms a step of the background defrag holds the lock of the data segment", Integer.class, 10),
+
+  FILE_DEFRAG_IO_BUDGET("file.defrag.ioBudget",
+      "Max bytes per second the background defrag moves in the data segment to compact it. Set it to -1 to not limit it",
+      Integer.class, 4194304),
+
   FILE_MMAP_USE_OLD_MANAGER("file.mmap.useOldManager",
       "Manager that will be used to handle mmap files. true = USE OLD MANAGER, false = USE NEW MANAGER", boolean.class, false),
 
@@ -227,6 +287,17 @@ public enum OGlobalConfiguration {
   FILE_MMAP_FORCE_RETRY("file.mmap.forceRetry", "Number of times the memory-mapped block will try to flush to disk", Integer.class,
       50),
 
+  FILE_CACHE_SIZE(
+      "file.cache.size",
+      "Max memory of the page cache shared by the files accessed through their channel, like the classic files and the mmap files with file.mmap.strategy = 4. 0 = disabled (default). Written pages reach the disk on synch, on close or when evicted",
+      Long.class, 0),
+
+  FILE_CACHE_PAGE_SIZE("file.cache.pageSize", "Size in bytes of the pages of the file page cache", Integer.class, 65536),
+
+  FILE_SCAN_READ_AHEAD("file.scan.readAhead",
+      "Bytes read ahead in background from the files scanned by the threads that declared the massive read intent. 0 = disabled",
+      Integer.class, 1048576),
+
   JNA_DISABLE_USE_SYSTEM_LIBRARY("jna.disable.system.library",
       "This property disable to using JNA installed in your system. And use JNA bundled with database.", boolean.class, true),
 
@@ -259,6 +330,19 @@ public enum OGlobalConfiguration {
 
   NETWORK_BINARY_DEBUG("network.binary.debug", "Debug mode: print all data incoming on the binary channel", Boolean.class, false),
 
+  NETWORK_BINARY_NIO("network.binary.nio",
+      "Serve the binary connections with NIO selectors and a pool of workers instead of a thread per connection", Boolean.class,
+      false),
+
+  NETWORK_BINARY_NIO_SELECTORS("network.binary.nio.selectors",
+      "Number of selector threads that watch the idle binary connections in NIO mode", Integer.class, 1),
+
+  NETWORK_BINARY_NIO_WORKERS("network.binary.nio.workers",
+      "Maximum number of threads executing the requests of the binary connections in NIO mode", Integer.class, 64),
+
+  NETWORK_BINARY_CURSOR_TIMEOUT("network.binary.cursorTimeout",
+      "Time in ms after which a query cursor not used by the client is closed on the server", Integer.class, 300000),
+
   NETWORK_HTTP_MAX_CONTENT_LENGTH("network.http.maxLength", "TCP/IP max content length in bytes for HTTP requests", Integer.class,
       1000000),
 
@@ -314,6 +398,12 @@ public enum OGlobalConfiguration {
 
   CLIENT_CHANNEL_MAX_POOL("client.channel.maxPool", "Maximum channel pool size", Integer.class, 5),
 
+  CLIENT_CHANNEL_MAX_INFLIGHT("client.channel.maxInflight",
+      "Requests waiting for their response on the same channel before a new channel is added to the pool. Used with servers that support request ids",
+      Integer.class, 64),
+
+  CLIENT_CURSOR_PAGE_SIZE("client.cursor.pageSize", "Records fetched per request by the query cursors", Integer.class, 100),
+
   CLIENT_CONNECT_POOL_WAIT_TIMEOUT("client.connectionPool.waitTimeout",
       "Maximum time which client should wait connection from the pool", Integer.class, 5000),
 
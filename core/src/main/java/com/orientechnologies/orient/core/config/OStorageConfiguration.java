@@ -43,29 +43,31 @@ import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
  */
 @SuppressWarnings("serial")
 public class OStorageConfiguration implements OSerializableStream {
-  public static final ORecordId             CONFIG_RID      = new ORecordId(0, 0);
+  public static final ORecordId             CONFIG_RID            = new ORecordId(0, 0);
 
-  public static final int                   CURRENT_VERSION = 3;
+  public static final int                   CURRENT_VERSION       = 5;
+  public static final String                DEFAULT_RECORD_FORMAT = "csv";
 
-  public int                                version         = -1;
+  public int                                version               = -1;
   public String                             name;
   public String                             schemaRecordId;
   public String                             dictionaryRecordId;
   public String                             indexMgrRecordId;
 
-  public String                             localeLanguage  = Locale.getDefault().getLanguage();
-  public String                             localeCountry   = Locale.getDefault().getCountry();
-  public String                             dateFormat      = "yyyy-MM-dd";
-  public String                             dateTimeFormat  = "yyyy-MM-dd HH:mm:ss";
+  public String                             localeLanguage        = Locale.getDefault().getLanguage();
+  public String                             localeCountry         = Locale.getDefault().getCountry();
+  public String                             dateFormat            = "yyyy-MM-dd";
+  public String                             dateTimeFormat        = "yyyy-MM-dd HH:mm:ss";
+  public String                             recordFormat          = DEFAULT_RECORD_FORMAT;
 
   public final OStorageSegmentConfiguration fileTemplate;
 
-  public List<OStorageClusterConfiguration> clusters        = new ArrayList<OStorageClusterConfiguration>();
-  public List<OStorageDataConfiguration>    dataSegments    = new ArrayList<OStorageDataConfiguration>();
+  public List<OStorageClusterConfiguration> clusters              = new ArrayList<OStorageClusterConfiguration>();
+  public List<OStorageDataConfiguration>    dataSegments          = new ArrayList<OStorageDataConfiguration>();
 
-  public OStorageTxConfiguration            txSegment       = new OStorageTxConfiguration();
+  public OStorageTxConfiguration            txSegment             = new OStorageTxConfiguration();
 
-  public List<OStorageEntryConfiguration>   properties      = new ArrayList<OStorageEntryConfiguration>();
+  public List<OStorageEntryConfiguration>   properties            = new ArrayList<OStorageEntryConfiguration>();
 
   private transient Locale                  localeInstance;
   private transient DecimalFormatSymbols    unusualSymbols;
@@ -227,6 +229,9 @@ public class OStorageConfiguration implements OSerializableStream {
       data = new OStorageDataConfiguration(this, dataName, dataId);
       index = phySegmentFromStream(values, index, data);
       data.holeFile = new OStorageDataHoleConfiguration(data, read(values[index++]), read(values[index++]), read(values[index++]));
+
+      // @COMPATIBILTY
+      data.compressionMinSize = version > 4 ? Integer.parseInt(read(values[index++])) : -1;
       dataSegments.set(dataId, data);
     }
 
@@ -239,6 +244,12 @@ public class OStorageConfiguration implements OSerializableStream {
       properties.add(new OStorageEntryConfiguration(read(values[index++]), read(values[index++])));
     }
 
+    // @COMPATIBILTY
+    if (version > 3)
+      recordFormat = read(values[index++]);
+    else
+      recordFormat = DEFAULT_RECORD_FORMAT;
+
     return this;
   }
 
@@ -299,6 +310,7 @@ public class OStorageConfiguration implements OSerializableStream {
 
       phySegmentToStream(buffer, d);
       fileToStream(buffer, d.holeFile);
+      write(buffer, d.compressionMinSize);
     }
 
     fileToStream(buffer, txSegment);
@@ -309,6 +321,8 @@ public class OStorageConfiguration implements OSerializableStream {
     for (OStorageEntryConfiguration e : properties)
       entryToStream(buffer, e);
 
+    write(buffer, recordFormat);
+
     // PLAIN: ALLOCATE ENOUGHT SPACE TO REUSE IT EVERY TIME
     buffer.append("|");
 
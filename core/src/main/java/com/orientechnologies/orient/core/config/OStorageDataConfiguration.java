@@ -19,6 +19,7 @@ public class OStorageDataConfiguration extends OStorageSegmentConfiguration {
 	private static final long							serialVersionUID	= 1L;
 
 	public OStorageDataHoleConfiguration	holeFile;
+	public int														compressionMinSize	= OGlobalConfiguration.STORAGE_COMPRESSION_MIN_SIZE.getValueAsInteger();
 
 	private static final String						START_SIZE				= "1Mb";
 	private static final String						INCREMENT_SIZE		= "100%";
@@ -26,7 +26,7 @@ public class OStorageSegmentConfiguration implements Serializable {
 	public String														maxSize						= "0";
 	public String														fileType					= "mmap";
 	public String														fileStartSize			= "500Kb";
-	public String														fileMaxSize				= "500Mb";
+	public String														fileMaxSize				= "16Gb";
 	public String														fileIncrementSize	= "50%";
 	public String														defrag						= "auto";
 
@@ -15,6 +15,7 @@
  */
 package com.orientechnologies.orient.core.db;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -35,6 +36,7 @@ import com.orientechnologies.orient.core.metadata.security.ORole;
 import com.orientechnologies.orient.core.metadata.security.OUser;
 import com.orientechnologies.orient.core.query.OQuery;
 import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.serialization.serializer.record.ORecordSerializer;
 import com.orientechnologies.orient.core.storage.ORecordCallback;
 import com.orientechnologies.orient.core.storage.OStorage;
 import com.orientechnologies.orient.core.storage.OStorage.CLUSTER_TYPE;
@@ -161,6 +163,10 @@ public abstract class ODatabaseRecordWrapperAbstract<DB extends ODatabaseRecord>
     return underlying.getRecordType();
   }
 
+  public ORecordSerializer getRecordSerializer() {
+    return underlying.getRecordSerializer();
+  }
+
   public <REC extends ORecordInternal<?>> ORecordIteratorCluster<REC> browseCluster(final String iClusterName) {
     return underlying.browseCluster(iClusterName);
   }
@@ -197,6 +203,11 @@ public abstract class ODatabaseRecordWrapperAbstract<DB extends ODatabaseRecord>
     return this;
   }
 
+  public ODatabaseComplex<ORecordInternal<?>> delete(final Collection<? extends OIdentifiable> iRecords) {
+    underlying.delete(iRecords);
+    return this;
+  }
+
   public <RET extends ORecordInternal<?>> RET load(final ORID iRecordId) {
     return (RET) underlying.load(iRecordId);
   }
@@ -209,6 +220,10 @@ public abstract class ODatabaseRecordWrapperAbstract<DB extends ODatabaseRecord>
     return (RET) underlying.load(iRecordId, iFetchPlan, iIgnoreCache);
   }
 
+  public List<ORecordInternal<?>> load(final Collection<? extends OIdentifiable> iRecordIds, final String iFetchPlan) {
+    return underlying.load(iRecordIds, iFetchPlan);
+  }
+
   public <RET extends ORecordInternal<?>> RET getRecord(final OIdentifiable iIdentifiable) {
     return (RET) underlying.getRecord(iIdentifiable);
   }
@@ -253,6 +268,11 @@ public abstract class ODatabaseRecordWrapperAbstract<DB extends ODatabaseRecord>
     return (RET) underlying.save(iRecord, iClusterName, iMode, iForceCreate, iCallback);
   }
 
+  public ODatabaseComplex<ORecordInternal<?>> save(final Collection<? extends ORecordInternal<?>> iRecords) {
+    underlying.save(iRecords);
+    return this;
+  }
+
   public void setInternal(final ATTRIBUTES attribute, final Object iValue) {
     underlying.setInternal(attribute, iValue);
   }
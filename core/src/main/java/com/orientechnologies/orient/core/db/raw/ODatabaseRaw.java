@@ -42,10 +42,12 @@ import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
 import com.orientechnologies.orient.core.fetch.OFetchHelper;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.intent.OIntent;
+import com.orientechnologies.orient.core.serialization.serializer.record.ORecordSerializerFactory;
 import com.orientechnologies.orient.core.storage.ORawBuffer;
 import com.orientechnologies.orient.core.storage.ORecordCallback;
 import com.orientechnologies.orient.core.storage.OStorage;
 import com.orientechnologies.orient.core.storage.OStorage.CLUSTER_TYPE;
+import com.orientechnologies.orient.core.storage.OStorageProxy;
 import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
 
 /**
@@ -239,6 +241,37 @@ public class ODatabaseRaw implements ODatabase {
 		}
 	}
 
+	/**
+	 * Reads a list of records. Proxy storages read all of them in one exchange, the others one per time.
+	 */
+	public List<ORawBuffer> read(final List<ORecordId> iRids, final String iFetchPlan, final boolean iIgnoreCache) {
+		OFetchHelper.checkFetchPlanValid(iFetchPlan);
+
+		try {
+			if (storage instanceof OStorageProxy)
+				return ((OStorageProxy) storage).readRecords(iRids, iFetchPlan, iIgnoreCache, null);
+
+			final List<ORawBuffer> result = new ArrayList<ORawBuffer>(iRids.size());
+			for (ORecordId rid : iRids) {
+				if (!rid.isValid()) {
+					result.add(null);
+					continue;
+				}
+
+				try {
+					result.add(storage.readRecord(rid, iFetchPlan, iIgnoreCache, null));
+				} catch (ORecordNotFoundException e) {
+					// SOME STORAGES (MEMORY) THROW AN EXCEPTION FOR POSITIONS OUTSIDE THE CLUSTER: TREAT AS MISSING RECORD
+					result.add(null);
+				}
+			}
+			return result;
+
+		} catch (Throwable t) {
+			throw new ODatabaseException("Error on retrieving " + iRids.size() + " records", t);
+		}
+	}
+
 	public int save(final int iDataSegmentId, final ORecordId iRid, final byte[] iContent, final int iVersion,
 			final byte iRecordType, final int iMode, boolean iForceCreate, final ORecordCallback<? extends Number> iCallBack) {
 		// CHECK IF RECORD TYPE IS SUPPORTED
@@ -498,6 +531,8 @@ public class ODatabaseRaw implements ODatabase {
 			return getStatus();
 		case DEFAULTCLUSTERID:
 			return getDefaultClusterId();
+		case RECORDFORMAT:
+			return storage.getConfiguration().recordFormat;
 		case TYPE:
 			ODatabaseRecord db;
 			if (getDatabaseOwner() instanceof ODatabaseRecord)
@@ -542,6 +577,15 @@ public class ODatabaseRaw implements ODatabase {
 
 			break;
 
+		case RECORDFORMAT:
+			if (ORecordSerializerFactory.instance().getDocumentFormat(stringValue) == null)
+				throw new IllegalArgumentException("Record format '" + stringValue + "' is not supported");
+
+			storage.getConfiguration().recordFormat = stringValue.toLowerCase(Locale.ENGLISH);
+			if (!(storage instanceof OStorageProxy))
+				storage.getConfiguration().update();
+			break;
+
 		default:
 			throw new IllegalArgumentException("Option '" + iAttribute + "' not supported on alter database");
 
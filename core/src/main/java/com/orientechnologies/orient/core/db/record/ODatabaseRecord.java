@@ -15,10 +15,14 @@
  */
 package com.orientechnologies.orient.core.db.record;
 
+import java.util.Collection;
+import java.util.List;
+
 import com.orientechnologies.orient.core.db.ODataSegmentStrategy;
 import com.orientechnologies.orient.core.db.ODatabaseComplex;
 import com.orientechnologies.orient.core.iterator.ORecordIteratorCluster;
 import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.serialization.serializer.record.ORecordSerializer;
 
 /**
  * Generic interface for record based Database implementations.
@@ -56,11 +60,48 @@ public interface ODatabaseRecord extends ODatabaseComplex<ORecordInternal<?>> {
 	 */
 	public <RET extends ORecordInternal<?>> RET getRecord(OIdentifiable iIdentifiable);
 
+	/**
+	 * Loads a collection of records at once. Against a remote storage all the records not available in the transaction or in the
+	 * level-1 cache are loaded in one network exchange.
+	 * 
+	 * @param iRecordIds
+	 *          Identities of the records to load
+	 * @param iFetchPlan
+	 *          Fetch plan to apply, or null for the default one
+	 * @return The loaded records in the same order of the identities received, with null for the records not found
+	 */
+	public List<ORecordInternal<?>> load(Collection<? extends OIdentifiable> iRecordIds, String iFetchPlan);
+
+	/**
+	 * Saves a collection of records at once. Against a remote storage and outside a transaction the records are saved in a transaction
+	 * committed in one network exchange.
+	 * 
+	 * @param iRecords
+	 *          Records to save
+	 * @return The Database instance itself giving a "fluent interface". Useful to call multiple methods in chain.
+	 */
+	public ODatabaseComplex<ORecordInternal<?>> save(Collection<? extends ORecordInternal<?>> iRecords);
+
+	/**
+	 * Deletes a collection of records at once. Against a remote storage and outside a transaction the records are deleted in a
+	 * transaction committed in one network exchange.
+	 * 
+	 * @param iRecords
+	 *          Records or identities of the records to delete
+	 * @return The Database instance itself giving a "fluent interface". Useful to call multiple methods in chain.
+	 */
+	public ODatabaseComplex<ORecordInternal<?>> delete(Collection<? extends OIdentifiable> iRecords);
+
 	/**
 	 * Returns the default record type for this kind of database.
 	 */
 	public byte getRecordType();
 
+	/**
+	 * Returns the serializer used to marshall the documents of this database, selected by the RECORDFORMAT attribute.
+	 */
+	public ORecordSerializer getRecordSerializer();
+
 	/**
 	 * Returns true if current configuration retains objects, otherwise false
 	 * 
@@ -15,7 +15,9 @@
  */
 package com.orientechnologies.orient.core.db.record;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -29,6 +31,7 @@ import com.orientechnologies.orient.core.cache.OLevel1RecordCache;
 import com.orientechnologies.orient.core.command.OCommandRequest;
 import com.orientechnologies.orient.core.command.OCommandRequestInternal;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.config.OStorageConfiguration;
 import com.orientechnologies.orient.core.db.ODataSegmentStrategy;
 import com.orientechnologies.orient.core.db.ODatabase;
 import com.orientechnologies.orient.core.db.ODatabaseComplex;
@@ -76,6 +79,8 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
   private static final String             DEF_RECORD_FORMAT   = "csv";
   private byte                            recordType;
   private String                          recordFormat;
+  private ORecordSerializer               recordSerializer;
+  private String                          recordSerializerFormat;
   private Set<ORecordHook>                hooks               = new HashSet<ORecordHook>();
   private final Set<ORecordHook>          unmodifiableHooks;
   private boolean                         retainRecords       = true;
@@ -352,6 +357,71 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
     return this;
   }
 
+  public ODatabaseRecord save(final Collection<? extends ORecordInternal<?>> iRecords) {
+    final ODatabaseRecord owner = getRecordOwner();
+    if (getTransaction().isActive() || !(getStorage() instanceof OStorageProxy)) {
+      for (ORecordInternal<?> record : iRecords)
+        owner.save(record);
+      return this;
+    }
+
+    // SEND ALL THE CHANGES AT COMMIT TIME
+    begin();
+    try {
+      for (ORecordInternal<?> record : iRecords)
+        owner.save(record);
+      commit();
+    } catch (RuntimeException e) {
+      rollback();
+      throw e;
+    }
+    return this;
+  }
+
+  public ODatabaseRecord delete(final Collection<? extends OIdentifiable> iRecords) {
+    // LOAD AT ONCE THE RECORDS PASSED BY IDENTITY
+    final List<ORecordInternal<?>> records = new ArrayList<ORecordInternal<?>>(iRecords.size());
+    final List<OIdentifiable> toLoad = new ArrayList<OIdentifiable>();
+    for (OIdentifiable id : iRecords)
+      if (id instanceof ORecordInternal<?>)
+        records.add((ORecordInternal<?>) id);
+      else if (id != null)
+        toLoad.add(id);
+
+    if (!toLoad.isEmpty())
+      for (ORecordInternal<?> record : load(toLoad, null))
+        if (record != null)
+          records.add(record);
+
+    final ODatabaseRecord owner = getRecordOwner();
+    if (getTransaction().isActive() || !(getStorage() instanceof OStorageProxy)) {
+      for (ORecordInternal<?> record : records)
+        owner.delete(record);
+      return this;
+    }
+
+    // SEND ALL THE CHANGES AT COMMIT TIME
+    begin();
+    try {
+      for (ORecordInternal<?> record : records)
+        owner.delete(record);
+      commit();
+    } catch (RuntimeException e) {
+      rollback();
+      throw e;
+    }
+    return this;
+  }
+
+  /**
+   * Returns the outermost record database wrapping this one, so the records saved or deleted through it pass the checks of the
+   * wrappers, like the security of the classes of the documents.
+   */
+  protected ODatabaseRecord getRecordOwner() {
+    final ODatabaseComplex<?> owner = getDatabaseOwner();
+    return owner instanceof ODatabaseRecord ? (ODatabaseRecord) owner : this;
+  }
+
   public <REC extends ORecordInternal<?>> ORecordIteratorCluster<REC> browseCluster(final String iClusterName,
       final Class<REC> iClass) {
     checkSecurity(ODatabaseSecurityResources.CLUSTER, ORole.PERMISSION_READ, iClusterName);
@@ -400,6 +470,22 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
     return recordType;
   }
 
+  public ORecordSerializer getRecordSerializer() {
+    final OStorageConfiguration configuration = getStorage() != null ? getStorage().getConfiguration() : null;
+    final String format = configuration != null && configuration.recordFormat != null ? configuration.recordFormat
+        : OStorageConfiguration.DEFAULT_RECORD_FORMAT;
+
+    if (recordSerializer == null || !format.equals(recordSerializerFormat)) {
+      ORecordSerializer serializer = ORecordSerializerFactory.instance().getDocumentFormat(format);
+      if (serializer == null)
+        serializer = ORecordSerializerFactory.instance().getDocumentFormat(OStorageConfiguration.DEFAULT_RECORD_FORMAT);
+
+      recordSerializer = serializer;
+      recordSerializerFormat = format;
+    }
+    return recordSerializer;
+  }
+
   public <RET extends Object> RET newInstance() {
     return (RET) Orient.instance().getRecordFactoryManager().newInstance(recordType);
   }
@@ -586,32 +672,86 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
       if (recordBuffer == null)
         return null;
 
-      if (iRecord == null || iRecord.getRecordType() != recordBuffer.recordType)
-        // NO SAME RECORD TYPE: CAN'T REUSE OLD ONE BUT CREATE A NEW ONE FOR IT
-        iRecord = Orient.instance().getRecordFactoryManager().newInstance(recordBuffer.recordType);
+      return (RET) fillRecord(iRid, iRecord, recordBuffer, iIgnoreCache);
+    } catch (OException e) {
+      // RE-THROW THE EXCEPTION
+      throw e;
 
-      iRecord.fill(iRid, recordBuffer.version, recordBuffer.buffer, false);
+    } catch (Exception e) {
+      // WRAP IT AS ODATABASE EXCEPTION
+      OLogManager.instance().exception("Error on retrieving record " + iRid, e, ODatabaseException.class);
+    }
+    return null;
+  }
 
-      if (callbackHooks(TYPE.BEFORE_READ, iRecord) == RESULT.SKIP)
-        return null;
+  public List<ORecordInternal<?>> load(final Collection<? extends OIdentifiable> iRecordIds, final String iFetchPlan) {
+    checkOpeness();
 
-      iRecord.fromStream(recordBuffer.buffer);
+    final List<ORecordInternal<?>> result = new ArrayList<ORecordInternal<?>>(iRecordIds.size());
+    final List<ORecordId> toRead = new ArrayList<ORecordId>();
+    final List<Integer> toReadPositions = new ArrayList<Integer>();
 
-      callbackHooks(TYPE.AFTER_READ, iRecord);
+    for (OIdentifiable id : iRecordIds) {
+      final ORecordId rid = id != null ? (ORecordId) id.getIdentity() : null;
+      if (rid == null || !rid.isValid()) {
+        result.add(null);
+        continue;
+      }
 
-      if (!iIgnoreCache)
-        getLevel1Cache().updateRecord(iRecord);
+      if (getTransaction().getRecord(rid) != null || getLevel1Cache().findRecord(rid) != null)
+        // AVAILABLE LOCALLY
+        result.add(executeReadRecord(rid, null, iFetchPlan, false));
+      else {
+        checkSecurity(ODatabaseSecurityResources.CLUSTER, ORole.PERMISSION_READ, getClusterNameById(rid.getClusterId()));
+        toReadPositions.add(result.size());
+        toRead.add(rid);
+        result.add(null);
+      }
+    }
 
-      return (RET) iRecord;
+    if (toRead.isEmpty())
+      return result;
+
+    try {
+      final List<ORawBuffer> buffers = underlying.read(toRead, iFetchPlan, false);
+      for (int i = 0; i < buffers.size(); ++i) {
+        final ORawBuffer recordBuffer = buffers.get(i);
+        if (recordBuffer != null)
+          result.set(toReadPositions.get(i), fillRecord(toRead.get(i), null, recordBuffer, false));
+      }
     } catch (OException e) {
       // RE-THROW THE EXCEPTION
       throw e;
 
     } catch (Exception e) {
       // WRAP IT AS ODATABASE EXCEPTION
-      OLogManager.instance().exception("Error on retrieving record " + iRid, e, ODatabaseException.class);
+      OLogManager.instance().exception("Error on retrieving %d records", e, ODatabaseException.class, toRead.size());
     }
-    return null;
+    return result;
+  }
+
+  /**
+   * Builds the record from the buffer read by the storage, calling the read hooks.
+   */
+  protected ORecordInternal<?> fillRecord(final ORecordId iRid, ORecordInternal<?> iRecord, final ORawBuffer iRecordBuffer,
+      final boolean iIgnoreCache) {
+    if (iRecord == null || iRecord.getRecordType() != iRecordBuffer.recordType)
+      // NO SAME RECORD TYPE: CAN'T REUSE OLD ONE BUT CREATE A NEW ONE FOR IT
+      iRecord = Orient.instance().getRecordFactoryManager().newInstance(iRecordBuffer.recordType);
+
+    iRecord.fill(iRid, iRecordBuffer.version, iRecordBuffer.buffer, false);
+
+    if (callbackHooks(TYPE.BEFORE_READ, iRecord) == RESULT.SKIP)
+      return null;
+
+    iRecord.fromStream(iRecordBuffer.buffer);
+
+    callbackHooks(TYPE.AFTER_READ, iRecord);
+
+    if (!iIgnoreCache)
+      getLevel1Cache().updateRecord(iRecord);
+
+    return iRecord;
   }
 
   public <RET extends ORecordInternal<?>> RET executeSaveRecord(final ORecordInternal<?> iRecord, String iClusterName,
@@ -839,6 +979,9 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
       } else
         throw new IllegalArgumentException("Database type '" + stringValue + "' is not supported");
 
+      break;
+    case RECORDFORMAT:
+      underlying.set(iAttribute, iValue);
       break;
     default:
       throw new IllegalArgumentException("Option '" + iAttribute + "' not supported on alter database");
@@ -849,6 +992,14 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
     return user;
   }
 
+  /**
+   * Sets the user already authenticated by another database on the same storage. Used by the databases opened without security by
+   * the threads that work for a database, to apply the security of its user.
+   */
+  public void setUser(final OUser iUser) {
+    user = iUser;
+  }
+
   public boolean isMVCC() {
     return mvcc;
   }
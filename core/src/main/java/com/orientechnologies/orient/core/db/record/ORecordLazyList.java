@@ -15,6 +15,7 @@
  */
 package com.orientechnologies.orient.core.db.record;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -22,11 +23,13 @@ import java.util.List;
 import com.orientechnologies.common.collection.OLazyIterator;
 import com.orientechnologies.common.collection.OLazyIteratorListWrapper;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
 import com.orientechnologies.orient.core.db.record.ORecordMultiValueHelper.MULTIVALUE_CONTENT_TYPE;
 import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.serialization.serializer.OStringSerializerHelper;
 
@@ -287,6 +290,9 @@ public class ORecordLazyList extends ORecordTrackedList implements ORecordLazyMu
 			// PRECONDITIONS
 			return;
 
+		if (!ridOnly)
+			convertLinks2RecordsAtOnce();
+
 		for (int i = 0; i < size(); ++i) {
 			try {
 				convertLink2Record(i);
@@ -319,6 +325,36 @@ public class ORecordLazyList extends ORecordTrackedList implements ORecordLazyMu
 		return allConverted;
 	}
 
+	/**
+	 * Loads all the linked records in one call to the database, avoiding a round trip per record against remote storages. The
+	 * records not found are left as links.
+	 */
+	private void convertLinks2RecordsAtOnce() {
+		final List<ORecordId> rids = new ArrayList<ORecordId>();
+		final List<Integer> positions = new ArrayList<Integer>();
+		for (int i = 0; i < super.size(); ++i) {
+			final OIdentifiable o = super.get(i);
+			if (o instanceof ORecordId && ((ORecordId) o).isValid()) {
+				rids.add((ORecordId) o);
+				positions.add(i);
+			}
+		}
+
+		if (rids.size() < 2)
+			return;
+
+		final List<ORecordInternal<?>> records = ODatabaseRecordThreadLocal.INSTANCE.get().load(rids, null);
+
+		marshalling = true;
+		try {
+			for (int i = 0; i < records.size(); ++i)
+				if (records.get(i) != null)
+					super.set(positions.get(i), records.get(i));
+		} finally {
+			marshalling = false;
+		}
+	}
+
 	/**
 	 * Convert the item requested from link to record.
 	 * 
@@ -288,6 +288,7 @@ public class ODatabaseExport extends ODatabaseImpExpAbstract {
     if (engineBuild != null)
       writer.writeAttribute(2, true, "engine-build", engineBuild);
     writer.writeAttribute(2, true, "storage-config-version", OStorageConfiguration.CURRENT_VERSION);
+    writer.writeAttribute(2, true, "record-format", database.getStorage().getConfiguration().recordFormat);
     writer.writeAttribute(2, true, "schema-version", OSchemaShared.CURRENT_VERSION_NUMBER);
     writer.writeAttribute(2, true, "mvrbtree-version", OMVRBTreeMapProvider.CURRENT_PROTOCOL_VERSION);
     writer.endObject(1, true);
@@ -32,6 +32,7 @@ import java.util.zip.GZIPInputStream;
 
 import com.orientechnologies.common.serialization.types.OBinarySerializer;
 import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.db.ODatabase.ATTRIBUTES;
 import com.orientechnologies.orient.core.db.ODatabase.STATUS;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
@@ -75,6 +76,7 @@ public class ODatabaseImport extends ODatabaseImpExpAbstract {
   private boolean                    schemaImported    = false;
   private int                        exporterVersion   = -1;
   private boolean                    lhClustersAreUsed = false;
+  private String                     recordFormat;
 
   public ODatabaseImport(final ODatabaseDocument database, final String iFileName, final OCommandOutputListener iListener)
       throws IOException {
@@ -118,6 +120,9 @@ public class ODatabaseImport extends ODatabaseImpExpAbstract {
 
       database.setStatus(STATUS.IMPORTING);
 
+      if (recordFormat != null)
+        database.set(ATTRIBUTES.RECORDFORMAT, recordFormat);
+
       String tag;
       while (jsonReader.hasNext() && jsonReader.lastChar() != '}') {
         tag = jsonReader.readString(OJSONReader.FIELD_ASSIGNMENT);
@@ -830,6 +835,18 @@ public class ODatabaseImport extends ODatabaseImpExpAbstract {
     return indexDefinition;
   }
 
+  public String getRecordFormat() {
+    return recordFormat;
+  }
+
+  /**
+   * Sets the record format of the imported records, such as "csv" or "binary". If not set the format configured in the current
+   * database is used.
+   */
+  public void setRecordFormat(final String recordFormat) {
+    this.recordFormat = recordFormat;
+  }
+
   public void close() {
     database.declareIntent(null);
   }
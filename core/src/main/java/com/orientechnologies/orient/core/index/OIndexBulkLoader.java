@@ -0,0 +1,477 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.orientechnologies.common.comparator.ODefaultComparator;
+import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.serialization.types.OBinarySerializer;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabase;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.OStorage;
+
+/**
+ * Populates an index with the records of its clusters. The clusters are split in ranges of positions scanned in parallel: the
+ * records are read from the storage, bypassing the cache of the database, and the keys are extracted through the index definition.
+ * Each scanner sorts the keys it found and spills them to a temporary file once the sort buffer is full. At the end all the sorted
+ * runs are merged and the keys are put in the index in ascending order: the caller sets the tree in append mode, so it is built
+ * with full nodes and without moving entries between them.
+ */
+public class OIndexBulkLoader {
+  private static final int                  MIN_RANGE_SIZE    = 10000;
+  private static final long                 PROGRESS_INTERVAL = 1000;
+  private static final AtomicInteger        serial            = new AtomicInteger();
+
+  private final OIndexInternal<?>           index;
+  private final OIndexDefinition            indexDefinition;
+  private final OBinarySerializer<Object>   keySerializer;
+  private final int                         threads;
+  private final int                         sortBufferSize;
+  private final AtomicLong                  documentsScanned  = new AtomicLong();
+  private final AtomicLong                  documentsIndexed  = new AtomicLong();
+  private final AtomicLong                  entriesInMemory   = new AtomicLong();
+  private volatile boolean                  stopped;
+
+  private static final Comparator<KeyEntry> COMPARATOR        = new Comparator<KeyEntry>() {
+                                                                public int compare(final KeyEntry o1, final KeyEntry o2) {
+                                                                  return ODefaultComparator.INSTANCE.compare(o1.key, o2.key);
+                                                                }
+                                                              };
+
+  public OIndexBulkLoader(final OIndexInternal<?> iIndex, final OBinarySerializer<Object> iKeySerializer) {
+    index = iIndex;
+    indexDefinition = iIndex.getDefinition();
+    keySerializer = iKeySerializer;
+
+    final int configuredThreads = OGlobalConfiguration.INDEX_REBUILD_THREADS.getValueAsInteger();
+    threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+    sortBufferSize = Math.max(threads, OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.getValueAsInteger());
+  }
+
+  /**
+   * Puts in the index the keys of all the documents of the clusters. The caller holds the exclusive lock of the index.
+   *
+   * @param iDatabase
+   *          Database of the index: every scanner opens its own database on the same storage
+   * @param iClusterNames
+   *          Clusters to index
+   * @param iProgressListener
+   *          Optional listener notified of the scanned documents
+   * @param iTotal
+   *          Total number of documents, used to compute the progress
+   * @return The number of indexed documents
+   */
+  public long load(final ODatabaseRecord iDatabase, final Collection<String> iClusterNames,
+      final OProgressListener iProgressListener, final long iTotal) {
+    final List<SortedRun> runs = new ArrayList<SortedRun>();
+
+    try {
+      scan(iDatabase, iClusterNames, iProgressListener, iTotal, runs);
+      merge(runs);
+    } finally {
+      for (SortedRun run : runs)
+        run.close();
+    }
+
+    return documentsIndexed.get();
+  }
+
+  private void scan(final ODatabaseRecord iDatabase, final Collection<String> iClusterNames,
+      final OProgressListener iProgressListener, final long iTotal, final List<SortedRun> iRuns) {
+    final OStorage storage = iDatabase.getStorage();
+    final String userName = iDatabase.getUser() != null ? iDatabase.getUser().getName() : null;
+    final int rangesPerCluster = threads;
+
+    final List<ScanTask> tasks = new ArrayList<ScanTask>();
+    for (String clusterName : iClusterNames) {
+      final int clusterId = iDatabase.getClusterIdByName(clusterName);
+      final long[] range = storage.getClusterDataRange(clusterId);
+      if (range[0] < 0 || range[1] < range[0])
+        continue;
+
+      final long rangeSize = Math.max(MIN_RANGE_SIZE, (range[1] - range[0] + rangesPerCluster) / rangesPerCluster);
+      for (long begin = range[0]; begin <= range[1]; begin += rangeSize)
+        tasks.add(new ScanTask(iDatabase.getURL(), userName, clusterId, begin, Math.min(begin + rangeSize - 1, range[1])));
+    }
+
+    if (tasks.isEmpty())
+      return;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), new ThreadFactory() {
+      public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "OrientDB index rebuild " + index.getName() + " #" + serial.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    final List<Future<List<SortedRun>>> futures = new ArrayList<Future<List<SortedRun>>>(tasks.size());
+    try {
+      for (ScanTask task : tasks)
+        futures.add(executor.submit(task));
+
+      for (Future<List<SortedRun>> future : futures) {
+        while (true) {
+          try {
+            future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+            break;
+          } catch (TimeoutException e) {
+            if (iProgressListener != null && iTotal > 0)
+              iProgressListener.onProgress(index, documentsScanned.get(), documentsScanned.get() * 100f / iTotal);
+          }
+        }
+      }
+
+    } catch (ExecutionException e) {
+      throw new OIndexException("Error on scanning the clusters to index " + iClusterNames, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OIndexException("Rebuild of index '" + index.getName() + "' was interrupted", e);
+    } finally {
+      // THE SCANNERS ARE STOPPED WITHOUT INTERRUPTING THEM: AN INTERRUPT WOULD CLOSE THE CHANNELS OF THE FILES OF THE STORAGE
+      stopped = true;
+      executor.shutdown();
+      collectRuns(executor, futures, iRuns);
+      closeDatabases(tasks);
+    }
+
+    if (iProgressListener != null && iTotal > 0)
+      iProgressListener.onProgress(index, documentsScanned.get(), documentsScanned.get() * 100f / iTotal);
+  }
+
+  /**
+   * Waits for the end of the scanners and collects the runs of the ones completed, also when the scan failed: the caller closes
+   * them, deleting their files. The scanners still running when the scan fails are stopped and close their own runs.
+   */
+  private void collectRuns(final ExecutorService iExecutor, final List<Future<List<SortedRun>>> iFutures,
+      final List<SortedRun> iRuns) {
+    // THE STOPPED SCANNERS END SOON: WAIT FOR THEM ALSO IF THE CURRENT THREAD IS INTERRUPTED, TO NOT LOSE THEIR FILES
+    boolean interrupted = Thread.interrupted();
+    while (!iExecutor.isTerminated())
+      try {
+        iExecutor.awaitTermination(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+
+    for (Future<List<SortedRun>> future : iFutures)
+      try {
+        iRuns.addAll(future.get());
+      } catch (ExecutionException e) {
+        // THE SCANNER CLOSED ITS RUNS
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  /**
+   * Closes the databases of the scanners. They are closed by the current thread, that holds the lock of the index flushed on
+   * close.
+   */
+  private void closeDatabases(final List<ScanTask> iTasks) {
+    final ODatabaseRecord current = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+    try {
+      for (ScanTask task : iTasks)
+        if (task.database != null)
+          try {
+            task.database.close();
+          } catch (Exception e) {
+            OLogManager.instance().warn(this, "Cannot close the database of the scanner of index '%s'", e, index.getName());
+          }
+    } finally {
+      if (current != null)
+        ODatabaseRecordThreadLocal.INSTANCE.set(current);
+      else
+        ODatabaseRecordThreadLocal.INSTANCE.remove();
+    }
+  }
+
+  /**
+   * Merges the sorted runs, putting the keys in the index in ascending order.
+   */
+  private void merge(final List<SortedRun> iRuns) {
+    final PriorityQueue<SortedRun> queue = new PriorityQueue<SortedRun>(Math.max(1, iRuns.size()), new Comparator<SortedRun>() {
+      public int compare(final SortedRun o1, final SortedRun o2) {
+        return COMPARATOR.compare(o1.current, o2.current);
+      }
+    });
+
+    for (SortedRun run : iRuns)
+      if (run.next())
+        queue.add(run);
+
+    while (!queue.isEmpty()) {
+      final SortedRun run = queue.poll();
+      index.put(run.current.key, run.current.rid);
+
+      if (run.next())
+        queue.add(run);
+    }
+  }
+
+  private static class KeyEntry {
+    private final Object    key;
+    private final ORecordId rid;
+
+    private KeyEntry(final Object iKey, final ORecordId iRid) {
+      key = iKey;
+      rid = iRid;
+    }
+  }
+
+  /**
+   * Scans a range of positions of a cluster.
+   */
+  private class ScanTask implements Callable<List<SortedRun>> {
+    private final String        url;
+    private final String        userName;
+    private final int           clusterId;
+    private final long          begin;
+    private final long          end;
+    private ODatabaseDocumentTx database;
+
+    private ScanTask(final String iURL, final String iUserName, final int iClusterId, final long iBegin, final long iEnd) {
+      url = iURL;
+      userName = iUserName;
+      clusterId = iClusterId;
+      begin = iBegin;
+      end = iEnd;
+    }
+
+    public List<SortedRun> call() throws Exception {
+      final List<SortedRun> runs = new ArrayList<SortedRun>();
+      boolean scanned = false;
+      try {
+        // DOCUMENTS NEED THE DATABASE TO RESOLVE THEIR CLASS: EVERY SCANNER OPENS ITS OWN DATABASE ON THE SAME STORAGE, THE USER
+        // WAS ALREADY AUTHENTICATED BY THE DATABASE OF THE INDEX. IT'S CLOSED BY THE LOADER AT THE END OF THE SCAN
+        database = new ODatabaseDocumentTx(url);
+        database.setProperty(ODatabase.OPTIONS.SECURITY.toString(), Boolean.FALSE);
+        database.open(userName, null);
+
+        final OStorage storage = database.getStorage();
+        final int bufferSize = sortBufferSize / threads;
+
+        List<KeyEntry> buffer = new ArrayList<KeyEntry>();
+
+        for (long position = begin; position <= end; ++position) {
+          if (stopped)
+            // ANOTHER SCANNER FAILED: ITS ERROR IS REPORTED, THE RUNS OF THIS ONE ARE CLOSED IN FINALLY
+            return Collections.emptyList();
+
+          final ORecordId rid = new ORecordId(clusterId, position);
+          final ORawBuffer raw = storage.readRecord(rid, null, false, null);
+          if (raw == null)
+            continue;
+
+          documentsScanned.incrementAndGet();
+          if (raw.recordType != ODocument.RECORD_TYPE)
+            continue;
+
+          final ODocument doc = new ODocument(rid);
+          doc.fromStream(raw.buffer);
+
+          final Object fieldValue = indexDefinition.getDocumentValueToIndex(doc);
+          if (fieldValue == null)
+            continue;
+
+          if (fieldValue instanceof Collection) {
+            for (final Object fieldValueItem : (Collection<?>) fieldValue)
+              if (fieldValueItem != null)
+                buffer.add(new KeyEntry(fieldValueItem, rid));
+          } else
+            buffer.add(new KeyEntry(fieldValue, rid));
+
+          documentsIndexed.incrementAndGet();
+
+          if (buffer.size() >= bufferSize) {
+            runs.add(spill(buffer));
+            buffer = new ArrayList<KeyEntry>();
+          }
+        }
+
+        if (!buffer.isEmpty()) {
+          if (entriesInMemory.addAndGet(buffer.size()) > sortBufferSize) {
+            // THE KEYS OF THE RANGES ALREADY SCANNED FILLED THE BUFFER
+            entriesInMemory.addAndGet(-buffer.size());
+            runs.add(spill(buffer));
+          } else {
+            Collections.sort(buffer, COMPARATOR);
+            runs.add(new MemoryRun(buffer));
+          }
+        }
+
+        scanned = true;
+        return runs;
+
+      } finally {
+        if (!scanned) {
+          // STOPS THE OTHER SCANNERS
+          stopped = true;
+          for (SortedRun run : runs)
+            run.close();
+        }
+
+        ODatabaseRecordThreadLocal.INSTANCE.remove();
+      }
+    }
+
+    private SortedRun spill(final List<KeyEntry> iBuffer) throws IOException {
+      Collections.sort(iBuffer, COMPARATOR);
+
+      final File file = File.createTempFile("orient-index-", ".run");
+      OLogManager.instance().debug(this, "Spilling %d keys of index '%s' to file %s", iBuffer.size(), index.getName(), file);
+
+      final FileRun run = new FileRun(file, iBuffer.size());
+      try {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+          for (KeyEntry entry : iBuffer) {
+            final byte[] key = new byte[keySerializer.getObjectSize(entry.key)];
+            keySerializer.serialize(entry.key, key, 0);
+
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(entry.rid.clusterId);
+            out.writeLong(entry.rid.clusterPosition);
+          }
+        } finally {
+          out.close();
+        }
+      } catch (IOException e) {
+        run.close();
+        throw e;
+      } catch (RuntimeException e) {
+        run.close();
+        throw e;
+      }
+
+      return run;
+    }
+  }
+
+  private abstract static class SortedRun {
+    protected KeyEntry current;
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return false if the run is over
+     */
+    protected abstract boolean next();
+
+    protected void close() {
+    }
+  }
+
+  private static class MemoryRun extends SortedRun {
+    private final Iterator<KeyEntry> iterator;
+
+    private MemoryRun(final List<KeyEntry> iEntries) {
+      iterator = iEntries.iterator();
+    }
+
+    @Override
+    protected boolean next() {
+      current = iterator.hasNext() ? iterator.next() : null;
+      return current != null;
+    }
+  }
+
+  private class FileRun extends SortedRun {
+    private final File      file;
+    private DataInputStream in;
+    private int             left;
+
+    private FileRun(final File iFile, final int iEntries) {
+      file = iFile;
+      left = iEntries;
+    }
+
+    @Override
+    protected boolean next() {
+      if (left == 0) {
+        close();
+        return false;
+      }
+
+      try {
+        if (in == null)
+          in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        final byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        final int clusterId = in.readInt();
+        final long clusterPosition = in.readLong();
+
+        current = new KeyEntry(keySerializer.deserialize(key, 0), new ORecordId(clusterId, clusterPosition));
+        left--;
+        return true;
+
+      } catch (IOException e) {
+        throw new OIndexException("Error on reading the sorted keys of index '" + index.getName() + "' from file " + file, e);
+      }
+    }
+
+    @Override
+    protected void close() {
+      try {
+        if (in != null)
+          in.close();
+      } catch (IOException e) {
+        OLogManager.instance().warn(this, "Cannot close the file %s", e, file);
+      } finally {
+        in = null;
+        if (!file.delete())
+          file.deleteOnExit();
+      }
+    }
+  }
+}
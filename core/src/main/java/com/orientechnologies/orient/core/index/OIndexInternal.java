@@ -15,8 +15,10 @@
  */
 package com.orientechnologies.orient.core.index;
 
+import java.util.Iterator;
 import java.util.Map.Entry;
 
+import com.orientechnologies.common.concur.resource.OSharedResource;
 import com.orientechnologies.orient.core.command.OCommandContext;
 import com.orientechnologies.orient.core.db.ODatabaseListener;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
@@ -29,7 +31,7 @@ import com.orientechnologies.orient.core.sql.operator.OQueryOperator.INDEX_OPERA
  * @author Luca Garulli (l.garulli--at--orientechnologies.com)
  * 
  */
-public interface OIndexInternal<T> extends OIndex<T>, Iterable<Entry<Object, T>>, ODatabaseListener {
+public interface OIndexInternal<T> extends OIndex<T>, Iterable<Entry<Object, T>>, ODatabaseListener, OSharedResource {
 
   public static final String CONFIG_KEYTYPE         = "keyType";
   public static final String CONFIG_AUTOMATIC       = "automatic";
@@ -98,6 +100,33 @@ public interface OIndexInternal<T> extends OIndex<T>, Iterable<Entry<Object, T>>
    */
   public boolean canBeUsedInEqualityOperators();
 
+  /**
+   * Indicates whether the keys of the index are kept ordered. Indexes without order support only the lookup of whole keys: range
+   * operators and partial matches of composite keys cannot use them.
+   * 
+   * @return {@code true} if the index supports range queries and iterates its keys in order.
+   */
+  public boolean supportsOrderedIterations();
+
+  /**
+   * Browses the values of the keys in a range, in ascending or descending order of the keys. Values are read while the iterator
+   * advances, so the caller can stop as soon as it has enough of them. Supported only by indexes with ordered iterations.
+   * 
+   * @param iRangeFrom
+   *          Lower boundary of the range, null to start from the first key
+   * @param iFromInclusive
+   *          Indicates whether the lower boundary should be returned
+   * @param iRangeTo
+   *          Upper boundary of the range, null to end at the last key
+   * @param iToInclusive
+   *          Indicates whether the upper boundary should be returned
+   * @param iAscending
+   *          Indicates whether the keys are browsed in ascending order
+   * @return Iterator over the values of the range
+   */
+  public Iterator<OIdentifiable> valuesIterator(Object iRangeFrom, boolean iFromInclusive, Object iRangeTo, boolean iToInclusive,
+      boolean iAscending);
+
   /**
    * Prohibit index modifications. Only index read commands are allowed after this call.
    * 
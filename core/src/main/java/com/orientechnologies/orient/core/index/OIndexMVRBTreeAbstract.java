@@ -17,6 +17,8 @@ package com.orientechnologies.orient.core.index;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -28,6 +30,8 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 
 import com.orientechnologies.common.collection.OCompositeKey;
+import com.orientechnologies.common.collection.ONavigableMap;
+import com.orientechnologies.common.comparator.ODefaultComparator;
 import com.orientechnologies.common.concur.lock.OModificationLock;
 import com.orientechnologies.common.concur.resource.OSharedResourceAdaptiveExternal;
 import com.orientechnologies.common.listener.OProgressListener;
@@ -59,6 +63,7 @@ import com.orientechnologies.orient.core.serialization.serializer.stream.OStream
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerAnyStreamable;
 import com.orientechnologies.orient.core.tx.OTransactionIndexChanges.OPERATION;
 import com.orientechnologies.orient.core.type.tree.OMVRBTreeDatabaseLazySave;
+import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeMapProvider;
 import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeProviderAbstract;
 
 /**
@@ -72,6 +77,7 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 
   protected static final String                  CONFIG_MAP_RID   = "mapRid";
   protected static final String                  CONFIG_CLUSTERS  = "clusters";
+  private static final int                       BROWSE_PAGE_KEYS = 1000;
   protected String                               name;
   protected String                               type;
   protected OMVRBTreeDatabaseLazySave<Object, T> map;
@@ -253,13 +259,13 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 
   public boolean contains(final Object iKey) {
 
-    acquireExclusiveLock();
+    acquireLookupLock();
     try {
 
-      return map.containsKey(iKey);
+      return map.containsKeyConcurrent(iKey);
 
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
@@ -353,6 +359,8 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 
   /**
    * Populates the index with all the existent records. Uses the massive insert intent to speed up and keep the consumed memory low.
+   * If {@link OGlobalConfiguration#INDEX_REBUILD_PARALLEL} is set the clusters are scanned in parallel and the keys are loaded in
+   * order through {@link OIndexBulkLoader}.
    */
   public long rebuild(final OProgressListener iProgressListener) {
     long documentIndexed = 0;
@@ -376,37 +384,49 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
       if (iProgressListener != null)
         iProgressListener.onBegin(this, documentTotal);
 
-      for (final String clusterName : clustersToIndex)
+      if (OGlobalConfiguration.INDEX_REBUILD_PARALLEL.getValueAsBoolean() && indexDefinition != null) {
+        // THE KEYS ARE PUT IN ASCENDING ORDER: FILL THE NODES OF THE TREE
+        map.setAppendMode(true);
         try {
-          for (final ORecord<?> record : getDatabase().browseCluster(clusterName)) {
-            if (record instanceof ODocument) {
-              final ODocument doc = (ODocument) record;
-
-              if (indexDefinition == null)
-                throw new OConfigurationException("Index '" + name + "' cannot be rebuilt because has no a valid definition ("
-                    + indexDefinition + ")");
-
-              final Object fieldValue = indexDefinition.getDocumentValueToIndex(doc);
-
-              if (fieldValue != null) {
-                if (fieldValue instanceof Collection) {
-                  for (final Object fieldValueItem : (Collection<?>) fieldValue) {
-                    put(fieldValueItem, doc);
-                  }
-                } else
-                  put(fieldValue, doc);
-
-                ++documentIndexed;
+          documentIndexed = new OIndexBulkLoader(this,
+              ((OMVRBTreeMapProvider<Object, T>) map.getProvider()).getKeySerializer()).load(getDatabase(), clustersToIndex,
+              iProgressListener, documentTotal);
+        } finally {
+          map.setAppendMode(false);
+        }
+      } else {
+        for (final String clusterName : clustersToIndex)
+          try {
+            for (final ORecord<?> record : getDatabase().browseCluster(clusterName)) {
+              if (record instanceof ODocument) {
+                final ODocument doc = (ODocument) record;
+
+                if (indexDefinition == null)
+                  throw new OConfigurationException("Index '" + name + "' cannot be rebuilt because has no a valid definition ("
+                      + indexDefinition + ")");
+
+                final Object fieldValue = indexDefinition.getDocumentValueToIndex(doc);
+
+                if (fieldValue != null) {
+                  if (fieldValue instanceof Collection) {
+                    for (final Object fieldValueItem : (Collection<?>) fieldValue) {
+                      put(fieldValueItem, doc);
+                    }
+                  } else
+                    put(fieldValue, doc);
+
+                  ++documentIndexed;
+                }
               }
-            }
-            documentNum++;
+              documentNum++;
 
-            if (iProgressListener != null)
-              iProgressListener.onProgress(this, documentNum, documentNum * 100f / documentTotal);
+              if (iProgressListener != null)
+                iProgressListener.onProgress(this, documentNum, documentNum * 100f / documentTotal);
+            }
+          } catch (NoSuchElementException e) {
+            // END OF CLUSTER REACHED, IGNORE IT
           }
-        } catch (NoSuchElementException e) {
-          // END OF CLUSTER REACHED, IGNORE IT
-        }
+      }
 
       lazySave();
 
@@ -515,27 +535,45 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
     return ((OMVRBTreeProviderAbstract<Object, ?>) map.getProvider()).getRecord();
   }
 
+  /**
+   * Returns a copy of the entries taken under the browse lock: the cursors of the tree can't be moved once the lock is released,
+   * because writers and concurrent lookups change its state.
+   */
   public Iterator<Entry<Object, T>> iterator() {
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
     try {
 
-      return map.entrySet().iterator();
+      final List<Entry<Object, T>> entries = new ArrayList<Entry<Object, T>>();
+      for (Entry<Object, T> entry : map.entrySet())
+        entries.add(new SimpleImmutableEntry<Object, T>(entry));
+      return entries.iterator();
 
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
+  public Iterator<OIdentifiable> valuesIterator(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+      final boolean iToInclusive, final boolean iAscending) {
+    if (iRangeFrom != null && iRangeTo != null && ODefaultComparator.INSTANCE.compare(iRangeFrom, iRangeTo) > 0)
+      return Collections.<OIdentifiable> emptySet().iterator();
+
+    return new ValuesIterator(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive, iAscending);
+  }
+
+  /**
+   * Returns a copy of the keys taken under the browse lock, as {@link #iterator()}.
+   */
   public Iterable<Object> keys() {
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
     try {
 
-      return map.keySet();
+      return new ArrayList<Object>(map.keySet());
 
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
@@ -716,6 +754,10 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
     return indexDefinition != null && indexDefinition.getClassName() != null;
   }
 
+  public boolean supportsOrderedIterations() {
+    return true;
+  }
+
   protected void installHooks(final ODatabaseRecord iDatabase) {
     final OJVMProfiler profiler = Orient.instance().getProfiler();
     final String profilerPrefix = profiler.getDatabaseMetric(iDatabase.getName(), "index." + name + '.');
@@ -888,6 +930,32 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
     modificationLock.allowModifications();
   }
 
+  /**
+   * Acquires the lock to look up keys. Lookups don't change the tree, so they share the lock and run in parallel: see
+   * {@link com.orientechnologies.orient.core.type.tree.OMVRBTreePersistent#getConcurrent(Object)}.
+   */
+  protected void acquireLookupLock() {
+    acquireSharedLock();
+  }
+
+  protected void releaseLookupLock() {
+    releaseSharedLock();
+  }
+
+  /**
+   * Acquires the lock to browse the tree with cursors, as range queries and iterators do. Browsing changes the search state of the
+   * tree, so browsers are serialized by the search latch of the tree, while lookups served from memory still run in parallel.
+   */
+  protected void acquireBrowseLock() {
+    acquireLookupLock();
+    map.acquireSearchLatch();
+  }
+
+  protected void releaseBrowseLock() {
+    map.releaseSearchLatch();
+    releaseLookupLock();
+  }
+
   public void acquireModificationLock() {
     modificationLock.requestModificationLock();
   }
@@ -925,4 +993,96 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
         OGlobalConfiguration.INDEX_AUTO_LAZY_UPDATES.getValueAsInteger() :
         OGlobalConfiguration.INDEX_MANUAL_LAZY_UPDATES.getValueAsInteger();
   }
+
+  /**
+   * Iterates the values of the entries, unfolding the collections of the indexes with not unique keys. The values are copied a
+   * page of keys per time under the browse lock, and the next page is searched again from the last key copied, so the tree is
+   * never browsed without the lock and the caller can stop as soon as it has enough values.
+   */
+  private class ValuesIterator implements Iterator<OIdentifiable> {
+    private Object                    rangeFrom;
+    private boolean                   fromInclusive;
+    private Object                    rangeTo;
+    private boolean                   toInclusive;
+    private final boolean             ascending;
+    private final List<OIdentifiable> page = new ArrayList<OIdentifiable>();
+    private int                       pagePosition;
+    private boolean                   lastPage;
+
+    private ValuesIterator(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+        final boolean iToInclusive, final boolean iAscending) {
+      rangeFrom = iRangeFrom;
+      fromInclusive = iFromInclusive;
+      rangeTo = iRangeTo;
+      toInclusive = iToInclusive;
+      ascending = iAscending;
+    }
+
+    public boolean hasNext() {
+      while (pagePosition >= page.size()) {
+        if (lastPage)
+          return false;
+        fetchPage();
+      }
+      return true;
+    }
+
+    public OIdentifiable next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+
+      return page.get(pagePosition++);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("remove()");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetchPage() {
+      page.clear();
+      pagePosition = 0;
+
+      acquireBrowseLock();
+      try {
+
+        ONavigableMap<Object, T> range = map;
+        if (rangeFrom != null && rangeTo != null)
+          range = map.subMap(rangeFrom, fromInclusive, rangeTo, toInclusive);
+        else if (rangeFrom != null)
+          range = map.tailMap(rangeFrom, fromInclusive);
+        else if (rangeTo != null)
+          range = map.headMap(rangeTo, toInclusive);
+
+        if (!ascending)
+          range = range.descendingMap();
+
+        int keys = 0;
+        Object lastKey = null;
+        for (Iterator<Entry<Object, T>> it = range.entrySet().iterator(); keys < BROWSE_PAGE_KEYS && it.hasNext(); ++keys) {
+          final Entry<Object, T> entry = it.next();
+          lastKey = entry.getKey();
+
+          final T value = entry.getValue();
+          if (value instanceof Collection<?>)
+            page.addAll((Collection<OIdentifiable>) value);
+          else if (value != null)
+            page.add((OIdentifiable) value);
+        }
+
+        if (keys < BROWSE_PAGE_KEYS)
+          lastPage = true;
+        else if (ascending) {
+          rangeFrom = lastKey;
+          fromInclusive = false;
+        } else {
+          rangeTo = lastKey;
+          toInclusive = false;
+        }
+
+      } finally {
+        releaseBrowseLock();
+      }
+    }
+  }
 }
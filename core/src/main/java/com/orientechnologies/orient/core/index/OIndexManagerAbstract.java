@@ -359,11 +359,11 @@ public abstract class OIndexManagerAbstract extends ODocumentWrapperNoClass impl
 
   protected OIndex<?> preProcessBeforeReturn(final OIndexInternal<?> index) {
     getDatabase().registerListener(index);
-    if (index instanceof OIndexMultiValues)
+    if (index instanceof OIndexMultiValues || index instanceof OIndexNotUniqueHash)
       return new OIndexTxAwareMultiValue(getDatabase(), (OIndex<Collection<OIdentifiable>>) getIndexInstance(index));
     else if (index instanceof OIndexDictionary)
       return new OIndexTxAwareDictionary(getDatabase(), (OIndex<OIdentifiable>) getIndexInstance(index));
-    else if (index instanceof OIndexOneValue)
+    else if (index instanceof OIndexOneValue || index instanceof OIndexUniqueHash)
       return new OIndexTxAwareOneValue(getDatabase(), (OIndex<OIdentifiable>) getIndexInstance(index));
     return index;
   }
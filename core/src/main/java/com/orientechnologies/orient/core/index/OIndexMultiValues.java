@@ -27,6 +27,7 @@ import com.orientechnologies.common.collection.OMVRBTree;
 import com.orientechnologies.common.collection.OMVRBTreeEntry;
 import com.orientechnologies.common.comparator.ODefaultComparator;
 import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.metadata.schema.OType;
@@ -42,16 +43,38 @@ import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
  * 
  */
 public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIdentifiable>> {
+  private final boolean valuesInMemory = OGlobalConfiguration.MVRBTREE_ENTRY_VALUES_IN_MEMORY.getValueAsBoolean();
+
   public OIndexMultiValues(final String iType) {
     super(iType);
   }
 
+  /**
+   * The sets of values kept in memory by the tree are shared between the threads and browsing them changes their state: in this
+   * case lookups are serialized as writes.
+   */
+  @Override
+  protected void acquireLookupLock() {
+    if (valuesInMemory)
+      acquireExclusiveLock();
+    else
+      super.acquireLookupLock();
+  }
+
+  @Override
+  protected void releaseLookupLock() {
+    if (valuesInMemory)
+      releaseExclusiveLock();
+    else
+      super.releaseLookupLock();
+  }
+
   public Set<OIdentifiable> get(final Object iKey) {
 
-    acquireExclusiveLock();
+    acquireLookupLock();
     try {
 
-      final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.get(iKey);
+      final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.getConcurrent(iKey);
 
       if (values == null)
         return Collections.emptySet();
@@ -59,15 +82,15 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
       return new HashSet<OIdentifiable>(values);
 
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
   public long count(final Object iKey) {
-    acquireExclusiveLock();
+    acquireLookupLock();
     try {
 
-      final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.get(iKey);
+      final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.getConcurrent(iKey);
 
       if (values == null)
         return 0;
@@ -75,7 +98,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
       return values.size();
 
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
@@ -164,7 +187,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
   public int count(final OIdentifiable iRecord) {
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
     try {
 
       Set<OIdentifiable> rids;
@@ -181,7 +204,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
       return tot;
 
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
@@ -193,7 +216,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
   public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
       final boolean iToInclusive, final int maxValuesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -244,12 +267,12 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
   public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive, final int maxValuesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -283,12 +306,12 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
   public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive, final int maxValuesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, Set<OIdentifiable>> lastEntry;
@@ -322,7 +345,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
@@ -330,12 +353,12 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
     final List<Object> sortedKeys = new ArrayList<Object>(iKeys);
     Collections.sort(sortedKeys, ODefaultComparator.INSTANCE);
 
-    acquireExclusiveLock();
+    acquireLookupLock();
     try {
       final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
 
       for (final Object key : sortedKeys) {
-        final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.get(key);
+        final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.getConcurrent(key);
 
         if (values == null)
           continue;
@@ -352,12 +375,12 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
   public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive, final int maxEntriesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -397,12 +420,12 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
   public Collection<ODocument> getEntriesMinor(Object toKey, boolean isInclusive, int maxEntriesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, Set<OIdentifiable>> lastEntry;
@@ -443,7 +466,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
@@ -455,7 +478,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
       iRangeTo = OType.convert(iRangeTo, types[0].getDefaultJavaType());
     }
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -513,7 +536,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
 
   }
@@ -522,12 +545,12 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
     final List<Object> sortedKeys = new ArrayList<Object>(iKeys);
     Collections.sort(sortedKeys, ODefaultComparator.INSTANCE);
 
-    acquireExclusiveLock();
+    acquireLookupLock();
     try {
       final Set<ODocument> result = new ODocumentFieldsHashSet();
 
       for (final Object key : sortedKeys) {
-        final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.get(key);
+        final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.getConcurrent(key);
 
         if (values == null)
           continue;
@@ -549,7 +572,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
@@ -557,7 +580,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
     if (map.size() == 0)
       return 0;
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
     try {
       OMVRBTreeEntry<Object, Set<OIdentifiable>> rootEntry = map.getRoot();
       long size = 0;
@@ -580,7 +603,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
       return size;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerListRID;
+import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
+
+/**
+ * Hash index that supports multi-values for the same key.
+ */
+public class OIndexNotUniqueHash extends OIndexHashAbstract<Set<OIdentifiable>> {
+
+  public static final String TYPE_ID = OClass.INDEX_TYPE.NOTUNIQUE_HASH.toString();
+
+  public OIndexNotUniqueHash() {
+    super(TYPE_ID);
+  }
+
+  public OIndexNotUniqueHash create(final String iName, final OIndexDefinition iIndexDefinition, final ODatabaseRecord iDatabase,
+      final String iClusterIndexName, final int[] iClusterIdsToIndex, final OProgressListener iProgressListener) {
+    return (OIndexNotUniqueHash) super.create(iName, iIndexDefinition, iDatabase, iClusterIndexName, iClusterIdsToIndex,
+        iProgressListener, OStreamSerializerListRID.INSTANCE);
+  }
+
+  /**
+   * The sets of values are kept in memory by the buckets and browsing them changes their state: lookups are serialized as writes.
+   */
+  public Set<OIdentifiable> get(final Object iKey) {
+    acquireExclusiveLock();
+    try {
+
+      final Set<OIdentifiable> values = map.get(toIndexKey(iKey));
+
+      if (values == null)
+        return Collections.emptySet();
+
+      return new HashSet<OIdentifiable>(values);
+
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public long count(final Object iKey) {
+    acquireExclusiveLock();
+    try {
+
+      final Set<OIdentifiable> values = map.get(toIndexKey(iKey));
+
+      if (values == null)
+        return 0;
+
+      return values.size();
+
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public OIndexNotUniqueHash put(final Object iKey, final OIdentifiable iSingleValue) {
+    modificationLock.requestModificationLock();
+
+    try {
+      acquireExclusiveLock();
+      try {
+
+        checkForKeyType(iKey);
+
+        final Object key = toIndexKey(iKey);
+        Set<OIdentifiable> values = map.get(key);
+
+        if (values == null)
+          values = new OMVRBTreeRIDSet().setAutoConvert(false);
+
+        if (!iSingleValue.getIdentity().isValid())
+          ((ORecord<?>) iSingleValue).save();
+
+        values.add(iSingleValue.getIdentity());
+
+        map.put(key, values);
+        return this;
+
+      } finally {
+        releaseExclusiveLock();
+      }
+    } finally {
+      modificationLock.releaseModificationLock();
+    }
+  }
+
+  @Override
+  public boolean remove(final Object iKey, final OIdentifiable iValue) {
+    modificationLock.requestModificationLock();
+
+    try {
+      acquireExclusiveLock();
+      try {
+
+        final Object key = toIndexKey(iKey);
+        final Set<OIdentifiable> recs = map.get(key);
+
+        if (recs == null)
+          return false;
+
+        if (recs.remove(iValue)) {
+          if (recs.isEmpty())
+            map.remove(key);
+          else
+            map.put(key, recs);
+          return true;
+        }
+        return false;
+
+      } finally {
+        releaseExclusiveLock();
+      }
+    } finally {
+      modificationLock.releaseModificationLock();
+    }
+  }
+
+  public int remove(final OIdentifiable iRecord) {
+    acquireExclusiveLock();
+    try {
+
+      final List<Object> keys = new ArrayList<Object>();
+      for (final Entry<Object, Set<OIdentifiable>> entry : map)
+        if (entry.getValue() != null && entry.getValue().contains(iRecord))
+          keys.add(entry.getKey());
+
+      for (final Object key : keys)
+        remove(key, iRecord);
+
+      return keys.size();
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public int count(final OIdentifiable iRecord) {
+    acquireExclusiveLock();
+    try {
+
+      int tot = 0;
+      for (final Entry<Object, Set<OIdentifiable>> entry : map)
+        if (entry.getValue() != null && entry.getValue().contains(iRecord))
+          ++tot;
+
+      return tot;
+
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public Collection<OIdentifiable> getValues(final Collection<?> iKeys, final int maxValuesToFetch) {
+    acquireExclusiveLock();
+    try {
+
+      final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
+      for (final Object key : iKeys) {
+        final Set<OIdentifiable> values = map.get(toIndexKey(key));
+        if (values == null)
+          continue;
+
+        for (final OIdentifiable value : values) {
+          if (maxValuesToFetch > -1 && maxValuesToFetch == result.size())
+            return result;
+          result.add(value);
+        }
+      }
+
+      return result;
+
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public Collection<ODocument> getEntries(final Collection<?> iKeys, final int maxEntriesToFetch) {
+    acquireExclusiveLock();
+    try {
+
+      final Set<ODocument> result = new ODocumentFieldsHashSet();
+      for (final Object key : iKeys) {
+        final Set<OIdentifiable> values = map.get(toIndexKey(key));
+        if (values == null)
+          continue;
+
+        for (final OIdentifiable value : values) {
+          if (maxEntriesToFetch > -1 && maxEntriesToFetch == result.size())
+            return result;
+
+          final ODocument document = new ODocument();
+          document.field("key", key);
+          document.field("rid", value.getIdentity());
+          document.unsetDirty();
+
+          result.add(document);
+        }
+      }
+
+      return result;
+
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public long getSize() {
+    acquireExclusiveLock();
+    try {
+
+      long size = 0;
+      for (final Entry<Object, Set<OIdentifiable>> entry : map)
+        if (entry.getValue() != null)
+          size += entry.getValue().size();
+
+      return size;
+
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public boolean canBeUsedInEqualityOperators() {
+    return true;
+  }
+}
@@ -50,24 +50,24 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
   }
 
   public OIdentifiable get(final Object iKey) {
-    acquireExclusiveLock();
+    acquireLookupLock();
     try {
 
-      return map.get(iKey);
+      return map.getConcurrent(iKey);
 
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
   public long count(final Object iKey) {
-    acquireExclusiveLock();
+    acquireLookupLock();
     try {
 
-      return map.containsKey(iKey) ? 1 : 0;
+      return map.containsKeyConcurrent(iKey) ? 1 : 0;
 
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
@@ -97,7 +97,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
   public int count(final OIdentifiable iRecord) {
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
     try {
 
       int tot = 0;
@@ -109,7 +109,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
       return tot;
 
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
@@ -148,7 +148,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
     if (iRangeFrom.getClass() != iRangeTo.getClass())
       throw new IllegalArgumentException("Range from-to parameters are of different types");
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -191,12 +191,12 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
   public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive, final int maxValuesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -219,12 +219,12 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
   public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive, final int maxValuesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
 
@@ -250,7 +250,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
   }
 
@@ -258,7 +258,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
     final List<Object> sortedKeys = new ArrayList<Object>(iKeys);
     Collections.sort(sortedKeys, ODefaultComparator.INSTANCE);
 
-    acquireExclusiveLock();
+    acquireLookupLock();
 
     final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
     try {
@@ -266,7 +266,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
         if (maxValuesToSearch > -1 && result.size() == maxValuesToSearch)
           return result;
 
-        final OIdentifiable val = map.get(key);
+        final OIdentifiable val = map.getConcurrent(key);
         if (val != null) {
           result.add(val);
         }
@@ -274,12 +274,12 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
   }
 
   public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive, final int maxEntriesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -308,13 +308,13 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
 
   }
 
   public Collection<ODocument> getEntriesMinor(final Object toKey, final boolean isInclusive, final int maxEntriesToFetch) {
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
 
@@ -345,7 +345,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
 
   }
@@ -355,7 +355,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
     if (iRangeFrom.getClass() != iRangeTo.getClass())
       throw new IllegalArgumentException("Range from-to parameters are of different types");
 
-    acquireExclusiveLock();
+    acquireBrowseLock();
 
     try {
       final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -404,7 +404,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseBrowseLock();
     }
 
   }
@@ -413,7 +413,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
     final List<Object> sortedKeys = new ArrayList<Object>(iKeys);
     Collections.sort(sortedKeys, ODefaultComparator.INSTANCE);
 
-    acquireExclusiveLock();
+    acquireLookupLock();
 
     final Set<ODocument> result = new ODocumentFieldsHashSet();
     try {
@@ -421,7 +421,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
         if (maxEntriesToFetch > -1 && result.size() == maxEntriesToFetch)
           return result;
 
-        final OIdentifiable val = map.get(key);
+        final OIdentifiable val = map.getConcurrent(key);
         if (val != null) {
           final ODocument document = new ODocument();
           document.field("key", key);
@@ -434,7 +434,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
       return result;
     } finally {
-      releaseExclusiveLock();
+      releaseLookupLock();
     }
 
   }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerRID;
+import com.orientechnologies.orient.core.tx.OTransactionIndexChanges;
+import com.orientechnologies.orient.core.tx.OTransactionIndexChanges.OPERATION;
+import com.orientechnologies.orient.core.tx.OTransactionIndexChangesPerKey;
+import com.orientechnologies.orient.core.tx.OTransactionIndexChangesPerKey.OTransactionIndexEntry;
+
+/**
+ * Hash index that allows only one value for a key.
+ */
+public class OIndexUniqueHash extends OIndexHashAbstract<OIdentifiable> {
+
+  public static final String TYPE_ID = OClass.INDEX_TYPE.UNIQUE_HASH.toString();
+
+  public OIndexUniqueHash() {
+    super(TYPE_ID);
+  }
+
+  public OIndexUniqueHash create(final String iName, final OIndexDefinition iIndexDefinition, final ODatabaseRecord iDatabase,
+      final String iClusterIndexName, final int[] iClusterIdsToIndex, final OProgressListener iProgressListener) {
+    return (OIndexUniqueHash) super.create(iName, iIndexDefinition, iDatabase, iClusterIndexName, iClusterIdsToIndex,
+        iProgressListener, OStreamSerializerRID.INSTANCE);
+  }
+
+  public OIdentifiable get(final Object iKey) {
+    acquireSharedLock();
+    try {
+
+      return map.get(toIndexKey(iKey));
+
+    } finally {
+      releaseSharedLock();
+    }
+  }
+
+  public long count(final Object iKey) {
+    return contains(iKey) ? 1 : 0;
+  }
+
+  public OIndexUniqueHash put(final Object iKey, final OIdentifiable iSingleValue) {
+    modificationLock.requestModificationLock();
+
+    try {
+      acquireExclusiveLock();
+      try {
+        checkForKeyType(iKey);
+
+        final Object key = toIndexKey(iKey);
+        final OIdentifiable value = map.get(key);
+
+        if (value != null) {
+          // CHECK IF THE ID IS THE SAME OF CURRENT: THIS IS THE UPDATE CASE
+          if (!value.equals(iSingleValue))
+            throw new OIndexException("Found duplicated key '" + iKey + "' on unique index '" + name + "' for record "
+                + iSingleValue.getIdentity() + ". The record already present in the index is " + value.getIdentity());
+          else
+            return this;
+        }
+
+        if (!iSingleValue.getIdentity().isPersistent())
+          ((ORecord<?>) iSingleValue.getRecord()).save();
+
+        map.put(key, iSingleValue.getIdentity());
+        return this;
+
+      } finally {
+        releaseExclusiveLock();
+      }
+    } finally {
+      modificationLock.releaseModificationLock();
+    }
+  }
+
+  public int remove(final OIdentifiable iRecord) {
+    modificationLock.requestModificationLock();
+
+    try {
+      acquireExclusiveLock();
+      try {
+
+        final Set<Object> keys = new HashSet<Object>();
+        for (final Entry<Object, OIdentifiable> entry : map)
+          if (entry.getValue().equals(iRecord))
+            keys.add(entry.getKey());
+
+        for (final Object key : keys)
+          map.remove(key);
+
+        return keys.size();
+      } finally {
+        releaseExclusiveLock();
+      }
+    } finally {
+      modificationLock.releaseModificationLock();
+    }
+  }
+
+  public int count(final OIdentifiable iRecord) {
+    acquireSharedLock();
+    try {
+
+      int tot = 0;
+      for (final Entry<Object, OIdentifiable> entry : map)
+        if (entry.getValue().equals(iRecord))
+          ++tot;
+
+      return tot;
+
+    } finally {
+      releaseSharedLock();
+    }
+  }
+
+  @Override
+  public void checkEntry(final OIdentifiable iRecord, final Object iKey) {
+    // CHECK IF ALREADY EXIST
+    final OIdentifiable indexedRID = get(iKey);
+    if (indexedRID != null && !indexedRID.getIdentity().equals(iRecord.getIdentity())) {
+      // CHECK IF IN THE SAME TX THE ENTRY WAS DELETED
+      final OTransactionIndexChanges indexChanges = ODatabaseRecordThreadLocal.INSTANCE.get().getTransaction()
+          .getIndexChanges(getName());
+      if (indexChanges != null) {
+        final OTransactionIndexChangesPerKey keyChanges = indexChanges.getChangesPerKey(iKey);
+        if (keyChanges != null) {
+          for (OTransactionIndexEntry entry : keyChanges.entries) {
+            if (entry.operation == OPERATION.REMOVE)
+              // WAS DELETED, OK!
+              return;
+          }
+        }
+      }
+
+      OLogManager.instance().exception("Found duplicated key '%s' previously assigned to the record %s", null,
+          OIndexException.class, iKey, indexedRID);
+    }
+  }
+
+  public Collection<OIdentifiable> getValues(final Collection<?> iKeys, final int maxValuesToFetch) {
+    acquireSharedLock();
+    try {
+
+      final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
+      for (final Object key : iKeys) {
+        if (maxValuesToFetch > -1 && result.size() == maxValuesToFetch)
+          return result;
+
+        final OIdentifiable val = map.get(toIndexKey(key));
+        if (val != null)
+          result.add(val);
+      }
+
+      return result;
+
+    } finally {
+      releaseSharedLock();
+    }
+  }
+
+  public Collection<ODocument> getEntries(final Collection<?> iKeys, final int maxEntriesToFetch) {
+    acquireSharedLock();
+    try {
+
+      final Set<ODocument> result = new ODocumentFieldsHashSet();
+      for (final Object key : iKeys) {
+        if (maxEntriesToFetch > -1 && result.size() == maxEntriesToFetch)
+          return result;
+
+        final OIdentifiable val = map.get(toIndexKey(key));
+        if (val != null) {
+          final ODocument document = new ODocument();
+          document.field("key", key);
+          document.field("rid", val.getIdentity());
+          document.unsetDirty();
+
+          result.add(document);
+        }
+      }
+
+      return result;
+
+    } finally {
+      releaseSharedLock();
+    }
+  }
+
+  public long getSize() {
+    return getKeySize();
+  }
+}
@@ -1,11 +1,21 @@
 package com.orientechnologies.orient.core.intent;
 
 import com.orientechnologies.orient.core.db.raw.ODatabaseRaw;
+import com.orientechnologies.orient.core.storage.fs.OFileScanThreadLocal;
 
+/**
+ * Intent of scanning big portions of the database, like browsing whole clusters. The files read by the current thread are read
+ * ahead in background and the pages it loads in the file page cache are the first to be evicted.
+ */
 public class OIntentMassiveRead implements OIntent {
+	private boolean	previousScanning;
+
 	public void begin(final ODatabaseRaw iDatabase, final Object... iArgs) {
+		previousScanning = OFileScanThreadLocal.INSTANCE.get();
+		OFileScanThreadLocal.INSTANCE.set(Boolean.TRUE);
 	}
 
 	public void end(final ODatabaseRaw iDatabase) {
+		OFileScanThreadLocal.INSTANCE.set(previousScanning);
 	}
 }
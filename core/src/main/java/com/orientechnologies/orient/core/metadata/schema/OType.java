@@ -117,6 +117,13 @@ public enum OType {
     return null;
   }
 
+  /**
+   * Returns the unique id of the type.
+   */
+  public byte getId() {
+    return (byte) id;
+  }
+
   /**
    * Return the correspondent type by checking the "assignability" of the class received as parameter.
    * 
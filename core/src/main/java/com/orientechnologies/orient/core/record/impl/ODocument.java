@@ -376,7 +376,11 @@ public class ODocument extends ORecordSchemaAwareAbstract<Object> implements Ite
 
   @Override
   public byte[] toStream() {
-    if (_recordFormat == null)
+    final ODatabaseRecord database = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+    if (database != null && !database.isClosed())
+      // THE RECORD FORMAT COULD BE CHANGED AFTER THE LOADING: CONVERT THE RECORD ON UPDATE
+      _recordFormat = database.getRecordSerializer();
+    else if (_recordFormat == null)
       setup();
     return super.toStream();
   }
@@ -1214,7 +1218,13 @@ public class ODocument extends ORecordSchemaAwareAbstract<Object> implements Ite
   @Override
   protected void setup() {
     super.setup();
-    _recordFormat = ORecordSerializerFactory.instance().getFormat(ORecordSerializerSchemaAware2CSV.NAME);
+
+    final ODatabaseRecord database = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+    if (database != null && !database.isClosed())
+      // USE THE RECORD FORMAT CONFIGURED IN THE DATABASE
+      _recordFormat = database.getRecordSerializer();
+    else
+      _recordFormat = ORecordSerializerFactory.instance().getFormat(ORecordSerializerSchemaAware2CSV.NAME);
   }
 
   /**
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.serialization;
+
+import com.orientechnologies.orient.core.exception.OSerializationException;
+
+/**
+ * Pure Java implementation of the LZF compression format: fast LZ77 compression that trades some ratio for speed, good for the
+ * verbose text of the serialized records. The stream is a sequence of chunks, each one starting with a control byte:<br/>
+ * <br/>
+ * +------------+------------------------------------------------------------+<br/>
+ * | 000LLLLL . | L+1 literal bytes follow (1-32) .......................... |<br/>
+ * | LLLOOOOO . | back reference of L+2 bytes (3-8), 1 more byte of offset . |<br/>
+ * | 111OOOOO . | back reference, 1 byte of length-9 and 1 byte of offset .. |<br/>
+ * +------------+------------------------------------------------------------+<br/>
+ * <br/>
+ * The offset of the back references is the distance from the current position minus 1, up to 8191 bytes.
+ */
+public class OLZFCompression {
+  private static final int               HASH_LOG    = 14;
+  private static final int               HASH_SIZE   = 1 << HASH_LOG;
+  private static final int               MAX_LITERAL = 1 << 5;
+  private static final int               MAX_OFFSET  = 1 << 13;
+  private static final int               MAX_REF     = (1 << 8) + (1 << 3);
+
+  private static final ThreadLocal<int[]> hashTables  = new ThreadLocal<int[]>() {
+                                                       @Override
+                                                       protected int[] initialValue() {
+                                                         return new int[HASH_SIZE];
+                                                       }
+                                                     };
+
+  /**
+   * Compresses the content in a buffer.
+   * 
+   * @param iContent
+   *          Content to compress
+   * @param iOutput
+   *          Buffer to write the compressed content to
+   * @param iOutputOffset
+   *          Offset of the buffer to start writing from
+   * @return The offset after the last byte written, or -1 if the compressed content does not fit in the buffer
+   */
+  public static int compress(final byte[] iContent, final byte[] iOutput, final int iOutputOffset) {
+    // THE TABLE IS REUSED: THE POSITIONS LEFT BY THE PREVIOUS CONTENTS ARE DISCARDED COMPARING THE BYTES
+    final int[] hashTable = hashTables.get();
+    final int length = iContent.length;
+    final int outputEnd = iOutput.length;
+
+    int in = 0;
+    int out = iOutputOffset;
+    int literals = 0;
+
+    if (out >= outputEnd)
+      return -1;
+    int literalsLength = out++;
+
+    while (in < length - 2) {
+      final int slot = hash(iContent, in);
+      final int ref = hashTable[slot];
+      hashTable[slot] = in;
+
+      final int offset = in - ref - 1;
+      if (ref < in && offset < MAX_OFFSET && iContent[ref] == iContent[in] && iContent[ref + 1] == iContent[in + 1]
+          && iContent[ref + 2] == iContent[in + 2]) {
+        // BACK REFERENCE
+        int matched = 3;
+        final int maxMatched = Math.min(MAX_REF, length - in);
+        while (matched < maxMatched && iContent[ref + matched] == iContent[in + matched])
+          matched++;
+
+        if (out + 4 > outputEnd)
+          return -1;
+
+        if (literals == 0)
+          // NO LITERALS BEFORE: REUSE THEIR CONTROL BYTE
+          out--;
+        else
+          iOutput[literalsLength] = (byte) (literals - 1);
+
+        final int l = matched - 2;
+        if (l < 7)
+          iOutput[out++] = (byte) ((offset >> 8) + (l << 5));
+        else {
+          iOutput[out++] = (byte) ((offset >> 8) + (7 << 5));
+          iOutput[out++] = (byte) (l - 7);
+        }
+        iOutput[out++] = (byte) offset;
+
+        literals = 0;
+        literalsLength = out++;
+
+        // INDEX THE POSITIONS INSIDE THE MATCH TOO
+        final int end = in + matched;
+        for (++in; in < end && in < length - 2; ++in)
+          hashTable[hash(iContent, in)] = in;
+        in = end;
+
+      } else {
+        if (out >= outputEnd)
+          return -1;
+
+        iOutput[out++] = iContent[in++];
+        if (++literals == MAX_LITERAL) {
+          if (out >= outputEnd)
+            return -1;
+          iOutput[literalsLength] = (byte) (MAX_LITERAL - 1);
+          literals = 0;
+          literalsLength = out++;
+        }
+      }
+    }
+
+    // THE LAST BYTES ARE ALWAYS LITERALS
+    while (in < length) {
+      if (out >= outputEnd)
+        return -1;
+
+      iOutput[out++] = iContent[in++];
+      if (++literals == MAX_LITERAL && in < length) {
+        if (out >= outputEnd)
+          return -1;
+        iOutput[literalsLength] = (byte) (MAX_LITERAL - 1);
+        literals = 0;
+        literalsLength = out++;
+      }
+    }
+
+    if (literals == 0)
+      out--;
+    else
+      iOutput[literalsLength] = (byte) (literals - 1);
+
+    return out;
+  }
+
+  /**
+   * Decompresses a content.
+   * 
+   * @param iInput
+   *          Buffer containing the compressed content
+   * @param iOffset
+   *          Offset of the compressed content in the buffer
+   * @param iLength
+   *          Length of the compressed content
+   * @param iOutput
+   *          Buffer to write the content to, exactly as long as the content
+   * @throws OSerializationException
+   *           if the compressed content is corrupted
+   */
+  public static void decompress(final byte[] iInput, final int iOffset, final int iLength, final byte[] iOutput) {
+    final int inputEnd = iOffset + iLength;
+    final int outputEnd = iOutput.length;
+
+    int in = iOffset;
+    int out = 0;
+    while (in < inputEnd) {
+      final int control = iInput[in++] & 0xff;
+
+      if (control < MAX_LITERAL) {
+        final int literals = control + 1;
+        if (in + literals > inputEnd || out + literals > outputEnd)
+          throw new OSerializationException("Corrupted compressed content: literals out of bounds at offset " + (in - iOffset));
+
+        System.arraycopy(iInput, in, iOutput, out, literals);
+        in += literals;
+        out += literals;
+
+      } else {
+        int length = control >> 5;
+        if (length == 7) {
+          if (in >= inputEnd)
+            throw new OSerializationException("Corrupted compressed content: truncated at offset " + (in - iOffset));
+          length += iInput[in++] & 0xff;
+        }
+        length += 2;
+
+        if (in >= inputEnd)
+          throw new OSerializationException("Corrupted compressed content: truncated at offset " + (in - iOffset));
+
+        int ref = out - ((control & 0x1f) << 8) - (iInput[in++] & 0xff) - 1;
+        if (ref < 0 || out + length > outputEnd)
+          throw new OSerializationException("Corrupted compressed content: back reference out of bounds at offset "
+              + (in - iOffset));
+
+        // THE REFERENCE CAN OVERLAP THE BYTES BEING WRITTEN: COPY ONE BYTE AT A TIME
+        for (int i = 0; i < length; ++i)
+          iOutput[out++] = iOutput[ref++];
+      }
+    }
+
+    if (out != outputEnd)
+      throw new OSerializationException("Corrupted compressed content: found " + out + " bytes instead of " + outputEnd);
+  }
+
+  private static int hash(final byte[] iContent, final int iOffset) {
+    final int value = ((iContent[iOffset] & 0xff) << 16) | ((iContent[iOffset + 1] & 0xff) << 8) | (iContent[iOffset + 2] & 0xff);
+    return (value * -1640531535) >>> (32 - HASH_LOG);
+  }
+}
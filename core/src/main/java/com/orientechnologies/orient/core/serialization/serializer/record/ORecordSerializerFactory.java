@@ -17,8 +17,10 @@ package com.orientechnologies.orient.core.serialization.serializer.record;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
+import com.orientechnologies.orient.core.serialization.serializer.record.binary.ORecordSerializerBinary;
 import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerJSON;
 import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerSchemaAware2CSV;
 
@@ -29,15 +31,17 @@ import com.orientechnologies.orient.core.serialization.serializer.record.string.
  * 
  */
 public class ORecordSerializerFactory {
-	private static final ORecordSerializerFactory	instance				= new ORecordSerializerFactory();
+	public static final String										DOCUMENT_FORMAT_PREFIX	= "ORecordDocument2";
+	private static final ORecordSerializerFactory	instance								= new ORecordSerializerFactory();
 
-	private Map<String, ORecordSerializer>				implementations	= new HashMap<String, ORecordSerializer>();
+	private Map<String, ORecordSerializer>				implementations					= new HashMap<String, ORecordSerializer>();
 	private ORecordSerializer											defaultRecordFormat;
 
 	public ORecordSerializerFactory() {
 		defaultRecordFormat = new ORecordSerializerRaw();
 
 		register(ORecordSerializerSchemaAware2CSV.NAME, new ORecordSerializerSchemaAware2CSV());
+		register(ORecordSerializerBinary.NAME, ORecordSerializerBinary.INSTANCE);
 		register(ORecordSerializerJSON.NAME, new ORecordSerializerJSON());
 		register(ORecordSerializerRaw.NAME, defaultRecordFormat);
 	}
@@ -65,6 +69,20 @@ public class ORecordSerializerFactory {
 		return implementations.get(iFormatName);
 	}
 
+	/**
+	 * Returns the document serializer by the name stored in the database configuration.
+	 * 
+	 * @param iFormatName
+	 *          Short name of the format, such as "csv" or "binary"
+	 * @return The serializer if any, otherwise null
+	 */
+	public ORecordSerializer getDocumentFormat(final String iFormatName) {
+		if (iFormatName == null)
+			return null;
+
+		return implementations.get(DOCUMENT_FORMAT_PREFIX + iFormatName.toLowerCase(Locale.ENGLISH));
+	}
+
 	public ORecordSerializer getFormatForObject(final Object iObject, final String iFormatName) {
 		if (iObject == null)
 			return null;
@@ -0,0 +1,759 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.serialization.serializer.record.binary;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.orientechnologies.common.collection.OLazyIterator;
+import com.orientechnologies.common.collection.OMultiValue;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.db.record.ORecordElement;
+import com.orientechnologies.orient.core.db.record.ORecordElement.STATUS;
+import com.orientechnologies.orient.core.db.record.ORecordLazyList;
+import com.orientechnologies.orient.core.db.record.ORecordLazyMap;
+import com.orientechnologies.orient.core.db.record.OTrackedList;
+import com.orientechnologies.orient.core.db.record.OTrackedMap;
+import com.orientechnologies.orient.core.db.record.OTrackedSet;
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OProperty;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.profiler.OJVMProfiler;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+import com.orientechnologies.orient.core.serialization.OSerializableStream;
+import com.orientechnologies.orient.core.serialization.serializer.record.ORecordSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.record.OSerializationThreadLocal;
+import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerCSVAbstract;
+import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerSchemaAware2CSV;
+import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
+
+/**
+ * Binary serializer of documents. Values are written with their OType, numbers and RIDs as variable length integers. The header
+ * maps every field name to the offset of its value, so a single field can be read without parsing the entire record. Streams that
+ * don't start with the binary marker are delegated to the CSV serializer, so a database can contain records in both formats.<br/>
+ * <br/>
+ * Record format:<br/>
+ * <code>
+ * marker(1) class-name(string) field-count(varint) [field-name(string) type(1) value-offset(varint)]* [value]* end(1)
+ * </code>
+ * 
+ * @author Luca Garulli (l.garulli--at--orientechnologies.com)
+ * 
+ */
+@SuppressWarnings("unchecked")
+public class ORecordSerializerBinary implements ORecordSerializer {
+  public static final String                  NAME          = "ORecordDocument2binary";
+  public static final ORecordSerializerBinary INSTANCE      = new ORecordSerializerBinary();
+
+  public static final byte                    FORMAT_MARKER = 0;
+  protected static final byte                 NULL_TYPE     = -1;
+  protected static final byte                 END           = 0;
+  protected static final OJVMProfiler         PROFILER      = Orient.instance().getProfiler();
+
+  /**
+   * Tells if the stream has been written by this serializer.
+   */
+  public static boolean isBinary(final byte[] iSource) {
+    return iSource != null && iSource.length > 0 && iSource[0] == FORMAT_MARKER;
+  }
+
+  public ORecordInternal<?> fromStream(final byte[] iSource, final ORecordInternal<?> iRecord, final String[] iFields) {
+    if (iSource == null || iSource.length == 0)
+      return iRecord;
+
+    if (!isBinary(iSource))
+      // RECORD STORED BEFORE THE SWITCH TO THE BINARY FORMAT
+      return ORecordSerializerSchemaAware2CSV.INSTANCE.fromStream(iSource, iRecord, iFields);
+
+    final long timer = PROFILER.startChrono();
+    try {
+      return documentFromStream(new OBinaryInput(iSource, 1), (ODocument) iRecord, iFields);
+    } finally {
+      PROFILER.stopChrono(PROFILER.getProcessMetric("serializer.record.binary.fromStream"), timer);
+    }
+  }
+
+  public byte[] toStream(final ORecordInternal<?> iRecord, final boolean iOnlyDelta) {
+    if (iRecord == null)
+      throw new OSerializationException("Expected a record but was null");
+
+    if (!(iRecord instanceof ODocument))
+      throw new OSerializationException("Cannot marshall a record of type " + iRecord.getClass().getSimpleName());
+
+    final long timer = PROFILER.startChrono();
+    try {
+      final ODocument record = (ODocument) iRecord;
+      final OMemoryStream output = new OMemoryStream(128);
+      documentToStream(output, record, OSerializationThreadLocal.INSTANCE.get());
+
+      // APPEND BLANKS IF NEEDED TO FILL ALL THE AVAILABLE SPACE AND AVOID FRAGMENTATION
+      final float overSize = record.getSchemaClass() != null ? record.getSchemaClass().getOverSize() : 0;
+      final int newSize;
+      if (record.hasOwners())
+        newSize = output.size();
+      else if (record.getSize() > output.size())
+        newSize = record.getSize();
+      else if (overSize > 0)
+        newSize = (int) (output.size() * overSize);
+      else
+        newSize = output.size();
+
+      final byte[] result = new byte[newSize];
+      System.arraycopy(output.getInternalBuffer(), 0, result, 0, output.size());
+      for (int i = output.size(); i < newSize; ++i)
+        result[i] = ' ';
+      return result;
+
+    } finally {
+      PROFILER.stopChrono(PROFILER.getProcessMetric("serializer.record.binary.toStream"), timer);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return NAME;
+  }
+
+  protected ODocument documentFromStream(final OBinaryInput iInput, final ODocument iRecord, final String[] iFields) {
+    // UNMARSHALL THE CLASS NAME
+    final String className = iInput.readString();
+    iRecord.setClassNameIfExists(className.length() > 0 ? className : null);
+
+    if (iFields != null && iFields.length == 1 && iFields[0].equals("@class"))
+      // ONLY THE CLASS NAME HAS BEEN REQUESTED: RETURN NOW WITHOUT UNMARSHALL THE ENTIRE RECORD
+      return iRecord;
+
+    // READ THE HEADER
+    final int fieldCount = iInput.readVarInt();
+    final String[] names = new String[fieldCount];
+    final byte[] types = new byte[fieldCount];
+    final int[] offsets = new int[fieldCount];
+    for (int i = 0; i < fieldCount; ++i) {
+      names[i] = iInput.readString();
+      types[i] = iInput.readByte();
+      if (types[i] != NULL_TYPE)
+        offsets[i] = iInput.readVarInt();
+    }
+
+    final int dataBegin = iInput.position;
+
+    // UNMARSHALL THE FIELDS, JUMPING DIRECTLY TO THE REQUESTED ONES
+    for (int i = 0; i < fieldCount; ++i) {
+      final String fieldName = names[i];
+
+      if (iRecord.containsField(fieldName))
+        // ALREADY UNMARSHALLED: DON'T OVERWRITE IT
+        continue;
+
+      if (iFields != null && iFields.length > 0) {
+        // CHECK IF THE FIELS IS REQUESTED TO BEING UNMARSHALLED
+        boolean found = false;
+        for (String f : iFields)
+          if (f.equals(fieldName)) {
+            found = true;
+            break;
+          }
+
+        if (!found)
+          // SKIP IT
+          continue;
+      }
+
+      try {
+        if (types[i] == NULL_TYPE) {
+          iRecord.field(fieldName, (Object) null);
+          continue;
+        }
+
+        final OType type = OType.getById(types[i]);
+        iInput.position = dataBegin + offsets[i];
+        final Object value = valueFromStream(iInput, iRecord, iRecord, type);
+
+        if (iRecord.fieldType(fieldName) != null || type == OType.EMBEDDEDLIST || type == OType.EMBEDDEDSET
+            || type == OType.EMBEDDEDMAP || type == OType.EMBEDDED)
+          // SAVE THE TYPE AS EMBEDDED
+          iRecord.field(fieldName, value, type);
+        else
+          iRecord.field(fieldName, value);
+
+      } catch (Exception e) {
+        OLogManager.instance().exception("Error on unmarshalling field '%s' in record %s", e, OSerializationException.class,
+            fieldName, iRecord.getIdentity());
+      }
+    }
+
+    return iRecord;
+  }
+
+  protected void documentToStream(final OMemoryStream iOutput, final ODocument iRecord, final Set<Integer> iMarshalledRecords) {
+    // CHECK IF THE RECORD IS PENDING TO BE MARSHALLED
+    final Integer identityRecord = System.identityHashCode(iRecord);
+    if (iMarshalledRecords != null)
+      iMarshalledRecords.add(identityRecord);
+
+    try {
+      final OMemoryStream header = new OMemoryStream(64);
+      final OMemoryStream values = new OMemoryStream(128);
+      final StringBuilder linkBuffer = new StringBuilder();
+
+      int fieldCount = 0;
+      for (String fieldName : iRecord.fieldNames()) {
+        final Object fieldValue = iRecord.rawField(fieldName);
+
+        final OType type = getFieldType(iRecord, fieldName, fieldValue);
+        if (type == OType.TRANSIENT)
+          // TRANSIENT FIELD
+          continue;
+
+        writeString(header, fieldName);
+        if (fieldValue == null)
+          header.write(NULL_TYPE);
+        else {
+          header.write(type.getId());
+          writeVarInt(header, values.size());
+          valueToStream(values, iRecord, fieldName, type, fieldValue, iMarshalledRecords, linkBuffer);
+        }
+        fieldCount++;
+      }
+
+      iOutput.write(FORMAT_MARKER);
+      writeString(iOutput, iRecord.getSchemaClass() != null ? iRecord.getSchemaClass().getStreamableName() : "");
+      writeVarInt(iOutput, fieldCount);
+      iOutput.write(header.getInternalBuffer(), 0, header.size());
+      iOutput.write(values.getInternalBuffer(), 0, values.size());
+      iOutput.write(END);
+
+    } finally {
+      if (iMarshalledRecords != null)
+        iMarshalledRecords.remove(identityRecord);
+    }
+  }
+
+  protected Object valueFromStream(final OBinaryInput iInput, final ODocument iRecord, final ORecordElement iOwner,
+      final OType iType) {
+    switch (iType) {
+    case BOOLEAN:
+      return iInput.readByte() != 0;
+    case BYTE:
+      return iInput.readByte();
+    case SHORT:
+      return (short) iInput.readSignedVarLong();
+    case INTEGER:
+      return (int) iInput.readSignedVarLong();
+    case LONG:
+      return iInput.readSignedVarLong();
+    case FLOAT:
+      return Float.intBitsToFloat(iInput.readInt());
+    case DOUBLE:
+      return Double.longBitsToDouble(iInput.readLong());
+    case DATE:
+    case DATETIME:
+      return new Date(iInput.readSignedVarLong());
+    case STRING:
+      return iInput.readString();
+    case BINARY:
+      return iInput.readBytes();
+    case DECIMAL: {
+      final int scale = (int) iInput.readSignedVarLong();
+      return new BigDecimal(new BigInteger(iInput.readBytes()), scale);
+    }
+
+    case LINK: {
+      final ORecordId rid = iInput.readRid();
+      return rid.isValid() ? rid : null;
+    }
+
+    case LINKLIST: {
+      final int size = iInput.readVarInt();
+      final ORecordLazyList list = new ORecordLazyList(iRecord);
+      list.setInternalStatus(STATUS.UNMARSHALLING);
+      for (int i = 0; i < size; ++i)
+        list.add(iInput.readRid());
+      list.setInternalStatus(STATUS.LOADED);
+      return list;
+    }
+
+    case LINKSET:
+      return new OMVRBTreeRIDSet(iRecord).fromStream(new StringBuilder(iInput.readString()));
+
+    case LINKMAP: {
+      final int size = iInput.readVarInt();
+      final ORecordLazyMap map = new ORecordLazyMap(iRecord, ODocument.RECORD_TYPE);
+      map.setInternalStatus(STATUS.UNMARSHALLING);
+      for (int i = 0; i < size; ++i) {
+        final String key = iInput.readString();
+        map.put(key, iInput.readRid());
+      }
+      map.setInternalStatus(STATUS.LOADED);
+      return map;
+    }
+
+    case EMBEDDED: {
+      final byte[] content = iInput.readBytes();
+      if (content.length == 0)
+        return null;
+      return new ODocument().fromStream(content).addOwner(iOwner);
+    }
+
+    case EMBEDDEDLIST: {
+      final int size = iInput.readVarInt();
+      final OTrackedList<Object> list = new OTrackedList<Object>(iRecord);
+      list.setInternalStatus(STATUS.UNMARSHALLING);
+      for (int i = 0; i < size; ++i)
+        list.add(itemFromStream(iInput, iRecord, list));
+      list.setInternalStatus(STATUS.LOADED);
+      return list;
+    }
+
+    case EMBEDDEDSET: {
+      final int size = iInput.readVarInt();
+      final OTrackedSet<Object> set = new OTrackedSet<Object>(iRecord);
+      set.setInternalStatus(STATUS.UNMARSHALLING);
+      for (int i = 0; i < size; ++i)
+        set.add(itemFromStream(iInput, iRecord, set));
+      set.setInternalStatus(STATUS.LOADED);
+      return set;
+    }
+
+    case EMBEDDEDMAP: {
+      final int size = iInput.readVarInt();
+      final OTrackedMap<Object> map = new OTrackedMap<Object>(iRecord);
+      map.setInternalStatus(STATUS.UNMARSHALLING);
+      for (int i = 0; i < size; ++i) {
+        final String key = iInput.readString();
+        map.put(key, itemFromStream(iInput, iRecord, iRecord));
+      }
+      map.setInternalStatus(STATUS.LOADED);
+      return map;
+    }
+
+    case CUSTOM: {
+      final String className = iInput.readString();
+      final byte[] content = iInput.readBytes();
+      try {
+        final OSerializableStream instance = (OSerializableStream) Class.forName(className).newInstance();
+        return instance.fromStream(content);
+      } catch (Exception e) {
+        throw new OSerializationException("Error on unmarshalling content. Class: " + className, e);
+      }
+    }
+
+    default:
+      throw new OSerializationException("Type " + iType + " not supported by the binary serializer");
+    }
+  }
+
+  protected void valueToStream(final OMemoryStream iOutput, final ODocument iRecord, final String iFieldName, final OType iType,
+      final Object iValue, final Set<Integer> iMarshalledRecords, final StringBuilder iLinkBuffer) {
+    switch (iType) {
+    case BOOLEAN:
+      iOutput.write(iValue instanceof Boolean ? (((Boolean) iValue) ? 1 : 0) : (Boolean.parseBoolean(iValue.toString()) ? 1 : 0));
+      break;
+    case BYTE:
+      iOutput.write(((Number) iValue).byteValue());
+      break;
+    case SHORT:
+    case INTEGER:
+    case LONG:
+      writeSignedVarLong(iOutput, ((Number) iValue).longValue());
+      break;
+    case FLOAT:
+      writeInt(iOutput, Float.floatToIntBits(((Number) iValue).floatValue()));
+      break;
+    case DOUBLE:
+      writeLong(iOutput, Double.doubleToLongBits(((Number) iValue).doubleValue()));
+      break;
+    case DATE:
+    case DATETIME:
+      writeSignedVarLong(iOutput, iValue instanceof Date ? ((Date) iValue).getTime() : ((Number) iValue).longValue());
+      break;
+    case STRING:
+      writeString(iOutput, iValue instanceof Enum<?> ? ((Enum<?>) iValue).name() : iValue.toString());
+      break;
+    case BINARY:
+      writeBytes(iOutput, (byte[]) iValue);
+      break;
+    case DECIMAL: {
+      final BigDecimal decimal = iValue instanceof BigDecimal ? (BigDecimal) iValue : new BigDecimal(iValue.toString());
+      writeSignedVarLong(iOutput, decimal.scale());
+      writeBytes(iOutput, decimal.unscaledValue().toByteArray());
+      break;
+    }
+
+    case LINK: {
+      final OIdentifiable link = linkToStream(iOutput, iRecord, iValue, iLinkBuffer);
+      if (link != null && iFieldName != null)
+        // OVERWRITE CONTENT
+        iRecord.field(iFieldName, link);
+      break;
+    }
+
+    case LINKLIST: {
+      writeVarInt(iOutput, OMultiValue.getSize(iValue));
+      if (iValue instanceof ORecordLazyList) {
+        final ORecordLazyList coll = (ORecordLazyList) iValue;
+        for (Iterator<OIdentifiable> it = coll.rawIterator(); it.hasNext();) {
+          final OIdentifiable newRid = linkToStream(iOutput, iRecord, it.next(), iLinkBuffer);
+          if (newRid != null)
+            ((OLazyIterator<OIdentifiable>) it).update(newRid);
+        }
+        coll.convertRecords2Links();
+      } else
+        for (Iterator<Object> it = OMultiValue.getMultiValueIterator(iValue); it.hasNext();)
+          linkToStream(iOutput, iRecord, it.next(), iLinkBuffer);
+      break;
+    }
+
+    case LINKSET: {
+      final OMVRBTreeRIDSet coll;
+      if (!(iValue instanceof OMVRBTreeRIDSet)) {
+        // FIRST TIME: CONVERT THE ENTIRE COLLECTION
+        coll = new OMVRBTreeRIDSet(iRecord, (Collection<OIdentifiable>) iValue);
+        if (iFieldName != null) {
+          ((Collection<? extends OIdentifiable>) iValue).clear();
+          iRecord.field(iFieldName, coll);
+        }
+      } else
+        // LAZY SET
+        coll = (OMVRBTreeRIDSet) iValue;
+
+      final StringBuilder buffer = new StringBuilder();
+      coll.toStream(buffer);
+      writeString(iOutput, buffer.toString());
+      break;
+    }
+
+    case LINKMAP: {
+      final Map<Object, Object> map = (Map<Object, Object>) iValue;
+
+      final boolean autoConvert = iValue instanceof ORecordLazyMap && ((ORecordLazyMap) iValue).isAutoConvertToRecord();
+      if (autoConvert)
+        // DISABLE AUTO CONVERT
+        ((ORecordLazyMap) iValue).setAutoConvertToRecord(false);
+
+      boolean invalidMap = false;
+      try {
+        writeVarInt(iOutput, map.size());
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+          writeString(iOutput, entry.getKey().toString());
+          if (linkToStream(iOutput, iRecord, entry.getValue(), iLinkBuffer) != null)
+            // IDENTITY IS CHANGED, RE-SET INTO THE COLLECTION TO RECOMPUTE THE HASH
+            invalidMap = true;
+        }
+      } finally {
+        if (autoConvert)
+          ((ORecordLazyMap) iValue).setAutoConvertToRecord(true);
+      }
+
+      if (invalidMap && iFieldName != null) {
+        final ORecordLazyMap newMap = new ORecordLazyMap(iRecord, ODocument.RECORD_TYPE);
+
+        // REPLACE ALL CHANGED ITEMS
+        for (Map.Entry<Object, Object> entry : map.entrySet())
+          newMap.put(entry.getKey(), (OIdentifiable) entry.getValue());
+        map.clear();
+        iRecord.field(iFieldName, newMap);
+      }
+      break;
+    }
+
+    case EMBEDDED: {
+      if (!(iValue instanceof ODocument))
+        throw new OSerializationException("Cannot marshall the embedded value " + iValue + " in the binary format");
+
+      if (iMarshalledRecords != null && iMarshalledRecords.contains(System.identityHashCode(iValue))) {
+        // CIRCULAR REFERENCE: WRITE IT AS NULL
+        writeVarInt(iOutput, 0);
+        break;
+      }
+
+      final OMemoryStream embedded = new OMemoryStream(64);
+      documentToStream(embedded, (ODocument) iValue, iMarshalledRecords);
+      writeVarInt(iOutput, embedded.size());
+      iOutput.write(embedded.getInternalBuffer(), 0, embedded.size());
+      break;
+    }
+
+    case EMBEDDEDLIST:
+    case EMBEDDEDSET:
+      writeVarInt(iOutput, OMultiValue.getSize(iValue));
+      for (Iterator<Object> it = OMultiValue.getMultiValueIterator(iValue); it.hasNext();)
+        itemToStream(iOutput, iRecord, it.next(), iMarshalledRecords, iLinkBuffer);
+      break;
+
+    case EMBEDDEDMAP: {
+      final Map<Object, Object> map = (Map<Object, Object>) iValue;
+      writeVarInt(iOutput, map.size());
+      for (Map.Entry<Object, Object> entry : map.entrySet()) {
+        writeString(iOutput, entry.getKey().toString());
+        itemToStream(iOutput, iRecord, entry.getValue(), iMarshalledRecords, iLinkBuffer);
+      }
+      break;
+    }
+
+    case CUSTOM: {
+      if (!(iValue instanceof OSerializableStream))
+        throw new OSerializationException("Cannot serialize the object since it's not implements the OSerializableStream interface");
+      writeString(iOutput, iValue.getClass().getName());
+      writeBytes(iOutput, ((OSerializableStream) iValue).toStream());
+      break;
+    }
+
+    default:
+      throw new OSerializationException("Type " + iType + " not supported by the binary serializer");
+    }
+  }
+
+  protected Object itemFromStream(final OBinaryInput iInput, final ODocument iRecord, final ORecordElement iOwner) {
+    final byte typeId = iInput.readByte();
+    if (typeId == NULL_TYPE)
+      return null;
+    return valueFromStream(iInput, iRecord, iOwner, OType.getById(typeId));
+  }
+
+  protected void itemToStream(final OMemoryStream iOutput, final ODocument iRecord, final Object iItem,
+      final Set<Integer> iMarshalledRecords, final StringBuilder iLinkBuffer) {
+    if (iItem == null) {
+      iOutput.write(NULL_TYPE);
+      return;
+    }
+
+    final OType type;
+    if (iItem instanceof ODocument)
+      type = ((ODocument) iItem).hasOwners() || !((ODocument) iItem).getIdentity().isValid() ? OType.EMBEDDED : OType.LINK;
+    else
+      type = getValueType(iItem);
+
+    if (type == null)
+      throw new OSerializationException("Cannot marshall the value " + iItem + " of class " + iItem.getClass().getName()
+          + " in the binary format");
+
+    iOutput.write(type.getId());
+    valueToStream(iOutput, iRecord, null, type, iItem, iMarshalledRecords, iLinkBuffer);
+  }
+
+  /**
+   * Determines the type of a field: by the schema property if any, then by the type forced on the document and at last by the
+   * value.
+   */
+  protected OType getFieldType(final ODocument iRecord, final String iFieldName, final Object iValue) {
+    final OClass cls = iRecord.getSchemaClass();
+    final OProperty prop = cls != null ? cls.getProperty(iFieldName) : null;
+
+    OType type = prop != null ? prop.getType() : iRecord.fieldType(iFieldName);
+
+    if (type == null && iValue != null) {
+      type = getValueType(iValue);
+      if (type == null)
+        throw new OSerializationException("Cannot marshall the field '" + iFieldName + "' with value of class "
+            + iValue.getClass().getName() + " in the binary format");
+    }
+
+    if (type == OType.LINK && iValue instanceof ODocument && !iRecord.getIdentity().isValid() && iRecord.isEmbedded())
+      // WRONG: IT'S EMBEDDED!
+      type = OType.EMBEDDED;
+
+    return type;
+  }
+
+  protected OType getValueType(final Object iValue) {
+    if (iValue instanceof ORID)
+      return OType.LINK;
+    else if (iValue instanceof ODocument)
+      return ((ODocument) iValue).hasOwners() ? OType.EMBEDDED : OType.LINK;
+    else if (iValue instanceof ORecord<?>)
+      return OType.LINK;
+    else if (iValue instanceof ORecordLazyList)
+      return OType.LINKLIST;
+    else if (iValue instanceof OMVRBTreeRIDSet)
+      return OType.LINKSET;
+    else if (iValue instanceof ORecordLazyMap)
+      return OType.LINKMAP;
+    else if (iValue instanceof Collection<?> || iValue.getClass().isArray() && iValue.getClass() != byte[].class) {
+      final boolean links = isLink(OMultiValue.getFirstValue(iValue));
+      if (iValue instanceof Set<?>)
+        return links ? OType.LINKSET : OType.EMBEDDEDSET;
+      return links ? OType.LINKLIST : OType.EMBEDDEDLIST;
+    } else if (iValue instanceof Map<?, ?>)
+      return isLink(OMultiValue.getFirstValue(iValue)) ? OType.LINKMAP : OType.EMBEDDEDMAP;
+    else if (iValue instanceof Enum<?>)
+      return OType.STRING;
+    else if (iValue instanceof BigInteger)
+      return OType.LONG;
+    else if (iValue instanceof OSerializableStream)
+      return OType.CUSTOM;
+
+    return OType.getTypeByClass(iValue.getClass());
+  }
+
+  private static boolean isLink(final Object iValue) {
+    return iValue instanceof ORID || iValue instanceof ODocument && !((ODocument) iValue).isEmbedded()
+        && ((ODocument) iValue).getIdentity().isValid();
+  }
+
+  /**
+   * Saves the linked record if it's new or dirty and writes its RID.
+   * 
+   * @return The identity to replace in the parent record if it's changed, otherwise null
+   */
+  private static OIdentifiable linkToStream(final OMemoryStream iOutput, final ODocument iParentRecord, final Object iLinked,
+      final StringBuilder iLinkBuffer) {
+    iLinkBuffer.setLength(0);
+    final OIdentifiable result = ORecordSerializerCSVAbstract.linkToStream(iLinkBuffer, iParentRecord, iLinked);
+
+    final ORID rid;
+    if (result != null)
+      rid = result.getIdentity();
+    else if (iLinked instanceof OIdentifiable)
+      rid = ((OIdentifiable) iLinked).getIdentity();
+    else
+      rid = iLinkBuffer.length() > 0 ? new ORecordId(iLinkBuffer.toString()) : null;
+
+    if (rid != null && rid.isValid()) {
+      writeSignedVarLong(iOutput, rid.getClusterId());
+      writeSignedVarLong(iOutput, rid.getClusterPosition());
+    } else {
+      writeSignedVarLong(iOutput, ORID.CLUSTER_ID_INVALID);
+      writeSignedVarLong(iOutput, ORID.CLUSTER_POS_INVALID);
+    }
+    return result;
+  }
+
+  protected static void writeVarInt(final OMemoryStream iOutput, int iValue) {
+    while ((iValue & ~0x7F) != 0) {
+      iOutput.write((iValue & 0x7F) | 0x80);
+      iValue >>>= 7;
+    }
+    iOutput.write(iValue);
+  }
+
+  protected static void writeSignedVarLong(final OMemoryStream iOutput, final long iValue) {
+    // ZIG-ZAG ENCODING TO KEEP SMALL NEGATIVE NUMBERS SHORT
+    long value = (iValue << 1) ^ (iValue >> 63);
+    while ((value & ~0x7FL) != 0) {
+      iOutput.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    iOutput.write((int) value);
+  }
+
+  protected static void writeInt(final OMemoryStream iOutput, final int iValue) {
+    iOutput.write(iValue >>> 24);
+    iOutput.write(iValue >>> 16);
+    iOutput.write(iValue >>> 8);
+    iOutput.write(iValue);
+  }
+
+  protected static void writeLong(final OMemoryStream iOutput, final long iValue) {
+    writeInt(iOutput, (int) (iValue >>> 32));
+    writeInt(iOutput, (int) iValue);
+  }
+
+  protected static void writeBytes(final OMemoryStream iOutput, final byte[] iValue) {
+    writeVarInt(iOutput, iValue.length);
+    iOutput.write(iValue, 0, iValue.length);
+  }
+
+  protected static void writeString(final OMemoryStream iOutput, final String iValue) {
+    writeBytes(iOutput, OBinaryProtocol.string2bytes(iValue));
+  }
+
+  /**
+   * Cursor over a record content.
+   */
+  protected static class OBinaryInput {
+    protected final byte[] buffer;
+    protected int          position;
+
+    public OBinaryInput(final byte[] iBuffer, final int iPosition) {
+      buffer = iBuffer;
+      position = iPosition;
+    }
+
+    public byte readByte() {
+      return buffer[position++];
+    }
+
+    public int readVarInt() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buffer[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    public long readSignedVarLong() {
+      long value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buffer[position++];
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    public int readInt() {
+      final int value = (buffer[position] & 0xFF) << 24 | (buffer[position + 1] & 0xFF) << 16
+          | (buffer[position + 2] & 0xFF) << 8 | (buffer[position + 3] & 0xFF);
+      position += 4;
+      return value;
+    }
+
+    public long readLong() {
+      return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public byte[] readBytes() {
+      final int length = readVarInt();
+      final byte[] value = new byte[length];
+      System.arraycopy(buffer, position, value, 0, length);
+      position += length;
+      return value;
+    }
+
+    public String readString() {
+      final int length = readVarInt();
+      final String value = OBinaryProtocol.bytes2string(buffer, position, length);
+      position += length;
+      return value;
+    }
+
+    public ORecordId readRid() {
+      final int clusterId = (int) readSignedVarLong();
+      return new ORecordId(clusterId, readSignedVarLong());
+    }
+  }
+}
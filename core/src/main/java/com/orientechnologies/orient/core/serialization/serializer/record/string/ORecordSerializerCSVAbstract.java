@@ -690,7 +690,7 @@ public abstract class ORecordSerializerCSVAbstract extends ORecordSerializerStri
    *          Can be an instance of ORID or a Record<?>
    * @return
    */
-  private static OIdentifiable linkToStream(final StringBuilder buffer, final ORecordSchemaAware<?> iParentRecord, Object iLinked) {
+  public static OIdentifiable linkToStream(final StringBuilder buffer, final ORecordSchemaAware<?> iParentRecord, Object iLinked) {
     if (iLinked == null)
       // NULL REFERENCE
       return null;
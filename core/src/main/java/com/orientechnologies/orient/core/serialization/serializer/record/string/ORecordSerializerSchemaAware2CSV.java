@@ -41,6 +41,7 @@ import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.ORecordSchemaAware;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.serialization.serializer.OStringSerializerHelper;
+import com.orientechnologies.orient.core.serialization.serializer.record.binary.ORecordSerializerBinary;
 
 public class ORecordSerializerSchemaAware2CSV extends ORecordSerializerCSVAbstract {
   private static final long                            serialVersionUID = 1L;
@@ -348,6 +349,15 @@ public class ORecordSerializerSchemaAware2CSV extends ORecordSerializerCSVAbstra
     return linkedClass;
   }
 
+  @Override
+  public ORecordInternal<?> fromStream(final byte[] iSource, final ORecordInternal<?> iRecord, final String[] iFields) {
+    if (ORecordSerializerBinary.isBinary(iSource))
+      // RECORD STORED IN BINARY FORMAT
+      return ORecordSerializerBinary.INSTANCE.fromStream(iSource, iRecord, iFields);
+
+    return super.fromStream(iSource, iRecord, iFields);
+  }
+
   @Override
   public ORecordInternal<?> fromString(String iContent, final ORecordInternal<?> iRecord, final String[] iFields) {
     iContent = iContent.trim();
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import com.orientechnologies.orient.core.command.OCommandContext;
 import com.orientechnologies.orient.core.command.OCommandRequest;
 import com.orientechnologies.orient.core.command.OCommandRequestText;
 import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
@@ -274,6 +275,24 @@ public abstract class OCommandExecutorSQLResultsetAbstract extends OCommandExecu
   }
 
   protected boolean filter(final ORecordInternal<?> iRecord) {
+    if (!isOfTargetClasses(iRecord, context))
+      return false;
+
+    return evaluateRecord(iRecord);
+  }
+
+  /**
+   * Filters the record evaluating the condition in another context, without assigning the LET clauses. Used by the threads that
+   * scan the target in parallel.
+   */
+  protected boolean filter(final ORecordInternal<?> iRecord, final OCommandContext iContext) {
+    if (!isOfTargetClasses(iRecord, iContext))
+      return false;
+
+    return compiledFilter == null || compiledFilter.evaluate(iRecord, iContext);
+  }
+
+  private boolean isOfTargetClasses(final ORecordInternal<?> iRecord, final OCommandContext iContext) {
     if (iRecord instanceof ORecordSchemaAware<?>) {
       // CHECK THE TARGET CLASS
       final ORecordSchemaAware<?> recordSchemaAware = (ORecordSchemaAware<?>) iRecord;
@@ -284,11 +303,10 @@ public abstract class OCommandExecutorSQLResultsetAbstract extends OCommandExecu
           if (!targetClass.isSuperClassOf(recordSchemaAware.getSchemaClass()))
             return false;
         }
-        context.updateMetric("documentAnalyzedCompatibleClass", +1);
+        iContext.updateMetric("documentAnalyzedCompatibleClass", +1);
       }
     }
-
-    return evaluateRecord(iRecord);
+    return true;
   }
 
   protected boolean evaluateRecord(final ORecord<?> iRecord) {
@@ -380,7 +398,7 @@ public abstract class OCommandExecutorSQLResultsetAbstract extends OCommandExecu
 
       // APPLY LIMIT
       final int start = Math.min(skip, tempResult.size());
-      final int tot = Math.min(limit + start, tempResult.size());
+      final int tot = limit > -1 ? Math.min(limit + start, tempResult.size()) : tempResult.size();
       for (int i = start; i < tot; ++i)
         newList.add(tempResult.get(i));
 
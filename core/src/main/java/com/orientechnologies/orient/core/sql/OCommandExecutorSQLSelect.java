@@ -22,6 +22,7 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -29,11 +30,16 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import com.orientechnologies.common.collection.OCompositeKey;
+import com.orientechnologies.common.concur.resource.OCloseable;
 import com.orientechnologies.common.concur.resource.OSharedResource;
 import com.orientechnologies.common.exception.OException;
 import com.orientechnologies.common.util.OPair;
 import com.orientechnologies.orient.core.command.OBasicCommandContext;
+import com.orientechnologies.orient.core.command.OCommandContext;
+import com.orientechnologies.orient.core.command.OCommandPredicate;
 import com.orientechnologies.orient.core.command.OCommandRequest;
+import com.orientechnologies.orient.core.command.OCommandResultListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.exception.OCommandExecutionException;
@@ -42,15 +48,19 @@ import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.index.OCompositeIndexDefinition;
 import com.orientechnologies.orient.core.index.OIndex;
 import com.orientechnologies.orient.core.index.OIndexDefinition;
+import com.orientechnologies.orient.core.index.OIndexDefinitionMultiValue;
 import com.orientechnologies.orient.core.index.OIndexInternal;
+import com.orientechnologies.orient.core.iterator.ORecordIteratorClusters;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.security.ODatabaseSecurityResources;
 import com.orientechnologies.orient.core.metadata.security.ORole;
+import com.orientechnologies.orient.core.metadata.security.OSecurityShared;
 import com.orientechnologies.orient.core.record.ORecord;
 import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.record.impl.ODocumentHelper;
 import com.orientechnologies.orient.core.serialization.serializer.OStringSerializerHelper;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilter;
 import com.orientechnologies.orient.core.sql.filter.OSQLFilterCondition;
 import com.orientechnologies.orient.core.sql.filter.OSQLFilterItem;
 import com.orientechnologies.orient.core.sql.filter.OSQLFilterItemField;
@@ -62,11 +72,13 @@ import com.orientechnologies.orient.core.sql.operator.OIndexReuseType;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperator;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperator.INDEX_OPERATION_TYPE;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorBetween;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorEquals;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorIn;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajor;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajorEquals;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinor;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinorEquals;
+import com.orientechnologies.orient.core.sql.query.OSQLQuery;
 import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
 
 /**
@@ -85,14 +97,25 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
   public static final String          KEYWORD_ORDER         = "ORDER";
   public static final String          KEYWORD_BY            = "BY";
   public static final String          KEYWORD_ORDER_BY      = "ORDER BY";
+  public static final String          KEYWORD_GROUP         = "GROUP";
+  public static final String          KEYWORD_HAVING        = "HAVING";
+  public static final String          KEYWORD_PARALLEL      = "PARALLEL";
 
   private Map<String, Object>         projections           = null;
   private List<OPair<String, String>> orderedFields;
+  private List<Object>                groupBy;
+  private OSQLFilter                  having;
   private Object                      flattenTarget;
   private boolean                     anyFunctionAggregates = false;
   private int                         fetchLimit            = -1;
   private OIdentifiable               lastRecord;
   private Iterator<OIdentifiable>     subIterator;
+  private LinkedList<OIdentifiable>   cursorResult;
+  private Iterator<OIdentifiable>     cursorTarget;
+  private Iterator<OIdentifiable>     cursorOrdered;
+  private OOrderByBuffer              orderByBuffer;
+  private OGroupByBuffer              groupByBuffer;
+  private boolean                     parallel              = OGlobalConfiguration.QUERY_PARALLEL.getValueAsBoolean();
 
   /**
    * Compile the filter conditions only the first time.
@@ -137,12 +160,21 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
                 + parserGetCurrentPosition());
           } else if (w.equals(KEYWORD_LET))
             parseLet();
-          else if (w.equals(KEYWORD_ORDER))
+          else if (w.equals(KEYWORD_GROUP))
+            parseGroupBy(w);
+          else if (w.equals(KEYWORD_HAVING)) {
+            having = OSQLEngine.getInstance().parseCondition(parserText.substring(parserGetCurrentPosition(), endPosition),
+                getContext(), KEYWORD_HAVING);
+            parserSetCurrentPosition(having.parserIsEnded() ? endPosition : having.parserGetCurrentPosition()
+                + parserGetCurrentPosition());
+          } else if (w.equals(KEYWORD_ORDER))
             parseOrderBy(w);
           else if (w.equals(KEYWORD_LIMIT))
             parseLimit(w);
           else if (w.equals(KEYWORD_SKIP))
             parseSkip(w);
+          else if (w.equals(KEYWORD_PARALLEL))
+            parallel = true;
           else
             throwParsingException("Invalid keyword '" + w + "'");
         }
@@ -151,6 +183,10 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     if (limit == 0 || limit < -1) {
       throw new IllegalArgumentException("Limit must be > 0 or = -1 (no limit)");
     }
+    if (having != null && groupBy == null)
+      throwParsingException("HAVING can be used only with GROUP BY");
+    if (groupBy != null && flattenTarget != null)
+      throwParsingException("GROUP BY cannot be used with the FLATTEN() operator");
 
     return this;
   }
@@ -176,9 +212,13 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
       if (target == null) {
         // GET THE RESULT
         executeSearch(null);
+        applyGroupBy();
         applyFlatten();
         applyProjections();
 
+        applyOrderBy();
+        applyLimitAndSkip();
+
         subIterator = new ArrayList<OIdentifiable>(getResult()).iterator();
         lastRecord = null;
         tempResult = null;
@@ -210,6 +250,7 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
       fetchLimit = getQueryFetchLimit();
 
       executeSearch(iArgs);
+      applyGroupBy();
       applyFlatten();
       applyProjections();
       applyOrderBy();
@@ -218,6 +259,108 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     return handleResult();
   }
 
+  /**
+   * Opens the query to be browsed in pages by {@link #fetchPage(int)} instead of returning all the results at once to the listener.
+   * Queries that can return a record as soon as it matches are executed a page per time, while the queries that need all the
+   * records before to return the first one (ORDER BY, aggregates and flatten) are executed here and then only returned in pages.
+   * 
+   * @param iArgs
+   *          Parameters to bind
+   */
+  public void openCursor(final Map<Object, Object> iArgs) {
+    cursorResult = new LinkedList<OIdentifiable>();
+
+    // COLLECT THE RESULTS FOR THE NEXT PAGES INSTEAD OF RETURNING THEM TO THE CALLER
+    request.setResultListener(new OCommandResultListener() {
+      public boolean result(final Object iRecord) {
+        cursorResult.add((OIdentifiable) iRecord);
+        return true;
+      }
+    });
+
+    if (optimizeExecution())
+      cursorResult.addAll(tempResult);
+    else {
+      fetchLimit = getQueryFetchLimit();
+
+      if (!anyFunctionAggregates && orderedFields == null && flattenTarget == null && groupBy == null) {
+        // THE RESULTS OF INDEXES ARE COLLECTED BY THE LISTENER WHILE THE TARGET IS ASSIGNED
+        assignTarget(iArgs);
+        if (target != null)
+          cursorTarget = (Iterator<OIdentifiable>) target.iterator();
+        else if (let != null)
+          assignLetClauses(null);
+        return;
+      }
+
+      executeSearch(iArgs);
+      applyGroupBy();
+      applyFlatten();
+      applyProjections();
+
+      if (orderByBuffer != null) {
+        // BROWSE THE SORTED RECORDS A PAGE PER TIME, WITHOUT LOADING THE SPILLED ONES ALL TOGETHER
+        cursorOrdered = orderByBuffer.iterator(skip, limit);
+        orderByBuffer = null;
+        orderedFields.clear();
+        return;
+      }
+
+      applyOrderBy();
+      applyLimitAndSkip();
+
+      if (tempResult != null)
+        cursorResult.addAll(tempResult);
+    }
+    tempResult = null;
+  }
+
+  /**
+   * Returns the next page of results of the cursor opened by {@link #openCursor(Map)}, browsing the target only for the records
+   * needed to fill it.
+   * 
+   * @param iMaxResults
+   *          Maximum number of results to return
+   * @return The results, empty if the cursor is at the end
+   */
+  public List<OIdentifiable> fetchPage(final int iMaxResults) {
+    final List<OIdentifiable> page = new ArrayList<OIdentifiable>();
+    while (page.size() < iMaxResults) {
+      if (!cursorResult.isEmpty())
+        page.add(cursorResult.removeFirst());
+      else if (cursorOrdered != null && cursorOrdered.hasNext())
+        page.add(cursorOrdered.next());
+      else if (cursorTarget != null && cursorTarget.hasNext()) {
+        if (!executeSearchRecord(cursorTarget.next()))
+          // LIMIT REACHED
+          cursorTarget = null;
+      } else
+        break;
+    }
+    return page;
+  }
+
+  /**
+   * Tells if the cursor opened by {@link #openCursor(Map)} could return more results.
+   */
+  public boolean isCursorEnd() {
+    return cursorResult.isEmpty() && (cursorOrdered == null || !cursorOrdered.hasNext())
+        && (cursorTarget == null || !cursorTarget.hasNext());
+  }
+
+  /**
+   * Releases the cursor opened by {@link #openCursor(Map)}, with the temporary files of the records sorted by ORDER BY. Called when
+   * the cursor is closed or expires before the end.
+   */
+  public void closeCursor() {
+    if (cursorResult != null)
+      cursorResult.clear();
+    if (cursorOrdered instanceof OCloseable)
+      ((OCloseable) cursorOrdered).close();
+    cursorOrdered = null;
+    cursorTarget = null;
+  }
+
   protected void executeSearch(final Map<Object, Object> iArgs) {
     assignTarget(iArgs);
 
@@ -230,6 +373,11 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
       return;
     }
 
+    if (isParallelizable()) {
+      executeParallelSearch();
+      return;
+    }
+
     // BROWSE ALL THE RECORDS
     for (OIdentifiable id : target)
       if (!executeSearchRecord(id))
@@ -248,6 +396,53 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     return true;
   }
 
+  /**
+   * Tells if the clusters of the target can be scanned by more threads: the query must ask for it and the condition must not depend
+   * on state shared between the records, like LET clauses, functions and sub-queries. Records created in the current transaction
+   * are not seen by the scanning threads, so the parallel scan is never used in a transaction.
+   */
+  private boolean isParallelizable() {
+    if (!parallel || !(target instanceof ORecordIteratorClusters<?>) || let != null)
+      return false;
+
+    if (getDatabase().getTransaction().isActive())
+      return false;
+
+    return compiledFilter == null || compiledFilter.getRootCondition() == null
+        || isParallelizable(compiledFilter.getRootCondition());
+  }
+
+  private static boolean isParallelizable(final Object iItem) {
+    if (iItem instanceof OSQLFunctionRuntime || iItem instanceof OSQLQuery<?>)
+      return false;
+
+    if (iItem instanceof OSQLFilterCondition)
+      return isParallelizable(((OSQLFilterCondition) iItem).getLeft()) && isParallelizable(((OSQLFilterCondition) iItem).getRight());
+
+    if (iItem instanceof Collection<?>)
+      for (Object o : (Collection<?>) iItem)
+        if (!isParallelizable(o))
+          return false;
+
+    return true;
+  }
+
+  private void executeParallelSearch() {
+    final ORecordIteratorClusters<?> clusters = (ORecordIteratorClusters<?>) target;
+
+    final OParallelClusterScan scan = new OParallelClusterScan(getDatabase(), context, new OCommandPredicate() {
+      public boolean evaluate(final ORecord<?> iRecord, final OCommandContext iContext) {
+        return filter((ORecordInternal<?>) iRecord, iContext);
+      }
+    });
+
+    scan.scan(clusters.getClusterIds(), clusters.getBeginRange(), clusters.getEndRange(), new OCommandResultListener() {
+      public boolean result(final Object iRecord) {
+        return handleResult((OIdentifiable) iRecord);
+      }
+    });
+  }
+
   protected boolean executeSearchRecord(final OIdentifiable id) {
     final ORecordInternal<?> record = id.getRecord();
 
@@ -270,11 +465,26 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
   protected boolean handleResult(final OIdentifiable iRecord) {
     lastRecord = null;
 
+    if (groupBy != null) {
+      // GROUP BY CLAUSE: AGGREGATE THE RECORD IN ITS GROUP, SKIP AND LIMIT ARE APPLIED TO THE GROUPS
+      if (groupByBuffer == null)
+        groupByBuffer = new OGroupByBuffer(this, context, groupBy, projections, having);
+      groupByBuffer.add(iRecord);
+      return true;
+    }
+
     if (orderedFields == null && skip > 0) {
       skip--;
       return true;
     }
 
+    if (anyFunctionAggregates && projections != null) {
+      // AGGREGATES: FEED THE FUNCTIONS WITHOUT COPYING THE RECORD, THE ONLY RESULT IS BUILT AT THE END
+      aggregate(iRecord);
+      resultCount++;
+      return orderedFields != null || fetchLimit == -1 || resultCount < fetchLimit;
+    }
+
     lastRecord = iRecord instanceof ORecord<?> ? ((ORecord<?>) iRecord).copy() : iRecord.getIdentity().copy();
     lastRecord = applyProjections(lastRecord);
 
@@ -291,7 +501,15 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
 
   protected void addResult(final OIdentifiable iRecord) {
     if (iRecord != null)
-      if (anyFunctionAggregates || orderedFields != null || flattenTarget != null) {
+      if (orderedFields != null && (!anyFunctionAggregates || groupBy != null) && flattenTarget == null) {
+        // ORDER BY CLAUSE: WITH A LIMIT KEEP ONLY THE FIRST RECORDS, OTHERWISE SORT THEM SPILLING TO DISK IF TOO MANY
+        if (orderByBuffer == null) {
+          final int resultLimit = getResultLimit();
+          orderByBuffer = new OOrderByBuffer(orderedFields, resultLimit > -1 ? skip + resultLimit : -1);
+        }
+
+        orderByBuffer.add(iRecord);
+      } else if (anyFunctionAggregates || orderedFields != null || flattenTarget != null || groupBy != null) {
         // ORDER BY CLAUSE: COLLECT ALL THE RECORDS AND ORDER THEM AT THE END
         if (tempResult == null)
           tempResult = new ArrayList<OIdentifiable>();
@@ -305,10 +523,17 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
   }
 
   private int getQueryFetchLimit() {
-    if (orderedFields != null) {
+    if (orderedFields != null || groupBy != null) {
       return -1;
     }
 
+    return getResultLimit();
+  }
+
+  /**
+   * Returns the maximum number of records to return between the LIMIT of the query and the limit of the request, -1 if none.
+   */
+  private int getResultLimit() {
     final int sqlLimit;
     final int requestLimit;
 
@@ -339,6 +564,10 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     return orderedFields;
   }
 
+  public List<Object> getGroupBy() {
+    return groupBy;
+  }
+
   protected void parseOrderBy(final String w) {
     parserRequiredKeyword(KEYWORD_BY);
 
@@ -355,7 +584,7 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
       if (word.length() == 0)
         // END CLAUSE: SET AS ASC BY DEFAULT
         fieldOrdering = KEYWORD_ASC;
-      else if (word.equals(KEYWORD_LIMIT)) {
+      else if (word.equals(KEYWORD_LIMIT) || word.equals(KEYWORD_PARALLEL)) {
         // NEXT CLAUSE: SET AS ASC BY DEFAULT
         fieldOrdering = KEYWORD_ASC;
         parserGoBack();
@@ -376,6 +605,20 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
       throwParsingException("Order by field set was missed. Example: ORDER BY name ASC, salary DESC");
   }
 
+  protected void parseGroupBy(final String w) {
+    parserRequiredKeyword(KEYWORD_BY);
+
+    groupBy = new ArrayList<Object>();
+    while (!parserIsEnded() && (groupBy.size() == 0 || parserGetLastSeparator() == ',' || parserGetCurrentChar() == ',')) {
+      final String item = parserRequiredWord(false, "Field name expected", " ,\r\n");
+      groupBy.add(OSQLHelper.parseValue(this, item, context));
+      parserSkipWhiteSpaces();
+    }
+
+    if (groupBy.size() == 0)
+      throwParsingException("Group by field set was missed. Example: GROUP BY city, country");
+  }
+
   @Override
   protected void searchInClasses() {
     final OClass cls = parsedTarget.getTargetClasses().keySet().iterator().next();
@@ -428,6 +671,9 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
             continue;
         }
 
+        if (!index.getInternal().supportsOrderedIterations() && !canLookupWholeKey(indexDefinition, searchResult))
+          continue;
+
         final int searchResultFieldsCount = searchResult.fields().size();
         final List<Object> keyParams = new ArrayList<Object>(searchResultFieldsCount);
         // We get only subset contained in processed sub query.
@@ -450,7 +696,7 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
           idxNames.add(index.getName());
         }
 
-        if (projections != null && projections.size() == 1) {
+        if (projections != null && projections.size() == 1 && groupBy == null) {
           final Object v = projections.values().iterator().next();
           if (v instanceof OSQLFunctionRuntime && ((OSQLFunctionRuntime) v).getFunction() instanceof OSQLFunctionCount) {
             if (!(compiledFilter.getRootCondition().getLeft() instanceof OSQLFilterCondition || compiledFilter.getRootCondition()
@@ -463,6 +709,19 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
         if (opType == null)
           opType = INDEX_OPERATION_TYPE.GET;
 
+        if (opType == INDEX_OPERATION_TYPE.GET && isOrderedByIndex(index, searchResult)) {
+          final Iterator<OIdentifiable> orderedResult = operator.executeOrderedIndexQuery(context, index, keyParams,
+              KEYWORD_ASC.equals(orderedFields.get(0).getValue()));
+
+          if (orderedResult != null) {
+            // THE INDEX RETURNS THE RECORDS ALREADY SORTED: NO NEED TO COLLECT THEM, STOP AT THE LIMIT
+            orderedFields = null;
+            fetchLimit = getQueryFetchLimit();
+            fillSearchIndexResultSet(orderedResult);
+            return true;
+          }
+        }
+
         Object result = operator.executeIndexQuery(context, index, opType, keyParams, fetchLimit);
         if (result == null)
           continue;
@@ -482,6 +741,69 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     return false;
   }
 
+  /**
+   * Indexes without order, as the hash ones, answer only to the lookup of whole keys: all the fields of the index have to be
+   * searched by equality.
+   */
+  private static boolean canLookupWholeKey(final OIndexDefinition iIndexDefinition, final OIndexSearchResult iSearchResult) {
+    if (iSearchResult.getFieldCount() != iIndexDefinition.getParamCount())
+      return false;
+
+    final OQueryOperator operator = iSearchResult.lastOperator;
+    if (iIndexDefinition.getParamCount() == 1)
+      return OIndexSearchResult.isIndexEqualityOperator(operator) || operator instanceof OQueryOperatorIn;
+
+    return operator instanceof OQueryOperatorEquals;
+  }
+
+  /**
+   * Tells if browsing the index returns the records in the order of the ORDER BY clause: the ordered fields, all in the same
+   * direction, have to be the ones that in the index follow the fields searched by equality.
+   */
+  private boolean isOrderedByIndex(final OIndex<?> iIndex, final OIndexSearchResult iSearchResult) {
+    if (orderedFields == null || orderedFields.isEmpty() || anyFunctionAggregates || flattenTarget != null || groupBy != null)
+      return false;
+
+    final OIndexDefinition indexDefinition = iIndex.getDefinition();
+    if (!iIndex.getInternal().supportsOrderedIterations() || iSearchResult.lastField.isLong())
+      return false;
+
+    // RECORDS WITH MORE VALUES ARE INDEXED MORE TIMES
+    if (indexDefinition instanceof OIndexDefinitionMultiValue
+        || (indexDefinition instanceof OCompositeIndexDefinition && ((OCompositeIndexDefinition) indexDefinition)
+            .getMultiValueDefinitionIndex() > -1))
+      return false;
+
+    final List<String> indexFields = indexDefinition.getFields();
+    int fieldPosition = iSearchResult.fieldValuePairs.size();
+    if (OIndexSearchResult.isIndexEqualityOperator(iSearchResult.lastOperator))
+      fieldPosition++;
+
+    if (fieldPosition + orderedFields.size() > indexFields.size())
+      return false;
+
+    final String ordering = orderedFields.get(0).getValue();
+    for (OPair<String, String> orderedField : orderedFields) {
+      final String fieldName = orderedField.getKey();
+      if (!orderedField.getValue().equals(ordering) || !fieldName.equalsIgnoreCase(indexFields.get(fieldPosition++)))
+        return false;
+
+      if (projections != null) {
+        // RECORDS ARE SORTED AFTER THE PROJECTIONS: THE FIELD CAN ONLY BE PROJECTED AS IT IS
+        final Object projection = projections.get(fieldName);
+        if (projection != null) {
+          if (!(projection instanceof OSQLFilterItemField))
+            return false;
+
+          final OSQLFilterItemField projectedField = (OSQLFilterItemField) projection;
+          if (!fieldName.equals(projectedField.getRoot()) || projectedField.hasChainOperators())
+            return false;
+        }
+      }
+    }
+    return true;
+  }
+
   private static List<OIndex<?>> getInvolvedIndexes(OClass iSchemaClass, OIndexSearchResult searchResultFields) {
     final Set<OIndex<?>> involvedIndexes = iSchemaClass.getInvolvedIndexes(searchResultFields.fields());
 
@@ -608,6 +930,20 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     }
   }
 
+  private void fillSearchIndexResultSet(final Iterator<OIdentifiable> iIndexResult) {
+    while (iIndexResult.hasNext()) {
+      final OIdentifiable identifiable = iIndexResult.next();
+      context.updateMetric("indexReads", +1);
+
+      final ORecord<?> record = identifiable.getRecord();
+      if (record == null)
+        throw new OException("Error during loading record with id : " + identifiable.getIdentity());
+
+      if (filter((ORecordInternal<?>) record) && !handleResult(record))
+        break;
+    }
+  }
+
   protected int parseProjections() {
     if (!parserOptionalKeyword(KEYWORD_SELECT))
       return -1;
@@ -715,11 +1051,43 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     return endPos;
   }
 
+  /**
+   * Returns the aggregated groups as results, to be ordered and paginated as the records of the other queries.
+   */
+  private void applyGroupBy() {
+    if (groupByBuffer == null)
+      return;
+
+    try {
+      groupByBuffer.browse(new OCommandResultListener() {
+        public boolean result(final Object iRecord) {
+          resultCount++;
+          addResult((OIdentifiable) iRecord);
+          return true;
+        }
+      });
+    } finally {
+      groupByBuffer.close();
+      groupByBuffer = null;
+    }
+  }
+
   private void applyOrderBy() {
     if (orderedFields == null)
       return;
 
-    ODocumentHelper.sort(getResult(), orderedFields);
+    if (orderByBuffer != null) {
+      final List<OIdentifiable> sorted = new ArrayList<OIdentifiable>();
+      try {
+        for (Iterator<OIdentifiable> it = orderByBuffer.iterator(0, -1); it.hasNext();)
+          sorted.add(it.next());
+      } finally {
+        orderByBuffer.close();
+        orderByBuffer = null;
+      }
+      tempResult = sorted;
+    } else
+      ODocumentHelper.sort(getResult(), orderedFields);
     orderedFields.clear();
   }
 
@@ -821,6 +1189,17 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     return iRecord;
   }
 
+  /**
+   * Executes the aggregate functions of the projections against the record. The other projections are not evaluated since they are
+   * not part of the result.
+   */
+  private void aggregate(final OIdentifiable iRecord) {
+    final ODocument doc = (ODocument) iRecord.getRecord();
+    for (Object projection : projections.values())
+      if (projection instanceof OSQLFunctionRuntime && ((OSQLFunctionRuntime) projection).aggregateResults())
+        ((OSQLFunctionRuntime) projection).execute(doc, this);
+  }
+
   private void searchInIndex() {
     final OIndex<Object> index = (OIndex<Object>) getDatabase().getMetadata().getIndexManager()
         .getIndex(parsedTarget.getTargetIndex());
@@ -943,7 +1322,7 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
   }
 
   private boolean isIndexSizeQuery() {
-    if (!(anyFunctionAggregates && projections.entrySet().size() == 1))
+    if (!(anyFunctionAggregates && groupBy == null && projections.entrySet().size() == 1))
       return false;
 
     final Object projection = projections.values().iterator().next();
@@ -962,7 +1341,7 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
   }
 
   private boolean isIndexKeySizeQuery() {
-    if (!(anyFunctionAggregates && projections.entrySet().size() == 1))
+    if (!(anyFunctionAggregates && groupBy == null && projections.entrySet().size() == 1))
       return false;
 
     final Object projection = projections.values().iterator().next();
@@ -1030,6 +1409,10 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
   }
 
   private void applyProjections() {
+    if (groupBy != null)
+      // ALREADY AGGREGATED BY GROUP
+      return;
+
     if (anyFunctionAggregates) {
       // EXECUTE AGGREGATIONS
       Object value;
@@ -1075,21 +1458,40 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
 
   @Override
   public String getSyntax() {
-    return "SELECT [<Projections>] FROM <Target> [LET <Assignment>*] [WHERE <Condition>*] [ORDER BY <Fields>* [ASC|DESC]*] [LIMIT <MaxRecords>]";
+    return "SELECT [<Projections>] FROM <Target> [LET <Assignment>*] [WHERE <Condition>*] [GROUP BY <Fields>* [HAVING <Condition>*]] [ORDER BY <Fields>* [ASC|DESC]*] [LIMIT <MaxRecords>] [PARALLEL]";
+  }
+
+  private static boolean isRestricted(final OClass iClass) {
+    if (iClass.isSubClassOf(OSecurityShared.RESTRICTED_CLASSNAME))
+      return true;
+
+    // THE COUNT IS POLYMORPHIC: CHECK THE SUB-CLASSES TOO
+    for (Iterator<OClass> it = iClass.getBaseClasses(); it.hasNext();)
+      if (isRestricted(it.next()))
+        return true;
+    return false;
   }
 
   protected boolean optimizeExecution() {
-    if (compiledFilter != null && compiledFilter.getRootCondition() == null && projections != null && projections.size() == 1) {
+    if ((compiledFilter == null || compiledFilter.getRootCondition() == null) && groupBy == null && projections != null
+        && projections.size() == 1) {
       final Map.Entry<String, Object> entry = projections.entrySet().iterator().next();
 
       if (entry.getValue() instanceof OSQLFunctionRuntime) {
         final OSQLFunctionRuntime rf = (OSQLFunctionRuntime) entry.getValue();
         if (rf.function instanceof OSQLFunctionCount && rf.configuredParameters.length == 1
             && "*".equals(rf.configuredParameters[0])) {
+          if (getDatabase().getTransaction().isActive())
+            // THE RECORDS CREATED AND DELETED IN TRANSACTION ARE NOT IN THE CLUSTER COUNTS
+            return false;
+
           long count = 0;
 
           if (parsedTarget.getTargetClasses() != null) {
             final OClass cls = parsedTarget.getTargetClasses().keySet().iterator().next();
+            if (isRestricted(cls))
+              // THE USER COULD NOT SEE ALL THE RECORDS: BROWSE THEM
+              return false;
             count = cls.count();
           } else if (parsedTarget.getTargetClusters() != null) {
             for (String cluster : parsedTarget.getTargetClusters().keySet()) {
@@ -1097,7 +1499,9 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
             }
           } else if (parsedTarget.getTargetIndex() != null) {
             count += getDatabase().getMetadata().getIndexManager().getIndex(parsedTarget.getTargetIndex()).getSize();
-          }
+          } else
+            // RECORDS, VARIABLES AND SUB-QUERIES CAN ONLY BE BROWSED
+            return false;
 
           if (tempResult == null)
             tempResult = new ArrayList<OIdentifiable>();
@@ -1114,7 +1518,13 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLResultsetAbstr
     private static final IndexComparator INSTANCE = new IndexComparator();
 
     public int compare(final OIndex<?> indexOne, final OIndex<?> indexTwo) {
-      return indexOne.getDefinition().getParamCount() - indexTwo.getDefinition().getParamCount();
+      final int result = indexOne.getDefinition().getParamCount() - indexTwo.getDefinition().getParamCount();
+      if (result != 0)
+        return result;
+
+      // ON THE SAME FIELDS PREFER THE INDEXES WITHOUT ORDER: THEY LOOK UP KEYS IN CONSTANT TIME
+      return (indexOne.getInternal().supportsOrderedIterations() ? 1 : 0)
+          - (indexTwo.getInternal().supportsOrderedIterations() ? 1 : 0);
     }
   }
 }
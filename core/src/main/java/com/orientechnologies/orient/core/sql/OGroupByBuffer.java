@@ -0,0 +1,309 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.command.OCommandContext;
+import com.orientechnologies.orient.core.command.OCommandExecutor;
+import com.orientechnologies.orient.core.command.OCommandResultListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.exception.OCommandExecutionException;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilter;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItem;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItemField;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItemVariable;
+import com.orientechnologies.orient.core.sql.functions.OSQLFunction;
+import com.orientechnologies.orient.core.sql.functions.OSQLFunctionRuntime;
+
+/**
+ * Aggregates the records of a query with GROUP BY. Every group keeps only the values of its projections: the running state of the
+ * aggregate functions and the values of the other projections taken from the first record of the group. Once
+ * {@link OGlobalConfiguration#QUERY_GROUP_BY_BUFFER} groups are in memory, the records of new groups are written to temporary files
+ * partitioned by the hash of the group, and each file is aggregated on its own when the groups are browsed.
+ */
+public class OGroupByBuffer {
+  private static final int                  PARTITIONS = 16;
+  private static final int                  MAX_LEVEL  = 7;
+  private static final byte                 END        = -1;
+
+  private final OCommandExecutor            requester;
+  private final OCommandContext             context;
+  private final List<Object>                groupBy;
+  private final Map<String, Object>         projections;
+  private final OSQLFilter                  having;
+  private final boolean                     keepRecord;
+  private final int                         maxGroups;
+  private final int                         level;
+  private final Map<List<Object>, Object[]> groups     = new LinkedHashMap<List<Object>, Object[]>();
+  private File[]                            files;
+  private DataOutputStream[]                partitions;
+  private long                              serial;
+
+  /**
+   * @param iRequester
+   *          Command executing the query
+   * @param iContext
+   *          Context of the query
+   * @param iGroupBy
+   *          Items to group on
+   * @param iProjections
+   *          Projections of the query, null to return the first record of each group
+   * @param iHaving
+   *          Condition on the projections of a group to return it, null to return all the groups
+   */
+  public OGroupByBuffer(final OCommandExecutor iRequester, final OCommandContext iContext, final List<Object> iGroupBy,
+      final Map<String, Object> iProjections, final OSQLFilter iHaving) {
+    this(iRequester, iContext, iGroupBy, iProjections, iHaving, 0);
+  }
+
+  private OGroupByBuffer(final OCommandExecutor iRequester, final OCommandContext iContext, final List<Object> iGroupBy,
+      final Map<String, Object> iProjections, final OSQLFilter iHaving, final int iLevel) {
+    requester = iRequester;
+    context = iContext;
+    groupBy = iGroupBy;
+    projections = iProjections;
+    having = iHaving;
+    keepRecord = projections == null || projections.containsValue("*");
+    maxGroups = Math.max(1, OGlobalConfiguration.QUERY_GROUP_BY_BUFFER.getValueAsInteger());
+    level = iLevel;
+  }
+
+  public void add(final OIdentifiable iRecord) {
+    final List<Object> key = new ArrayList<Object>(groupBy.size());
+    for (Object item : groupBy)
+      key.add(item instanceof OSQLFilterItem ? ((OSQLFilterItem) item).getValue(iRecord, context) : item);
+
+    Object[] group = groups.get(key);
+    if (group == null) {
+      if (groups.size() >= maxGroups && level < MAX_LEVEL) {
+        // TOO MANY GROUPS: AGGREGATE THE RECORD LATER WITH THE OTHERS OF THE SAME PARTITION
+        spill(key, iRecord);
+        return;
+      }
+
+      group = createGroup(iRecord);
+      groups.put(key, group);
+    }
+
+    if (projections != null) {
+      int i = 0;
+      for (Object projection : projections.values()) {
+        if (group[i] instanceof OSQLFunction)
+          ((OSQLFunctionRuntime) projection).execute((OSQLFunction) group[i], iRecord, requester);
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Returns the groups to the listener, after the ones in memory those in the temporary files, that are deleted.
+   *
+   * @param iListener
+   *          Listener that receives the result of each group. If it returns false no more groups are returned
+   * @return false if the listener stopped the browsing
+   */
+  public boolean browse(final OCommandResultListener iListener) {
+    try {
+      for (Object[] group : groups.values()) {
+        final ODocument result = createResult(group);
+        if (having == null || having.evaluate(result, context))
+          if (!iListener.result(result))
+            return false;
+      }
+      groups.clear();
+
+      if (files == null)
+        return true;
+
+      closePartitions();
+      for (int i = 0; i < files.length; ++i)
+        if (files[i] != null) {
+          final File file = files[i];
+          files[i] = null;
+          if (!browsePartition(file, iListener))
+            return false;
+        }
+      return true;
+
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Deletes the temporary files.
+   */
+  public void close() {
+    closePartitions();
+
+    if (files != null) {
+      for (File file : files)
+        if (file != null && !file.delete())
+          file.deleteOnExit();
+      files = null;
+    }
+  }
+
+  private Object[] createGroup(final OIdentifiable iRecord) {
+    if (projections == null)
+      return new Object[] { copy(iRecord) };
+
+    final Object[] group = new Object[projections.size() + (keepRecord ? 1 : 0)];
+    final ODocument doc = (ODocument) iRecord.getRecord();
+
+    int i = 0;
+    for (Object v : projections.values()) {
+      if (v instanceof OSQLFunctionRuntime && ((OSQLFunctionRuntime) v).aggregateResults())
+        group[i] = ((OSQLFunctionRuntime) v).newFunction();
+      else if (v instanceof OSQLFilterItemVariable)
+        group[i] = ((OSQLFilterItemVariable) v).getValue(doc, context);
+      else if (v instanceof OSQLFilterItemField)
+        group[i] = ((OSQLFilterItemField) v).getValue(doc, null);
+      else if (v instanceof OSQLFunctionRuntime)
+        group[i] = ((OSQLFunctionRuntime) v).execute(doc, requester);
+      else
+        group[i] = v;
+      i++;
+    }
+
+    if (keepRecord)
+      group[i] = copy(iRecord);
+
+    return group;
+  }
+
+  private ODocument createResult(final Object[] iGroup) {
+    if (projections == null)
+      return (ODocument) iGroup[0];
+
+    final ODocument result = new ODocument().setOrdered(true);
+
+    // ASSIGN A TEMPORARY RID TO ALLOW PAGINATION IF ANY
+    ((ORecordId) result.getIdentity()).clusterId = -2;
+    ((ORecordId) result.getIdentity()).clusterPosition = serial++;
+
+    int i = 0;
+    for (Entry<String, Object> projection : projections.entrySet()) {
+      final Object v = projection.getValue();
+
+      if (v.equals("*"))
+        ((ODocument) iGroup[iGroup.length - 1]).copy(result);
+      else if (iGroup[i] instanceof OSQLFunction)
+        result.field(projection.getKey(), ((OSQLFunctionRuntime) v).getResult((OSQLFunction) iGroup[i]));
+      else if (iGroup[i] != null)
+        result.field(projection.getKey(), iGroup[i]);
+      i++;
+    }
+
+    result.unsetDirty();
+    return result;
+  }
+
+  private static OIdentifiable copy(final OIdentifiable iRecord) {
+    return iRecord instanceof ORecord<?> ? ((ORecord<?>) iRecord).copy() : iRecord.getIdentity().copy();
+  }
+
+  private void spill(final List<Object> iKey, final OIdentifiable iRecord) {
+    // USE DIFFERENT BITS OF THE HASH AT EVERY LEVEL TO SPLIT THE PARTITIONS THAT ARE STILL TOO BIG
+    int hash = iKey.hashCode();
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    final int partition = (hash >>> (level * 4)) & (PARTITIONS - 1);
+
+    try {
+      if (files == null) {
+        files = new File[PARTITIONS];
+        partitions = new DataOutputStream[PARTITIONS];
+      }
+
+      if (partitions[partition] == null) {
+        final File file = File.createTempFile("orient-group-", ".part");
+        file.deleteOnExit();
+        files[partition] = file;
+
+        OLogManager.instance().debug(this, "More than %d groups: writing the records of the new groups to file %s", maxGroups, file);
+
+        partitions[partition] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      }
+
+      OOrderByBuffer.writeRecord(partitions[partition], iRecord);
+
+    } catch (IOException e) {
+      close();
+      throw new OCommandExecutionException("Error on writing the records to group to a temporary file", e);
+    }
+  }
+
+  private boolean browsePartition(final File iFile, final OCommandResultListener iListener) {
+    final OGroupByBuffer partition = new OGroupByBuffer(requester, context, groupBy, projections, having, level + 1);
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(iFile)));
+      try {
+        for (byte recordType = in.readByte(); recordType != END; recordType = in.readByte())
+          partition.add(OOrderByBuffer.readRecord(in, recordType));
+      } finally {
+        in.close();
+      }
+
+    } catch (IOException e) {
+      partition.close();
+      throw new OCommandExecutionException("Error on reading the records to group from the temporary file " + iFile, e);
+    }
+
+    if (!iFile.delete())
+      iFile.deleteOnExit();
+
+    partition.serial = serial;
+    final boolean result = partition.browse(iListener);
+    serial = partition.serial;
+    return result;
+  }
+
+  private void closePartitions() {
+    if (partitions == null)
+      return;
+
+    for (int i = 0; i < partitions.length; ++i)
+      if (partitions[i] != null) {
+        try {
+          partitions[i].writeByte(END);
+          partitions[i].close();
+        } catch (IOException e) {
+          OLogManager.instance().warn(this, "Cannot close the file %s", e, files[i]);
+        }
+        partitions[i] = null;
+      }
+    partitions = null;
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.orientechnologies.common.concur.resource.OCloseable;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.util.OPair;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.exception.OCommandExecutionException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.record.impl.ODocumentComparator;
+
+/**
+ * Collects the results of a query with ORDER BY. If the query has a limit only the first <code>skip + limit</code> records are kept,
+ * in a heap ordered by the worst one. Otherwise all the records are kept: once {@link OGlobalConfiguration#QUERY_SORT_BUFFER}
+ * records are collected they are sorted and written to a temporary file, and the files are merged when the results are browsed.
+ * Records with the same values of the ordering fields are returned in the order they were added, as by a stable sort.
+ */
+public class OOrderByBuffer {
+  private final Comparator<OIdentifiable> comparator;
+  private final Comparator<Entry>         entryComparator;
+  private final int                       maxSize;
+  private final int                       sortBufferSize;
+  private PriorityQueue<Entry>            top;
+  private List<OIdentifiable>             buffer;
+  private final List<File>                files = new ArrayList<File>();
+  private final List<FileRun>             runs  = new ArrayList<FileRun>();
+  private long                            added;
+
+  /**
+   * @param iOrderCriteria
+   *          Fields to sort on with their ordering
+   * @param iMaxSize
+   *          Maximum number of records to return, -1 to return all of them
+   */
+  public OOrderByBuffer(final List<OPair<String, String>> iOrderCriteria, final int iMaxSize) {
+    comparator = new ODocumentComparator(new ArrayList<OPair<String, String>>(iOrderCriteria));
+    entryComparator = new EntryComparator();
+    maxSize = iMaxSize;
+    sortBufferSize = Math.max(1, OGlobalConfiguration.QUERY_SORT_BUFFER.getValueAsInteger());
+
+    if (maxSize > -1 && maxSize <= sortBufferSize)
+      top = new PriorityQueue<Entry>(Math.max(1, maxSize), Collections.reverseOrder(entryComparator));
+    else
+      buffer = new ArrayList<OIdentifiable>();
+  }
+
+  public void add(final OIdentifiable iRecord) {
+    final long serial = added++;
+
+    if (top != null) {
+      if (maxSize == 0)
+        return;
+
+      final Entry entry = new Entry(iRecord, serial);
+      if (top.size() < maxSize)
+        top.add(entry);
+      else if (entryComparator.compare(entry, top.peek()) < 0) {
+        // REPLACE THE WORST RECORD
+        top.poll();
+        top.add(entry);
+      }
+    } else {
+      buffer.add(iRecord);
+      if (buffer.size() >= sortBufferSize) {
+        spill(buffer);
+        buffer = new ArrayList<OIdentifiable>();
+      }
+    }
+  }
+
+  /**
+   * Browses the sorted records. Temporary files are deleted once the iterator is over or {@link #close()} is called. The iterator is
+   * an {@link OCloseable} that closes the buffer, to release the files when it's not browsed until the end.
+   *
+   * @param iSkip
+   *          Number of records to skip
+   * @param iLimit
+   *          Maximum number of records to return, -1 to return all of them
+   */
+  public Iterator<OIdentifiable> iterator(final int iSkip, final int iLimit) {
+    final Iterator<OIdentifiable> sorted;
+
+    if (top != null) {
+      final List<Entry> entries = new ArrayList<Entry>(top);
+      top.clear();
+      Collections.sort(entries, entryComparator);
+
+      final List<OIdentifiable> records = new ArrayList<OIdentifiable>(entries.size());
+      for (Entry entry : entries)
+        records.add(entry.record);
+      sorted = records.iterator();
+
+    } else {
+      Collections.sort(buffer, comparator);
+
+      if (files.isEmpty())
+        sorted = buffer.iterator();
+      else {
+        final List<Run> merging = new ArrayList<Run>(files.size() + 1);
+        for (File file : files) {
+          final FileRun run = new FileRun(merging.size(), file);
+          runs.add(run);
+          merging.add(run);
+        }
+        merging.add(new MemoryRun(merging.size(), buffer.iterator()));
+        sorted = new MergeIterator(merging);
+      }
+      buffer = new ArrayList<OIdentifiable>();
+    }
+
+    return new WindowIterator(sorted, iSkip, maxSize > -1 && (iLimit == -1 || iLimit > maxSize) ? maxSize : iLimit);
+  }
+
+  /**
+   * Deletes the temporary files.
+   */
+  public void close() {
+    for (FileRun run : runs)
+      run.close();
+    runs.clear();
+
+    for (File file : files)
+      if (!file.delete())
+        file.deleteOnExit();
+    files.clear();
+  }
+
+  private void spill(final List<OIdentifiable> iRecords) {
+    Collections.sort(iRecords, comparator);
+
+    try {
+      final File file = File.createTempFile("orient-sort-", ".run");
+      file.deleteOnExit();
+      files.add(file);
+
+      OLogManager.instance().debug(this, "Spilling %d sorted records to file %s", iRecords.size(), file);
+
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        out.writeInt(iRecords.size());
+        for (OIdentifiable record : iRecords)
+          writeRecord(out, record);
+      } finally {
+        out.close();
+      }
+
+    } catch (IOException e) {
+      close();
+      throw new OCommandExecutionException("Error on writing the sorted records to a temporary file", e);
+    }
+  }
+
+  /**
+   * Writes a record to a temporary file: documents with their content, other records only with the RID.
+   */
+  static void writeRecord(final DataOutputStream iOut, final OIdentifiable iRecord) throws IOException {
+    final ORID rid = iRecord.getIdentity();
+
+    if (iRecord instanceof ODocument) {
+      final byte[] content = ((ODocument) iRecord).toStream();
+      iOut.writeByte(ODocument.RECORD_TYPE);
+      iOut.writeInt(rid.getClusterId());
+      iOut.writeLong(rid.getClusterPosition());
+      iOut.writeInt(((ODocument) iRecord).getVersion());
+      iOut.writeInt(content.length);
+      iOut.write(content);
+    } else {
+      iOut.writeByte(0);
+      iOut.writeInt(rid.getClusterId());
+      iOut.writeLong(rid.getClusterPosition());
+    }
+  }
+
+  /**
+   * Reads a record written by {@link #writeRecord(DataOutputStream, OIdentifiable)}.
+   */
+  static OIdentifiable readRecord(final DataInputStream iIn) throws IOException {
+    return readRecord(iIn, iIn.readByte());
+  }
+
+  static OIdentifiable readRecord(final DataInputStream iIn, final byte iRecordType) throws IOException {
+    final ORecordId rid = new ORecordId(iIn.readInt(), iIn.readLong());
+
+    if (iRecordType == ODocument.RECORD_TYPE) {
+      final int version = iIn.readInt();
+      final byte[] content = new byte[iIn.readInt()];
+      iIn.readFully(content);
+      return (OIdentifiable) new ODocument().fill(rid, version, content, false);
+    }
+    return rid;
+  }
+
+  private static class Entry {
+    private final OIdentifiable record;
+    private final long          serial;
+
+    private Entry(final OIdentifiable iRecord, final long iSerial) {
+      record = iRecord;
+      serial = iSerial;
+    }
+  }
+
+  private class EntryComparator implements Comparator<Entry> {
+    public int compare(final Entry o1, final Entry o2) {
+      final int result = comparator.compare(o1.record, o2.record);
+      if (result != 0)
+        return result;
+      return o1.serial < o2.serial ? -1 : (o1.serial == o2.serial ? 0 : 1);
+    }
+  }
+
+  private abstract static class Run {
+    protected final int     index;
+    protected OIdentifiable current;
+
+    protected Run(final int iIndex) {
+      index = iIndex;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false if the run is over
+     */
+    protected abstract boolean next();
+  }
+
+  private static class MemoryRun extends Run {
+    private final Iterator<OIdentifiable> iterator;
+
+    private MemoryRun(final int iIndex, final Iterator<OIdentifiable> iIterator) {
+      super(iIndex);
+      iterator = iIterator;
+    }
+
+    @Override
+    protected boolean next() {
+      current = iterator.hasNext() ? iterator.next() : null;
+      return current != null;
+    }
+  }
+
+  private static class FileRun extends Run {
+    private final File      file;
+    private DataInputStream in;
+    private int             left = -1;
+
+    private FileRun(final int iIndex, final File iFile) {
+      super(iIndex);
+      file = iFile;
+    }
+
+    @Override
+    protected boolean next() {
+      try {
+        if (in == null) {
+          in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+          left = in.readInt();
+        }
+
+        if (left == 0) {
+          close();
+          current = null;
+          return false;
+        }
+        left--;
+
+        current = readRecord(in);
+        return true;
+
+      } catch (IOException e) {
+        throw new OCommandExecutionException("Error on reading the sorted records from the temporary file " + file, e);
+      }
+    }
+
+    private void close() {
+      try {
+        if (in != null)
+          in.close();
+      } catch (IOException e) {
+        OLogManager.instance().warn(this, "Cannot close the file %s", e, file);
+      }
+    }
+  }
+
+  /**
+   * Merges the sorted runs. On equal records the one of the first run wins, since the runs were written in the order the records
+   * were added.
+   */
+  private class MergeIterator implements Iterator<OIdentifiable> {
+    private final PriorityQueue<Run> queue;
+
+    private MergeIterator(final List<Run> iRuns) {
+      queue = new PriorityQueue<Run>(iRuns.size(), new Comparator<Run>() {
+        public int compare(final Run o1, final Run o2) {
+          final int result = comparator.compare(o1.current, o2.current);
+          return result != 0 ? result : o1.index - o2.index;
+        }
+      });
+
+      for (Run run : iRuns)
+        if (run.next())
+          queue.add(run);
+    }
+
+    public boolean hasNext() {
+      if (queue.isEmpty()) {
+        close();
+        return false;
+      }
+      return true;
+    }
+
+    public OIdentifiable next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+
+      final Run run = queue.poll();
+      final OIdentifiable result = run.current;
+      if (run.next())
+        queue.add(run);
+      return result;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("remove()");
+    }
+  }
+
+  private class WindowIterator implements Iterator<OIdentifiable>, OCloseable {
+    private final Iterator<OIdentifiable> iterator;
+    private int                           left;
+
+    private WindowIterator(final Iterator<OIdentifiable> iIterator, final int iSkip, final int iLimit) {
+      iterator = iIterator;
+      left = iLimit;
+
+      for (int i = 0; i < iSkip && iterator.hasNext(); ++i)
+        iterator.next();
+    }
+
+    public boolean hasNext() {
+      if (left == 0) {
+        close();
+        return false;
+      }
+      return iterator.hasNext();
+    }
+
+    public OIdentifiable next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+
+      if (left > 0)
+        left--;
+      return iterator.next();
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("remove()");
+    }
+
+    public void close() {
+      left = 0;
+      OOrderByBuffer.this.close();
+    }
+  }
+}
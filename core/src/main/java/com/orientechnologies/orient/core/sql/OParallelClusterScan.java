@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.command.OBasicCommandContext;
+import com.orientechnologies.orient.core.command.OCommandContext;
+import com.orientechnologies.orient.core.command.OCommandPredicate;
+import com.orientechnologies.orient.core.command.OCommandResultListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabase;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.exception.OCommandExecutionException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.OStorage;
+
+/**
+ * Browses the documents of a set of clusters with a pool of threads. The clusters are split in ranges of entries, each one scanned
+ * by a thread that loads the records and evaluates the predicate against them. The documents that match are passed to the listener
+ * in the caller thread, so what is done with them, like aggregating, ordering and limiting, stays single threaded. The documents are
+ * returned in no particular order.
+ * <p>
+ * Each scanning thread opens its own database on the storage of the caller, with the user of the caller, so the security checks
+ * on loading still apply. The predicate must not change the state of the query: each thread evaluates it with its own context,
+ * that inherits the variables of the context of the query.
+ */
+public class OParallelClusterScan {
+  private static final int            MIN_RANGE_SIZE = 1000;
+  private static final int            QUEUE_SIZE     = 1000;
+  private static final long           OFFER_TIMEOUT  = 100;
+  private static final Object         END            = new Object();
+  private static final AtomicInteger  serial         = new AtomicInteger();
+
+  private final ODatabaseRecord       database;
+  private final OCommandContext       context;
+  private final OCommandPredicate     predicate;
+  private final int                   threads;
+  private final BlockingQueue<Object> queue          = new ArrayBlockingQueue<Object>(QUEUE_SIZE);
+  private final AtomicLong            recordReads    = new AtomicLong();
+  private final AtomicLong            documentReads  = new AtomicLong();
+  private volatile boolean            stopped;
+  private volatile boolean            failed;
+
+  /**
+   * @param iDatabase
+   *          Database to load the records with
+   * @param iContext
+   *          Context of the query
+   * @param iPredicate
+   *          Predicate the documents must match, evaluated by the scanning threads
+   */
+  public OParallelClusterScan(final ODatabaseRecord iDatabase, final OCommandContext iContext, final OCommandPredicate iPredicate) {
+    database = iDatabase;
+    context = iContext;
+    predicate = iPredicate;
+
+    final int configuredThreads = OGlobalConfiguration.QUERY_PARALLEL_THREADS.getValueAsInteger();
+    threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Scans the clusters.
+   *
+   * @param iClusterIds
+   *          Clusters to scan
+   * @param iBeginRange
+   *          Lowest position to scan, null to start from the first
+   * @param iEndRange
+   *          Highest position to scan, null to go up to the last
+   * @param iListener
+   *          Listener that receives the documents that match. If it returns false the scan is stopped
+   * @return false if the listener stopped the scan
+   */
+  public boolean scan(final int[] iClusterIds, final ORID iBeginRange, final ORID iEndRange, final OCommandResultListener iListener) {
+    final OStorage storage = database.getStorage();
+
+    final List<ScanTask> tasks = new ArrayList<ScanTask>();
+    for (int clusterId : iClusterIds) {
+      final long[] range = storage.getClusterDataRange(clusterId);
+      if (range[0] < 0 || range[1] < range[0])
+        continue;
+
+      final long rangeSize = Math.max(MIN_RANGE_SIZE, (range[1] - range[0] + threads) / threads);
+      for (long begin = range[0]; begin <= range[1]; begin += rangeSize)
+        tasks.add(new ScanTask(clusterId, begin, Math.min(begin + rangeSize - 1, range[1]), iBeginRange, iEndRange));
+    }
+
+    if (tasks.isEmpty())
+      return true;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), new ThreadFactory() {
+      public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "OrientDB parallel query #" + serial.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    try {
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+      for (ScanTask task : tasks)
+        futures.add(executor.submit(task));
+
+      for (int running = tasks.size(); running > 0;) {
+        final Object item = queue.take();
+        if (item == END)
+          running--;
+        else if (!iListener.result(item)) {
+          // THE CALLER HAS ENOUGH RESULTS
+          stopped = true;
+          return false;
+        }
+      }
+
+      for (Future<Void> future : futures)
+        future.get();
+
+      return true;
+
+    } catch (ExecutionException e) {
+      throw new OCommandExecutionException("Error on scanning the clusters in parallel", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OCommandExecutionException("Parallel scan of the clusters was interrupted", e);
+    } finally {
+      // THE TASKS ARE STOPPED WITHOUT INTERRUPTING THEM: AN INTERRUPT WOULD CLOSE THE CHANNELS OF THE FILES OF THE STORAGE
+      stopped = true;
+      executor.shutdown();
+      awaitTermination(executor);
+      closeDatabases(tasks);
+
+      context.updateMetric("recordReads", recordReads.get());
+      context.updateMetric("documentReads", documentReads.get());
+    }
+  }
+
+  /**
+   * Waits for the end of the stopped tasks, that close their database only once they don't use it anymore.
+   */
+  private void awaitTermination(final ExecutorService iExecutor) {
+    boolean interrupted = Thread.interrupted();
+    while (!iExecutor.isTerminated())
+      try {
+        iExecutor.awaitTermination(OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  /**
+   * Closes the databases of the tasks from the caller thread, restoring its database.
+   */
+  private void closeDatabases(final List<ScanTask> iTasks) {
+    final ODatabaseRecord current = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+    try {
+      for (ScanTask task : iTasks)
+        if (task.taskDatabase != null)
+          try {
+            task.taskDatabase.close();
+          } catch (Exception e) {
+            OLogManager.instance().warn(this, "Cannot close the database of a parallel scan", e);
+          }
+    } finally {
+      if (current != null)
+        ODatabaseRecordThreadLocal.INSTANCE.set(current);
+      else
+        ODatabaseRecordThreadLocal.INSTANCE.remove();
+    }
+  }
+
+  private boolean offer(final Object iItem) throws InterruptedException {
+    while (!stopped)
+      if (queue.offer(iItem, OFFER_TIMEOUT, TimeUnit.MILLISECONDS))
+        return true;
+    return false;
+  }
+
+  /**
+   * Scans a range of entries of a cluster.
+   */
+  private class ScanTask implements Callable<Void> {
+    private final int           clusterId;
+    private final long          begin;
+    private final long          end;
+    private final ORID          beginRange;
+    private final ORID          endRange;
+    private ODatabaseDocumentTx taskDatabase;
+
+    private ScanTask(final int iClusterId, final long iBegin, final long iEnd, final ORID iBeginRange, final ORID iEndRange) {
+      clusterId = iClusterId;
+      begin = iBegin;
+      end = iEnd;
+      beginRange = iBeginRange;
+      endRange = iEndRange;
+    }
+
+    public Void call() throws Exception {
+      try {
+        // THE USER WAS ALREADY AUTHENTICATED BY THE DATABASE OF THE CALLER, THAT CLOSES THIS ONE AT THE END OF THE SCAN
+        taskDatabase = new ODatabaseDocumentTx(database.getURL());
+        taskDatabase.setProperty(ODatabase.OPTIONS.SECURITY.toString(), Boolean.FALSE);
+        taskDatabase.open(database.getUser() != null ? database.getUser().getName() : null, null);
+        ((ODatabaseRecordTx) taskDatabase.getUnderlying()).setUser(database.getUser());
+
+        final OStorage storage = taskDatabase.getStorage();
+        final OCommandContext taskContext = new TaskContext(context);
+
+        for (long entry = begin; entry <= end && !stopped && !failed; ++entry)
+          for (long position : storage.getClusterPositionsForEntry(clusterId, entry)) {
+            if (beginRange != null && position < beginRange.getClusterPosition() || endRange != null
+                && position > endRange.getClusterPosition())
+              continue;
+
+            final ORecordInternal<?> record = taskDatabase.load(new ORecordId(clusterId, position));
+            if (record == null)
+              continue;
+
+            recordReads.incrementAndGet();
+            if (record.getRecordType() != ODocument.RECORD_TYPE)
+              continue;
+
+            documentReads.incrementAndGet();
+            if (predicate.evaluate(record, taskContext))
+              if (!offer(record))
+                break;
+          }
+
+        return null;
+
+      } catch (Exception e) {
+        // STOP THE OTHER TASKS: THE ERROR IS THROWN TO THE CALLER ONCE ALL THE TASKS ARE ENDED
+        failed = true;
+        throw e;
+      } finally {
+        ODatabaseRecordThreadLocal.INSTANCE.remove();
+
+        // THE CALLER COUNTS THE ENDED TASKS
+        offer(END);
+      }
+    }
+  }
+
+  /**
+   * Context of a scanning thread: the variables it sets are its own, the others are read from the context of the query.
+   */
+  private static class TaskContext extends OBasicCommandContext {
+    private TaskContext(final OCommandContext iQueryContext) {
+      child = iQueryContext;
+    }
+  }
+}
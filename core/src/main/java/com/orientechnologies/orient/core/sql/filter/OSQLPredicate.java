@@ -170,8 +170,9 @@ public class OSQLPredicate extends OBaseParser implements OCommandPredicate {
 
   protected boolean checkForEnd(final String iWord) {
     if (iWord != null
-        && (iWord.equals(OCommandExecutorSQLSelect.KEYWORD_ORDER) || iWord.equals(OCommandExecutorSQLSelect.KEYWORD_LIMIT) || iWord
-            .equals(OCommandExecutorSQLSelect.KEYWORD_SKIP))) {
+        && (iWord.equals(OCommandExecutorSQLSelect.KEYWORD_ORDER) || iWord.equals(OCommandExecutorSQLSelect.KEYWORD_LIMIT)
+            || iWord.equals(OCommandExecutorSQLSelect.KEYWORD_SKIP) || iWord.equals(OCommandExecutorSQLSelect.KEYWORD_GROUP) || iWord
+            .equals(OCommandExecutorSQLSelect.KEYWORD_HAVING) || iWord.equals(OCommandExecutorSQLSelect.KEYWORD_PARALLEL))) {
       parserMoveCurrentPosition(iWord.length() * -1);
       return true;
     }
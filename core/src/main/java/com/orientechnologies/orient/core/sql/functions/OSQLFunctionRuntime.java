@@ -62,6 +62,21 @@ public class OSQLFunctionRuntime extends OSQLFilterItemAbstract {
    * @return
    */
   public Object execute(final OIdentifiable o, final OCommandExecutor iRequester) {
+    return execute(function, o, iRequester);
+  }
+
+  /**
+   * Execute the function against another instance of it, created by {@link #newFunction()}. Used to aggregate groups of records
+   * apart, each one with its own state.
+   * 
+   * @param iFunction
+   *          Instance of the function to execute
+   * @param o
+   *          Current record
+   * @param iRequester
+   * @return
+   */
+  public Object execute(final OSQLFunction iFunction, final OIdentifiable o, final OCommandExecutor iRequester) {
     // RESOLVE VALUES USING THE CURRENT RECORD
     for (int i = 0; i < configuredParameters.length; ++i) {
       if (configuredParameters[i] instanceof OSQLFilterItemField)
@@ -70,13 +85,24 @@ public class OSQLFunctionRuntime extends OSQLFilterItemAbstract {
         runtimeParameters[i] = ((OSQLFunctionRuntime) configuredParameters[i]).execute(o, iRequester);
     }
 
-    final Object functionResult = function.execute(o, runtimeParameters, iRequester);
+    final Object functionResult = iFunction.execute(o, runtimeParameters, iRequester);
 
     return transformValue(o, functionResult);
   }
 
   public Object getResult() {
-    return transformValue(null, function.getResult());
+    return getResult(function);
+  }
+
+  public Object getResult(final OSQLFunction iFunction) {
+    return transformValue(null, iFunction.getResult());
+  }
+
+  /**
+   * Creates a new instance of the function, with its own state if the function is registered as class.
+   */
+  public OSQLFunction newFunction() {
+    return OSQLEngine.getInstance().getFunction(function.getName());
   }
 
   public void setResult(final Object iValue) {
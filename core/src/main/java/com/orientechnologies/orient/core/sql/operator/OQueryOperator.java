@@ -15,14 +15,17 @@
  */
 package com.orientechnologies.orient.core.sql.operator;
 
+import java.util.Iterator;
 import java.util.List;
 
 import com.orientechnologies.orient.core.Orient;
 import com.orientechnologies.orient.core.command.OCommandContext;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.index.OCompositeIndexDefinition;
 import com.orientechnologies.orient.core.index.OIndex;
 import com.orientechnologies.orient.core.index.OIndexDefinition;
+import com.orientechnologies.orient.core.index.OIndexInternal;
 import com.orientechnologies.orient.core.profiler.OJVMProfiler;
 import com.orientechnologies.orient.core.sql.filter.OSQLFilterCondition;
 import com.orientechnologies.orient.core.sql.operator.math.OQueryOperatorDivide;
@@ -141,6 +144,84 @@ public abstract class OQueryOperator {
     return null;
   }
 
+  /**
+   * Performs the same index query of {@link #executeIndexQuery(OCommandContext, OIndex, INDEX_OPERATION_TYPE, List, int)} browsing
+   * the index in the order of its keys. The values are read while the result is browsed, so the query can stop at its limit
+   * without fetching all of them.
+   * 
+   * @param iContext
+   *          Context of the command
+   * @param index
+   *          Instance of index that will be used to calculate result of operator execution.
+   * @param keyParams
+   *          Parameters of query is used to calculate query result.
+   * @param iAscending
+   *          Indicates whether the keys are browsed in ascending order
+   * 
+   * @return Values in the order of the keys or {@code null} if given index can not be browsed in order to calculate operator
+   *         result.
+   */
+  public Iterator<OIdentifiable> executeOrderedIndexQuery(final OCommandContext iContext, final OIndex<?> index,
+      final List<Object> keyParams, final boolean iAscending) {
+    return null;
+  }
+
+  /**
+   * Browses in the order of the keys the values of the index with the keys in the range. A null bound leaves the range open on
+   * its side.
+   * 
+   * @return Values in the order of the keys or {@code null} if the index can not be browsed in order.
+   */
+  protected Iterator<OIdentifiable> executeOrderedIndexQuery(final OCommandContext iContext, final OIndex<?> index,
+      final List<Object> keyParams, final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+      final boolean iToInclusive, final boolean iAscending) {
+    final OIndexInternal<?> internalIndex = index.getInternal();
+    if (!internalIndex.canBeUsedInEqualityOperators() || !internalIndex.supportsOrderedIterations())
+      return null;
+
+    final Iterator<OIdentifiable> result = internalIndex.valuesIterator(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive,
+        iAscending);
+
+    updateProfiler(iContext, index, keyParams, index.getDefinition());
+    return result;
+  }
+
+  /**
+   * Browses in the order of the keys the values of the index that satisfy a comparison with the key built from the parameters.
+   * With composite indexes the fields before the last one are equal to the parameters, so the other bound of the range is the
+   * first or the last key that starts with them.
+   * 
+   * @param iLowerBound
+   *          true if the key is the lower bound of the range (&gt; and &gt;=), false if it's the upper one (&lt; and &lt;=)
+   * @param iInclusive
+   *          Indicates whether the key is in the range
+   * @return Values in the order of the keys or {@code null} if the index can not be browsed in order.
+   */
+  protected Iterator<OIdentifiable> executeOrderedIndexComparison(final OCommandContext iContext, final OIndex<?> index,
+      final List<Object> keyParams, final boolean iLowerBound, final boolean iInclusive, final boolean iAscending) {
+    final OIndexDefinition indexDefinition = index.getDefinition();
+
+    final Object key;
+    final Object prefix;
+    if (indexDefinition.getParamCount() == 1) {
+      key = indexDefinition.createValue(keyParams);
+      prefix = null;
+      if (key == null)
+        return null;
+    } else {
+      final OCompositeIndexDefinition compositeIndexDefinition = (OCompositeIndexDefinition) indexDefinition;
+
+      key = compositeIndexDefinition.createSingleValue(keyParams);
+      prefix = compositeIndexDefinition.createSingleValue(keyParams.subList(0, keyParams.size() - 1));
+      if (key == null || prefix == null)
+        return null;
+    }
+
+    if (iLowerBound)
+      return executeOrderedIndexQuery(iContext, index, keyParams, key, iInclusive, prefix, true, iAscending);
+    return executeOrderedIndexQuery(iContext, index, keyParams, prefix, true, key, iInclusive, iAscending);
+  }
+
   @Override
   public String toString() {
     return keyword;
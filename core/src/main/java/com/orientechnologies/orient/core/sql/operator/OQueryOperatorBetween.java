@@ -152,6 +152,37 @@ public class OQueryOperatorBetween extends OQueryOperatorEqualityNotNulls {
     return result;
   }
 
+  @Override
+  public Iterator<OIdentifiable> executeOrderedIndexQuery(OCommandContext iContext, OIndex<?> index, List<Object> keyParams,
+      boolean iAscending) {
+    final OIndexDefinition indexDefinition = index.getDefinition();
+
+    final Object[] betweenKeys = (Object[]) keyParams.get(keyParams.size() - 1);
+
+    final Object keyOne;
+    final Object keyTwo;
+    if (indexDefinition.getParamCount() == 1) {
+      keyOne = indexDefinition.createValue(Collections.singletonList(OSQLHelper.getValue(betweenKeys[0])));
+      keyTwo = indexDefinition.createValue(Collections.singletonList(OSQLHelper.getValue(betweenKeys[2])));
+    } else {
+      final OCompositeIndexDefinition compositeIndexDefinition = (OCompositeIndexDefinition) indexDefinition;
+
+      final List<Object> betweenKeyOneParams = new ArrayList<Object>(keyParams.subList(0, keyParams.size() - 1));
+      betweenKeyOneParams.add(OSQLHelper.getValue(betweenKeys[0]));
+
+      final List<Object> betweenKeyTwoParams = new ArrayList<Object>(keyParams.subList(0, keyParams.size() - 1));
+      betweenKeyTwoParams.add(OSQLHelper.getValue(betweenKeys[2]));
+
+      keyOne = compositeIndexDefinition.createSingleValue(betweenKeyOneParams);
+      keyTwo = compositeIndexDefinition.createSingleValue(betweenKeyTwoParams);
+    }
+
+    if (keyOne == null || keyTwo == null)
+      return null;
+
+    return executeOrderedIndexQuery(iContext, index, keyParams, keyOne, true, keyTwo, true, iAscending);
+  }
+
   @Override
   public ORID getBeginRidRange(final Object iLeft, final Object iRight) {
     validate(iRight);
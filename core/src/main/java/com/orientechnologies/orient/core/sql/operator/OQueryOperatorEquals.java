@@ -17,6 +17,7 @@ package com.orientechnologies.orient.core.sql.operator;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import com.orientechnologies.orient.core.command.OCommandContext;
@@ -109,10 +110,13 @@ public class OQueryOperatorEquals extends OQueryOperatorEqualityNotNulls {
 
     final Object result;
 
-    if (indexDefinition.getParamCount() == 1) {
+    if (indexDefinition.getParamCount() == 1 || !internalIndex.supportsOrderedIterations()) {
+      // INDEXES WITHOUT ORDER ARE USED ONLY WITH THE WHOLE KEY: SEE OCommandExecutorSQLSelect.searchForIndexes()
       final Object key;
       if (indexDefinition instanceof OIndexDefinitionMultiValue)
         key = ((OIndexDefinitionMultiValue) indexDefinition).createSingleValue(keyParams.get(0));
+      else if (indexDefinition instanceof OCompositeIndexDefinition)
+        key = ((OCompositeIndexDefinition) indexDefinition).createSingleValue(keyParams);
       else
         key = indexDefinition.createValue(keyParams);
 
@@ -159,6 +163,23 @@ public class OQueryOperatorEquals extends OQueryOperatorEqualityNotNulls {
     return result;
   }
 
+  @Override
+  public Iterator<OIdentifiable> executeOrderedIndexQuery(OCommandContext iContext, OIndex<?> index, List<Object> keyParams,
+      boolean iAscending) {
+    final OIndexDefinition indexDefinition = index.getDefinition();
+
+    if (indexDefinition.getParamCount() == 1)
+      // ALL THE VALUES HAVE THE SAME KEY
+      return null;
+
+    // ALL THE KEYS THAT START WITH THE SEARCHED FIELDS
+    final Object key = ((OCompositeIndexDefinition) indexDefinition).createSingleValue(keyParams);
+    if (key == null)
+      return null;
+
+    return executeOrderedIndexQuery(iContext, index, keyParams, key, true, key, true, iAscending);
+  }
+
   @Override
   public ORID getBeginRidRange(final Object iLeft, final Object iRight) {
     if (iLeft instanceof OSQLFilterItemField && ODocumentHelper.ATTRIBUTE_RID.equals(((OSQLFilterItemField) iLeft).getRoot()))
@@ -15,6 +15,7 @@
  */
 package com.orientechnologies.orient.core.sql.operator;
 
+import java.util.Iterator;
 import java.util.List;
 
 import com.orientechnologies.orient.core.command.OCommandContext;
@@ -113,6 +114,12 @@ public class OQueryOperatorMajor extends OQueryOperatorEqualityNotNulls {
     return result;
   }
 
+  @Override
+  public Iterator<OIdentifiable> executeOrderedIndexQuery(OCommandContext iContext, OIndex<?> index, List<Object> keyParams,
+      boolean iAscending) {
+    return executeOrderedIndexComparison(iContext, index, keyParams, true, false, iAscending);
+  }
+
   @Override
   public ORID getBeginRidRange(final Object iLeft, final Object iRight) {
     if (iLeft instanceof OSQLFilterItemField && ODocumentHelper.ATTRIBUTE_RID.equals(((OSQLFilterItemField) iLeft).getRoot()))
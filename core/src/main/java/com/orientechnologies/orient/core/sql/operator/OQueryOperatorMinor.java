@@ -15,6 +15,7 @@
  */
 package com.orientechnologies.orient.core.sql.operator;
 
+import java.util.Iterator;
 import java.util.List;
 
 import com.orientechnologies.orient.core.command.OCommandContext;
@@ -112,6 +113,12 @@ public class OQueryOperatorMinor extends OQueryOperatorEqualityNotNulls {
     return result;
   }
 
+  @Override
+  public Iterator<OIdentifiable> executeOrderedIndexQuery(OCommandContext iContext, OIndex<?> index, List<Object> keyParams,
+      boolean iAscending) {
+    return executeOrderedIndexComparison(iContext, index, keyParams, false, false, iAscending);
+  }
+
   @Override
   public ORID getBeginRidRange(Object iLeft, Object iRight) {
     return null;
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql.query;
+
+import java.util.List;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.exception.OQueryParsingException;
+import com.orientechnologies.orient.core.storage.OStorageProxy;
+
+/**
+ * SQL query browsed by a server side cursor. Against a remote database the result is a list that fetches the records from the server
+ * in pages of {@link #getPageSize()} records while it's browsed, so the first records are available before the query has finished
+ * and the server doesn't keep the whole result in memory. The result implements {@link java.io.Closeable}: close it to release the
+ * cursor if it hasn't been browsed until the end. Against local databases it works as a {@link OSQLSynchQuery}.
+ * 
+ * @author Luca Garulli
+ * 
+ * @param <T>
+ * @see OSQLSynchQuery
+ */
+@SuppressWarnings("serial")
+public class OSQLCursorQuery<T extends Object> extends OSQLSynchQuery<T> {
+  private int pageSize = OGlobalConfiguration.CLIENT_CURSOR_PAGE_SIZE.getValueAsInteger();
+
+  /**
+   * Empty constructor for unmarshalling.
+   */
+  public OSQLCursorQuery() {
+  }
+
+  public OSQLCursorQuery(final String iText) {
+    super(iText);
+  }
+
+  public OSQLCursorQuery(final String iText, final int iPageSize) {
+    super(iText);
+    pageSize = iPageSize;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<T> run(final Object... iArgs) {
+    final ODatabaseRecord database = ODatabaseRecordThreadLocal.INSTANCE.get();
+    if (database == null)
+      throw new OQueryParsingException("No database configured");
+
+    if (!(database.getStorage() instanceof OStorageProxy))
+      return super.run(iArgs);
+
+    reset();
+    setParameters(iArgs);
+    final Object result = database.getStorage().command(this);
+    if (result instanceof List<?>)
+      return (List<T>) result;
+
+    // NO RESULT
+    return (List<T>) getResult();
+  }
+
+  /**
+   * Returns a plain synchronous query with the same text, limit, fetch plan and parameters, sent in place of this one to the
+   * servers that don't support cursors.
+   */
+  @SuppressWarnings("unchecked")
+  public OSQLSynchQuery<T> toSynchQuery() {
+    return (OSQLSynchQuery<T>) new OSQLSynchQuery<T>().fromStream(toStream());
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public OSQLCursorQuery<T> setPageSize(final int iPageSize) {
+    pageSize = iPageSize;
+    return this;
+  }
+}
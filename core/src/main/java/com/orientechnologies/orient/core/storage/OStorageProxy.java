@@ -15,6 +15,10 @@
  */
 package com.orientechnologies.orient.core.storage;
 
+import java.util.List;
+
+import com.orientechnologies.orient.core.id.ORecordId;
+
 /**
  * Tagged interface for proxy storage implementation
  * 
@@ -22,4 +26,11 @@ package com.orientechnologies.orient.core.storage;
  * 
  */
 public interface OStorageProxy extends OStorage {
+
+  /**
+   * Reads a list of records in one exchange with the real storage. The returned list follows the order of the requested RIDs and
+   * contains null for the records not found. The callback, if any, is called for each record as soon as it is received.
+   */
+  public List<ORawBuffer> readRecords(List<ORecordId> iRids, String iFetchPlan, boolean iIgnoreCache,
+      ORecordCallback<ORawBuffer> iCallback);
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
@@ -36,12 +37,14 @@ import com.orientechnologies.orient.core.memory.OMemoryWatchDog;
  * 
  * Header structure:<br/>
  * <br/>
- * +-----------+--------------+---------------+---------------+<br/>
- * | FILE SIZE | FILLED UP TO | SOFTLY CLOSED | SECURITY CODE |<br/>
- * | 4 bytes . | 4 bytes .... | 1 byte ...... | 32 bytes .... |<br/>
- * +-----------+--------------+---------------+---------------+<br/>
+ * +-------------+--------------+---------------+----------------+-----------+--------------+<br/>
+ * | OLD SIZE .. | OLD FILLED . | SOFTLY CLOSED | HEADER VERSION | FILE SIZE | FILLED UP TO |<br/>
+ * | 4 bytes ... | 4 bytes .... | 1 byte ...... | 1 byte ....... | 8 bytes . | 8 bytes .... |<br/>
+ * +-------------+--------------+---------------+----------------+-----------+--------------+<br/>
  * = 1024 bytes<br/>
  * <br/>
+ * The files created before the header version 1 store the sizes in 4 bytes at the beginning of the header: they are converted to
+ * the current version the first time they are opened in write mode.<br/>
  */
 public abstract class OAbstractFile implements OFile {
   private FileLock           fileLock;
@@ -49,36 +52,42 @@ public abstract class OAbstractFile implements OFile {
   protected File             osFile;
   protected RandomAccessFile accessFile;
   protected FileChannel      channel;
+  protected OFilePageCache   cache;
   protected volatile boolean dirty                  = false;
   protected volatile boolean headerDirty            = false;
 
   protected int              incrementSize          = DEFAULT_INCREMENT_SIZE;
-  protected int              maxSize;
+  protected long             maxSize;
   protected byte[]           securityCode           = new byte[32];          // PART OF HEADER (32 bytes)
   protected String           mode;
   protected boolean          failCheck              = true;
-  protected volatile int     size;                                           // PART OF HEADER (4 bytes)
+  protected volatile long    size;                                           // PART OF HEADER (8 bytes)
 
   protected static final int HEADER_SIZE            = 1024;
   protected static final int HEADER_DATA_OFFSET     = 128;
   protected static final int DEFAULT_SIZE           = 1024000;
   protected static final int DEFAULT_INCREMENT_SIZE = -50;                   // NEGATIVE NUMBER MEANS AS PERCENT OF CURRENT SIZE
 
+  private static final int   READ_AHEAD_BUFFER_SIZE = 65536;
   private static final int   OPEN_RETRY_MAX         = 10;
   private static final int   OPEN_DELAY_RETRY       = 100;
 
   private static final long  LOCK_WAIT_TIME         = 300;
   private static final int   LOCK_MAX_RETRIES       = 10;
 
-  protected static final int SIZE_OFFSET            = 0;
-  protected static final int FILLEDUPTO_OFFSET      = 4;
+  protected static final int SIZE_OFFSET_V0         = 0;
+  protected static final int FILLEDUPTO_OFFSET_V0   = 4;
   protected static final int SOFTLY_CLOSED_OFFSET   = 8;
+  protected static final int VERSION_OFFSET         = 9;
+  protected static final int SIZE_OFFSET            = 16;
+  protected static final int FILLEDUPTO_OFFSET      = 24;
+  protected static final int CURRENT_HEADER_VERSION = 1;
 
-  public abstract int getFileSize();
+  public abstract long getFileSize();
 
-  public abstract int getFilledUpTo();
+  public abstract long getFilledUpTo();
 
-  public abstract void setSize(int iSize) throws IOException;
+  public abstract void setSize(long iSize) throws IOException;
 
   public abstract void writeHeaderLong(int iPosition, long iValue) throws IOException;
 
@@ -108,7 +117,7 @@ public abstract class OAbstractFile implements OFile {
 
   protected abstract void init() throws IOException;
 
-  protected abstract void setFilledUpTo(int iHow) throws IOException;
+  protected abstract void setFilledUpTo(long iHow) throws IOException;
 
   protected abstract void flushHeader() throws IOException;
 
@@ -121,14 +130,14 @@ public abstract class OAbstractFile implements OFile {
     if (!osFile.exists())
       throw new FileNotFoundException("File: " + osFile.getAbsolutePath());
 
-    openChannel((int) osFile.length());
+    openChannel(osFile.length());
 
     OLogManager.instance().debug(this, "Checking file integrity of " + osFile.getName() + "...");
 
     init();
 
-    final int fileSize = getFileSize();
-    final int filledUpTo = getFilledUpTo();
+    final long fileSize = getFileSize();
+    final long filledUpTo = getFilledUpTo();
 
     if (filledUpTo > 0 && filledUpTo > fileSize) {
       OLogManager
@@ -181,6 +190,8 @@ public abstract class OAbstractFile implements OFile {
       if (OGlobalConfiguration.FILE_LOCK.getValueAsBoolean())
         unlock();
       if (channel != null && channel.isOpen()) {
+        if (cache != null)
+          cache.release(this);
         channel.close();
         channel = null;
       }
@@ -273,11 +284,11 @@ public abstract class OAbstractFile implements OFile {
     }
   }
 
-  protected void checkSize(final int iSize) throws IOException {
+  protected void checkSize(final long iSize) throws IOException {
     if (OLogManager.instance().isDebugEnabled())
       OLogManager.instance().debug(this, "Changing file size to " + iSize + " bytes. " + toString());
 
-    final int filledUpTo = getFilledUpTo();
+    final long filledUpTo = getFilledUpTo();
     if (iSize < filledUpTo)
       OLogManager.instance().error(
           this,
@@ -291,7 +302,7 @@ public abstract class OAbstractFile implements OFile {
    * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#removeTail(int)
    */
   public void removeTail(int iSizeToShrink) throws IOException {
-    final int filledUpTo = getFilledUpTo();
+    final long filledUpTo = getFilledUpTo();
     if (filledUpTo < iSizeToShrink)
       iSizeToShrink = 0;
 
@@ -301,10 +312,10 @@ public abstract class OAbstractFile implements OFile {
   /*
    * (non-Javadoc)
    * 
-   * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#shrink(int)
+   * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#shrink(long)
    */
-  public void shrink(final int iSize) throws IOException {
-    final int filledUpTo = getFilledUpTo();
+  public void shrink(final long iSize) throws IOException {
+    final long filledUpTo = getFilledUpTo();
     if (iSize >= filledUpTo)
       return;
 
@@ -318,9 +329,9 @@ public abstract class OAbstractFile implements OFile {
    * 
    * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#allocateSpace(int)
    */
-  public int allocateSpace(final int iSize) throws IOException {
-    final int offset = getFilledUpTo();
-    final int size = getFileSize();
+  public long allocateSpace(final int iSize) throws IOException {
+    final long offset = getFilledUpTo();
+    final long size = getFileSize();
 
     if (getFreeSpace() < iSize) {
       if (maxSize > 0 && maxSize - size < iSize)
@@ -328,14 +339,14 @@ public abstract class OAbstractFile implements OFile {
             + OFileUtils.getSizeAsString(maxSize) + ") was reached! " + toString());
 
       // MAKE ROOM
-      int newFileSize = size;
+      long newFileSize = size;
 
       if (newFileSize == 0)
         // PROBABLY HAS BEEN LOST WITH HARD KILLS
         newFileSize = DEFAULT_SIZE;
 
       // GET THE STEP SIZE IN BYTES
-      int stepSizeInBytes = incrementSize > 0 ? incrementSize : -1 * size / 100 * incrementSize;
+      long stepSizeInBytes = incrementSize > 0 ? incrementSize : -1 * size / 100 * incrementSize;
 
       // FIND THE BEST SIZE TO ALLOCATE (BASED ON INCREMENT-SIZE)
       while (newFileSize - offset <= iSize) {
@@ -366,12 +377,67 @@ public abstract class OAbstractFile implements OFile {
     return iOffset;
   }
 
+  /**
+   * Checks the region to read. If the thread is scanning the files, the bytes that follow the region are read ahead in
+   * background once the reads get close to the end of the bytes the thread already read ahead.
+   */
+  protected long checkReadRegions(final long iOffset, final int iLength) {
+    final long offset = checkRegions(iOffset, iLength);
+
+    if (OFileScanThreadLocal.INSTANCE.get()) {
+      final int window = OGlobalConfiguration.FILE_SCAN_READ_AHEAD.getValueAsInteger();
+      final long end = iOffset + iLength;
+
+      if (window > 0) {
+        final long[] readAhead = OFileScanThreadLocal.INSTANCE.getReadAheadWindow(this);
+
+        if (end < readAhead[0] || end + window / 2 > readAhead[1]) {
+          // CONTINUE FROM THE BYTES ALREADY READ AHEAD, IF THE SCAN IS STILL IN THEM
+          final long from = end >= readAhead[0] && end < readAhead[1] ? readAhead[1] : end;
+          final long to = Math.min(end + window, getFilledUpTo());
+          readAhead[0] = end;
+          readAhead[1] = to;
+
+          if (to > from)
+            OFileReadAhead.instance().readAhead(this, from, (int) (to - from));
+        }
+      }
+    }
+
+    return offset;
+  }
+
+  /**
+   * Reads the region of the file in memory, so the next reads of it do not wait for the disk. Called by the thread of
+   * {@link OFileReadAhead}.
+   * 
+   * @param iOffset
+   *          Offset of the region, without the header of the file
+   */
+  protected void readAhead(final long iOffset, final int iLength) throws IOException {
+    if (cache != null) {
+      cache.readAhead(this, HEADER_SIZE + iOffset, iLength);
+      return;
+    }
+
+    // LOAD THE REGION IN THE CACHE OF THE OPERATING SYSTEM
+    final ByteBuffer buffer = ByteBuffer.allocate(Math.min(iLength, READ_AHEAD_BUFFER_SIZE));
+    for (long position = HEADER_SIZE + iOffset, end = position + iLength; position < end;) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      final int read = channel.read(buffer, position);
+      if (read < 0)
+        break;
+      position += read;
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
    * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#getFreeSpace()
    */
-  public int getFreeSpace() {
+  public long getFreeSpace() {
     return getFileSize() - getFilledUpTo();
   }
 
@@ -424,10 +490,31 @@ public abstract class OAbstractFile implements OFile {
   public OAbstractFile init(final String iFileName, final String iMode) {
     mode = iMode;
     osFile = new File(iFileName);
+    cache = OFilePageCache.instance();
     return this;
   }
 
-  protected void openChannel(final int iNewSize) throws IOException {
+  /**
+   * Reads from the channel at the position up to fill the buffer, through the page cache if enabled.
+   */
+  protected void readChannel(final ByteBuffer iBuffer, final long iPosition) throws IOException {
+    if (cache != null)
+      cache.read(this, iPosition, iBuffer);
+    else
+      channel.read(iBuffer, iPosition);
+  }
+
+  /**
+   * Writes the buffer in the channel at the position, through the page cache if enabled.
+   */
+  protected void writeChannel(final ByteBuffer iBuffer, final long iPosition) throws IOException {
+    if (cache != null)
+      cache.write(this, iPosition, iBuffer);
+    else
+      channel.write(iBuffer, iPosition);
+  }
+
+  protected void openChannel(final long iNewSize) throws IOException {
     OLogManager.instance().debug(this, "[OFile.openChannel] opening channel for file '%s' of size: ", osFile, osFile.length());
 
     for (int i = 0; i < OPEN_RETRY_MAX; ++i)
@@ -451,7 +538,9 @@ public abstract class OAbstractFile implements OFile {
     if (accessFile == null)
       throw new FileNotFoundException(osFile.getAbsolutePath());
 
-    accessFile.setLength(iNewSize);
+    if (!mode.equals("r"))
+      // THE FILES OPEN IN READ-ONLY MODE CANNOT BE RESIZED
+      accessFile.setLength(iNewSize);
     accessFile.seek(0);
     channel = accessFile.getChannel();
 
@@ -464,16 +553,16 @@ public abstract class OAbstractFile implements OFile {
    * 
    * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#getMaxSize()
    */
-  public int getMaxSize() {
+  public long getMaxSize() {
     return maxSize;
   }
 
   /*
    * (non-Javadoc)
    * 
-   * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#setMaxSize(int)
+   * @see com.orientechnologies.orient.core.storage.fs.OFileAAA#setMaxSize(long)
    */
-  public void setMaxSize(int maxSize) {
+  public void setMaxSize(long maxSize) {
     this.maxSize = maxSize;
   }
 
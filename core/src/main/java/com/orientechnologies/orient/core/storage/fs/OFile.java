@@ -70,7 +70,7 @@ public interface OFile {
    */
   public abstract void delete() throws IOException;
 
-  public abstract void setSize(int iSize) throws IOException;
+  public abstract void setSize(long iSize) throws IOException;
 
   public abstract void writeHeaderLong(int iPosition, long iValue) throws IOException;
 
@@ -124,7 +124,7 @@ public interface OFile {
    * @param iSize
    * @throws IOException
    */
-  public abstract void shrink(final int iSize) throws IOException;
+  public abstract void shrink(final long iSize) throws IOException;
 
   public abstract String getName();
 
@@ -134,21 +134,21 @@ public interface OFile {
 
   public abstract boolean renameTo(File newFile);
 
-  public abstract int allocateSpace(final int iSize) throws IOException;
+  public abstract long allocateSpace(final int iSize) throws IOException;
 
-  public abstract int getFreeSpace();
+  public abstract long getFreeSpace();
 
-  public abstract int getFileSize();
+  public abstract long getFileSize();
 
-  public abstract int getFilledUpTo();
+  public abstract long getFilledUpTo();
 
   public abstract boolean canOversize(final int iRecordSize);
 
   public abstract String toString();
 
-  public abstract int getMaxSize();
+  public abstract long getMaxSize();
 
-  public abstract void setMaxSize(int maxSize);
+  public abstract void setMaxSize(long maxSize);
 
   public abstract int getIncrementSize();
 
@@ -50,8 +50,8 @@ public class OFileClassic extends OAbstractFile {
   }
 
   @Override
-  public int allocateSpace(int iSize) throws IOException {
-    final int currentSize = getFilledUpTo();
+  public long allocateSpace(int iSize) throws IOException {
+    final long currentSize = getFilledUpTo();
     if (maxSize > 0 && currentSize + iSize > maxSize)
       throw new IllegalArgumentException("Cannot enlarge file since the configured max size ("
           + OFileUtils.getSizeAsString(maxSize) + ") was reached! " + toString());
@@ -61,33 +61,35 @@ public class OFileClassic extends OAbstractFile {
   }
 
   @Override
-  public void shrink(int iSize) throws IOException {
+  public void shrink(long iSize) throws IOException {
+    if (cache != null)
+      cache.truncate(this, HEADER_SIZE + iSize);
     channel.truncate(HEADER_SIZE + iSize);
     size = iSize;
   }
 
   @Override
-  public int getFileSize() {
+  public long getFileSize() {
     return size;
   }
 
   @Override
-  public int getFilledUpTo() {
+  public long getFilledUpTo() {
     return size;
   }
 
   public void read(long iOffset, byte[] iData, int iLength, int iArrayOffset) throws IOException {
-    iOffset = checkRegions(iOffset, iLength);
+    iOffset = checkReadRegions(iOffset, iLength);
 
     ByteBuffer buffer = ByteBuffer.wrap(iData, iArrayOffset, iLength);
-    channel.read(buffer, iOffset);
+    readChannel(buffer, iOffset);
   }
 
   public void write(long iOffset, byte[] iData, int iSize, int iArrayOffset) throws IOException {
     if (iData != null) {
       iOffset += HEADER_SIZE;
       ByteBuffer byteBuffer = ByteBuffer.wrap(iData, iArrayOffset, iSize);
-      channel.write(byteBuffer, iOffset);
+      writeChannel(byteBuffer, iOffset);
       setDirty();
     }
   }
@@ -99,25 +101,25 @@ public class OFileClassic extends OAbstractFile {
 
   @Override
   public int readInt(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_INT);
     return readData(iOffset, OBinaryProtocol.SIZE_INT).getInt();
   }
 
   @Override
   public long readLong(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_LONG);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_LONG);
     return readData(iOffset, OBinaryProtocol.SIZE_LONG).getLong();
   }
 
   @Override
   public short readShort(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
     return readData(iOffset, OBinaryProtocol.SIZE_SHORT).getShort();
   }
 
   @Override
   public byte readByte(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
     return readData(iOffset, OBinaryProtocol.SIZE_BYTE).get();
   }
 
@@ -173,6 +175,8 @@ public class OFileClassic extends OAbstractFile {
    */
   @Override
   public void synch() throws IOException {
+    if (cache != null)
+      cache.flush(this);
     flushHeader();
   }
 
@@ -190,16 +194,16 @@ public class OFileClassic extends OAbstractFile {
 
   @Override
   protected void init() throws IOException {
-    size = (int) (osFile.length() - HEADER_SIZE);
+    size = osFile.length() - HEADER_SIZE;
   }
 
   @Override
-  protected void setFilledUpTo(final int iValue) throws IOException {
+  protected void setFilledUpTo(final long iValue) throws IOException {
     size = iValue;
   }
 
   @Override
-  public void setSize(final int iSize) throws IOException {
+  public void setSize(final long iSize) throws IOException {
   }
 
   @Override
@@ -232,14 +236,15 @@ public class OFileClassic extends OAbstractFile {
 
   private ByteBuffer readData(final long iOffset, final int iSize) throws IOException {
     ByteBuffer buffer = getBuffer(iSize);
-    channel.read(buffer, iOffset);
+    readChannel(buffer, iOffset);
     buffer.rewind();
     return buffer;
   }
 
   private void writeBuffer(final ByteBuffer iBuffer, final long iOffset) throws IOException {
-    iBuffer.rewind();
-    channel.write(iBuffer, iOffset);
+    // WRITE ONLY THE BYTES PUT: THE RECYCLED BUFFER IS LONGER THAN THE SMALLER VALUES
+    iBuffer.flip();
+    writeChannel(iBuffer, iOffset);
   }
 
   private ByteBuffer getBuffer(final int iLenght) {
@@ -250,7 +255,7 @@ public class OFileClassic extends OAbstractFile {
     setDirty();
     if (iLenght <= OBinaryProtocol.SIZE_LONG)
       // RECYCLE WRITE BYTE BUFFER SINCE WRITES ARE SYNCHRONIZED
-      return (ByteBuffer) internalWriteBuffer.rewind();
+      return (ByteBuffer) internalWriteBuffer.clear();
 
     return getBuffer(iLenght);
   }
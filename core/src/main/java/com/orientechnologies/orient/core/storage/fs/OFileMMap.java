@@ -38,17 +38,17 @@ import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
  * executed against the channel directly without Memory Mapping.<br/>
  * Header structure:<br/>
  * <br/>
- * +-----------+--------------+---------------+---------------+<br/>
- * | FILE SIZE | FILLED UP TO | SOFTLY CLOSED | SECURITY CODE |<br/>
- * | 8 bytes . | 8 bytes .... | 1 byte ...... | 32 bytes .... |<br/>
- * +-----------+--------------+---------------+---------------+<br/>
+ * +-------------+--------------+---------------+----------------+-----------+--------------+<br/>
+ * | OLD SIZE .. | OLD FILLED . | SOFTLY CLOSED | HEADER VERSION | FILE SIZE | FILLED UP TO |<br/>
+ * | 4 bytes ... | 4 bytes .... | 1 byte ...... | 1 byte ....... | 8 bytes . | 8 bytes .... |<br/>
+ * +-------------+--------------+---------------+----------------+-----------+--------------+<br/>
  * = 1024 bytes<br/>
  * <br/>
  */
 public class OFileMMap extends OAbstractFile {
   public final static String                 NAME                      = "mmap";
-  protected int                              filledUpTo;                                                         // PART OF HEADER
-                                                                                                                  // (4
+  protected long                             filledUpTo;                                                         // PART OF HEADER
+                                                                                                                  // (8
                                                                                                                   // bytes)
   protected MappedByteBuffer                 headerBuffer;
   protected static final Queue<ByteBuffer>   bufferPool                = new ConcurrentLinkedQueue<ByteBuffer>();
@@ -60,6 +60,9 @@ public class OFileMMap extends OAbstractFile {
   private static long                        metricPooledBufferUsed    = 0;
   private static long                        metricNonPooledBufferUsed = 0;
 
+  private static final int                   OS_PAGE_SIZE              = 4096;
+  private static volatile int                readAheadSink;
+
   static {
     Orient.instance().getProfiler().registerHookValue("system.file.mmap.pooledBufferCreated", new OProfilerHookValue() {
       public Object getValue() {
@@ -89,14 +92,17 @@ public class OFileMMap extends OAbstractFile {
     super.init(iFileName, iMode);
     BYTEBUFFER_POOLABLE_SIZE = OGlobalConfiguration.FILE_MMAP_BUFFER_SIZE.getValueAsInteger();
     strategy = OMMapManager.ALLOC_STRATEGY.values()[OGlobalConfiguration.FILE_MMAP_STRATEGY.getValueAsInteger()];
+    if (strategy != OMMapManager.ALLOC_STRATEGY.MMAP_NEVER)
+      // THE MAPPED BLOCKS WOULD NOT SEE THE CACHED PAGES
+      cache = null;
     return this;
   }
 
-  public int getFileSize() {
+  public long getFileSize() {
     return size;
   }
 
-  public int getFilledUpTo() {
+  public long getFilledUpTo() {
     return filledUpTo;
   }
 
@@ -117,7 +123,7 @@ public class OFileMMap extends OAbstractFile {
 
     try {
       final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, iSize,
-          OMMapManager.OPERATION_TYPE.WRITE, strategy);
+          OMMapManager.OPERATION_TYPE.WRITE, getStrategy());
       if (entries != null) {
         // MMAP WRITE
         try {
@@ -143,7 +149,7 @@ public class OFileMMap extends OAbstractFile {
         final ByteBuffer buffer = acquireByteBuffer(iSize);
         buffer.put(iData, iArrayOffset, iSize);
         buffer.rewind();
-        channel.write(buffer, iOffset + HEADER_SIZE);
+        writeChannel(buffer, iOffset + HEADER_SIZE);
         releaseByteBuffer(buffer);
       }
     } catch (BufferOverflowException e) {
@@ -154,10 +160,10 @@ public class OFileMMap extends OAbstractFile {
 
   @Override
   public void read(long iOffset, final byte[] iDestBuffer, final int iLenght) throws IOException {
-    iOffset = checkRegions(iOffset, iLenght);
+    iOffset = checkReadRegions(iOffset, iLenght);
 
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, iLenght,
-        OMMapManager.OPERATION_TYPE.READ, strategy);
+        OMMapManager.OPERATION_TYPE.READ, getStrategy());
     if (entries != null) {
       // MMAP READ
       try {
@@ -179,7 +185,7 @@ public class OFileMMap extends OAbstractFile {
     } else {
       // DIRECT READ
       final ByteBuffer buffer = acquireByteBuffer(iLenght);
-      channel.read(buffer, iOffset + HEADER_SIZE);
+      readChannel(buffer, iOffset + HEADER_SIZE);
       buffer.rewind();
       buffer.get(iDestBuffer);
       releaseByteBuffer(buffer);
@@ -188,9 +194,9 @@ public class OFileMMap extends OAbstractFile {
 
   @Override
   public int readInt(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_INT);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_INT,
-        OMMapManager.OPERATION_TYPE.READ, strategy);
+        OMMapManager.OPERATION_TYPE.READ, getStrategy());
     if (entries != null) {
       // MMAP READ
       try {
@@ -209,7 +215,7 @@ public class OFileMMap extends OAbstractFile {
     } else {
       // DIRECT READ
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_INT);
-      channel.read(buffer, iOffset + HEADER_SIZE);
+      readChannel(buffer, iOffset + HEADER_SIZE);
       buffer.rewind();
       final int value = buffer.getInt();
       releaseByteBuffer(buffer);
@@ -219,9 +225,9 @@ public class OFileMMap extends OAbstractFile {
 
   @Override
   public long readLong(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_LONG);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_LONG);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_LONG,
-        OMMapManager.OPERATION_TYPE.READ, strategy);
+        OMMapManager.OPERATION_TYPE.READ, getStrategy());
     if (entries != null) {
       // MMAP READ
       try {
@@ -239,7 +245,7 @@ public class OFileMMap extends OAbstractFile {
     } else {
       // DIRECT READ
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_LONG);
-      channel.read(buffer, iOffset + HEADER_SIZE);
+      readChannel(buffer, iOffset + HEADER_SIZE);
       buffer.rewind();
       final long value = buffer.getLong();
       releaseByteBuffer(buffer);
@@ -249,9 +255,9 @@ public class OFileMMap extends OAbstractFile {
 
   @Override
   public short readShort(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_SHORT,
-        OMMapManager.OPERATION_TYPE.READ, strategy);
+        OMMapManager.OPERATION_TYPE.READ, getStrategy());
     if (entries != null) {
       // MMAP READ
       try {
@@ -270,7 +276,7 @@ public class OFileMMap extends OAbstractFile {
     } else {
       // DIRECT READ
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_SHORT);
-      channel.read(buffer, iOffset + HEADER_SIZE);
+      readChannel(buffer, iOffset + HEADER_SIZE);
       buffer.rewind();
       final short value = buffer.getShort();
       releaseByteBuffer(buffer);
@@ -280,9 +286,9 @@ public class OFileMMap extends OAbstractFile {
 
   @Override
   public byte readByte(long iOffset) throws IOException {
-    iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
+    iOffset = checkReadRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_BYTE,
-        OMMapManager.OPERATION_TYPE.READ, strategy);
+        OMMapManager.OPERATION_TYPE.READ, getStrategy());
     if (entries != null) {
       // MMAP READ
       try {
@@ -293,7 +299,7 @@ public class OFileMMap extends OAbstractFile {
     } else {
       // DIRECT READ
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_BYTE);
-      channel.read(buffer, iOffset + HEADER_SIZE);
+      readChannel(buffer, iOffset + HEADER_SIZE);
       buffer.rewind();
       final byte value = buffer.get();
       releaseByteBuffer(buffer);
@@ -305,7 +311,7 @@ public class OFileMMap extends OAbstractFile {
   public void writeInt(long iOffset, final int iValue) throws IOException {
     iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_INT,
-        OMMapManager.OPERATION_TYPE.WRITE, strategy);
+        OMMapManager.OPERATION_TYPE.WRITE, getStrategy());
     if (entries != null) {
       // MMAP WRITE
       try {
@@ -325,7 +331,7 @@ public class OFileMMap extends OAbstractFile {
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_INT);
       buffer.putInt(iValue);
       buffer.rewind();
-      channel.write(buffer, iOffset + HEADER_SIZE);
+      writeChannel(buffer, iOffset + HEADER_SIZE);
       releaseByteBuffer(buffer);
     }
   }
@@ -334,7 +340,7 @@ public class OFileMMap extends OAbstractFile {
   public void writeLong(long iOffset, final long iValue) throws IOException {
     iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_LONG);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_LONG,
-        OMMapManager.OPERATION_TYPE.WRITE, strategy);
+        OMMapManager.OPERATION_TYPE.WRITE, getStrategy());
     if (entries != null) {
       // MMAP WRITE
       try {
@@ -354,7 +360,7 @@ public class OFileMMap extends OAbstractFile {
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_LONG);
       buffer.putLong(iValue);
       buffer.rewind();
-      channel.write(buffer, iOffset + HEADER_SIZE);
+      writeChannel(buffer, iOffset + HEADER_SIZE);
       releaseByteBuffer(buffer);
     }
   }
@@ -363,7 +369,7 @@ public class OFileMMap extends OAbstractFile {
   public void writeShort(long iOffset, final short iValue) throws IOException {
     iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_SHORT,
-        OMMapManager.OPERATION_TYPE.WRITE, strategy);
+        OMMapManager.OPERATION_TYPE.WRITE, getStrategy());
     if (entries != null) {
       // MMAP WRITE
       try {
@@ -383,7 +389,7 @@ public class OFileMMap extends OAbstractFile {
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_SHORT);
       buffer.putShort(iValue);
       buffer.rewind();
-      channel.write(buffer, iOffset + HEADER_SIZE);
+      writeChannel(buffer, iOffset + HEADER_SIZE);
       releaseByteBuffer(buffer);
     }
   }
@@ -392,7 +398,7 @@ public class OFileMMap extends OAbstractFile {
   public void writeByte(long iOffset, final byte iValue) throws IOException {
     iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
     final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, OBinaryProtocol.SIZE_BYTE,
-        OMMapManager.OPERATION_TYPE.WRITE, strategy);
+        OMMapManager.OPERATION_TYPE.WRITE, getStrategy());
     if (entries != null) {
       // MMAP WRITE
       try {
@@ -405,7 +411,7 @@ public class OFileMMap extends OAbstractFile {
       final ByteBuffer buffer = acquireByteBuffer(OBinaryProtocol.SIZE_BYTE);
       buffer.put(iValue);
       buffer.rewind();
-      channel.write(buffer, iOffset + HEADER_SIZE);
+      writeChannel(buffer, iOffset + HEADER_SIZE);
       releaseByteBuffer(buffer);
     }
   }
@@ -419,7 +425,7 @@ public class OFileMMap extends OAbstractFile {
 
     try {
       final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, iSourceBuffer.length,
-          OMMapManager.OPERATION_TYPE.WRITE, strategy);
+          OMMapManager.OPERATION_TYPE.WRITE, getStrategy());
       if (entries != null) {
         // MMAP WRITE
         try {
@@ -445,7 +451,7 @@ public class OFileMMap extends OAbstractFile {
         final ByteBuffer buffer = acquireByteBuffer(iSourceBuffer.length);
         buffer.put(iSourceBuffer);
         buffer.rewind();
-        channel.write(buffer, iOffset + HEADER_SIZE);
+        writeChannel(buffer, iOffset + HEADER_SIZE);
         releaseByteBuffer(buffer);
       }
     } catch (BufferOverflowException e) {
@@ -460,8 +466,10 @@ public class OFileMMap extends OAbstractFile {
    * 
    */
   @Override
-  public void synch() {
+  public void synch() throws IOException {
     OMMapManagerLocator.getInstance().flushFile(this);
+    if (cache != null)
+      cache.flush(this);
     flushHeader();
   }
 
@@ -494,7 +502,8 @@ public class OFileMMap extends OAbstractFile {
   }
 
   public void setSoftlyClosed(final boolean iValue) {
-    if (headerBuffer == null)
+    if (headerBuffer == null || headerBuffer.isReadOnly())
+      // CLOSED OR OPEN IN READ-ONLY MODE
       return;
 
     headerBuffer.put(SOFTLY_CLOSED_OFFSET, (byte) (iValue ? 1 : 0));
@@ -508,7 +517,7 @@ public class OFileMMap extends OAbstractFile {
   }
 
   @Override
-  protected void openChannel(final int iNewSize) throws IOException {
+  protected void openChannel(final long iNewSize) throws IOException {
     super.openChannel(iNewSize);
     headerBuffer = channel.map(mode.equals("r") ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
   }
@@ -517,6 +526,41 @@ public class OFileMMap extends OAbstractFile {
     return headerBuffer == null;
   }
 
+  /**
+   * Touches a byte per page of the mapped region, so the operating system loads the pages before the scan reads them. The region
+   * is read through the channel if it is not mapped.
+   */
+  @Override
+  protected void readAhead(final long iOffset, final int iLength) throws IOException {
+    final OMMapBufferEntry[] entries = OMMapManagerLocator.getInstance().acquire(this, iOffset, iLength,
+        OMMapManager.OPERATION_TYPE.READ, getStrategy());
+    if (entries == null) {
+      super.readAhead(iOffset, iLength);
+      return;
+    }
+
+    try {
+      int sum = 0;
+      for (OMMapBufferEntry entry : entries) {
+        final int from = (int) Math.max(0, iOffset - entry.beginOffset);
+        final int to = (int) Math.min(entry.size, iOffset + iLength - entry.beginOffset);
+        for (int position = from; position < to; position += OS_PAGE_SIZE)
+          sum += entry.buffer.get(position);
+      }
+      // AVOID THE READS ARE OPTIMIZED AWAY
+      readAheadSink = sum;
+    } finally {
+      OMMapManagerLocator.getInstance().release(entries, OMMapManager.OPERATION_TYPE.READ);
+    }
+  }
+
+  /**
+   * Returns the strategy to access the file: the files that use the page cache are never mapped.
+   */
+  protected OMMapManager.ALLOC_STRATEGY getStrategy() {
+    return cache != null ? OMMapManager.ALLOC_STRATEGY.MMAP_NEVER : strategy;
+  }
+
   /**
    * Acquires a byte buffer to use in read/write operations. If the requested size is minor-equals to BYTEBUFFER_POOLABLE_SIZE
    * bytes, then is returned from the bufferPool if any. Buffer bigger than BYTEBUFFER_POOLABLE_SIZE bytes.
@@ -563,30 +607,53 @@ public class OFileMMap extends OAbstractFile {
     bufferPool.add(iBuffer);
   }
 
+  @Override
+  public void create(final int iStartSize) throws IOException {
+    super.create(iStartSize);
+    headerBuffer.put(VERSION_OFFSET, (byte) CURRENT_HEADER_VERSION);
+    setHeaderDirty();
+    flushHeader();
+  }
+
   @Override
   protected void init() {
-    size = headerBuffer.getInt(SIZE_OFFSET);
-    filledUpTo = headerBuffer.getInt(FILLEDUPTO_OFFSET);
+    if (headerBuffer.get(VERSION_OFFSET) < CURRENT_HEADER_VERSION) {
+      // FILE CREATED WITH THE SIZES IN 4 BYTES
+      size = headerBuffer.getInt(SIZE_OFFSET_V0);
+      filledUpTo = headerBuffer.getInt(FILLEDUPTO_OFFSET_V0);
+
+      if (!mode.equals("r")) {
+        OLogManager.instance().info(this, "Converting the header of file %s to 64 bit sizes", osFile.getName());
+        headerBuffer.putLong(SIZE_OFFSET, size);
+        headerBuffer.putLong(FILLEDUPTO_OFFSET, filledUpTo);
+        headerBuffer.put(VERSION_OFFSET, (byte) CURRENT_HEADER_VERSION);
+        setHeaderDirty();
+        flushHeader();
+      }
+    } else {
+      size = headerBuffer.getLong(SIZE_OFFSET);
+      filledUpTo = headerBuffer.getLong(FILLEDUPTO_OFFSET);
+    }
   }
 
   @Override
-  protected void setFilledUpTo(final int iHow) {
+  protected void setFilledUpTo(final long iHow) {
     if (iHow != filledUpTo) {
       filledUpTo = iHow;
-      headerBuffer.putInt(FILLEDUPTO_OFFSET, filledUpTo);
+      headerBuffer.putLong(FILLEDUPTO_OFFSET, filledUpTo);
       setHeaderDirty();
     }
   }
 
   @Override
-  public void setSize(final int iSize) throws IOException {
+  public void setSize(final long iSize) throws IOException {
     if (maxSize > 0 && iSize > maxSize)
       throw new IllegalArgumentException("Cannot extend the file to " + OFileUtils.getSizeAsString(iSize) + " because the max is "
           + OFileUtils.getSizeAsString(maxSize));
     if (iSize != size) {
       checkSize(iSize);
       size = iSize;
-      headerBuffer.putInt(SIZE_OFFSET, size);
+      headerBuffer.putLong(SIZE_OFFSET, size);
       setHeaderDirty();
     }
   }
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.orientechnologies.common.io.OFileUtils;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+
+/**
+ * Cache of the pages of the files accessed through their channel, shared by all the files. The pages have a fixed size and are
+ * kept in direct buffers allocated up to the configured memory, then the pages are recycled with the CLOCK algorithm: the page to
+ * evict is the first one not read nor written since the last turn of the clock. The written pages are written back to the file on
+ * {@link #flush(OAbstractFile)}, when the file is closed or when they are evicted; only the written range of the page is written
+ * back.<br/>
+ * The cache is split in segments, each one with its own pages, clock and lock: the consecutive pages of a file belong to
+ * different segments, so a thread that reads or writes back a page from the disk blocks only the threads that access the pages
+ * of the same segment.<br/>
+ * The pages read by the threads that scan the files, and the pages read ahead for them, are not set as referenced, so they are
+ * the first to be evicted and the scans do not evict the pages used by the other threads.
+ */
+public class OFilePageCache {
+  private static OFilePageCache             instance;
+
+  private final int                         pageSize;
+  private final byte[]                      zeros;
+  private final Segment[]                   segments;
+  private final Map<OAbstractFile, Boolean> files = new ConcurrentHashMap<OAbstractFile, Boolean>();
+
+  private static class Page {
+    private final ByteBuffer buffer;
+    private OAbstractFile    file;
+    private long             index;
+    private int              length;
+    private int              dirtyFrom;
+    private int              dirtyTo;
+    private boolean          referenced;
+
+    private Page(final int iSize) {
+      buffer = ByteBuffer.allocateDirect(iSize);
+    }
+
+    private boolean isDirty() {
+      return dirtyTo > dirtyFrom;
+    }
+  }
+
+  /**
+   * Pages of the cache that share the same lock: the monitor of the segment. All the methods are called holding it.
+   */
+  private class Segment {
+    private final Page[]                                  clock;
+    private final Map<OAbstractFile, TreeMap<Long, Page>> pages = new HashMap<OAbstractFile, TreeMap<Long, Page>>();
+    private int                                           allocated;
+    private int                                           hand;
+
+    private long                                          metricHits;
+    private long                                          metricMisses;
+    private long                                          metricEvictions;
+    private long                                          metricWriteBacks;
+
+    private Segment(final int iPages) {
+      clock = new Page[iPages];
+    }
+
+    private Page getPage(final OAbstractFile iFile, final long iIndex, final boolean iLoad, final boolean iReference)
+        throws IOException {
+      TreeMap<Long, Page> filePages = pages.get(iFile);
+
+      Page page = filePages != null ? filePages.get(iIndex) : null;
+      if (page != null) {
+        metricHits++;
+        if (iReference)
+          page.referenced = true;
+        return page;
+      }
+
+      metricMisses++;
+      page = allocatePage();
+      page.length = 0;
+      page.dirtyFrom = page.dirtyTo = 0;
+
+      if (iLoad) {
+        final ByteBuffer buffer = page.buffer;
+        buffer.clear();
+        final long position = iIndex * pageSize;
+        for (int read = 0; buffer.hasRemaining() && read > -1;)
+          read = iFile.channel.read(buffer, position + buffer.position());
+        page.length = buffer.position();
+        clear(page, page.length);
+      }
+
+      page.file = iFile;
+      page.index = iIndex;
+      page.referenced = iReference;
+
+      // THE EVICTION COULD HAVE REMOVED THE PAGES OF THE FILE
+      filePages = pages.get(iFile);
+      if (filePages == null) {
+        filePages = new TreeMap<Long, Page>();
+        pages.put(iFile, filePages);
+      }
+      filePages.put(iIndex, page);
+      return page;
+    }
+
+    /**
+     * Returns a free page, allocating it if the memory of the segment is not all used yet, otherwise evicting the first page the
+     * clock finds not referenced.
+     */
+    private Page allocatePage() throws IOException {
+      if (allocated < clock.length) {
+        final Page page = new Page(pageSize);
+        clock[allocated++] = page;
+        return page;
+      }
+
+      while (true) {
+        final Page page = clock[hand];
+        hand = (hand + 1) % clock.length;
+
+        if (page.file == null)
+          return page;
+
+        if (page.referenced) {
+          // SECOND CHANCE
+          page.referenced = false;
+          continue;
+        }
+
+        if (page.isDirty())
+          writeBack(page);
+
+        final TreeMap<Long, Page> filePages = pages.get(page.file);
+        filePages.remove(page.index);
+        if (filePages.isEmpty())
+          pages.remove(page.file);
+
+        free(page);
+        metricEvictions++;
+        return page;
+      }
+    }
+
+    private void flush(final OAbstractFile iFile) throws IOException {
+      final TreeMap<Long, Page> filePages = pages.get(iFile);
+      if (filePages != null)
+        for (Page page : filePages.values())
+          if (page.isDirty())
+            writeBack(page);
+    }
+
+    private void release(final OAbstractFile iFile) throws IOException {
+      flush(iFile);
+
+      final TreeMap<Long, Page> filePages = pages.remove(iFile);
+      if (filePages != null)
+        for (Page page : filePages.values())
+          free(page);
+    }
+
+    private void truncate(final OAbstractFile iFile, final long iSize) {
+      final TreeMap<Long, Page> filePages = pages.get(iFile);
+      if (filePages == null)
+        return;
+
+      for (Iterator<Page> it = filePages.tailMap(iSize / pageSize).values().iterator(); it.hasNext();) {
+        final Page page = it.next();
+        final int end = (int) Math.max(0, iSize - page.index * pageSize);
+        if (end == 0) {
+          it.remove();
+          free(page);
+        } else if (end < page.length) {
+          clear(page, end);
+          page.length = end;
+          page.dirtyTo = Math.min(page.dirtyTo, end);
+        }
+      }
+
+      if (filePages.isEmpty())
+        pages.remove(iFile);
+    }
+
+    private int getPages() {
+      int total = 0;
+      for (TreeMap<Long, Page> filePages : pages.values())
+        total += filePages.size();
+      return total;
+    }
+
+    private void writeBack(final Page iPage) throws IOException {
+      final ByteBuffer buffer = iPage.buffer;
+      buffer.limit(iPage.dirtyTo).position(iPage.dirtyFrom);
+      final long position = iPage.index * pageSize;
+      while (buffer.hasRemaining())
+        iPage.file.channel.write(buffer, position + buffer.position());
+
+      iPage.dirtyFrom = iPage.dirtyTo = 0;
+      metricWriteBacks++;
+    }
+  }
+
+  protected OFilePageCache(final long iMaxMemory, final int iPageSize) {
+    this(iMaxMemory, iPageSize, Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  /**
+   * Creates the cache.
+   *
+   * @param iMaxMemory
+   *          Memory of all the pages
+   * @param iPageSize
+   *          Size of the pages
+   * @param iSegments
+   *          Segments the pages are split in, rounded down to a power of 2 and to leave at least a page to each segment
+   */
+  protected OFilePageCache(final long iMaxMemory, final int iPageSize, final int iSegments) {
+    pageSize = iPageSize;
+    zeros = new byte[iPageSize];
+
+    final int totalPages = (int) Math.max(1, iMaxMemory / iPageSize);
+    int segmentCount = 1;
+    while (segmentCount * 2 <= iSegments && segmentCount * 2 <= totalPages)
+      segmentCount *= 2;
+
+    segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; ++i)
+      // THE FIRST SEGMENTS TAKE THE PAGES LEFT BY THE DIVISION
+      segments[i] = new Segment(totalPages / segmentCount + (i < totalPages % segmentCount ? 1 : 0));
+
+    OLogManager.instance().config(this, "Page cache of the files: %d pages of %d bytes in %d segments", totalPages, pageSize,
+        segmentCount);
+
+    Orient.instance().getProfiler().registerHookValue("system.file.cache.hits", new OProfilerHookValue() {
+      public Object getValue() {
+        long total = 0;
+        for (Segment segment : segments)
+          total += segment.metricHits;
+        return total;
+      }
+    });
+    Orient.instance().getProfiler().registerHookValue("system.file.cache.misses", new OProfilerHookValue() {
+      public Object getValue() {
+        long total = 0;
+        for (Segment segment : segments)
+          total += segment.metricMisses;
+        return total;
+      }
+    });
+    Orient.instance().getProfiler().registerHookValue("system.file.cache.evictions", new OProfilerHookValue() {
+      public Object getValue() {
+        long total = 0;
+        for (Segment segment : segments)
+          total += segment.metricEvictions;
+        return total;
+      }
+    });
+    Orient.instance().getProfiler().registerHookValue("system.file.cache.writeBacks", new OProfilerHookValue() {
+      public Object getValue() {
+        long total = 0;
+        for (Segment segment : segments)
+          total += segment.metricWriteBacks;
+        return total;
+      }
+    });
+  }
+
+  /**
+   * Returns the cache shared by the files, creating it the first time.
+   *
+   * @return The cache, or null if the size configured by file.cache.size is 0
+   */
+  public static synchronized OFilePageCache instance() {
+    if (instance == null) {
+      final long maxMemory = OFileUtils.getSizeAsNumber(OGlobalConfiguration.FILE_CACHE_SIZE.getValue());
+      if (maxMemory <= 0)
+        return null;
+      instance = new OFilePageCache(maxMemory, OGlobalConfiguration.FILE_CACHE_PAGE_SIZE.getValueAsInteger());
+    }
+    return instance;
+  }
+
+  /**
+   * Reads the bytes of the file from the position up to fill the remaining space of the buffer. The bytes past the end of the
+   * file are read as 0.
+   */
+  public void read(final OAbstractFile iFile, long iPosition, final ByteBuffer iBuffer) throws IOException {
+    final boolean reference = !OFileScanThreadLocal.INSTANCE.get();
+    files.put(iFile, Boolean.TRUE);
+
+    final int limit = iBuffer.limit();
+    try {
+      while (iBuffer.hasRemaining()) {
+        final long index = iPosition / pageSize;
+        final int offset = (int) (iPosition % pageSize);
+        final int length = Math.min(iBuffer.remaining(), pageSize - offset);
+
+        final Segment segment = getSegment(iFile, index);
+        synchronized (segment) {
+          final Page page = segment.getPage(iFile, index, true, reference);
+          page.buffer.limit(offset + length).position(offset);
+          iBuffer.limit(iBuffer.position() + length);
+          iBuffer.put(page.buffer);
+        }
+
+        iBuffer.limit(limit);
+        iPosition += length;
+      }
+    } finally {
+      iBuffer.limit(limit);
+    }
+  }
+
+  /**
+   * Writes the remaining bytes of the buffer in the file at the position. The bytes reach the file when the page is written back.
+   */
+  public void write(final OAbstractFile iFile, long iPosition, final ByteBuffer iBuffer) throws IOException {
+    files.put(iFile, Boolean.TRUE);
+
+    final int limit = iBuffer.limit();
+    try {
+      while (iBuffer.hasRemaining()) {
+        final long index = iPosition / pageSize;
+        final int offset = (int) (iPosition % pageSize);
+        final int length = Math.min(iBuffer.remaining(), pageSize - offset);
+
+        final Segment segment = getSegment(iFile, index);
+        synchronized (segment) {
+          // A PAGE WRITTEN WHOLE IS NOT READ FROM THE FILE
+          final Page page = segment.getPage(iFile, index, length < pageSize, true);
+          page.buffer.limit(pageSize).position(offset);
+          iBuffer.limit(iBuffer.position() + length);
+          page.buffer.put(iBuffer);
+
+          if (page.isDirty()) {
+            page.dirtyFrom = Math.min(page.dirtyFrom, offset);
+            page.dirtyTo = Math.max(page.dirtyTo, offset + length);
+          } else {
+            page.dirtyFrom = offset;
+            page.dirtyTo = offset + length;
+          }
+          page.length = Math.max(page.length, offset + length);
+        }
+
+        iBuffer.limit(limit);
+        iPosition += length;
+      }
+    } finally {
+      iBuffer.limit(limit);
+    }
+  }
+
+  /**
+   * Loads the pages of the region of the file not in the cache yet. Only the lock of the segment of the page loaded is held, so
+   * the other threads are not blocked for the whole region. Nothing is loaded for the files released in the meantime.
+   */
+  public void readAhead(final OAbstractFile iFile, final long iPosition, final int iLength) throws IOException {
+    for (long index = iPosition / pageSize, last = (iPosition + iLength - 1) / pageSize; index <= last; ++index) {
+      final Segment segment = getSegment(iFile, index);
+      synchronized (segment) {
+        if (!files.containsKey(iFile))
+          return;
+        final TreeMap<Long, Page> pages = segment.pages.get(iFile);
+        if (pages == null || !pages.containsKey(index))
+          segment.getPage(iFile, index, true, false);
+      }
+    }
+  }
+
+  /**
+   * Writes back the written pages of the file, segment by segment in the order of their position.
+   */
+  public void flush(final OAbstractFile iFile) throws IOException {
+    for (Segment segment : segments)
+      synchronized (segment) {
+        segment.flush(iFile);
+      }
+  }
+
+  /**
+   * Writes back the written pages of the file and removes all its pages from the cache. Called before to close the file.
+   */
+  public void release(final OAbstractFile iFile) throws IOException {
+    files.remove(iFile);
+    for (Segment segment : segments)
+      synchronized (segment) {
+        segment.release(iFile);
+      }
+  }
+
+  /**
+   * Removes the pages past the new end of the file, discarding what was written in them. Called when the file is truncated.
+   */
+  public void truncate(final OAbstractFile iFile, final long iSize) {
+    for (Segment segment : segments)
+      synchronized (segment) {
+        segment.truncate(iFile, iSize);
+      }
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public int getSegments() {
+    return segments.length;
+  }
+
+  public int getPages() {
+    int total = 0;
+    for (Segment segment : segments)
+      synchronized (segment) {
+        total += segment.getPages();
+      }
+    return total;
+  }
+
+  /**
+   * Returns the segment of the page: the consecutive pages of a file belong to consecutive segments.
+   */
+  private Segment getSegment(final OAbstractFile iFile, final long iIndex) {
+    return segments[(int) ((iFile.hashCode() + iIndex) & (segments.length - 1))];
+  }
+
+  private void free(final Page iPage) {
+    iPage.file = null;
+    iPage.referenced = false;
+  }
+
+  private void clear(final Page iPage, final int iFrom) {
+    final ByteBuffer buffer = iPage.buffer;
+    buffer.limit(pageSize).position(iFrom);
+    buffer.put(zeros, 0, buffer.remaining());
+  }
+}
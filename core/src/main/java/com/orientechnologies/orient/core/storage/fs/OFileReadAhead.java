@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.Orient;
+
+/**
+ * Reads ahead in background the bytes of the files scanned, so the scanning threads find them in memory. The requests are
+ * executed in order by a single thread: the scans are sequential, so the bytes read ahead are the next ones the scanning threads
+ * read.
+ */
+public class OFileReadAhead {
+  private static final OFileReadAhead instance       = new OFileReadAhead();
+
+  private final ExecutorService       executor;
+  private long                        metricRequests = 0;
+  private long                        metricBytes    = 0;
+
+  protected OFileReadAhead() {
+    executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "OrientDB file read ahead");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    Orient.instance().getProfiler().registerHookValue("system.file.readAhead.requests", new OProfilerHookValue() {
+      public Object getValue() {
+        return metricRequests;
+      }
+    });
+    Orient.instance().getProfiler().registerHookValue("system.file.readAhead.bytes", new OProfilerHookValue() {
+      public Object getValue() {
+        return metricBytes;
+      }
+    });
+  }
+
+  public static OFileReadAhead instance() {
+    return instance;
+  }
+
+  /**
+   * Reads ahead in background the region of the file.
+   * 
+   * @param iFile
+   *          File to read
+   * @param iOffset
+   *          Offset of the region, without the header of the file
+   * @param iLength
+   *          Length of the region
+   */
+  public void readAhead(final OAbstractFile iFile, final long iOffset, final int iLength) {
+    metricRequests++;
+    executor.execute(new Runnable() {
+      public void run() {
+        if (!iFile.isOpen())
+          return;
+
+        try {
+          iFile.readAhead(iOffset, iLength);
+          metricBytes += iLength;
+        } catch (Exception e) {
+          // THE FILE COULD HAVE BEEN CLOSED OR SHRUNK IN THE MEANTIME: THE SCAN READS THE REGION ANYWAY
+          OLogManager.instance().debug(this, "Error on reading ahead the region %d-%d of file %s", e, iOffset, iOffset + iLength,
+              iFile);
+        }
+      }
+    });
+  }
+}
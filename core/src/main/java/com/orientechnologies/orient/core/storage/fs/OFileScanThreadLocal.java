@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Tells if the current thread is scanning the files, as declared by the massive read intent. The reads of a scanning thread read
+ * ahead the next bytes of the file in background and do not keep the pages they load in the page cache.
+ */
+public class OFileScanThreadLocal extends ThreadLocal<Boolean> {
+  public static OFileScanThreadLocal                    INSTANCE         = new OFileScanThreadLocal();
+
+  private final ThreadLocal<Map<OAbstractFile, long[]>> readAheadWindows = new ThreadLocal<Map<OAbstractFile, long[]>>();
+
+  @Override
+  protected Boolean initialValue() {
+    return Boolean.FALSE;
+  }
+
+  /**
+   * Sets if the current thread is scanning the files. When it stops, the bytes it read ahead are forgotten.
+   */
+  @Override
+  public void set(final Boolean iScanning) {
+    super.set(iScanning);
+    if (!Boolean.TRUE.equals(iScanning))
+      readAheadWindows.remove();
+  }
+
+  /**
+   * Returns the bytes of the file the current thread read ahead, as the pair from/to of offsets it updates while it scans the
+   * file. Each thread scanning the same file has its own.
+   */
+  public long[] getReadAheadWindow(final OAbstractFile iFile) {
+    Map<OAbstractFile, long[]> windows = readAheadWindows.get();
+    if (windows == null) {
+      windows = new WeakHashMap<OAbstractFile, long[]>();
+      readAheadWindows.set(windows);
+    }
+
+    long[] window = windows.get(iFile);
+    if (window == null) {
+      window = new long[2];
+      windows.put(iFile, window);
+    }
+    return window;
+  }
+}
@@ -141,7 +141,7 @@ public class OMMapBufferEntry extends OSharedResourceAbstract implements Compara
   }
 
   public int compareTo(final OMMapBufferEntry iOther) {
-    return (int) (beginOffset - iOther.beginOffset);
+    return beginOffset < iOther.beginOffset ? -1 : beginOffset == iOther.beginOffset ? 0 : 1;
   }
 
   boolean isValid() {
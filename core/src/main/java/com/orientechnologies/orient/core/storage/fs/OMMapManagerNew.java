@@ -33,6 +33,7 @@ import com.orientechnologies.orient.core.config.OGlobalConfiguration;
  */
 public class OMMapManagerNew extends OMMapManagerAbstract implements OMMapManager {
   private static final int                                            BINARY_SEARCH_THRESHOLD = 10;
+  private static final int                                            MAX_ENTRY_SIZE          = 1 << 30;
 
   private static final OMMapBufferEntry[]                             EMPTY_BUFFER_ENTRIES    = new OMMapBufferEntry[0];
 
@@ -95,15 +96,12 @@ public class OMMapManagerNew extends OMMapManagerAbstract implements OMMapManage
       }
     }
 
-    // map new entry
-    final OMMapBufferEntry newMappedEntry;
-
+    // map new entries
     lockManager.acquireLock(Thread.currentThread(), iFile, OLockManager.LOCK.EXCLUSIVE);
     try {
 
-      // second search after locking file
+      // reload the entries after locking file
       fileEntries = bufferPoolPerFile.get(iFile);
-      foundEntries = searchAmongExisting(iFile, fileEntries, iBeginOffset, iSize);
 
       // total size that is mapped
       long totalMappedSize = 0;
@@ -112,16 +110,23 @@ public class OMMapManagerNew extends OMMapManagerAbstract implements OMMapManage
         totalMappedSize = lastEntry.beginOffset + lastEntry.size;
       }
 
+      // map the rest of the file in entries a buffer can address
       try {
-        newMappedEntry = mapNew(iFile, totalMappedSize);
+        while (totalMappedSize < iFile.getFileSize()) {
+          final OMMapBufferEntry newMappedEntry = mapNew(iFile, totalMappedSize);
+          fileEntries = addEntry(fileEntries, newMappedEntry);
+          totalMappedSize += newMappedEntry.size;
+        }
       } catch (IOException ex) {
         return null;
+      } finally {
+        bufferPoolPerFile.put(iFile, fileEntries);
       }
-      final OMMapBufferEntry[] newEntries = addEntry(fileEntries, newMappedEntry);
-      bufferPoolPerFile.put(iFile, newEntries);
 
-      // add new entry to previously found
-      final OMMapBufferEntry[] resultEntries = addEntry(foundEntries, newMappedEntry);
+      final OMMapBufferEntry[] resultEntries = searchAmongExisting(iFile, fileEntries, iBeginOffset, iSize);
+      if (resultEntries.length == 0)
+        return null;
+
       acquireLocksOnEntries(resultEntries, iOperationType);
 
       return resultEntries;
@@ -232,7 +237,7 @@ public class OMMapManagerNew extends OMMapManagerAbstract implements OMMapManage
     else
       resultFirstPosition = linearSearch(fileEntries, beginOffset, beginSearchPosition, endSearchPosition);
 
-    if (beginSearchPosition < 0)
+    if (resultFirstPosition < 0)
       return EMPTY_BUFFER_ENTRIES;
 
     int resultLastPosition = fileEntries.length - 1;
@@ -339,8 +344,8 @@ public class OMMapManagerNew extends OMMapManagerAbstract implements OMMapManage
    */
   private OMMapBufferEntry mapNew(final OFileMMap file, final long beginOffset) throws IOException {
     metricMappedPages++;
-    return new OMMapBufferEntry(file, file.map(beginOffset, file.getFileSize() - (int) beginOffset), beginOffset,
-        file.getFileSize() - (int) beginOffset);
+    final int size = (int) Math.min(file.getFileSize() - beginOffset, MAX_ENTRY_SIZE);
+    return new OMMapBufferEntry(file, file.map(beginOffset, size), beginOffset, size);
   }
 
   private OMMapBufferEntry[] addEntry(final OMMapBufferEntry[] sourceEntries, final OMMapBufferEntry newEntry) {
@@ -18,6 +18,7 @@ package com.orientechnologies.orient.core.storage.impl.local;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.orientechnologies.common.concur.resource.OSharedResourceAdaptiveExternal;
 import com.orientechnologies.common.io.OFileUtils;
@@ -30,6 +31,7 @@ import com.orientechnologies.orient.core.exception.OStorageException;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+import com.orientechnologies.orient.core.serialization.OLZFCompression;
 import com.orientechnologies.orient.core.storage.OCluster;
 import com.orientechnologies.orient.core.storage.ODataSegment;
 import com.orientechnologies.orient.core.storage.OPhysicalPosition;
@@ -45,15 +47,23 @@ import com.orientechnologies.orient.core.storage.fs.OFile;
  * | 4 bytes .... | 2 bytes .... | 8 bytes .... | <RECORD SIZE> bytes. |<br/>
  * +--------------+--------------+--------------+----------------------+<br/>
  * = 14+? bytes<br/>
+ * <br/>
+ * The records of at least <code>compressionMinSize</code> bytes are compressed with LZF when it saves space: the bit 30 of the
+ * content size flags them and their content starts with the 4 bytes of the uncompressed size.
  */
 public class ODataLocal extends OMultiFileSegment implements ODataSegment {
   static final String                           DEF_EXTENSION   = ".oda";
   public static final int                       RECORD_FIX_SIZE = 14;
+  protected static final int                    COMPRESSED      = 0x40000000;
   protected final int                           id;
   protected final ODataLocalHole                holeSegment;
   protected int                                 defragMaxHoleDistance;
   protected int                                 defragStrategy;
   protected long                                defStartSize;
+  protected ODataLocalDefragmenter              defragmenter;
+  protected volatile int                        compressionMinSize;
+  private final AtomicLong                      rawBytes        = new AtomicLong();
+  private final AtomicLong                      compressedBytes = new AtomicLong();
 
   private final String                          PROFILER_HOLE_FIND_CLOSER;
   private final String                          PROFILER_UPDATE_REUSED_ALL;
@@ -62,6 +72,11 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
   private final String                          PROFILER_MOVE_RECORD;
   private final String                          PROFILER_HOLE_CREATE;
   private final String                          PROFILER_DEFRAG;
+  private final String                          PROFILER_DEFRAG_MOVED;
+  private final String                          PROFILER_DEFRAG_MERGED;
+  private final String                          PROFILER_DEFRAG_RECLAIMED;
+  private final String                          PROFILER_COMPRESS;
+  private final String                          PROFILER_DECOMPRESS;
   private final OSharedResourceAdaptiveExternal lock            = new OSharedResourceAdaptiveExternal(
                                                                     OGlobalConfiguration.ENVIRONMENT_CONCURRENT.getValueAsBoolean(),
                                                                     0, true);
@@ -79,6 +94,7 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     defStartSize = OFileUtils.getSizeAsNumber(iConfig.fileStartSize);
     defragMaxHoleDistance = OGlobalConfiguration.FILE_DEFRAG_HOLE_MAX_DISTANCE.getValueAsInteger();
     defragStrategy = OGlobalConfiguration.FILE_DEFRAG_STRATEGY.getValueAsInteger();
+    compressionMinSize = iConfig.compressionMinSize;
 
     PROFILER_HOLE_CREATE = "db." + storage.getName() + ".data.createHole";
     PROFILER_HOLE_FIND_CLOSER = "db." + storage.getName() + ".data.findClosestHole";
@@ -86,7 +102,12 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     PROFILER_UPDATE_REUSED_PARTIAL = "db." + storage.getName() + ".data.update.reusedPartial";
     PROFILER_UPDATE_NOT_REUSED = "db." + storage.getName() + ".data.update.notReused";
     PROFILER_DEFRAG = "db." + storage.getName() + ".data.defrag";
+    PROFILER_DEFRAG_MOVED = "db." + storage.getName() + ".data.defrag.moved";
+    PROFILER_DEFRAG_MERGED = "db." + storage.getName() + ".data.defrag.merged";
+    PROFILER_DEFRAG_RECLAIMED = "db." + storage.getName() + ".data.defrag.reclaimed";
     PROFILER_MOVE_RECORD = "db." + storage.getName() + ".data.move";
+    PROFILER_COMPRESS = "db." + storage.getName() + ".data.compress";
+    PROFILER_DECOMPRESS = "db." + storage.getName() + ".data.decompress";
   }
 
   @Override
@@ -96,6 +117,7 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
 
       super.open();
       holeSegment.open();
+      startDefrag();
 
     } finally {
       releaseExclusiveLock();
@@ -109,6 +131,7 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
 
       super.create((int) (iStartSize > -1 ? iStartSize : defStartSize));
       holeSegment.create(-1);
+      startDefrag();
 
     } finally {
       releaseExclusiveLock();
@@ -133,6 +156,11 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     acquireExclusiveLock();
     try {
 
+      if (defragmenter != null) {
+        defragmenter.stop();
+        defragmenter = null;
+      }
+
       super.close();
       holeSegment.close();
 
@@ -193,13 +221,15 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
       // AVOID UNUSEFUL CREATION OF EMPTY RECORD: IT WILL BE CREATED AT FIRST UPDATE
       return -1;
 
-    final int recordSize = iContent.length + RECORD_FIX_SIZE;
+    final byte[] compressed = compress(iContent);
+    final byte[] content = compressed != null ? compressed : iContent;
+    final int recordSize = content.length + RECORD_FIX_SIZE;
 
     acquireExclusiveLock();
     try {
 
       final long[] newFilePosition = getFreeSpace(recordSize);
-      writeRecord(newFilePosition, iRid.clusterId, iRid.clusterPosition, iContent);
+      writeRecord(newFilePosition, iRid.clusterId, iRid.clusterPosition, content, compressed != null);
       return getAbsolutePosition(newFilePosition);
 
     } finally {
@@ -216,17 +246,23 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     if (iPosition == -1)
       return null;
 
+    final byte[] content;
+    final boolean compressed;
+
     acquireSharedLock();
     try {
 
       final long[] pos = getRelativePosition(iPosition);
       final OFile file = files[(int) pos[0]];
 
-      final int recordSize = file.readInt(pos[1]);
+      int recordSize = file.readInt(pos[1]);
       if (recordSize <= 0)
         // RECORD DELETED
         return null;
 
+      compressed = (recordSize & COMPRESSED) != 0;
+      recordSize &= ~COMPRESSED;
+
       if (pos[1] + RECORD_FIX_SIZE + recordSize > file.getFilledUpTo())
         throw new OStorageException(
             "Error on reading record from file '"
@@ -239,17 +275,19 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
                 + OFileUtils.getSizeAsString(getFilledUpTo())
                 + "). Probably the record is dirty due to a previous crash. It is strongly suggested to restore the database or export and reimport this one.");
 
-      final byte[] content = new byte[recordSize];
+      content = new byte[recordSize];
       file.read(pos[1] + RECORD_FIX_SIZE, content, recordSize);
-      return content;
 
     } finally {
       releaseSharedLock();
     }
+
+    return compressed ? decompress(content) : content;
   }
 
   /**
-   * Returns the record size.
+   * Returns the record size as stored in the file, so compressed if the record is compressed. It is negative if the position is
+   * a hole.
    * 
    * @throws IOException
    */
@@ -260,7 +298,25 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
       final long[] pos = getRelativePosition(iPosition);
       final OFile file = files[(int) pos[0]];
 
-      return file.readInt(pos[1]);
+      return storedSize(file.readInt(pos[1]));
+
+    } finally {
+      releaseSharedLock();
+    }
+  }
+
+  /**
+   * Tells if the record is stored compressed.
+   * 
+   * @throws IOException
+   */
+  public boolean isRecordCompressed(final long iPosition) throws IOException {
+    acquireSharedLock();
+    try {
+
+      final long[] pos = getRelativePosition(iPosition);
+      final int recordSize = files[(int) pos[0]].readInt(pos[1]);
+      return recordSize > 0 && (recordSize & COMPRESSED) != 0;
 
     } finally {
       releaseSharedLock();
@@ -312,25 +368,29 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
    * @throws IOException
    */
   public long setRecord(final long iPosition, final ORecordId iRid, final byte[] iContent) throws IOException {
+    final byte[] compressed = compress(iContent);
+    final byte[] content = compressed != null ? compressed : iContent;
+
     acquireExclusiveLock();
     try {
 
       long[] pos = getRelativePosition(iPosition);
       final OFile file = files[(int) pos[0]];
 
-      final int recordSize = file.readInt(pos[1]);
-      final int contentLength = iContent != null ? iContent.length : 0;
+      final int recordSize = storedSize(file.readInt(pos[1]));
+      final int contentLength = content != null ? content.length : 0;
 
       if (contentLength == recordSize) {
         // USE THE OLD SPACE SINCE SIZE ISN'T CHANGED
-        file.write(pos[1] + RECORD_FIX_SIZE, iContent);
+        file.writeInt(pos[1], compressed != null ? contentLength | COMPRESSED : contentLength);
+        file.write(pos[1] + RECORD_FIX_SIZE, content);
 
         Orient.instance().getProfiler().updateCounter(PROFILER_UPDATE_REUSED_ALL, +1);
         return iPosition;
       } else if (recordSize - contentLength > RECORD_FIX_SIZE + 50) {
         // USE THE OLD SPACE BUT UPDATE THE CURRENT SIZE. IT'S PREFEREABLE TO USE THE SAME INSTEAD OF FINDING A BEST SUITED FOR IT
         // TO AVOID CHANGES TO REF FILE AS WELL.
-        writeRecord(pos, iRid.clusterId, iRid.clusterPosition, iContent);
+        writeRecord(pos, iRid.clusterId, iRid.clusterPosition, content, compressed != null);
 
         // CREATE A HOLE WITH THE DIFFERENCE OF SPACE
         createHole(iPosition + RECORD_FIX_SIZE + contentLength, recordSize - contentLength - RECORD_FIX_SIZE);
@@ -342,7 +402,7 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
 
         // USE A NEW SPACE
         pos = getFreeSpace(contentLength + RECORD_FIX_SIZE);
-        writeRecord(pos, iRid.clusterId, iRid.clusterPosition, iContent);
+        writeRecord(pos, iRid.clusterId, iRid.clusterPosition, content, compressed != null);
 
         Orient.instance().getProfiler().updateCounter(PROFILER_UPDATE_NOT_REUSED, +1);
       }
@@ -364,7 +424,7 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
       final long[] pos = getRelativePosition(iPosition);
       final OFile file = files[(int) pos[0]];
 
-      final int recordSize = file.readInt(pos[1]);
+      final int recordSize = storedSize(file.readInt(pos[1]));
       createHole(iPosition, recordSize);
       return recordSize;
 
@@ -418,6 +478,199 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     return id;
   }
 
+  /**
+   * Runs a step of the background defrag: the adjacent holes are merged and the records that follow a hole are moved to its
+   * beginning, so the holes slide toward the end of the file where their space is given back to the file.
+   * 
+   * @param iFrom
+   *          Position to start from
+   * @param iMaxTime
+   *          Max time in ms of the step
+   * @param iMaxBytes
+   *          Max bytes of records to move, -1 to not limit them
+   * @return The position to start the next step from, or -1 if there are no more holes after it
+   * @throws IOException
+   */
+  public long defragStep(final long iFrom, final long iMaxTime, final long iMaxBytes) throws IOException {
+    acquireExclusiveLock();
+    try {
+
+      if (defragmenter == null)
+        // CLOSED IN THE MEANWHILE
+        return -1;
+
+      final long timer = Orient.instance().getProfiler().startChrono();
+      final long deadline = System.currentTimeMillis() + iMaxTime;
+
+      long position = iFrom;
+      long moved = 0;
+      long reclaimed = 0;
+      int merged = 0;
+      try {
+        while (System.currentTimeMillis() <= deadline && (iMaxBytes < 0 || moved < iMaxBytes)) {
+          final ODataHoleInfo hole = holeSegment.getHoleAfter(position);
+          if (hole == null)
+            return -1;
+
+          final long[] pos = getRelativePosition(hole.dataOffset);
+          final OFile file = files[(int) pos[0]];
+          final long holeEnd = hole.dataOffset + hole.size;
+
+          if (pos[1] + hole.size >= file.getFilledUpTo()) {
+            // LAST HOLE OF THE FILE: GIVE BACK ITS SPACE
+            file.shrink(pos[1]);
+            holeSegment.deleteHole(hole.holeOffset);
+            reclaimed += hole.size;
+            position = holeEnd;
+            continue;
+          }
+
+          final ODataHoleInfo nextHole = holeSegment.getHoleAfter(holeEnd);
+          if (nextHole != null && nextHole.dataOffset == holeEnd) {
+            // CONSECUTIVE HOLES: MERGE THEM IN THE FIRST ONE
+            holeSegment.deleteHole(nextHole.holeOffset);
+            holeSegment.updateHole(hole, hole.dataOffset, hole.size + nextHole.size);
+            file.writeInt(pos[1], hole.size * -1);
+            merged++;
+            continue;
+          }
+
+          if (!isRecordAt(file, pos[1] + hole.size, holeEnd)) {
+            // NO VALID RECORD AFTER THE HOLE: LEAVE IT WHERE IT IS
+            position = holeEnd;
+            continue;
+          }
+
+          // MOVE THE RECORD AT THE BEGINNING OF THE HOLE AND THE HOLE RIGHT AFTER IT
+          final int recordSize = moveRecord(holeEnd, hole.dataOffset);
+          holeSegment.updateHole(hole, hole.dataOffset + recordSize, hole.size);
+          file.writeInt(pos[1] + recordSize, hole.size * -1);
+          moved += recordSize;
+          position = hole.dataOffset;
+        }
+
+        return position;
+
+      } finally {
+        Orient.instance().getProfiler().updateCounter(PROFILER_DEFRAG_MOVED, moved);
+        Orient.instance().getProfiler().updateCounter(PROFILER_DEFRAG_MERGED, merged);
+        Orient.instance().getProfiler().updateCounter(PROFILER_DEFRAG_RECLAIMED, reclaimed);
+        Orient.instance().getProfiler().stopChrono(PROFILER_DEFRAG, timer);
+      }
+
+    } finally {
+      releaseExclusiveLock();
+    }
+  }
+
+  public int getCompressionMinSize() {
+    return compressionMinSize;
+  }
+
+  /**
+   * Sets the min size of the records to compress, -1 to not compress them. The records already written are left as they are.
+   */
+  public void setCompressionMinSize(final int iMinSize) throws IOException {
+    compressionMinSize = iMinSize;
+    ((OStorageDataConfiguration) config).compressionMinSize = iMinSize;
+    storage.getConfiguration().update();
+  }
+
+  /**
+   * Returns the bytes of content of the records compressed since the data segment was created or opened.
+   */
+  public long getCompressedRawBytes() {
+    return rawBytes.get();
+  }
+
+  /**
+   * Returns the bytes the records compressed since the data segment was created or opened take once compressed.
+   */
+  public long getCompressedBytes() {
+    return compressedBytes.get();
+  }
+
+  /**
+   * Compresses the content if it is big enough and the compression saves space.
+   * 
+   * @return The uncompressed size followed by the compressed content, otherwise null
+   */
+  private byte[] compress(final byte[] iContent) {
+    if (compressionMinSize < 0 || iContent == null || iContent.length < compressionMinSize
+        || iContent.length <= OBinaryProtocol.SIZE_INT)
+      return null;
+
+    final long timer = Orient.instance().getProfiler().startChrono();
+
+    // THE BUFFER IS SHORTER THAN THE CONTENT: IF THE COMPRESSED CONTENT DOESN'T FIT, IT'S NOT WORTH
+    final byte[] buffer = new byte[iContent.length - 1];
+    OBinaryProtocol.int2bytes(iContent.length, buffer, 0);
+    final int compressedLength = OLZFCompression.compress(iContent, buffer, OBinaryProtocol.SIZE_INT);
+
+    Orient.instance().getProfiler().stopChrono(PROFILER_COMPRESS, timer);
+
+    if (compressedLength < 0)
+      // NOT COMPRESSIBLE
+      return null;
+
+    rawBytes.addAndGet(iContent.length);
+    compressedBytes.addAndGet(compressedLength);
+
+    final byte[] compressed = new byte[compressedLength];
+    System.arraycopy(buffer, 0, compressed, 0, compressedLength);
+    return compressed;
+  }
+
+  private byte[] decompress(final byte[] iCompressed) {
+    final long timer = Orient.instance().getProfiler().startChrono();
+
+    final byte[] content = new byte[OBinaryProtocol.bytes2int(iCompressed, 0)];
+    OLZFCompression.decompress(iCompressed, OBinaryProtocol.SIZE_INT, iCompressed.length - OBinaryProtocol.SIZE_INT, content);
+
+    Orient.instance().getProfiler().stopChrono(PROFILER_DECOMPRESS, timer);
+    return content;
+  }
+
+  /**
+   * Returns the size of the content as stored in the file from the size field, negative for the holes.
+   */
+  private static int storedSize(final int iSizeField) {
+    return iSizeField < 0 ? iSizeField : iSizeField & ~COMPRESSED;
+  }
+
+  private void startDefrag() {
+    if (defragStrategy == 1 && defragmenter == null) {
+      defragmenter = new ODataLocalDefragmenter(storage, this);
+      defragmenter.start();
+    }
+  }
+
+  /**
+   * Tells if at the position there is a record its cluster points to.
+   */
+  private boolean isRecordAt(final OFile iFile, final long iFileOffset, final long iPosition) throws IOException {
+    if (iFileOffset + RECORD_FIX_SIZE > iFile.getFilledUpTo())
+      return false;
+
+    final int recordSize = storedSize(iFile.readInt(iFileOffset));
+    if (recordSize < 0 || iFileOffset + RECORD_FIX_SIZE + recordSize > iFile.getFilledUpTo())
+      return false;
+
+    final int clusterId = iFile.readShort(iFileOffset + OBinaryProtocol.SIZE_INT);
+    if (clusterId < 0)
+      // TEMPORARY RECORD
+      return false;
+
+    try {
+      final OPhysicalPosition ppos = storage.getClusterById(clusterId).getPhysicalPosition(
+          new OPhysicalPosition(iFile.readLong(iFileOffset + OBinaryProtocol.SIZE_INT + OBinaryProtocol.SIZE_SHORT)));
+      return ppos != null && ppos.dataSegmentId == id && ppos.dataSegmentPos == iPosition;
+    } catch (IllegalArgumentException e) {
+      // CLUSTER NOT FOUND
+      return false;
+    }
+  }
+
   private void createHole(final long iRecordOffset, final int iRecordSize) throws IOException {
     long holePositionOffset = iRecordOffset;
     int holeSize = iRecordSize + RECORD_FIX_SIZE;
@@ -504,7 +757,7 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
           // END OF FILE
           break;
 
-        int recordContentSize = file.readInt(pos[1]);
+        int recordContentSize = storedSize(file.readInt(pos[1]));
         if (recordContentSize < 0)
           // FOUND HOLE
           break;
@@ -587,7 +840,7 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     if (pos[0] == 0)
       fileRanges = new long[] { 0, file.getFilledUpTo() };
     else {
-      final long size = (files[0].getFileSize() * pos[0]);
+      final long size = getAbsolutePosition(new long[] { pos[0], 0 });
       fileRanges = new long[] { size, size + file.getFilledUpTo() };
     }
 
@@ -601,12 +854,13 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     final long[] pos = getRelativePosition(iSourcePosition);
     final OFile file = files[(int) pos[0]];
 
-    final int recordSize = file.readInt(pos[1]);
+    final int header = file.readInt(pos[1]);
 
-    if (recordSize < 0)
+    if (header < 0)
       // FOUND HOLE
       return -1;
 
+    final int recordSize = header & ~COMPRESSED;
     final long timer = Orient.instance().getProfiler().startChrono();
 
     final int clusterId = file.readShort(pos[1] + OBinaryProtocol.SIZE_INT);
@@ -629,18 +883,19 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
       cluster.updateDataSegmentPosition(clusterPosition, id, iDestinationPosition);
     }
 
-    writeRecord(getRelativePosition(iDestinationPosition), clusterId, clusterPosition, content);
+    writeRecord(getRelativePosition(iDestinationPosition), clusterId, clusterPosition, content, (header & COMPRESSED) != 0);
 
     Orient.instance().getProfiler().stopChrono(PROFILER_MOVE_RECORD, timer);
 
     return recordSize + RECORD_FIX_SIZE;
   }
 
-  private void writeRecord(final long[] iFilePosition, final int iClusterSegment, final long iClusterPosition, final byte[] iContent)
-      throws IOException {
+  private void writeRecord(final long[] iFilePosition, final int iClusterSegment, final long iClusterPosition,
+      final byte[] iContent, final boolean iCompressed) throws IOException {
     final OFile file = files[(int) iFilePosition[0]];
 
-    file.writeInt(iFilePosition[1], iContent != null ? iContent.length : 0);
+    final int contentLength = iContent != null ? iContent.length : 0;
+    file.writeInt(iFilePosition[1], iCompressed ? contentLength | COMPRESSED : contentLength);
     file.writeShort(iFilePosition[1] + OBinaryProtocol.SIZE_INT, (short) iClusterSegment);
     // TestSimulateError.onDataLocalWriteRecord(this, iFilePosition, iClusterSegment, iClusterPosition, iContent);
     file.writeLong(iFilePosition[1] + OBinaryProtocol.SIZE_INT + OBinaryProtocol.SIZE_SHORT, iClusterPosition);
@@ -653,9 +908,16 @@ public class ODataLocal extends OMultiFileSegment implements ODataSegment {
     final long position = holeSegment.popFirstAvailableHole(recordSize);
 
     final long[] newFilePosition;
-    if (position > -1)
+    if (position > -1) {
       newFilePosition = getRelativePosition(position);
-    else
+
+      final ODataHoleInfo rest = holeSegment.getHoleAfter(position + recordSize);
+      if (rest != null && rest.dataOffset == position + recordSize) {
+        // PART OF A BIGGER HOLE: WRITE THE NEGATIVE SIZE WHERE THE REST OF THE HOLE STARTS NOW
+        final long[] restPosition = getRelativePosition(rest.dataOffset);
+        files[(int) restPosition[0]].writeInt(restPosition[1], rest.size * -1);
+      }
+    } else
       // ALLOCATE NEW SPACE FOR IT
       newFilePosition = allocateSpace(recordSize);
     return newFilePosition;
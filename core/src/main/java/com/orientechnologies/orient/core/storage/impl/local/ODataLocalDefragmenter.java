@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import com.orientechnologies.common.concur.lock.OModificationOperationProhibitedException;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+
+/**
+ * Defrags a data segment in background, used with file.defrag.strategy = 1. Every file.defrag.interval ms a step holds the locks
+ * for up to file.defrag.stepTime ms, moving no more records than the bytes file.defrag.ioBudget allows in the interval. Each step
+ * starts from where the previous one stopped: once the last hole is reached the next pass starts again from the beginning.<br/>
+ * The thread is never interrupted, since interrupting a thread while it reads or writes a file channel closes the channel.
+ */
+public class ODataLocalDefragmenter implements Runnable {
+  private final OStorageLocal storage;
+  private final ODataLocal    dataSegment;
+  private final long          interval;
+  private final long          stepTime;
+  private final long          stepBytes;
+  private final String        PROFILER_PROGRESS;
+  private volatile boolean    running;
+  private volatile long       position;
+
+  public ODataLocalDefragmenter(final OStorageLocal iStorage, final ODataLocal iDataSegment) {
+    storage = iStorage;
+    dataSegment = iDataSegment;
+    interval = OGlobalConfiguration.FILE_DEFRAG_INTERVAL.getValueAsInteger();
+    stepTime = OGlobalConfiguration.FILE_DEFRAG_STEP_TIME.getValueAsInteger();
+
+    final long ioBudget = OGlobalConfiguration.FILE_DEFRAG_IO_BUDGET.getValueAsInteger();
+    stepBytes = ioBudget > -1 ? Math.max(1, ioBudget * interval / 1000) : -1;
+
+    PROFILER_PROGRESS = "db." + iStorage.getName() + ".data." + iDataSegment.getName() + ".defragProgress";
+  }
+
+  public void start() {
+    running = true;
+
+    Orient.instance().getProfiler().registerHookValue(PROFILER_PROGRESS, new OProfilerHookValue() {
+      public Object getValue() {
+        final long size = dataSegment.getSize();
+        return size > 0 ? Math.min(100, position * 100 / size) : 100;
+      }
+    });
+
+    final Thread thread = new Thread(this, "OrientDB defrag " + storage.getName() + "." + dataSegment.getName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public synchronized void stop() {
+    running = false;
+    notifyAll();
+
+    Orient.instance().getProfiler().unregisterHookValue(PROFILER_PROGRESS);
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Returns the position the next step starts from.
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  public void run() {
+    while (running) {
+      try {
+        synchronized (this) {
+          wait(Math.max(1, interval));
+        }
+        if (!running)
+          break;
+
+        final long next = storage.defragDataSegment(dataSegment, position, stepTime, stepBytes);
+        position = next > -1 ? next : 0;
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (OModificationOperationProhibitedException e) {
+        // DATABASE FROZEN: TRY AGAIN AT THE NEXT STEP
+      } catch (Exception e) {
+        OLogManager.instance().error(this, "Error on defragmenting the data segment '%s' of storage '%s'", e,
+            dataSegment.getName(), storage.getName());
+      }
+    }
+  }
+}
@@ -164,6 +164,16 @@ public class ODataLocalHole extends OSingleFileSegment {
     return closestHole;
   }
 
+  /**
+   * Returns the first hole starting at the position received or after it.
+   * 
+   * @return The hole if any, otherwise null
+   */
+  public synchronized ODataHoleInfo getHoleAfter(final long iDataOffset) {
+    cursor.dataOffset = iDataOffset;
+    return availableHolesByPosition.ceilingKey(cursor);
+  }
+
   /**
    * Returns the first available hole (at least iRecordSize length) to be reused.
    * 
@@ -285,7 +295,7 @@ public class ODataLocalHole extends OSingleFileSegment {
   }
 
   public synchronized int getHoles() {
-    return (file.getFilledUpTo() / RECORD_SIZE);
+    return (int) (file.getFilledUpTo() / RECORD_SIZE);
   }
 
   @Override
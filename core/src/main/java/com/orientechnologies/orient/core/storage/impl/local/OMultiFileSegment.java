@@ -35,7 +35,7 @@ public class OMultiFileSegment extends OSegment {
   @SuppressWarnings("unused")
   private final String                   defrag;
   private int                            fileStartSize;
-  final private int                      fileMaxSize;
+  final private long                     fileMaxSize;
   private final int                      fileIncrementSize;
   private boolean                        wasSoftlyClosedAtPreviousTime = true;
 
@@ -49,7 +49,7 @@ public class OMultiFileSegment extends OSegment {
     defrag = iConfig.defrag;
     maxSize = OFileUtils.getSizeAsNumber(iConfig.maxSize);
     fileStartSize = (int) OFileUtils.getSizeAsNumber(iConfig.fileStartSize);
-    final int tmpFileMaxSize = (int) OFileUtils.getSizeAsNumber(iConfig.fileMaxSize);
+    final long tmpFileMaxSize = OFileUtils.getSizeAsNumber(iConfig.fileMaxSize);
     fileIncrementSize = (int) OFileUtils.getSizeAsNumber(iConfig.fileIncrementSize);
 
     if (iRoundMaxSize > 0)
@@ -58,7 +58,7 @@ public class OMultiFileSegment extends OSegment {
     else
       fileMaxSize = tmpFileMaxSize;
     // INSTANTIATE ALL THE FILES
-    int perFileMaxSize;
+    long perFileMaxSize;
 
     if (iConfig.infoFiles.length == 0) {
       // EMPTY FILE: CREATE THE FIRST FILE BY DEFAULT
@@ -236,11 +236,7 @@ public class OMultiFileSegment extends OSegment {
    * @return
    */
   protected long getAbsolutePosition(final long[] iFilePosition) {
-    long position = 0;
-    for (int i = 0; i < iFilePosition[0]; ++i) {
-      position += fileMaxSize;
-    }
-    return position + iFilePosition[1];
+    return iFilePosition[0] * fileMaxSize + iFilePosition[1];
   }
 
   protected long[] getRelativePosition(final long iPosition) {
@@ -253,7 +249,7 @@ public class OMultiFileSegment extends OSegment {
       throw new ODatabaseException("Record position #" + iPosition + " was bound to file #" + fileNum
           + " that is out of limit (files range 0-" + (files.length - 1) + ")");
 
-    final int fileRec = (int) (iPosition % fileMaxSize);
+    final long fileRec = iPosition % fileMaxSize;
 
     if (fileRec >= files[fileNum].getFilledUpTo() && fileRec < 0)
       throw new ODatabaseException("Record position #" + iPosition + " was bound to file #" + fileNum + " but the position #"
@@ -262,6 +258,23 @@ public class OMultiFileSegment extends OSegment {
     return new long[] { fileNum, fileRec };
   }
 
+  /**
+   * Returns the first absolute position with data from the position on: the position itself if it is in the filled part of its
+   * file, otherwise the beginning of the next file.
+   * 
+   * @return The position, or -1 if there is no data after the position
+   */
+  public long getNextFilledPosition(final long iPosition) {
+    final int fileNum = (int) (iPosition / fileMaxSize);
+    if (fileNum >= files.length)
+      return -1;
+
+    if (iPosition % fileMaxSize < files[fileNum].getFilledUpTo())
+      return iPosition;
+
+    return fileNum + 1 < files.length && files[fileNum + 1].getFilledUpTo() > 0 ? (fileNum + 1) * fileMaxSize : -1;
+  }
+
   private OFile createNewFile() throws IOException {
     final int num = files.length - 1;
 
@@ -296,7 +309,7 @@ public class OMultiFileSegment extends OSegment {
     OFile file;
     int remainingSize = iSize;
     // IF SOME FILES ALREADY CREATED
-    int offset = -1;
+    long offset = -1;
     int fileNumber = -1;
     if (files.length > 0) {
       // CHECK IF THERE IS FREE SPACE IN LAST FILE IN CHAIN
@@ -306,8 +319,9 @@ public class OMultiFileSegment extends OSegment {
       if (file.getFreeSpace() > 0) {
         fileNumber = files.length - 1;
         if (remainingSize > file.getFreeSpace()) {
-          remainingSize -= file.getFreeSpace();
-          offset = file.allocateSpace(file.getFreeSpace());
+          final int freeSpace = (int) file.getFreeSpace();
+          remainingSize -= freeSpace;
+          offset = file.allocateSpace(freeSpace);
         } else {
           return (long) (files.length - 1) * fileMaxSize + file.allocateSpace(remainingSize);
         }
@@ -315,17 +329,17 @@ public class OMultiFileSegment extends OSegment {
 
       // NOT FOUND FREE SPACE: CHECK IF CAN OVERSIZE LAST FILE
 
-      final int oversize = fileMaxSize - file.getFileSize();
+      final long oversize = fileMaxSize - file.getFileSize();
       if (oversize > 0 && remainingSize > 0) {
         fileNumber = files.length - 1;
         if (remainingSize > oversize) {
           remainingSize -= oversize;
-          int newOffset = file.allocateSpace(oversize);
+          long newOffset = file.allocateSpace((int) oversize);
           // SAVE OFFSET IF IT WASN'T SAVED EARLIER
           if (offset == -1)
             offset = newOffset;
         } else {
-          int newOffset = file.allocateSpace(remainingSize);
+          long newOffset = file.allocateSpace(remainingSize);
           if (offset == -1)
             offset = newOffset;
           if (fileNumber == -1) {
@@ -397,7 +411,6 @@ public class OMultiFileSegment extends OSegment {
     OFile file;
     int remainingSize = iSize;
     long offset = pos[1];
-    assert offset < Integer.MAX_VALUE;
     assert offset > -1;
     for (int i = (int) pos[0]; remainingSize > 0; ++i) {
       file = files[i];
@@ -405,7 +418,7 @@ public class OMultiFileSegment extends OSegment {
         if (file.getFilledUpTo() < offset) {
           throw new ODatabaseException("range check! " + file.getFilledUpTo() + " " + offset);
         }
-        int toRead = file.getFilledUpTo() - (int) offset;
+        final int toRead = (int) (file.getFilledUpTo() - offset);
         file.read(offset, iBuffer, toRead, iSize - remainingSize);
         remainingSize -= toRead;
       } else {
@@ -43,7 +43,7 @@ public class OSingleFileSegment {
     config = iConfig;
     storage = iStorage;
     file = OFileFactory.instance().create(iType, iStorage.getVariableParser().resolveVariables(iConfig.path), iStorage.getMode());
-    file.setMaxSize((int) OFileUtils.getSizeAsNumber(iConfig.maxSize));
+    file.setMaxSize(OFileUtils.getSizeAsNumber(iConfig.maxSize));
     file.setIncrementSize((int) OFileUtils.getSizeAsNumber(iConfig.incrementSize));
   }
 
@@ -86,7 +86,7 @@ public class OStorageConfigurationSegment extends OStorageConfiguration {
       final int len = buffer.length + OBinaryProtocol.SIZE_INT;
 
       if (len > segment.getFile().getFilledUpTo())
-        segment.getFile().allocateSpace(len - segment.getFile().getFilledUpTo());
+        segment.getFile().allocateSpace((int) (len - segment.getFile().getFilledUpTo()));
 
       segment.getFile().writeInt(0, buffer.length);
       segment.getFile().write(OBinaryProtocol.SIZE_INT, buffer);
@@ -25,7 +25,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.orientechnologies.common.concur.lock.OLockManager;
 import com.orientechnologies.common.concur.lock.OLockManager.LOCK;
 import com.orientechnologies.common.concur.lock.OModificationLock;
 import com.orientechnologies.common.exception.OException;
@@ -72,18 +75,22 @@ public class OStorageLocal extends OStorageEmbedded {
   private ODataLocal[]                  dataSegments              = new ODataLocal[0];
 
   private final OStorageLocalTxExecuter txManager;
+  private final OStorageLocalGroupCommit groupCommit;
   private String                        storagePath;
   private final OStorageVariableParser  variableParser;
   private int                           defaultClusterId          = -1;
 
   private static String[]               ALL_FILE_EXTENSIONS       = { "ocf", ".och", ".ocl", ".oda", ".odh", ".otx", ".oco", ".ocs" };
 
-  private long                          positionGenerator         = 0;
+  private final AtomicLong              positionGenerator         = new AtomicLong();
 
   private OModificationLock             modificationLock          = new OModificationLock();
 
   private final Set<String>             clustersToSyncImmediately = new HashSet<String>();
 
+  private final boolean                 fineGrainedLocking;
+  private final OLockManager<Integer, Runnable> clusterLockManager;
+
   public OStorageLocal(final String iName, final String iFilePath, final String iMode) throws IOException {
     super(iName, iFilePath, iMode);
 
@@ -100,6 +107,11 @@ public class OStorageLocal extends OStorageEmbedded {
     variableParser = new OStorageVariableParser(storagePath);
     configuration = new OStorageConfigurationSegment(this);
     txManager = new OStorageLocalTxExecuter(this, configuration.txSegment);
+    groupCommit = OGlobalConfiguration.TX_GROUP_COMMIT.getValueAsBoolean() ? new OStorageLocalGroupCommit(this) : null;
+
+    fineGrainedLocking = OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.getValueAsBoolean();
+    clusterLockManager = new OLockManager<Integer, Runnable>(fineGrainedLocking
+        && OGlobalConfiguration.ENVIRONMENT_CONCURRENT.getValueAsBoolean(), 0);
 
     // positionGenerator.setSeed(System.nanoTime());
 
@@ -311,6 +323,10 @@ public class OStorageLocal extends OStorageEmbedded {
       if (!checkForClose(iForce))
         return;
 
+      if (groupCommit != null && groupCommit.isPending())
+        // FLUSH THE TRANSACTIONS COMMITTED BUT NOT YET FLUSHED, OTHERWISE THEY WOULD BE ROLLED BACK AT THE NEXT OPEN
+        flushGroupCommit();
+
       status = STATUS.CLOSING;
 
       for (OCluster cluster : clusters)
@@ -467,7 +483,9 @@ public class OStorageLocal extends OStorageEmbedded {
                 warnings++;
               }
 
-              if (physicalPosition.dataSegmentPos > dataSegments[physicalPosition.dataSegmentId].getFilledUpTo()) {
+              if (physicalPosition.recordVersion > -1
+                  && physicalPosition.dataSegmentPos > dataSegments[physicalPosition.dataSegmentId].getFilledUpTo()) {
+                // THE DELETED RECORDS CAN POINT PAST THE END OF A DATA SEGMENT THE DEFRAG HAS SHRUNK
                 formatMessage(iVerbose, iListener, "WARN: Found wrong pointer to data chunk %d out of data segment size (%d) ",
                     physicalPosition.dataSegmentPos, dataSegments[physicalPosition.dataSegmentId].getFilledUpTo());
                 warnings++;
@@ -539,7 +557,7 @@ public class OStorageLocal extends OStorageEmbedded {
         formatMessage(iVerbose, iListener, "\n- data-segment %s (id=%d) size=%d/%d...", d.getName(), d.getId(), d.getFilledUpTo(),
             d.getSize(), d.getHoles());
 
-        int nextPos = 0;
+        long nextPos = 0;
 
         // GET DATA-SEGMENT HOLES
         final List<ODataHoleInfo> holes = d.getHolesList();
@@ -554,7 +572,7 @@ public class OStorageLocal extends OStorageEmbedded {
         // CHECK CHUNKS
         formatMessage(iVerbose, iListener, "\n-- checking chunks:");
 
-        for (int pos = 0; nextPos < d.getFilledUpTo();) {
+        for (long pos = 0; (nextPos = d.getNextFilledPosition(nextPos)) > -1;) {
           try {
             pos = nextPos;
 
@@ -607,7 +625,7 @@ public class OStorageLocal extends OStorageEmbedded {
                 nextPos = pos + ODataLocal.RECORD_FIX_SIZE + recordSize;
 
                 final byte[] buffer = d.getRecord(pos);
-                if (buffer.length != recordSize) {
+                if (buffer.length != recordSize && !d.isRecordCompressed(pos)) {
                   formatMessage(iVerbose, iListener,
                       "WARN: Chunk %s:%d (offset=%d size=%d) has wrong record size because the record length is %d ", d.getName(),
                       totalChunks, pos, recordSize, buffer.length);
@@ -701,6 +719,40 @@ public class OStorageLocal extends OStorageEmbedded {
     }
   }
 
+  /**
+   * Runs a step of the background defrag of a data segment. The records moved by the step are not accessed by the other threads: the
+   * storage is locked exclusively, or in shared mode with fine grained locking since the writers and the readers look for the
+   * position of the record again inside the lock of the data segment.
+   * 
+   * @return The position to start the next step from, or -1 if the data segment has no more holes after the position received
+   * @see ODataLocal#defragStep(long, long, long)
+   */
+  long defragDataSegment(final ODataLocal iDataSegment, final long iFrom, final long iMaxTime, final long iMaxBytes)
+      throws IOException {
+    modificationLock.requestModificationLock();
+    try {
+      if (fineGrainedLocking)
+        lock.acquireSharedLock();
+      else
+        lock.acquireExclusiveLock();
+      try {
+
+        if (status != STATUS.OPEN)
+          return -1;
+
+        return iDataSegment.defragStep(iFrom, iMaxTime, iMaxBytes);
+
+      } finally {
+        if (fineGrainedLocking)
+          lock.releaseSharedLock();
+        else
+          lock.releaseExclusiveLock();
+      }
+    } finally {
+      modificationLock.releaseModificationLock();
+    }
+  }
+
   public int getDataSegmentIdByName(final String iDataSegmentName) {
     if (iDataSegmentName == null)
       return 0;
@@ -1095,6 +1147,11 @@ public class OStorageLocal extends OStorageEmbedded {
   }
 
   public void commit(final OTransaction iTx) {
+    if (groupCommit != null) {
+      commitInGroup(iTx);
+      return;
+    }
+
     modificationLock.requestModificationLock();
     try {
       lock.acquireExclusiveLock();
@@ -1131,6 +1188,82 @@ public class OStorageLocal extends OStorageEmbedded {
     }
   }
 
+  /**
+   * Commits the transaction without synchronizing the storage. The transaction log is left untouched until the group the
+   * transaction belongs to is flushed by {@link #flushGroupCommit()}.
+   */
+  protected void commitInGroup(final OTransaction iTx) {
+    final long ticket;
+
+    modificationLock.requestModificationLock();
+    try {
+      lock.acquireExclusiveLock();
+      try {
+        try {
+          txManager.commitAllPendingRecords(iTx);
+        } catch (RuntimeException e) {
+          // WE NEED TO CALL ROLLBACK HERE, IN THE LOCK
+          rollback(iTx);
+          throw e;
+        } catch (IOException e) {
+          // WE NEED TO CALL ROLLBACK HERE, IN THE LOCK
+          rollback(iTx);
+          throw new OException(e);
+        }
+
+        ticket = groupCommit.assignTicket();
+      } finally {
+        lock.releaseExclusiveLock();
+      }
+    } finally {
+      modificationLock.releaseModificationLock();
+    }
+
+    if (lock.isLockedByCurrentThread())
+      // CALLED INSIDE AN OUTER LOCK: WAIT FOR THE FLUSH ONCE THE OUTER LOCK IS RELEASED
+      groupCommit.defer(ticket);
+    else
+      groupCommit.waitForFlush(ticket);
+  }
+
+  /**
+   * Flushes all the transactions committed in group since the last flush: synchronizes the storage and clears the transaction log
+   * once for all of them.
+   */
+  protected void flushGroupCommit() {
+    lock.acquireExclusiveLock();
+    try {
+      final long ticket = groupCommit.getLastTicket();
+
+      if (OGlobalConfiguration.TX_COMMIT_SYNCH.getValueAsBoolean())
+        synch();
+
+      txManager.clearAllLogEntries();
+
+      if (OGlobalConfiguration.TX_LOG_SYNCH.getValueAsBoolean())
+        txManager.getTxSegment().synch();
+
+      groupCommit.flushed(ticket);
+
+    } catch (IOException e) {
+      OLogManager.instance().error(this, "Error on flushing the group commit of storage '" + name + "'", e,
+          OStorageException.class);
+    } finally {
+      lock.releaseExclusiveLock();
+    }
+  }
+
+  @Override
+  public <V> V callInLock(final Callable<V> iCallable, final boolean iExclusiveLock) {
+    try {
+      return super.callInLock(iCallable, iExclusiveLock);
+    } finally {
+      if (groupCommit != null && !lock.isLockedByCurrentThread())
+        // WAIT FOR THE TRANSACTIONS COMMITTED INSIDE THE CALLABLE
+        groupCommit.waitForDeferred();
+    }
+  }
+
   public void rollback(final OTransaction iTx) {
     modificationLock.requestModificationLock();
     try {
@@ -1262,6 +1395,22 @@ public class OStorageLocal extends OStorageEmbedded {
     }
   }
 
+  /**
+   * Returns how many times the records compressed since the storage was opened are smaller than their content, 1 if no record
+   * has been compressed.
+   */
+  public float getCompressionRatio() {
+    long raw = 0;
+    long compressed = 0;
+    for (ODataLocal d : dataSegments)
+      if (d != null) {
+        raw += d.getCompressedRawBytes();
+        compressed += d.getCompressedBytes();
+      }
+
+    return compressed > 0 ? (float) raw / compressed : 1;
+  }
+
   public void setDefaultClusterId(final int defaultClusterId) {
     this.defaultClusterId = defaultClusterId;
   }
@@ -1500,14 +1649,14 @@ public class OStorageLocal extends OStorageEmbedded {
 
     final long timer = Orient.instance().getProfiler().startChrono();
 
-    lock.acquireExclusiveLock();
+    acquireRecordWriteLock(iClusterSegment);
     try {
       final OPhysicalPosition ppos = new OPhysicalPosition(-1, -1, iRecordType);
 
       boolean sequentialPositionGeneration = false;
       if (iClusterSegment.generatePositionBeforeCreation()) {
         if (iRid.isNew()) {
-          iRid.clusterPosition = positionGenerator++;
+          iRid.clusterPosition = positionGenerator.getAndIncrement();
           sequentialPositionGeneration = true;
         } // GENERATED EXTERNALLY
       } else {
@@ -1518,24 +1667,30 @@ public class OStorageLocal extends OStorageEmbedded {
       lockManager.acquireLock(Thread.currentThread(), iRid, LOCK.EXCLUSIVE);
       try {
 
-        ppos.dataSegmentId = iDataSegment.getId();
-        ppos.dataSegmentPos = iDataSegment.addRecord(iRid, iContent);
+        // LOCK THE DATA SEGMENT UNTIL THE CLUSTER POINTS TO THE NEW RECORD: A DEFRAG COULD MOVE IT IN THE MEANWHILE
+        iDataSegment.acquireExclusiveLock();
+        try {
+          ppos.dataSegmentId = iDataSegment.getId();
+          ppos.dataSegmentPos = iDataSegment.addRecord(iRid, iContent);
 
-        if (iClusterSegment.generatePositionBeforeCreation()) {
-          if (iRecordVersion > -1 && iRecordVersion > ppos.recordVersion)
-            ppos.recordVersion = iRecordVersion;
+          if (iClusterSegment.generatePositionBeforeCreation()) {
+            if (iRecordVersion > -1 && iRecordVersion > ppos.recordVersion)
+              ppos.recordVersion = iRecordVersion;
 
-          ppos.clusterPosition = iRid.clusterPosition;
-          addPhysicalPosition(iDataSegment, iClusterSegment, iRid, ppos, sequentialPositionGeneration);
-        } else {
-          // UPDATE THE POSITION IN CLUSTER WITH THE POSITION OF RECORD IN DATA
-          iClusterSegment.updateDataSegmentPosition(ppos.clusterPosition, ppos.dataSegmentId, ppos.dataSegmentPos);
+            ppos.clusterPosition = iRid.clusterPosition;
+            addPhysicalPosition(iDataSegment, iClusterSegment, iRid, ppos, sequentialPositionGeneration);
+          } else {
+            // UPDATE THE POSITION IN CLUSTER WITH THE POSITION OF RECORD IN DATA
+            iClusterSegment.updateDataSegmentPosition(ppos.clusterPosition, ppos.dataSegmentId, ppos.dataSegmentPos);
 
-          if (iRecordVersion > -1 && iRecordVersion > ppos.recordVersion) {
-            // OVERWRITE THE VERSION
-            iClusterSegment.updateVersion(iRid.clusterPosition, iRecordVersion);
-            ppos.recordVersion = iRecordVersion;
+            if (iRecordVersion > -1 && iRecordVersion > ppos.recordVersion) {
+              // OVERWRITE THE VERSION
+              iClusterSegment.updateVersion(iRid.clusterPosition, iRecordVersion);
+              ppos.recordVersion = iRecordVersion;
+            }
           }
+        } finally {
+          iDataSegment.releaseExclusiveLock();
         }
 
         return ppos;
@@ -1548,7 +1703,7 @@ public class OStorageLocal extends OStorageEmbedded {
       return null;
 
     } finally {
-      lock.releaseExclusiveLock();
+      releaseRecordWriteLock(iClusterSegment);
 
       Orient.instance().getProfiler().stopChrono(PROFILER_CREATE_RECORD, timer);
     }
@@ -1564,7 +1719,7 @@ public class OStorageLocal extends OStorageEmbedded {
           // iRid.clusterPosition = positionGenerator.nextLong(Long.MAX_VALUE);
           lockManager.releaseLock(Thread.currentThread(), iRid, LOCK.EXCLUSIVE);
 
-          iRid.clusterPosition = positionGenerator++;
+          iRid.clusterPosition = positionGenerator.getAndIncrement();
           ppos.clusterPosition = iRid.clusterPosition;
 
           lockManager.acquireLock(Thread.currentThread(), iRid, LOCK.EXCLUSIVE);
@@ -1622,13 +1777,27 @@ public class OStorageLocal extends OStorageEmbedded {
 
       lockManager.acquireLock(Thread.currentThread(), iRid, LOCK.SHARED);
       try {
-        final OPhysicalPosition ppos = iClusterSegment.getPhysicalPosition(new OPhysicalPosition(iRid.clusterPosition));
+        OPhysicalPosition ppos = iClusterSegment.getPhysicalPosition(new OPhysicalPosition(iRid.clusterPosition));
         if (ppos == null || !checkForRecordValidity(ppos))
           // DELETED
           return null;
 
         final ODataLocal data = getDataSegmentById(ppos.dataSegmentId);
-        return new ORawBuffer(data.getRecord(ppos.dataSegmentPos), ppos.recordVersion, ppos.recordType);
+
+        if (!fineGrainedLocking)
+          return new ORawBuffer(data.getRecord(ppos.dataSegmentPos), ppos.recordVersion, ppos.recordType);
+
+        // WRITERS RUN CONCURRENTLY: READ THE POSITION AGAIN INSIDE THE DATA SEGMENT LOCK SINCE A DEFRAG COULD HAVE MOVED THE RECORD
+        data.acquireSharedLock();
+        try {
+          ppos = iClusterSegment.getPhysicalPosition(ppos);
+          if (ppos == null || !checkForRecordValidity(ppos))
+            return null;
+
+          return new ORawBuffer(data.getRecord(ppos.dataSegmentPos), ppos.recordVersion, ppos.recordType);
+        } finally {
+          data.releaseSharedLock();
+        }
 
       } finally {
         lockManager.releaseLock(Thread.currentThread(), iRid, LOCK.SHARED);
@@ -1654,7 +1823,7 @@ public class OStorageLocal extends OStorageEmbedded {
 
     final long timer = Orient.instance().getProfiler().startChrono();
 
-    lock.acquireExclusiveLock();
+    acquireRecordWriteLock(iClusterSegment);
     try {
 
       // GET THE SHARED LOCK AND GET AN EXCLUSIVE LOCK AGAINST THE RECORD
@@ -1700,18 +1869,28 @@ public class OStorageLocal extends OStorageEmbedded {
         if (ppos.recordType != iRecordType)
           iClusterSegment.updateRecordType(iRid.clusterPosition, iRecordType);
 
-        final long newDataSegmentOffset;
+        final ODataLocal dataSegment = getDataSegmentById(ppos.dataSegmentId);
+        dataSegment.acquireExclusiveLock();
+        try {
+          if (fineGrainedLocking)
+            // A DEFRAG COULD HAVE MOVED THE RECORD BEFORE THE DATA SEGMENT WAS LOCKED
+            ppos.dataSegmentPos = iClusterSegment.getPhysicalPosition(new OPhysicalPosition(iRid.clusterPosition)).dataSegmentPos;
+
+          final long newDataSegmentOffset;
 
-        if (ppos.dataSegmentPos == -1)
-          // WAS EMPTY FIRST TIME, CREATE IT NOW
-          newDataSegmentOffset = getDataSegmentById(ppos.dataSegmentId).addRecord(iRid, iContent);
-        else
-          newDataSegmentOffset = getDataSegmentById(ppos.dataSegmentId).setRecord(ppos.dataSegmentPos, iRid, iContent);
+          if (ppos.dataSegmentPos == -1)
+            // WAS EMPTY FIRST TIME, CREATE IT NOW
+            newDataSegmentOffset = dataSegment.addRecord(iRid, iContent);
+          else
+            newDataSegmentOffset = dataSegment.setRecord(ppos.dataSegmentPos, iRid, iContent);
 
-        if (newDataSegmentOffset != ppos.dataSegmentPos) {
-          // UPDATE DATA SEGMENT OFFSET WITH THE NEW PHYSICAL POSITION
-          iClusterSegment.updateDataSegmentPosition(ppos.clusterPosition, ppos.dataSegmentId, newDataSegmentOffset);
-          ppos.dataSegmentPos = newDataSegmentOffset;
+          if (newDataSegmentOffset != ppos.dataSegmentPos) {
+            // UPDATE DATA SEGMENT OFFSET WITH THE NEW PHYSICAL POSITION
+            iClusterSegment.updateDataSegmentPosition(ppos.clusterPosition, ppos.dataSegmentId, newDataSegmentOffset);
+            ppos.dataSegmentPos = newDataSegmentOffset;
+          }
+        } finally {
+          dataSegment.releaseExclusiveLock();
         }
 
         return ppos;
@@ -1725,7 +1904,7 @@ public class OStorageLocal extends OStorageEmbedded {
       OLogManager.instance().error(this, "Error on updating record " + iRid + " (cluster: " + iClusterSegment + ")", e);
 
     } finally {
-      lock.releaseExclusiveLock();
+      releaseRecordWriteLock(iClusterSegment);
 
       Orient.instance().getProfiler().stopChrono(PROFILER_UPDATE_RECORD, timer);
     }
@@ -1736,7 +1915,7 @@ public class OStorageLocal extends OStorageEmbedded {
   protected OPhysicalPosition deleteRecord(final OCluster iClusterSegment, final ORecordId iRid, final int iVersion) {
     final long timer = Orient.instance().getProfiler().startChrono();
 
-    lock.acquireExclusiveLock();
+    acquireRecordWriteLock(iClusterSegment);
     try {
 
       lockManager.acquireLock(Thread.currentThread(), iRid, LOCK.EXCLUSIVE);
@@ -1755,10 +1934,20 @@ public class OStorageLocal extends OStorageEmbedded {
           else
             throw new OConcurrentModificationException(iRid, ppos.recordVersion, iVersion, ORecordOperation.DELETED);
 
-        if (ppos.dataSegmentPos > -1)
-          getDataSegmentById(ppos.dataSegmentId).deleteRecord(ppos.dataSegmentPos);
+        final ODataLocal dataSegment = getDataSegmentById(ppos.dataSegmentId);
+        dataSegment.acquireExclusiveLock();
+        try {
+          if (fineGrainedLocking)
+            // A DEFRAG COULD HAVE MOVED THE RECORD BEFORE THE DATA SEGMENT WAS LOCKED
+            ppos.dataSegmentPos = iClusterSegment.getPhysicalPosition(new OPhysicalPosition(iRid.clusterPosition)).dataSegmentPos;
+
+          if (ppos.dataSegmentPos > -1)
+            dataSegment.deleteRecord(ppos.dataSegmentPos);
 
-        iClusterSegment.removePhysicalPosition(iRid.clusterPosition);
+          iClusterSegment.removePhysicalPosition(iRid.clusterPosition);
+        } finally {
+          dataSegment.releaseExclusiveLock();
+        }
 
         return ppos;
 
@@ -1770,7 +1959,7 @@ public class OStorageLocal extends OStorageEmbedded {
       OLogManager.instance().error(this, "Error on deleting record " + iRid + "( cluster: " + iClusterSegment + ")", e);
 
     } finally {
-      lock.releaseExclusiveLock();
+      releaseRecordWriteLock(iClusterSegment);
 
       Orient.instance().getProfiler().stopChrono(PROFILER_DELETE_RECORD, timer);
     }
@@ -1778,6 +1967,26 @@ public class OStorageLocal extends OStorageEmbedded {
     return null;
   }
 
+  /**
+   * Locks the storage before to change a record of the cluster. In fine grained mode only the cluster is locked exclusively, while
+   * the storage is locked in shared mode to exclude structural changes.
+   */
+  private void acquireRecordWriteLock(final OCluster iClusterSegment) {
+    if (fineGrainedLocking) {
+      lock.acquireSharedLock();
+      clusterLockManager.acquireLock(Thread.currentThread(), iClusterSegment.getId(), LOCK.EXCLUSIVE);
+    } else
+      lock.acquireExclusiveLock();
+  }
+
+  private void releaseRecordWriteLock(final OCluster iClusterSegment) {
+    if (fineGrainedLocking) {
+      clusterLockManager.releaseLock(Thread.currentThread(), iClusterSegment.getId(), LOCK.EXCLUSIVE);
+      lock.releaseSharedLock();
+    } else
+      lock.releaseExclusiveLock();
+  }
+
   private void installProfilerHooks() {
     Orient.instance().getProfiler().registerHookValue("db." + name + ".data.holes", new OProfilerHookValue() {
       public Object getValue() {
@@ -1789,6 +1998,11 @@ public class OStorageLocal extends OStorageEmbedded {
         return getHoleSize();
       }
     });
+    Orient.instance().getProfiler().registerHookValue("db." + name + ".data.compressionRatio", new OProfilerHookValue() {
+      public Object getValue() {
+        return getCompressionRatio();
+      }
+    });
   }
 
   private void formatMessage(final boolean iVerbose, final OCommandOutputListener iListener, final String iMessage,
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.exception.OTransactionException;
+
+/**
+ * Coordinates the group commit of a local storage. Every transaction applied to the storage receives a ticket. Committers wait
+ * until their ticket has been flushed: the first waiter becomes the leader and flushes the storage once for all the tickets
+ * assigned so far, while the others wait to be woken up. Transactions committed while a flush is running are flushed together by
+ * the next leader.<br/>
+ * If the commit is executed inside a lock already owned by the current thread (like with
+ * {@link OStorageLocal#callInLock(java.util.concurrent.Callable, boolean)}), the wait is deferred until the outer lock is released.
+ * 
+ * @author Luca Garulli (l.garulli--at--orientechnologies.com)
+ * 
+ */
+public class OStorageLocalGroupCommit {
+  private final OStorageLocal         storage;
+  private long                        lastTicket     = 0;
+  private long                        flushedTicket  = 0;
+  private boolean                     flushing       = false;
+  private final ThreadLocal<Long>     deferredTicket = new ThreadLocal<Long>();
+
+  private final String                PROFILER_FLUSHES;
+  private final String                PROFILER_GROUP_SIZE;
+
+  public OStorageLocalGroupCommit(final OStorageLocal iStorage) {
+    storage = iStorage;
+    PROFILER_FLUSHES = "db." + storage.getName() + ".groupCommit.flushes";
+    PROFILER_GROUP_SIZE = "db." + storage.getName() + ".groupCommit.groupSize";
+  }
+
+  /**
+   * Assigns the ticket to a transaction just applied to the storage. Must be called inside the storage exclusive lock.
+   */
+  public synchronized long assignTicket() {
+    return ++lastTicket;
+  }
+
+  /**
+   * Returns the last ticket assigned. Must be called inside the storage exclusive lock to get a stable value.
+   */
+  public synchronized long getLastTicket() {
+    return lastTicket;
+  }
+
+  public synchronized boolean isPending() {
+    return flushedTicket < lastTicket;
+  }
+
+  /**
+   * Marks all the tickets up to the one passed as flushed. Called by the storage once the flush is completed.
+   */
+  public synchronized void flushed(final long iTicket) {
+    if (iTicket > flushedTicket) {
+      Orient.instance().getProfiler().updateCounter(PROFILER_FLUSHES, +1);
+      Orient.instance().getProfiler().updateStat(PROFILER_GROUP_SIZE, iTicket - flushedTicket);
+      flushedTicket = iTicket;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Remembers the ticket to wait for at the release of the lock owned by the current thread.
+   */
+  public void defer(final long iTicket) {
+    final Long previous = deferredTicket.get();
+    if (previous == null || previous.longValue() < iTicket)
+      deferredTicket.set(iTicket);
+  }
+
+  /**
+   * Waits for the ticket deferred by the current thread, if any.
+   */
+  public void waitForDeferred() {
+    final Long ticket = deferredTicket.get();
+    if (ticket != null) {
+      deferredTicket.remove();
+      waitForFlush(ticket);
+    }
+  }
+
+  /**
+   * Waits until the ticket has been flushed. If no flush is running the current thread becomes the leader and flushes the storage.
+   * Must be called outside the storage lock.
+   */
+  public void waitForFlush(final long iTicket) {
+    synchronized (this) {
+      while (flushedTicket < iTicket && flushing)
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new OTransactionException("Interrupted while waiting for the group commit of storage " + storage.getName(), e);
+        }
+
+      if (flushedTicket >= iTicket)
+        return;
+
+      // BECOME THE LEADER
+      flushing = true;
+    }
+
+    try {
+      storage.flushGroupCommit();
+    } finally {
+      synchronized (this) {
+        flushing = false;
+        notifyAll();
+      }
+    }
+  }
+}
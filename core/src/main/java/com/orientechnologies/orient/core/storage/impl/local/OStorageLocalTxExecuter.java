@@ -18,11 +18,16 @@ package com.orientechnologies.orient.core.storage.impl.local;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.config.OStorageTxConfiguration;
 import com.orientechnologies.orient.core.db.record.ORecordOperation;
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.exception.OFastConcurrentModificationException;
 import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
 import com.orientechnologies.orient.core.exception.OTransactionException;
 import com.orientechnologies.orient.core.id.ORID;
@@ -37,9 +42,11 @@ import com.orientechnologies.orient.core.tx.OTransactionAbstract;
 import com.orientechnologies.orient.core.tx.OTxListener;
 
 public class OStorageLocalTxExecuter {
-  private final OStorageLocal storage;
-  private final OTxSegment    txSegment;
-  private OTransaction        currentTransaction;
+  private final OStorageLocal  storage;
+  private final OTxSegment     txSegment;
+  private final boolean        groupCommit;
+  private final Set<ORecordId> loggedRecords = new HashSet<ORecordId>();
+  private OTransaction         currentTransaction;
 
   public OStorageLocalTxExecuter(final OStorageLocal iStorage, final OStorageTxConfiguration iConfig) throws IOException {
     storage = iStorage;
@@ -47,6 +54,7 @@ public class OStorageLocalTxExecuter {
     iConfig.path = OStorageVariableParser.DB_PATH_VARIABLE + "/txlog.otx";
 
     txSegment = new OTxSegment(storage, iStorage.getConfiguration().txSegment);
+    groupCommit = OGlobalConfiguration.TX_GROUP_COMMIT.getValueAsBoolean();
   }
 
   public void open() throws IOException {
@@ -106,15 +114,17 @@ public class OStorageLocalTxExecuter {
   protected int updateRecord(final int iTxId, final OCluster iClusterSegment, final ORecordId iRid, final byte[] iContent,
       final int iVersion, final byte iRecordType) {
     try {
-      // READ CURRENT RECORD CONTENT
-      final ORawBuffer buffer = storage.readRecord(iClusterSegment, iRid, true);
+      if (!loggedRecords.contains(iRid)) {
+        // READ CURRENT RECORD CONTENT
+        final ORawBuffer buffer = storage.readRecord(iClusterSegment, iRid, true);
 
-      if (buffer == null)
-        throw new ORecordNotFoundException("The record with id " + iRid + " was not found");
+        if (buffer == null)
+          throw new ORecordNotFoundException("The record with id " + iRid + " was not found");
 
-      // SAVE INTO THE LOG THE POSITION OF THE OLD RECORD JUST DELETED. IF TX FAILS AT THIS POINT AS ABOVE
-      txSegment.addLog(OTxSegment.OPERATION_UPDATE, iTxId, iRid.clusterId, iRid.clusterPosition, iRecordType, buffer.version,
-          buffer.buffer, -1);
+        // SAVE INTO THE LOG THE POSITION OF THE OLD RECORD JUST DELETED. IF TX FAILS AT THIS POINT AS ABOVE
+        txSegment.addLog(OTxSegment.OPERATION_UPDATE, iTxId, iRid.clusterId, iRid.clusterPosition, iRecordType, buffer.version,
+            buffer.buffer, -1);
+      }
 
       final OPhysicalPosition ppos = storage.updateRecord(iClusterSegment, iRid, iContent, iVersion, iRecordType);
       if (ppos != null)
@@ -138,10 +148,12 @@ public class OStorageLocalTxExecuter {
       final ORawBuffer buffer = storage.readRecord(iClusterSegment, rid, true);
 
       if (buffer != null) {
-        // SAVE INTO THE LOG THE OLD RECORD
-        final OPhysicalPosition ppos = iClusterSegment.getPhysicalPosition(new OPhysicalPosition(iPosition));
-        txSegment.addLog(OTxSegment.OPERATION_DELETE, iTxId, iClusterSegment.getId(), iPosition, buffer.recordType, buffer.version,
-            buffer.buffer, ppos.dataSegmentId);
+        if (!loggedRecords.contains(rid)) {
+          // SAVE INTO THE LOG THE OLD RECORD
+          final OPhysicalPosition ppos = iClusterSegment.getPhysicalPosition(new OPhysicalPosition(iPosition));
+          txSegment.addLog(OTxSegment.OPERATION_DELETE, iTxId, iClusterSegment.getId(), iPosition, buffer.recordType,
+              buffer.version, buffer.buffer, ppos.dataSegmentId);
+        }
 
         return storage.deleteRecord(iClusterSegment, rid, iVersion) != null;
       }
@@ -172,6 +184,10 @@ public class OStorageLocalTxExecuter {
         iTx.clearRecordEntries();
 
         if (!tmpEntries.isEmpty()) {
+          if (groupCommit && iTx.isUsingLog())
+            // THE LOG IS NOT SYNCHRONIZED AT EVERY ENTRY: LOG ALL THE OLD CONTENTS AND SYNCHRONIZE IT ONCE
+            logPendingRecords(iTx, tmpEntries);
+
           for (ORecordOperation txEntry : tmpEntries)
             // COMMIT ALL THE SINGLE ENTRIES ONE BY ONE
             commitEntry(iTx, txEntry, iTx.isUsingLog());
@@ -182,6 +198,7 @@ public class OStorageLocalTxExecuter {
       OTransactionAbstract.updateCacheFromEntries(storage, iTx, iTx.getAllRecordEntries(), true);
     } finally {
       currentTransaction = null;
+      loggedRecords.clear();
     }
   }
 
@@ -190,6 +207,13 @@ public class OStorageLocalTxExecuter {
     txSegment.clearLogEntries(iTx.getId());
   }
 
+  /**
+   * Clears the log entries of all the transactions. Used by the group commit once the whole group has been flushed.
+   */
+  public void clearAllLogEntries() throws IOException {
+    txSegment.truncate();
+  }
+
   private void commitEntry(final OTransaction iTx, final ORecordOperation txEntry, final boolean iUseLog) throws IOException {
 
     if (txEntry.type != ORecordOperation.DELETED && !txEntry.getRecord().isDirty())
@@ -291,6 +315,67 @@ public class OStorageLocalTxExecuter {
       ((OTxListener) txEntry.getRecord()).onEvent(txEntry, OTxListener.EVENT.AFTER_COMMIT);
   }
 
+  /**
+   * Saves into the log the current content of all the records the entries are going to update or delete, then synchronizes the
+   * log once. Used with the group commit, where the log is not synchronized at every entry, so that the old contents are on disk
+   * before any of the records is overwritten. The versions are checked before logging anything: a record logged but never touched
+   * would be restored at rollback.
+   */
+  private void logPendingRecords(final OTransaction iTx, final List<ORecordOperation> iEntries) throws IOException {
+    final List<ORecordId> rids = new ArrayList<ORecordId>();
+    final List<ORawBuffer> buffers = new ArrayList<ORawBuffer>();
+    final List<Byte> operations = new ArrayList<Byte>();
+    final List<Integer> dataSegmentIds = new ArrayList<Integer>();
+
+    for (ORecordOperation txEntry : iEntries) {
+      final ORecordId rid = (ORecordId) txEntry.getRecord().getIdentity();
+
+      if (txEntry.type == ORecordOperation.LOADED || !rid.isPersistent() || loggedRecords.contains(rid))
+        continue;
+
+      if (txEntry.type != ORecordOperation.DELETED && !txEntry.getRecord().isDirty())
+        continue;
+
+      final OCluster cluster = storage.getClusterById(rid.clusterId);
+      if (cluster.getName().equals(OMetadata.CLUSTER_INDEX_NAME) || cluster.getName().equals(OMetadata.CLUSTER_MANUAL_INDEX_NAME)
+          || !(cluster instanceof OClusterLocal || cluster instanceof OClusterLocalLHPEPS))
+        continue;
+
+      final ORawBuffer buffer = storage.readRecord(cluster, rid, true);
+      if (buffer == null)
+        continue;
+
+      final byte operation = txEntry.type == ORecordOperation.DELETED ? OTxSegment.OPERATION_DELETE : OTxSegment.OPERATION_UPDATE;
+
+      // MVCC TRANSACTION: CHECK IF VERSION IS THE SAME
+      final int version = txEntry.getRecord().getVersion();
+      if (version > -1 && version != buffer.version)
+        if (OFastConcurrentModificationException.enabled())
+          throw OFastConcurrentModificationException.instance();
+        else
+          throw new OConcurrentModificationException(rid, buffer.version, version,
+              operation == OTxSegment.OPERATION_DELETE ? ORecordOperation.DELETED : ORecordOperation.UPDATED);
+
+      rids.add(rid);
+      buffers.add(buffer);
+      operations.add(operation);
+      dataSegmentIds.add(operation == OTxSegment.OPERATION_DELETE ? cluster.getPhysicalPosition(new OPhysicalPosition(
+          rid.clusterPosition)).dataSegmentId : -1);
+    }
+
+    for (int i = 0; i < rids.size(); ++i) {
+      final ORecordId rid = rids.get(i);
+      final ORawBuffer buffer = buffers.get(i);
+
+      txSegment.addLog(operations.get(i), iTx.getId(), rid.clusterId, rid.clusterPosition, buffer.recordType, buffer.version,
+          buffer.buffer, dataSegmentIds.get(i));
+      loggedRecords.add(rid.copy());
+    }
+
+    if (!rids.isEmpty() && OGlobalConfiguration.TX_LOG_SYNCH.getValueAsBoolean())
+      txSegment.synch();
+  }
+
   public boolean isCommitting() {
     return currentTransaction != null;
   }
@@ -17,7 +17,9 @@ package com.orientechnologies.orient.core.storage.impl.local;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -69,7 +71,9 @@ public class OTxSegment extends OSingleFileSegment {
 
   public OTxSegment(final OStorageLocal iStorage, final OStorageTxConfiguration iConfig) throws IOException {
     super(iStorage, iConfig, OGlobalConfiguration.TX_LOG_TYPE.getValueAsString());
-    synchEnabled = OGlobalConfiguration.TX_LOG_SYNCH.getValueAsBoolean();
+    // WITH GROUP COMMIT THE LOG IS SYNCHRONIZED ONCE PER TRANSACTION, BEFORE ITS RECORDS ARE TOUCHED, BY THE TX EXECUTER
+    synchEnabled = OGlobalConfiguration.TX_LOG_SYNCH.getValueAsBoolean()
+        && !OGlobalConfiguration.TX_GROUP_COMMIT.getValueAsBoolean();
   }
 
   /**
@@ -117,7 +121,7 @@ public class OTxSegment extends OSingleFileSegment {
     lock.acquireExclusiveLock();
     try {
 
-      int offset = file.allocateSpace(size);
+      long offset = file.allocateSpace(size);
 
       file.writeByte(offset, STATUS_COMMITTING);
       offset += OBinaryProtocol.SIZE_BYTE;
@@ -197,7 +201,9 @@ public class OTxSegment extends OSingleFileSegment {
     int recoveredRecords = 0;
     int recs;
 
-    final Set<Integer> txToRecover = scanForTransactionsToRecover();
+    // RECOVER THE TRANSACTIONS IN REVERSE ORDER: WITH GROUP COMMIT THE LOG CAN CONTAIN MORE TRANSACTIONS TOUCHING THE SAME RECORDS
+    final List<Integer> txToRecover = new ArrayList<Integer>(scanForTransactionsToRecover());
+    Collections.reverse(txToRecover);
     for (Integer txId : txToRecover) {
       recs = recoverTransaction(txId);
 
@@ -223,7 +229,7 @@ public class OTxSegment extends OSingleFileSegment {
    */
   private Set<Integer> scanForTransactionsToRecover() throws IOException {
     // SCAN ALL THE FILE SEARCHING FOR THE TRANSACTIONS TO RECOVER
-    final Set<Integer> txToRecover = new HashSet<Integer>();
+    final Set<Integer> txToRecover = new LinkedHashSet<Integer>();
 
     final Set<Integer> txToNotRecover = new HashSet<Integer>();
 
@@ -369,7 +375,8 @@ public class OTxSegment extends OSingleFileSegment {
   }
 
   private boolean eof(final long iOffset) {
-    return iOffset + OFFSET_RECORD_CONTENT < file.getFilledUpTo();
+    // AN ENTRY WITHOUT CONTENT, LIKE A CREATE, CAN END EXACTLY AT THE END OF THE FILE
+    return iOffset + OFFSET_RECORD_CONTENT <= file.getFilledUpTo();
   }
 
   private long nextEntry(final long iOffset) throws IOException {
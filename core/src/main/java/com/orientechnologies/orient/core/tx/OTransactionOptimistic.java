@@ -32,7 +32,7 @@ import com.orientechnologies.orient.core.hook.ORecordHook.TYPE;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.index.OIndex;
-import com.orientechnologies.orient.core.index.OIndexMVRBTreeAbstract;
+import com.orientechnologies.orient.core.index.OIndexInternal;
 import com.orientechnologies.orient.core.record.ORecord;
 import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.impl.ODocument;
@@ -66,14 +66,14 @@ public class OTransactionOptimistic extends OTransactionRealAbstract {
         Collections.sort(involvedIndexes);
 
       // LOCK INVOLVED INDEXES
-      List<OIndexMVRBTreeAbstract<?>> lockedIndexes = null;
+      List<OIndexInternal<?>> lockedIndexes = null;
       try {
         if (involvedIndexes != null)
           for (String indexName : involvedIndexes) {
-            final OIndexMVRBTreeAbstract<?> index = (OIndexMVRBTreeAbstract<?>) database.getMetadata().getIndexManager()
+            final OIndexInternal<?> index = (OIndexInternal<?>) database.getMetadata().getIndexManager()
                 .getIndexInternal(indexName);
             if (lockedIndexes == null)
-              lockedIndexes = new ArrayList<OIndexMVRBTreeAbstract<?>>();
+              lockedIndexes = new ArrayList<OIndexInternal<?>>();
 
             index.acquireModificationLock();
             lockedIndexes.add(index);
@@ -93,7 +93,7 @@ public class OTransactionOptimistic extends OTransactionRealAbstract {
 
         if (indexesToLock != null && !indexesToLock.isEmpty())
           if (lockedIndexes == null)
-            lockedIndexes = new ArrayList<OIndexMVRBTreeAbstract<?>>();
+            lockedIndexes = new ArrayList<OIndexInternal<?>>();
 
         for (OIndex<?> index : indexesToLock) {
           for (Entry<ORID, ORecordOperation> entry : recordEntries.entrySet()) {
@@ -103,13 +103,13 @@ public class OTransactionOptimistic extends OTransactionRealAbstract {
               if (!lockedIndexes.contains(index.getInternal()) && doc.getSchemaClass() != null && index.getDefinition() != null
                   && doc.getSchemaClass().isSubClassOf(index.getDefinition().getClassName())) {
                 index.getInternal().acquireModificationLock();
-                lockedIndexes.add((OIndexMVRBTreeAbstract<?>) index.getInternal());
+                lockedIndexes.add((OIndexInternal<?>) index.getInternal());
               }
             }
           }
         }
 
-        for (OIndexMVRBTreeAbstract<?> index : lockedIndexes)
+        for (OIndexInternal<?> index : lockedIndexes)
           index.acquireExclusiveLock();
 
         database.getStorage().callInLock(new Callable<Void>() {
@@ -133,10 +133,10 @@ public class OTransactionOptimistic extends OTransactionRealAbstract {
       } finally {
         // RELEASE INDEX LOCKS IF ANY
         if (lockedIndexes != null) {
-          for (OIndexMVRBTreeAbstract<?> index : lockedIndexes)
+          for (OIndexInternal<?> index : lockedIndexes)
             index.releaseExclusiveLock();
 
-          for (OIndexMVRBTreeAbstract<?> index : lockedIndexes)
+          for (OIndexInternal<?> index : lockedIndexes)
             index.releaseModificationLock();
 
         }
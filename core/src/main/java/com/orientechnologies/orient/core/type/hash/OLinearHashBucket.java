@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.hash;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+
+/**
+ * Bucket of the linear hash. Keys are kept serialized, so they are compared and hashed as bytes, while values are kept
+ * unmarshalled. Each bucket is stored as one record.
+ */
+public class OLinearHashBucket<V> {
+  protected final ORecordId    rid;
+  protected final List<byte[]> keys;
+  protected final List<V>      values;
+
+  public OLinearHashBucket(final ORecordId iRid) {
+    rid = iRid;
+    keys = new ArrayList<byte[]>();
+    values = new ArrayList<V>();
+  }
+
+  @SuppressWarnings("unchecked")
+  public OLinearHashBucket(final ORecordId iRid, final byte[] iStream, final OStreamSerializer iValueSerializer) throws IOException {
+    rid = iRid;
+
+    final OMemoryStream stream = new OMemoryStream(iStream);
+    final int size = stream.getAsInteger();
+
+    keys = new ArrayList<byte[]>(size);
+    values = new ArrayList<V>(size);
+
+    for (int i = 0; i < size; ++i) {
+      keys.add(stream.getAsByteArray());
+      values.add((V) iValueSerializer.fromStream(stream.getAsByteArray()));
+    }
+  }
+
+  public int find(final byte[] iKey) {
+    for (int i = 0; i < keys.size(); ++i)
+      if (Arrays.equals(keys.get(i), iKey))
+        return i;
+    return -1;
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  public byte[] toStream(final OStreamSerializer iValueSerializer) throws IOException {
+    final OMemoryStream stream = new OMemoryStream();
+    stream.set(keys.size());
+    for (int i = 0; i < keys.size(); ++i) {
+      stream.set(keys.get(i));
+      stream.set(iValueSerializer.toStream(values.get(i)));
+    }
+    return stream.toByteArray();
+  }
+}
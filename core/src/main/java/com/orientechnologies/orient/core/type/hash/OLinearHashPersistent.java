@@ -0,0 +1,508 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.hash;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.orientechnologies.common.serialization.types.OBinarySerializer;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.exception.OConfigurationException;
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.profiler.OJVMProfiler;
+import com.orientechnologies.orient.core.record.impl.ORecordBytes;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+import com.orientechnologies.orient.core.serialization.serializer.binary.OBinarySerializerFactory;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerFactory;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.OStorage;
+
+/**
+ * Persistent map based on linear hashing. Entries are spread across buckets stored as records of the index cluster. The record-ids
+ * of the buckets are kept in a directory, saved in pages of records too, and the header record keeps the hashing state. When the
+ * average number of keys per bucket exceeds the configured load, the bucket pointed by the split pointer is split in two: the map
+ * grows one bucket at time and a lookup reads one bucket. The order of the keys is not kept, so range queries are not supported.<br>
+ * Changes are collected in memory and saved every "maxUpdatesBeforeSave" updates, as OMVRBTreeDatabaseLazySave does. Records are
+ * written at storage level, so they never take part in the transaction of the user.
+ */
+public class OLinearHashPersistent<K, V> implements Iterable<Entry<K, V>> {
+  public final static byte                                       CURRENT_PROTOCOL_VERSION = 0;
+  private static final int                                       DIRECTORY_PAGE_SIZE      = 1024;
+
+  private final int                                              clusterId;
+  private final ORecordId                                        headerRid;
+  private OBinarySerializer<K>                                   keySerializer;
+  private OStreamSerializer                                      valueSerializer;
+  private int                                                    bucketLoad;
+  private int                                                    level;
+  private int                                                    splitPointer;
+  private int                                                    size;
+  private boolean                                                headerDirty;
+  private final List<ORecordId>                                  bucketRids               = new ArrayList<ORecordId>();
+  private final List<ORecordId>                                  pageRids                 = new ArrayList<ORecordId>();
+  private final Set<Integer>                                     dirtyPages               = new TreeSet<Integer>();
+  private final ConcurrentHashMap<Integer, OLinearHashBucket<V>> buckets                  = new ConcurrentHashMap<Integer, OLinearHashBucket<V>>();
+  private final Set<OLinearHashBucket<V>>                        dirtyBuckets             = new HashSet<OLinearHashBucket<V>>();
+  private int                                                    maxUpdatesBeforeSave;
+  private int                                                    updates;
+
+  public OLinearHashPersistent(final ORID iRID, final int iMaxUpdatesBeforeSave) {
+    clusterId = iRID.getClusterId();
+    headerRid = new ORecordId(iRID);
+    maxUpdatesBeforeSave = iMaxUpdatesBeforeSave;
+  }
+
+  public OLinearHashPersistent(final String iClusterName, final OBinarySerializer<K> iKeySerializer,
+      final OStreamSerializer iValueSerializer, final int iBucketLoad, final int iMaxUpdatesBeforeSave) {
+    clusterId = getStorage().getClusterIdByName(iClusterName);
+    headerRid = new ORecordId();
+    keySerializer = iKeySerializer;
+    valueSerializer = iValueSerializer;
+    bucketLoad = iBucketLoad;
+    maxUpdatesBeforeSave = iMaxUpdatesBeforeSave;
+    reset();
+    lazySave();
+  }
+
+  /**
+   * Loads the header and the directory. Buckets are loaded when used.
+   */
+  @SuppressWarnings("unchecked")
+  public void load() {
+    final OMemoryStream stream = new OMemoryStream(loadRecord(headerRid));
+
+    final byte protocolVersion = stream.getAsByte();
+    if (protocolVersion != CURRENT_PROTOCOL_VERSION)
+      throw new OConfigurationException("Hash map " + headerRid + " was created with protocol version " + protocolVersion
+          + " while current one supports the version " + CURRENT_PROTOCOL_VERSION);
+
+    keySerializer = (OBinarySerializer<K>) OBinarySerializerFactory.INSTANCE.getObjectSerializer(stream.getAsByte());
+    valueSerializer = OStreamSerializerFactory.get(stream.getAsString());
+    bucketLoad = stream.getAsInteger();
+    level = stream.getAsInteger();
+    splitPointer = stream.getAsInteger();
+    size = stream.getAsInteger();
+
+    pageRids.clear();
+    final int pages = stream.getAsInteger();
+    for (int i = 0; i < pages; ++i)
+      pageRids.add(new ORecordId().fromStream(stream));
+
+    bucketRids.clear();
+    for (ORecordId pageRid : pageRids) {
+      final OMemoryStream page = new OMemoryStream(loadRecord(pageRid));
+      final int entries = page.getAsInteger();
+      for (int i = 0; i < entries; ++i)
+        bucketRids.add(new ORecordId().fromStream(page));
+    }
+
+    if (bucketRids.size() != getBucketCount())
+      throw new OConfigurationException("Hash map " + headerRid + " is corrupted: found " + bucketRids.size()
+          + " buckets while expected " + getBucketCount());
+
+    buckets.clear();
+    dirtyBuckets.clear();
+    dirtyPages.clear();
+    headerDirty = false;
+    updates = 0;
+  }
+
+  public V get(final K iKey) {
+    final byte[] key = serializeKey(iKey);
+    final OLinearHashBucket<V> bucket = getBucket(getBucketIndex(hash(key)));
+
+    final int pos = bucket.find(key);
+    return pos > -1 ? bucket.values.get(pos) : null;
+  }
+
+  public boolean containsKey(final K iKey) {
+    final byte[] key = serializeKey(iKey);
+    return getBucket(getBucketIndex(hash(key))).find(key) > -1;
+  }
+
+  public V put(final K iKey, final V iValue) {
+    final byte[] key = serializeKey(iKey);
+    final OLinearHashBucket<V> bucket = getBucket(getBucketIndex(hash(key)));
+
+    final V oldValue;
+    final int pos = bucket.find(key);
+    if (pos > -1)
+      oldValue = bucket.values.set(pos, iValue);
+    else {
+      oldValue = null;
+      bucket.keys.add(key);
+      bucket.values.add(iValue);
+      ++size;
+      headerDirty = true;
+    }
+    setDirty(bucket);
+
+    if (size > getBucketCount() * bucketLoad)
+      split();
+
+    commitChanges();
+    return oldValue;
+  }
+
+  public V remove(final K iKey) {
+    final byte[] key = serializeKey(iKey);
+    final OLinearHashBucket<V> bucket = getBucket(getBucketIndex(hash(key)));
+
+    final int pos = bucket.find(key);
+    if (pos == -1)
+      return null;
+
+    bucket.keys.remove(pos);
+    final V oldValue = bucket.values.remove(pos);
+    --size;
+    headerDirty = true;
+    setDirty(bucket);
+
+    commitChanges();
+    return oldValue;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getBucketCount() {
+    return (1 << level) + splitPointer;
+  }
+
+  public int getNumberOfBucketsInCache() {
+    return buckets.size();
+  }
+
+  public int getMaxUpdatesBeforeSave() {
+    return maxUpdatesBeforeSave;
+  }
+
+  public ORID getIdentity() {
+    return headerRid;
+  }
+
+  /**
+   * Removes all the entries: buckets and directory pages are deleted and the map restarts from one bucket.
+   */
+  public void clear() {
+    deleteBuckets();
+    reset();
+    lazySave();
+  }
+
+  /**
+   * Deletes the map with all its records.
+   */
+  public void delete() {
+    deleteBuckets();
+    if (headerRid.isValid())
+      getStorage().deleteRecord(headerRid, -1, 0, null);
+  }
+
+  /**
+   * Saves all the pending changes and frees the buckets in memory.
+   */
+  public void unload() {
+    lazySave();
+    buckets.clear();
+  }
+
+  /**
+   * Frees the buckets in memory not changed since the last save. Dirty buckets are kept until the next save, so no record is
+   * written: this can be called by threads without a database.
+   */
+  public void freeMemory() {
+    for (Iterator<OLinearHashBucket<V>> it = buckets.values().iterator(); it.hasNext();)
+      if (!dirtyBuckets.contains(it.next()))
+        it.remove();
+  }
+
+  public int commitChanges() {
+    return commitChanges(false);
+  }
+
+  /**
+   * Saves the pending changes if forced or if the updates reached "maxUpdatesBeforeSave".
+   */
+  public int commitChanges(final boolean iForce) {
+    if (maxUpdatesBeforeSave == 0 || (maxUpdatesBeforeSave > 0 && ++updates >= maxUpdatesBeforeSave) || iForce) {
+      updates = 0;
+      return lazySave();
+    }
+    return 0;
+  }
+
+  /**
+   * Saves the changed buckets, then the directory pages and at last the header.
+   *
+   * @return The number of records saved
+   */
+  public int lazySave() {
+    int saved = 0;
+
+    for (OLinearHashBucket<V> bucket : dirtyBuckets) {
+      saveBucket(bucket);
+      ++saved;
+    }
+    dirtyBuckets.clear();
+
+    for (int page : dirtyPages) {
+      if (!pageRids.get(page).isValid())
+        headerDirty = true;
+      saveRecord(pageRids.get(page), pageToStream(page));
+      ++saved;
+    }
+    dirtyPages.clear();
+
+    if (headerDirty || !headerRid.isValid()) {
+      saveRecord(headerRid, headerToStream());
+      headerDirty = false;
+      ++saved;
+    }
+
+    return saved;
+  }
+
+  public Iterator<Entry<K, V>> iterator() {
+    return new Iterator<Entry<K, V>>() {
+      private int                  bucketIndex = 0;
+      private int                  entryIndex  = 0;
+      private OLinearHashBucket<V> bucket      = getBucket(0);
+
+      public boolean hasNext() {
+        while (entryIndex >= bucket.size()) {
+          if (bucketIndex + 1 >= getBucketCount())
+            return false;
+
+          bucket = getBucket(++bucketIndex);
+          entryIndex = 0;
+        }
+        return true;
+      }
+
+      public Entry<K, V> next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+
+        final K key = keySerializer.deserialize(bucket.keys.get(entryIndex), 0);
+        final V value = bucket.values.get(entryIndex++);
+        return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException("remove");
+      }
+    };
+  }
+
+  /**
+   * Splits the bucket pointed by the split pointer moving part of its entries to a new bucket appended at the end of the
+   * directory. Once all the buckets of the current level are split the level is increased.
+   */
+  protected void split() {
+    final int sourceIndex = splitPointer;
+    final OLinearHashBucket<V> source = getBucket(sourceIndex);
+    final OLinearHashBucket<V> target = addBucket();
+
+    final int mask = (2 << level) - 1;
+    for (int i = source.size() - 1; i >= 0; --i)
+      if ((hash(source.keys.get(i)) & mask) != sourceIndex) {
+        target.keys.add(source.keys.remove(i));
+        target.values.add(source.values.remove(i));
+      }
+
+    setDirty(source);
+
+    if (++splitPointer == 1 << level) {
+      ++level;
+      splitPointer = 0;
+    }
+    headerDirty = true;
+  }
+
+  protected int getBucketIndex(final int iHash) {
+    final int index = iHash & ((1 << level) - 1);
+    if (index < splitPointer)
+      // ALREADY SPLIT: USE ONE BIT MORE
+      return iHash & ((2 << level) - 1);
+    return index;
+  }
+
+  protected static int hash(final byte[] iKey) {
+    int h = 1;
+    for (byte b : iKey)
+      h = 31 * h + b;
+
+    // SPREAD THE HIGHER BITS TO THE LOWER ONES, USED TO SELECT THE BUCKET
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  protected OLinearHashBucket<V> getBucket(final int iIndex) {
+    OLinearHashBucket<V> bucket = buckets.get(iIndex);
+    if (bucket == null) {
+      // LOADERS CAN RUN CONCURRENTLY: KEEP THE FIRST BUCKET LOADED
+      final OJVMProfiler profiler = Orient.instance().getProfiler();
+      final long timer = profiler.startChrono();
+      try {
+        bucket = new OLinearHashBucket<V>(bucketRids.get(iIndex), loadRecord(bucketRids.get(iIndex)), valueSerializer);
+      } catch (IOException e) {
+        throw new OSerializationException("Cannot load the bucket " + bucketRids.get(iIndex) + " of hash map " + headerRid, e);
+      } finally {
+        profiler.stopChrono(profiler.getProcessMetric("linearhash.loadBucket"), timer);
+      }
+
+      final OLinearHashBucket<V> loaded = buckets.putIfAbsent(iIndex, bucket);
+      if (loaded != null)
+        bucket = loaded;
+    }
+    return bucket;
+  }
+
+  private OLinearHashBucket<V> addBucket() {
+    final int index = bucketRids.size();
+    final OLinearHashBucket<V> bucket = new OLinearHashBucket<V>(new ORecordId());
+
+    bucketRids.add(bucket.rid);
+    if (index / DIRECTORY_PAGE_SIZE == pageRids.size())
+      pageRids.add(new ORecordId());
+
+    // THE PAGE IS SAVED AFTER THE BUCKETS, WHEN THE RECORD-ID OF THE NEW BUCKET IS KNOWN
+    dirtyPages.add(index / DIRECTORY_PAGE_SIZE);
+
+    buckets.put(index, bucket);
+    setDirty(bucket);
+    return bucket;
+  }
+
+  private void setDirty(final OLinearHashBucket<V> iBucket) {
+    dirtyBuckets.add(iBucket);
+  }
+
+  private void saveBucket(final OLinearHashBucket<V> iBucket) {
+    final OJVMProfiler profiler = Orient.instance().getProfiler();
+    final long timer = profiler.startChrono();
+    try {
+      saveRecord(iBucket.rid, iBucket.toStream(valueSerializer));
+    } catch (IOException e) {
+      throw new OSerializationException("Cannot save the bucket " + iBucket.rid + " of hash map " + headerRid, e);
+    } finally {
+      profiler.stopChrono(profiler.getProcessMetric("linearhash.saveBucket"), timer);
+    }
+  }
+
+  private void reset() {
+    level = 0;
+    splitPointer = 0;
+    size = 0;
+    bucketRids.clear();
+    pageRids.clear();
+    buckets.clear();
+    dirtyBuckets.clear();
+    dirtyPages.clear();
+    updates = 0;
+
+    addBucket();
+    headerDirty = true;
+  }
+
+  private void deleteBuckets() {
+    final OStorage storage = getStorage();
+    for (ORecordId rid : bucketRids)
+      if (rid.isValid())
+        storage.deleteRecord(rid, -1, 0, null);
+    for (ORecordId rid : pageRids)
+      if (rid.isValid())
+        storage.deleteRecord(rid, -1, 0, null);
+  }
+
+  private byte[] serializeKey(final K iKey) {
+    final byte[] stream = new byte[keySerializer.getObjectSize(iKey)];
+    keySerializer.serialize(iKey, stream, 0);
+    return stream;
+  }
+
+  private byte[] headerToStream() {
+    final OMemoryStream stream = new OMemoryStream();
+    try {
+      stream.set(CURRENT_PROTOCOL_VERSION);
+      stream.set(keySerializer.getId());
+      stream.set(valueSerializer.getName());
+      stream.set(bucketLoad);
+      stream.set(level);
+      stream.set(splitPointer);
+      stream.set(size);
+
+      stream.set(pageRids.size());
+      for (ORecordId rid : pageRids)
+        rid.toStream(stream);
+    } catch (IOException e) {
+      throw new OSerializationException("Cannot serialize the header of hash map " + headerRid, e);
+    }
+    return stream.toByteArray();
+  }
+
+  private byte[] pageToStream(final int iPage) {
+    final int begin = iPage * DIRECTORY_PAGE_SIZE;
+    final int end = Math.min(begin + DIRECTORY_PAGE_SIZE, bucketRids.size());
+
+    final OMemoryStream stream = new OMemoryStream();
+    try {
+      stream.set(end - begin);
+      for (int i = begin; i < end; ++i)
+        bucketRids.get(i).toStream(stream);
+    } catch (IOException e) {
+      throw new OSerializationException("Cannot serialize the directory of hash map " + headerRid, e);
+    }
+    return stream.toByteArray();
+  }
+
+  private byte[] loadRecord(final ORecordId iRid) {
+    final ORawBuffer raw = getStorage().readRecord(iRid, null, false, null);
+    if (raw == null)
+      throw new OConfigurationException("Cannot load record " + iRid + " of hash map " + headerRid);
+    return raw.buffer;
+  }
+
+  private void saveRecord(final ORecordId iRid, final byte[] iContent) {
+    final OStorage storage = getStorage();
+    if (iRid.isValid())
+      // UPDATE IT WITHOUT VERSION CHECK SINCE ALL IT'S LOCKED
+      storage.updateRecord(iRid, iContent, -1, ORecordBytes.RECORD_TYPE, 0, null);
+    else {
+      iRid.clusterId = clusterId;
+      iRid.clusterPosition = storage.createRecord(0, iRid, iContent, 0, ORecordBytes.RECORD_TYPE, 0, null).clusterPosition;
+    }
+  }
+
+  private static OStorage getStorage() {
+    return ODatabaseRecordThreadLocal.INSTANCE.get().getStorage();
+  }
+}
@@ -24,7 +24,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.orientechnologies.common.collection.OCompositeKey;
 import com.orientechnologies.common.collection.OMVRBTree;
 import com.orientechnologies.common.collection.OMVRBTreeEntry;
 import com.orientechnologies.common.log.OLogManager;
@@ -65,6 +67,14 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 
   private static final int                                 OPTIMIZE_MAX_RETRY = 10;
 
+  // CONCURRENT SEARCHES: THE VERSION IS ODD WHILE THE NODES IN MEMORY ARE CHANGING
+  private final ReentrantLock                              searchLatch        = new ReentrantLock();
+  private volatile int                                     structureVersion   = 0;
+  private int                                              structureChanges   = 0;
+  private static final int                                 MAX_SEARCH_DEPTH   = 64;
+  private static final Object                              NOT_FOUND          = new Object();
+  private static final Object                              NOT_IN_MEMORY      = new Object();
+
   public OMVRBTreePersistent(OMVRBTreeProvider<K, V> iProvider) {
     super();
     if (comparator != null)
@@ -140,6 +150,15 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
    * Lazy loads a node.
    */
   protected OMVRBTreeEntryPersistent<K, V> loadEntry(final OMVRBTreeEntryPersistent<K, V> iParent, final ORID iRecordId) {
+    beginStructureChange();
+    try {
+      return loadEntryInMemory(iParent, iRecordId);
+    } finally {
+      endStructureChange();
+    }
+  }
+
+  private OMVRBTreeEntryPersistent<K, V> loadEntryInMemory(final OMVRBTreeEntryPersistent<K, V> iParent, final ORID iRecordId) {
     // SEARCH INTO THE CACHE
     OMVRBTreeEntryPersistent<K, V> entry = searchNodeInCache(iRecordId);
     if (entry == null) {
@@ -602,6 +621,55 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
     throw new OLowMemoryException("OMVRBTreePersistent.containsValue()");
   }
 
+  /**
+   * Returns the value associated to the key as {@link #get(Object)} does, but without using the search state of the tree, so it can
+   * be called by many threads in parallel as long as the caller excludes the writers, like the indexes do with their shared lock.
+   * The search browses only the nodes already in memory without locking: if a node must be loaded, or another thread changes the
+   * nodes in memory in the meanwhile, the search is repeated under the search latch loading the missing nodes.
+   */
+  @SuppressWarnings("unchecked")
+  public V getConcurrent(final Object iKey) {
+    if (!isConcurrentSearchSupported(iKey)) {
+      searchLatch.lock();
+      try {
+        return get(iKey);
+      } finally {
+        searchLatch.unlock();
+      }
+    }
+
+    final Object result = searchConcurrent(iKey);
+    return result == NOT_FOUND ? null : (V) result;
+  }
+
+  /**
+   * Concurrent version of {@link #containsKey(Object)}. See {@link #getConcurrent(Object)} for the rules.
+   */
+  public boolean containsKeyConcurrent(final Object iKey) {
+    if (!isConcurrentSearchSupported(iKey)) {
+      searchLatch.lock();
+      try {
+        return containsKey(iKey);
+      } finally {
+        searchLatch.unlock();
+      }
+    }
+
+    return searchConcurrent(iKey) != NOT_FOUND;
+  }
+
+  /**
+   * Acquires the search latch. Concurrent readers must hold it to browse the tree with the regular API (cursors, iterators and range
+   * searches) since it changes the search state of the tree.
+   */
+  public void acquireSearchLatch() {
+    searchLatch.lock();
+  }
+
+  public void releaseSearchLatch() {
+    searchLatch.unlock();
+  }
+
   public OMVRBTreeProvider<K, V> getProvider() {
     return dataProvider;
   }
@@ -974,7 +1042,12 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 
   protected void freeMemory(final int i) {
     // LOW MEMORY DURING LOAD: THIS MEANS DEEP LOADING OF NODES. EXECUTE THE OPTIMIZATION AND RETRY IT
-    optimize(true);
+    beginStructureChange();
+    try {
+      optimize(true);
+    } finally {
+      endStructureChange();
+    }
 
     System.gc();
 
@@ -985,4 +1058,140 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
       } catch (InterruptedException e1) {
       }
   }
+
+  /**
+   * Signals the begin of a change of the nodes in memory to invalidate the concurrent searches running in the meanwhile. Changes
+   * are made only by the owner of the search latch or by writers, so the counter needs no atomic operations.
+   */
+  protected void beginStructureChange() {
+    if (structureChanges++ == 0)
+      structureVersion++;
+  }
+
+  protected void endStructureChange() {
+    if (--structureChanges == 0)
+      structureVersion++;
+  }
+
+  /**
+   * Concurrent searches descend the tree from the root by key comparison, so they support single keys and complete composite keys
+   * only. Partial composite keys need the regular search.
+   */
+  private boolean isConcurrentSearchSupported(final Object iKey) {
+    if (keySize == 1)
+      return true;
+    return iKey instanceof OCompositeKey && ((OCompositeKey) iKey).getKeys().size() == keySize;
+  }
+
+  private Object searchConcurrent(final Object iKey) {
+    final long timer = PROFILER.startChrono();
+    try {
+      // OPTIMISTIC SEARCH: NO LOCKS, BROWSES ONLY THE NODES IN MEMORY
+      final int version = structureVersion;
+      if ((version & 1) == 0 && optimization <= 0) {
+        try {
+          final Object result = searchFromRoot(iKey, false);
+          if (result != NOT_IN_MEMORY && structureVersion == version)
+            return result;
+        } catch (RuntimeException e) {
+          if (structureVersion == version)
+            // NOT CAUSED BY A CONCURRENT CHANGE
+            throw e;
+        }
+      }
+
+      // SEARCH UNDER THE LATCH LOADING THE MISSING NODES
+      searchLatch.lock();
+      try {
+        for (int i = 0; i < OPTIMIZE_MAX_RETRY; ++i) {
+          try {
+            return searchFromRoot(iKey, true);
+          } catch (OLowMemoryException e) {
+            OLogManager.instance().debug(this, "Optimization required during node search %d/%d", i, OPTIMIZE_MAX_RETRY);
+            freeMemory(i);
+          }
+        }
+      } finally {
+        searchLatch.unlock();
+      }
+
+      throw new OLowMemoryException("OMVRBTreePersistent.searchConcurrent()");
+    } finally {
+      PROFILER.stopChrono(PROFILER.getProcessMetric("mvrbtree.getConcurrent"), timer);
+    }
+  }
+
+  /**
+   * Descends the tree from the root to the node that contains the key without touching the search state of the tree.
+   * 
+   * @param iKey
+   *          Key to search
+   * @param iLoadNodes
+   *          true to load the nodes not in memory, false to stop as soon as a node to browse is not in memory
+   * @return The value if found, NOT_FOUND if the key is not in the tree or NOT_IN_MEMORY if a node to browse is not in memory
+   */
+  private Object searchFromRoot(final Object iKey, final boolean iLoadNodes) {
+    if (iKey == null || size() == 0)
+      return NOT_FOUND;
+
+    OMVRBTreeEntryPersistent<K, V> p = (OMVRBTreeEntryPersistent<K, V>) root;
+    for (int depth = 0; p != null; ++depth) {
+      if (iLoadNodes)
+        searchNodeCallback();
+      else if (depth > MAX_SEARCH_DEPTH)
+        // THE STRUCTURE IS CHANGING
+        return NOT_IN_MEMORY;
+
+      final int size = p.getSize();
+      if (size == 0)
+        return NOT_FOUND;
+
+      int cmp = compare(iKey, p.getKeyAt(0));
+      if (cmp == 0)
+        return p.getValueAt(0);
+
+      if (cmp < 0) {
+        // MINOR THAN THE FIRST KEY: GO LEFT
+        if (iLoadNodes)
+          p = (OMVRBTreeEntryPersistent<K, V>) p.getLeft();
+        else if (p.left != null)
+          p = p.left;
+        else
+          return p.dataProvider.getLeft().isValid() ? NOT_IN_MEMORY : NOT_FOUND;
+        continue;
+      }
+
+      cmp = compare(iKey, p.getKeyAt(size - 1));
+      if (cmp == 0)
+        return p.getValueAt(size - 1);
+
+      if (cmp > 0) {
+        // MAJOR THAN THE LAST KEY: GO RIGHT
+        if (iLoadNodes)
+          p = (OMVRBTreeEntryPersistent<K, V>) p.getRight();
+        else if (p.right != null)
+          p = p.right;
+        else
+          return p.dataProvider.getRight().isValid() ? NOT_IN_MEMORY : NOT_FOUND;
+        continue;
+      }
+
+      // BINARY SEARCH INSIDE THE NODE
+      int low = 1;
+      int high = size - 2;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        cmp = compare(iKey, p.getKeyAt(mid));
+        if (cmp < 0)
+          high = mid - 1;
+        else if (cmp > 0)
+          low = mid + 1;
+        else
+          return p.getValueAt(mid);
+      }
+      return NOT_FOUND;
+    }
+
+    return NOT_FOUND;
+  }
 }
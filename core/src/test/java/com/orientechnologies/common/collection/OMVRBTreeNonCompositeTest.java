@@ -4,6 +4,11 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -205,4 +210,78 @@ public class OMVRBTreeNonCompositeTest {
 		OMVRBTreeEntry<Double, Double> entry = tree.getLowerEntry(4.5);
 		assertEquals(entry.getKey(), 4.0);
 	}
+
+	@Test
+	public void testMixedInsertDeleteAndNavigation() {
+		checkMixedOperations();
+	}
+
+	@Test
+	public void testMixedInsertDeleteAndNavigationInAppendMode() {
+		tree.setAppendMode(true);
+		try {
+			checkMixedOperations();
+		} finally {
+			tree.setAppendMode(false);
+		}
+	}
+
+	/**
+	 * Runs of keys appended after the greatest one, mixed with inserts and deletes at random positions. After each round the
+	 * navigation of the tree is checked against a TreeMap.
+	 */
+	private void checkMixedOperations() {
+		final TreeMap<Double, Double> expected = new TreeMap<Double, Double>();
+		for (double i = 1; i < 10; i++)
+			expected.put(i, i);
+
+		final Random random = new Random(7);
+		double next = 10;
+		for (int round = 0; round < 20; ++round) {
+			for (int i = 0; i < 30; ++i, ++next) {
+				tree.put(next, next);
+				expected.put(next, next);
+			}
+
+			// RANDOM KEYS, ALSO BETWEEN THE EXISTENT ONES
+			for (int i = 0; i < 20; ++i) {
+				final double key = Math.floor(random.nextDouble() * next * 4) / 4;
+				tree.put(key, -key);
+				expected.put(key, -key);
+			}
+
+			final List<Double> keys = new ArrayList<Double>(expected.keySet());
+			for (int i = 0; i < 20; ++i) {
+				final double key = keys.get(random.nextInt(keys.size()));
+				assertEquals(tree.remove(key), expected.remove(key));
+			}
+			assertNull(tree.remove(next + 0.5));
+
+			assertNavigation(expected, random, next);
+		}
+	}
+
+	private void assertNavigation(final TreeMap<Double, Double> iExpected, final Random iRandom, final double iMaxKey) {
+		assertEquals(tree.size(), iExpected.size());
+		assertEquals(tree.firstKey(), iExpected.firstKey());
+		assertEquals(tree.lastKey(), iExpected.lastKey());
+		assertEquals(new ArrayList<Double>(tree.keySet()), new ArrayList<Double>(iExpected.keySet()));
+
+		for (int i = 0; i < 50; ++i) {
+			final double key = Math.floor(iRandom.nextDouble() * (iMaxKey + 2) * 8) / 8 - 1;
+			assertEquals(tree.get(key), iExpected.get(key));
+			assertKey(tree.getCeilingEntry(key, OMVRBTree.PartialSearchMode.NONE), iExpected.ceilingKey(key));
+			assertKey(tree.getFloorEntry(key, OMVRBTree.PartialSearchMode.NONE), iExpected.floorKey(key));
+			assertKey(tree.getHigherEntry(key), iExpected.higherKey(key));
+			assertKey(tree.getLowerEntry(key), iExpected.lowerKey(key));
+			assertEquals(tree.subMap(key, true, key + 20, false).size(), iExpected.subMap(key, true, key + 20, false).size());
+		}
+	}
+
+	private static void assertKey(final OMVRBTreeEntry<Double, Double> iEntry, final Double iExpectedKey) {
+		if (iExpectedKey == null)
+			assertNull(iEntry);
+		else
+			assertEquals(iEntry.getKey(), iExpectedKey);
+	}
 }
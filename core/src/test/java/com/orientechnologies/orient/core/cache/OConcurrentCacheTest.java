@@ -0,0 +1,194 @@
+package com.orientechnologies.orient.core.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+@Test
+public class OConcurrentCacheTest {
+
+  public void doesNothingWhileDisabled() {
+    // Given cache created
+    // And not enabled
+    OCache sut = new OConcurrentCache(null, 1);
+
+    // When any operation called on it
+    ODocument record = new ODocument(new ORecordId(1, 1));
+    sut.put(record);
+
+    // Then it has no effect on cache's state
+    assertNull(sut.get(record.getIdentity()), "Cache should return empty records while disabled");
+    assertEquals(sut.size(), 0, "Cache should ignore insert while disabled");
+  }
+
+  public void storesRecordsUsingTheirIdentity() {
+    // Given an enabled cache
+    OCache sut = enabledCache();
+
+    // When new record put into
+    ORecordId id = new ORecordId(1, 1);
+    ODocument record = new ODocument(id);
+    sut.put(record);
+
+    // Then it can be retrieved later by it's id
+    assertEquals(sut.get(id), record);
+  }
+
+  public void storesRecordsOnlyOnceForEveryIdentity() {
+    // Given an enabled cache
+    OCache sut = enabledCache();
+
+    // When some records with same identity put in several times
+    ODocument first = new ODocument(new ORecordId(1, 1));
+    ODocument last = new ODocument(new ORecordId(1, 1));
+    sut.put(first);
+    sut.put(last);
+
+    // Then cache ends up storing only the last one
+    assertEquals(sut.size(), 1);
+    assertEquals(sut.get(new ORecordId(1, 1)), last);
+  }
+
+  public void removesOnlyOnce() {
+    // Given an enabled cache with records in it
+    OCache sut = enabledCache();
+    ORecordId id = new ORecordId(1, 1);
+    sut.put(new ODocument(id));
+    sut.remove(id);
+
+    // When removing already removed record
+    // Then empty result returned
+    assertNull(sut.remove(id));
+  }
+
+  public void providesAccessToAllKeysInCache() {
+    // Given enabled non-empty cache
+    OCache sut = enabledCache();
+    sut.put(new ODocument(new ORecordId(1, 1)));
+    sut.put(new ODocument(new ORecordId(2, 2)));
+
+    // When asked for keys
+    Collection<ORID> keys = sut.keys();
+
+    // Then keys count should be same as size of cache
+    assertEquals(keys.size(), sut.size(), "Cache provided not all keys?");
+    for (ORID key : keys)
+      assertNotNull(sut.get(key));
+  }
+
+  public void storesNoMoreElementsThanSpecifiedLimit() {
+    // Given an enabled cache
+    OCache sut = enabledCache();
+
+    // When stored more distinct elements than cache limit allows
+    for (int i = sut.limit() + 2; i > 0; i--)
+      sut.put(new ODocument(new ORecordId(i, i)));
+
+    // Then size of cache should be exactly as it's limit
+    assertEquals(sut.size(), sut.limit(), "Cache doesn't meet limit requirements");
+  }
+
+  public void storesNoMoreElementsThanSpecifiedLimitWithConcurrentWriters() throws Exception {
+    // Given an enabled cache
+    final OConcurrentCache sut = new OConcurrentCache(null, 100);
+    sut.enable();
+
+    // When several threads store distinct elements at the same time
+    final int threads = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<Integer>> writers = new ArrayList<Future<Integer>>();
+      for (int t = 0; t < threads; t++) {
+        final int clusterId = t;
+        writers.add(executor.submit(new Callable<Integer>() {
+          public Integer call() {
+            int maxSize = 0;
+            for (int i = 0; i < 10000; i++) {
+              sut.put(new ODocument(new ORecordId(clusterId, i)));
+              maxSize = Math.max(maxSize, sut.size());
+            }
+            return maxSize;
+          }
+        }));
+      }
+
+      // Then every writer evicts what it added over the limit
+      for (Future<Integer> writer : writers)
+        assertTrue(writer.get() <= sut.limit() + threads, "Cache grew to " + writer.get() + " records");
+      assertTrue(sut.size() <= sut.limit(), "Cache left with " + sut.size() + " records");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void evictsNotReferencedRecordsFirst() {
+    // Given a full cache
+    OCache sut = enabledCache();
+    for (int i = 1; i <= sut.limit(); i++)
+      sut.put(new ODocument(new ORecordId(i, i)));
+
+    // And a first eviction that reset the referenced flags
+    sut.put(new ODocument(new ORecordId(100, 100)));
+
+    // When a record is accessed before the next eviction
+    ORID hot = sut.keys().iterator().next();
+    sut.get(hot);
+    sut.put(new ODocument(new ORecordId(101, 101)));
+
+    // Then it survives the eviction
+    assertNotNull(sut.get(hot));
+  }
+
+  public void neverEvictsDirtyRecords() {
+    // Given a full cache of dirty records
+    OCache sut = enabledCache();
+    for (int i = 1; i <= sut.limit(); i++) {
+      ODocument record = new ODocument(new ORecordId(i, i));
+      record.setDirty();
+      sut.put(record);
+    }
+
+    // When one more record is stored
+    sut.put(new ODocument(new ORecordId(100, 100)));
+
+    // Then only the clean record can be evicted
+    for (int i = 1; i <= sut.limit(); i++)
+      assertNotNull(sut.get(new ORecordId(i, i)));
+  }
+
+  public void locksAreReentrant() {
+    // Given an enabled cache
+    OCache sut = enabledCache();
+    ORecordId id = new ORecordId(1, 1);
+
+    // When the same record is locked twice by the same thread
+    sut.lock(id);
+    sut.lock(id);
+    sut.unlock(id);
+    sut.unlock(id);
+
+    // Then no deadlock happens
+    assertTrue(sut.isEnabled());
+  }
+
+  private OCache enabledCache() {
+    OConcurrentCache cache = new OConcurrentCache(null, 5);
+    cache.enable();
+    return cache;
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.record.impl.ORecordBytes;
+
+@Test
+public class OOffHeapCacheTest {
+
+  public void doesNothingWhileDisabled() {
+    // Given cache created
+    // And not enabled
+    OCache sut = new OOffHeapCache(null, -1, 4096);
+
+    // When any operation called on it
+    ORecordBytes record = bytes(new ORecordId(1, 1), 1, 10);
+    sut.put(record);
+
+    // Then it has no effect on cache's state
+    assertNull(sut.get(record.getIdentity()), "Cache should return empty records while disabled");
+    assertEquals(sut.size(), 0, "Cache should ignore insert while disabled");
+  }
+
+  public void storesSerializedContentAndVersion() {
+    // Given an enabled cache
+    OCache sut = enabledCache(-1, 4096);
+
+    // When a record is put into
+    ORecordId id = new ORecordId(1, 1);
+    sut.put(bytes(id, 5, 100));
+
+    // Then an equivalent copy can be retrieved later by it's id
+    ORecordInternal<?> cached = sut.get(id);
+    assertNotNull(cached);
+    assertTrue(cached instanceof ORecordBytes);
+    assertEquals(cached.getIdentity(), id);
+    assertEquals(cached.getVersion(), 5);
+    assertEquals(cached.toStream(), content(100));
+    assertFalse(cached.isDirty());
+  }
+
+  public void deserializesDocumentsOnHit() {
+    // Given an enabled cache with a document in it
+    OCache sut = enabledCache(-1, 4096);
+    ORecordId id = new ORecordId(1, 1);
+    ODocument document = new ODocument(id);
+    document.fromStream("name:\"Jay\",age:42".getBytes());
+    sut.put(document);
+
+    // When the document is retrieved
+    ORecordInternal<?> cached = sut.get(id);
+
+    // Then a new instance with the same fields is returned
+    assertNotSame(cached, document);
+    assertEquals(((ODocument) cached).field("name"), "Jay");
+    assertEquals(((ODocument) cached).field("age"), 42);
+  }
+
+  public void replacesRecordsWithSameIdentity() {
+    // Given an enabled cache
+    OCache sut = enabledCache(-1, 4096);
+
+    // When some records with same identity put in several times
+    sut.put(bytes(new ORecordId(1, 1), 1, 10));
+    ORecordInternal<?> previous = sut.put(bytes(new ORecordId(1, 1), 2, 20));
+
+    // Then cache ends up storing only the last one
+    assertEquals(previous.getVersion(), 1);
+    assertEquals(sut.size(), 1);
+    assertEquals(sut.get(new ORecordId(1, 1)).getVersion(), 2);
+  }
+
+  public void evictsLeastRecentlyUsedRecordsWhenMemoryIsFull() {
+    // Given an enabled cache that can host 4 records
+    OCache sut = enabledCache(-1, 512);
+    for (int i = 0; i < 4; ++i)
+      sut.put(bytes(new ORecordId(1, i), 1, 100));
+
+    // When the first record is accessed and a new one is put into
+    sut.get(new ORecordId(1, 0));
+    sut.put(bytes(new ORecordId(1, 4), 1, 100));
+
+    // Then the least recently used record is evicted
+    assertEquals(sut.size(), 4);
+    assertNotNull(sut.get(new ORecordId(1, 0)));
+    assertNull(sut.get(new ORecordId(1, 1)));
+    assertNotNull(sut.get(new ORecordId(1, 4)));
+  }
+
+  public void keepsRecordsUpToTheLimit() {
+    // Given an enabled cache with limit
+    OCache sut = enabledCache(2, 4096);
+
+    // When more records than the limit are put into
+    for (int i = 0; i < 5; ++i)
+      sut.put(bytes(new ORecordId(1, i), 1, 10));
+
+    // Then only the last ones are kept
+    assertEquals(sut.size(), 2);
+    assertNotNull(sut.get(new ORecordId(1, 4)));
+  }
+
+  public void ignoresRecordsBiggerThanTheMemory() {
+    // Given an enabled cache
+    OCache sut = enabledCache(-1, 512);
+
+    // When a record bigger than the whole memory is put into
+    sut.put(bytes(new ORecordId(1, 1), 1, 1024));
+
+    // Then it is not cached
+    assertEquals(sut.size(), 0);
+  }
+
+  public void releasesMemoryOnRemoveAndClear() {
+    // Given an enabled cache with records in it
+    OOffHeapCache sut = enabledCache(-1, 4096);
+    sut.put(bytes(new ORecordId(1, 1), 1, 100));
+    sut.put(bytes(new ORecordId(1, 2), 1, 100));
+    assertTrue(sut.getMemoryUsed() > 0);
+
+    // When records are removed
+    assertNotNull(sut.remove(new ORecordId(1, 1)));
+    assertNull(sut.remove(new ORecordId(1, 1)));
+    sut.clear();
+
+    // Then the memory is given back
+    assertEquals(sut.getMemoryUsed(), 0);
+    assertEquals(sut.size(), 0);
+  }
+
+  public void splitsTheMemoryAcrossPools() {
+    // Given an enabled cache with 4 pools that can host 4 records each
+    OOffHeapCache sut = new OOffHeapCache(null, -1, 2048, 512);
+    sut.enable();
+    assertEquals(sut.getMemoryMax(), 2048);
+
+    // When the records to fill all the pools are put into
+    for (int i = 0; i < 16; ++i)
+      sut.put(bytes(new ORecordId(1, i), 1, 100));
+
+    // Then they are all kept
+    assertEquals(sut.size(), 16);
+    for (int i = 0; i < 16; ++i)
+      assertEquals(sut.get(new ORecordId(1, i)).toStream(), content(100));
+
+    // And the next one takes the place of the least recently used record
+    sut.put(bytes(new ORecordId(1, 16), 1, 100));
+    assertEquals(sut.size(), 16);
+    assertNull(sut.get(new ORecordId(1, 0)));
+    assertNotNull(sut.get(new ORecordId(1, 16)));
+
+    // And a record bigger than a pool is not cached
+    sut.put(bytes(new ORecordId(1, 17), 1, 600));
+    assertNull(sut.get(new ORecordId(1, 17)));
+  }
+
+  public void servesConcurrentHitsWhileRecordsAreReplaced() throws Exception {
+    // Given an enabled cache with records in it
+    final OOffHeapCache sut = enabledCache(-1, 64 * 1024);
+    for (int i = 0; i < 20; ++i)
+      sut.put(bytes(new ORecordId(1, i), i, 100 + i));
+
+    // When some threads read them while another one replaces other records
+    final ExecutorService executor = Executors.newFixedThreadPool(5);
+    try {
+      final List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+      for (int t = 0; t < 4; ++t)
+        readers.add(executor.submit(new Callable<Integer>() {
+          public Integer call() {
+            int hits = 0;
+            for (int n = 0; n < 20000; ++n) {
+              final int i = n % 10;
+              final ORecordInternal<?> cached = sut.get(new ORecordId(1, i));
+              // Then every hit returns the content and the version of the record
+              assertEquals(cached.getVersion(), i);
+              assertEquals(cached.toStream().length, 100 + i);
+              hits++;
+            }
+            return hits;
+          }
+        }));
+
+      final Future<?> writer = executor.submit(new Runnable() {
+        public void run() {
+          for (int n = 0; n < 5000; ++n) {
+            final int i = 10 + n % 10;
+            sut.put(bytes(new ORecordId(1, i), n, 100 + i));
+          }
+        }
+      });
+
+      for (Future<Integer> reader : readers)
+        assertEquals(reader.get().intValue(), 20000);
+      writer.get();
+      assertEquals(sut.size(), 20);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private OOffHeapCache enabledCache(final int limit, final int memory) {
+    OOffHeapCache cache = new OOffHeapCache(null, limit, memory);
+    cache.enable();
+    return cache;
+  }
+
+  private ORecordBytes bytes(final ORecordId id, final int version, final int size) {
+    ORecordBytes record = new ORecordBytes(content(size));
+    record.fill(id, version, content(size), false);
+    return record;
+  }
+
+  private byte[] content(final int size) {
+    final byte[] content = new byte[size];
+    for (int i = 0; i < size; ++i)
+      content[i] = (byte) i;
+    return content;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.serialization;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.exception.OSerializationException;
+
+@Test
+public class OLZFCompressionTest {
+
+  public void testText() {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 100; ++i)
+      text.append("Account@id:").append(i).append(",name:\"Luca\",surname:\"Garulli\",salary:3000.0f,");
+    final byte[] content = text.toString().getBytes();
+
+    final byte[] compressed = new byte[content.length];
+    final int end = OLZFCompression.compress(content, compressed, 0);
+    Assert.assertTrue(end > 0 && end < content.length / 3);
+
+    Assert.assertEquals(decompress(compressed, 0, end, content.length), content);
+  }
+
+  public void testOffset() {
+    final byte[] content = "abcabcabcabcabcabcabcabcabcabcabcabc".getBytes();
+
+    final byte[] compressed = new byte[content.length + 10];
+    final int end = OLZFCompression.compress(content, compressed, 10);
+    Assert.assertTrue(end > 10);
+
+    Assert.assertEquals(decompress(compressed, 10, end - 10, content.length), content);
+  }
+
+  public void testLongRepetition() {
+    final byte[] content = new byte[10000];
+    Arrays.fill(content, (byte) 'x');
+
+    final byte[] compressed = new byte[content.length];
+    final int end = OLZFCompression.compress(content, compressed, 0);
+    Assert.assertTrue(end > 0 && end < 200);
+
+    Assert.assertEquals(decompress(compressed, 0, end, content.length), content);
+  }
+
+  public void testRandom() {
+    final Random random = new Random(1);
+    for (int i = 0; i < 1000; ++i) {
+      final byte[] content = new byte[random.nextInt(2000)];
+      for (int k = 0; k < content.length; ++k)
+        // HALF RANDOM, HALF REPEATED BYTES
+        content[k] = k > 0 && random.nextBoolean() ? content[random.nextInt(k)] : (byte) random.nextInt(256);
+
+      final byte[] compressed = new byte[content.length + content.length / 16 + 2];
+      final int end = OLZFCompression.compress(content, compressed, 0);
+      Assert.assertTrue(end > -1);
+
+      Assert.assertEquals(decompress(compressed, 0, end, content.length), content);
+    }
+  }
+
+  public void testNotCompressible() {
+    final byte[] content = new byte[1000];
+    new Random(1).nextBytes(content);
+
+    Assert.assertEquals(OLZFCompression.compress(content, new byte[content.length - 1], 0), -1);
+  }
+
+  public void testEmpty() {
+    Assert.assertEquals(OLZFCompression.compress(new byte[0], new byte[1], 0), 0);
+    Assert.assertEquals(decompress(new byte[0], 0, 0, 0), new byte[0]);
+  }
+
+  @Test(expectedExceptions = OSerializationException.class)
+  public void testCorrupted() {
+    final byte[] content = "abcabcabcabcabcabcabcabcabcabcabcabc".getBytes();
+    final byte[] compressed = new byte[content.length];
+    final int end = OLZFCompression.compress(content, compressed, 0);
+
+    decompress(compressed, 0, end - 1, content.length);
+  }
+
+  private byte[] decompress(final byte[] iCompressed, final int iOffset, final int iLength, final int iContentLength) {
+    final byte[] content = new byte[iContentLength];
+    OLZFCompression.decompress(iCompressed, iOffset, iLength, content);
+    return content;
+  }
+}
@@ -0,0 +1,137 @@
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Files created with the header version 0, which stores the file size and the filled up to position in 4 bytes at the offsets 0
+ * and 4.
+ */
+@Test
+public class OFileMMapHeaderTest {
+  private static final int SIZE   = 8192;
+  private static final int FILLED = 3000;
+
+  private File             osFile;
+  private byte[]           content;
+
+  @BeforeMethod
+  public void beforeMethod() throws IOException {
+    osFile = new File(System.getProperty("java.io.tmpdir"), "OFileMMapHeaderTest.odh");
+    osFile.delete();
+
+    content = new byte[FILLED];
+    new Random(1).nextBytes(content);
+
+    final RandomAccessFile file = new RandomAccessFile(osFile, "rw");
+    try {
+      file.setLength(OAbstractFile.HEADER_SIZE + SIZE);
+      file.seek(OAbstractFile.SIZE_OFFSET_V0);
+      file.writeInt(SIZE);
+      file.seek(OAbstractFile.FILLEDUPTO_OFFSET_V0);
+      file.writeInt(FILLED);
+      file.seek(OAbstractFile.SOFTLY_CLOSED_OFFSET);
+      file.writeByte(1);
+      file.seek(OAbstractFile.HEADER_SIZE);
+      file.write(content);
+    } finally {
+      file.close();
+    }
+  }
+
+  @AfterMethod
+  public void afterMethod() {
+    osFile.delete();
+  }
+
+  public void testOpenReadOnly() throws IOException {
+    final OFileMMap file = open("r");
+    try {
+      assertFile(file, SIZE, FILLED);
+    } finally {
+      file.close();
+    }
+
+    // NOT CONVERTED
+    final RandomAccessFile raw = new RandomAccessFile(osFile, "r");
+    try {
+      Assert.assertEquals(readByte(raw, OAbstractFile.VERSION_OFFSET), 0);
+      Assert.assertEquals(readInt(raw, OAbstractFile.SIZE_OFFSET_V0), SIZE);
+      Assert.assertEquals(readInt(raw, OAbstractFile.FILLEDUPTO_OFFSET_V0), FILLED);
+    } finally {
+      raw.close();
+    }
+  }
+
+  public void testOpenReadWriteConverts() throws IOException {
+    OFileMMap file = open("rw");
+    try {
+      assertFile(file, SIZE, FILLED);
+    } finally {
+      file.close();
+    }
+
+    final RandomAccessFile raw = new RandomAccessFile(osFile, "r");
+    try {
+      Assert.assertEquals(readByte(raw, OAbstractFile.VERSION_OFFSET), OAbstractFile.CURRENT_HEADER_VERSION);
+      Assert.assertEquals(readLong(raw, OAbstractFile.SIZE_OFFSET), SIZE);
+      Assert.assertEquals(readLong(raw, OAbstractFile.FILLEDUPTO_OFFSET), FILLED);
+    } finally {
+      raw.close();
+    }
+
+    // THE CONVERTED HEADER IS READ AND UPDATED
+    file = open("rw");
+    try {
+      assertFile(file, SIZE, FILLED);
+      Assert.assertEquals(file.allocateSpace(100), FILLED);
+    } finally {
+      file.close();
+    }
+
+    file = open("r");
+    try {
+      assertFile(file, SIZE, FILLED + 100);
+    } finally {
+      file.close();
+    }
+  }
+
+  private OFileMMap open(final String iMode) throws IOException {
+    final OFileMMap file = new OFileMMap();
+    file.init(osFile.getAbsolutePath(), iMode);
+    Assert.assertTrue(file.open());
+    return file;
+  }
+
+  private void assertFile(final OFileMMap iFile, final long iSize, final long iFilledUpTo) throws IOException {
+    Assert.assertEquals(iFile.getFileSize(), iSize);
+    Assert.assertEquals(iFile.getFilledUpTo(), iFilledUpTo);
+
+    final byte[] read = new byte[content.length];
+    iFile.read(0, read, read.length);
+    Assert.assertEquals(read, content);
+  }
+
+  private static byte readByte(final RandomAccessFile iFile, final int iOffset) throws IOException {
+    iFile.seek(iOffset);
+    return iFile.readByte();
+  }
+
+  private static int readInt(final RandomAccessFile iFile, final int iOffset) throws IOException {
+    iFile.seek(iOffset);
+    return iFile.readInt();
+  }
+
+  private static long readLong(final RandomAccessFile iFile, final int iOffset) throws IOException {
+    iFile.seek(iOffset);
+    return iFile.readLong();
+  }
+}
@@ -0,0 +1,231 @@
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class OFilePageCacheTest {
+  private static final int PAGE = 1024;
+  // THE PAGES OF THE TESTS START AFTER THE HEADER OF THE FILE
+  private static final int BASE = OAbstractFile.HEADER_SIZE;
+
+  private OFileClassic     file;
+
+  @BeforeMethod
+  public void beforeMethod() throws IOException {
+    final File osFile = new File(System.getProperty("java.io.tmpdir"), "OFilePageCacheTest.ocl");
+    osFile.delete();
+
+    file = new OFileClassic();
+    file.init(osFile.getAbsolutePath(), "rw");
+    file.create(64 * PAGE);
+  }
+
+  @AfterMethod
+  public void afterMethod() throws IOException {
+    file.delete();
+  }
+
+  public void testReadAfterWrite() throws IOException {
+    final OFilePageCache cache = new OFilePageCache(8 * PAGE, PAGE, 4);
+    final byte[] content = content(3 * PAGE, 1);
+
+    // ACROSS 4 PAGES
+    write(cache, BASE + 100, content);
+    Assert.assertEquals(read(cache, BASE + 100, content.length), content);
+    Assert.assertEquals(cache.getPages(), 4);
+
+    // NOTHING REACHES THE FILE BEFORE THE FLUSH
+    Assert.assertEquals(readChannel(BASE + 100, content.length), new byte[content.length]);
+
+    // THE PAGES OF OTHER READS SEE THE LAST WRITE
+    final byte[] overwritten = content(10, 2);
+    write(cache, BASE + PAGE - 5, overwritten);
+    System.arraycopy(overwritten, 0, content, PAGE - 105, overwritten.length);
+    Assert.assertEquals(read(cache, BASE + 100, content.length), content);
+
+    // THE BYTES NEVER WRITTEN ARE 0
+    Assert.assertEquals(read(cache, BASE + 4 * PAGE, 10), new byte[10]);
+  }
+
+  public void testEvictionWritesBack() throws IOException {
+    final OFilePageCache cache = new OFilePageCache(2 * PAGE, PAGE, 1);
+    final byte[] content = content(100, 3);
+
+    write(cache, BASE + 10, content);
+    read(cache, BASE + PAGE, 10);
+    Assert.assertEquals(cache.getPages(), 2);
+
+    // THE CLOCK CLEARS THE REFERENCE OF BOTH THE PAGES, THEN EVICTS THE WRITTEN ONE
+    read(cache, BASE + 2 * PAGE, 10);
+    Assert.assertEquals(cache.getPages(), 2);
+    Assert.assertEquals(readChannel(BASE + 10, content.length), content);
+
+    // ONLY THE WRITTEN RANGE IS WRITTEN BACK
+    Assert.assertEquals(readChannel(BASE, 10), new byte[10]);
+
+    // RELOADED FROM THE FILE
+    Assert.assertEquals(read(cache, BASE + 10, content.length), content);
+  }
+
+  public void testScanPagesAreEvictedFirst() throws IOException {
+    final OFilePageCache cache = new OFilePageCache(3 * PAGE, PAGE, 1);
+    final byte[] content = content(100, 4);
+    write(cache, BASE, content);
+    read(cache, BASE + PAGE, 10);
+
+    OFileScanThreadLocal.INSTANCE.set(Boolean.TRUE);
+    try {
+      read(cache, BASE + 2 * PAGE, 10);
+    } finally {
+      OFileScanThreadLocal.INSTANCE.set(Boolean.FALSE);
+    }
+
+    // THE PAGE OF THE SCAN IS EVICTED, NOT THE WRITTEN ONE
+    read(cache, BASE + 3 * PAGE, 10);
+    Assert.assertEquals(cache.getPages(), 3);
+    Assert.assertEquals(readChannel(BASE, content.length), new byte[content.length]);
+    Assert.assertEquals(read(cache, BASE, content.length), content);
+  }
+
+  public void testTruncatePartiallyDirtyPage() throws IOException {
+    final OFilePageCache cache = new OFilePageCache(8 * PAGE, PAGE, 1);
+    final byte[] first = content(100, 5);
+    final byte[] second = content(100, 6);
+    write(cache, BASE + 100, first);
+    write(cache, BASE + 600, second);
+    write(cache, BASE + PAGE + 10, content(10, 7));
+    Assert.assertEquals(cache.getPages(), 2);
+
+    file.channel.truncate(BASE + 650);
+    cache.truncate(file, BASE + 650);
+    Assert.assertEquals(cache.getPages(), 1);
+
+    // THE WRITE BACK DOES NOT EXTEND THE FILE PAST THE TRUNCATION
+    cache.flush(file);
+    Assert.assertEquals(file.channel.size(), BASE + 650);
+    Assert.assertEquals(readChannel(BASE + 100, first.length), first);
+    Assert.assertEquals(readChannel(BASE + 600, 50), copy(second, 0, 50));
+
+    // THE BYTES DISCARDED ARE READ AS 0
+    Assert.assertEquals(read(cache, BASE + 600, 100), copy(second, 0, 50, 100));
+    Assert.assertEquals(read(cache, BASE + PAGE + 10, 10), new byte[10]);
+  }
+
+  public void testFlushAndRelease() throws IOException {
+    final OFilePageCache cache = new OFilePageCache(8 * PAGE, PAGE, 4);
+    final byte[] content = content(2 * PAGE, 8);
+
+    write(cache, BASE, content);
+    cache.flush(file);
+    Assert.assertEquals(readChannel(BASE, content.length), content);
+    Assert.assertEquals(cache.getPages(), 2);
+
+    final byte[] updated = content(10, 9);
+    write(cache, BASE + PAGE, updated);
+    System.arraycopy(updated, 0, content, PAGE, updated.length);
+
+    cache.release(file);
+    Assert.assertEquals(cache.getPages(), 0);
+    Assert.assertEquals(readChannel(BASE, content.length), content);
+
+    // NOTHING IS READ AHEAD FOR A RELEASED FILE
+    cache.readAhead(file, BASE, 4 * PAGE);
+    Assert.assertEquals(cache.getPages(), 0);
+  }
+
+  public void testConcurrentAccess() throws Exception {
+    final int threads = 8;
+    final int pagesPerThread = 4;
+    // LESS MEMORY THAN THE PAGES USED: THE THREADS EVICT EACH OTHER'S PAGES
+    final OFilePageCache cache = new OFilePageCache(16 * PAGE, PAGE, 8);
+    Assert.assertEquals(cache.getSegments(), 8);
+
+    final byte[][] expected = new byte[threads][pagesPerThread * PAGE];
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < threads; ++t) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            final Random random = new Random(thread);
+            final byte[] region = expected[thread];
+            final long start = BASE + thread * region.length;
+
+            for (int i = 0; i < 2000; ++i) {
+              final int offset = random.nextInt(region.length);
+              final int length = 1 + random.nextInt(Math.min(region.length - offset, 2 * PAGE));
+              if (random.nextBoolean()) {
+                final byte[] content = content(length, random.nextInt());
+                write(cache, start + offset, content);
+                System.arraycopy(content, 0, region, offset, length);
+              } else
+                Assert.assertEquals(read(cache, start + offset, length), copy(region, offset, offset + length));
+            }
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Void> future : futures)
+        future.get();
+    } finally {
+      executor.shutdown();
+    }
+
+    cache.release(file);
+    for (int t = 0; t < threads; ++t)
+      Assert.assertEquals(readChannel(BASE + t * expected[t].length, expected[t].length), expected[t]);
+  }
+
+  private void write(final OFilePageCache iCache, final long iPosition, final byte[] iContent) throws IOException {
+    iCache.write(file, iPosition, ByteBuffer.wrap(iContent));
+  }
+
+  private byte[] read(final OFilePageCache iCache, final long iPosition, final int iLength) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(iLength);
+    iCache.read(file, iPosition, buffer);
+    Assert.assertFalse(buffer.hasRemaining());
+    return buffer.array();
+  }
+
+  private byte[] readChannel(final long iPosition, final int iLength) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(iLength);
+    while (buffer.hasRemaining() && file.channel.read(buffer, iPosition + buffer.position()) > -1)
+      ;
+    return buffer.array();
+  }
+
+  private static byte[] content(final int iLength, final int iSeed) {
+    final byte[] content = new byte[iLength];
+    new Random(iSeed).nextBytes(content);
+    return content;
+  }
+
+  /**
+   * Copies the range of the bytes in an array of the length, filled with 0 past the range.
+   */
+  private static byte[] copy(final byte[] iSource, final int iFrom, final int iTo, final int iLength) {
+    final byte[] copy = new byte[iLength];
+    System.arraycopy(iSource, iFrom, copy, 0, iTo - iFrom);
+    return copy;
+  }
+
+  private static byte[] copy(final byte[] iSource, final int iFrom, final int iTo) {
+    return copy(iSource, iFrom, iTo, iTo - iFrom);
+  }
+}
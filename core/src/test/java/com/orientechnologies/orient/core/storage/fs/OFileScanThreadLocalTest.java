@@ -0,0 +1,98 @@
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+
+/**
+ * Read ahead of the threads scanning the same file: each thread follows its own scan.
+ */
+@Test
+public class OFileScanThreadLocalTest {
+  private static final int WINDOW = 8192;
+
+  private OFileClassic     file;
+  private Object           oldReadAhead;
+  private ExecutorService  first;
+  private ExecutorService  second;
+
+  @BeforeMethod
+  public void beforeMethod() throws IOException {
+    oldReadAhead = OGlobalConfiguration.FILE_SCAN_READ_AHEAD.getValue();
+    OGlobalConfiguration.FILE_SCAN_READ_AHEAD.setValue(WINDOW);
+
+    final File osFile = new File(System.getProperty("java.io.tmpdir"), "OFileScanThreadLocalTest.ocl");
+    osFile.delete();
+
+    file = new OFileClassic();
+    file.init(osFile.getAbsolutePath(), "rw");
+    file.create(64 * 1024);
+    file.allocateSpace(64 * 1024);
+
+    first = Executors.newSingleThreadExecutor();
+    second = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterMethod
+  public void afterMethod() throws IOException {
+    first.shutdown();
+    second.shutdown();
+    file.delete();
+
+    OGlobalConfiguration.FILE_SCAN_READ_AHEAD.setValue(oldReadAhead);
+  }
+
+  public void testWindowPerThread() throws Exception {
+    assertWindow(scan(first, 0), 100, 100 + WINDOW);
+    assertWindow(scan(second, 40000), 40100, 40100 + WINDOW);
+
+    // THE SCAN OF THE OTHER THREAD DOES NOT MOVE THE WINDOW
+    assertWindow(scan(first, 100), 100, 100 + WINDOW);
+    assertWindow(scan(first, WINDOW), WINDOW + 100, 2 * WINDOW + 100);
+    assertWindow(scan(second, 40100), 40100, 40100 + WINDOW);
+
+    // THE END OF THE FILE LIMITS THE WINDOW
+    assertWindow(scan(second, 64 * 1024 - 1000), 64 * 1024 - 900, 64 * 1024);
+  }
+
+  public void testWindowForgottenAfterScan() throws Exception {
+    assertWindow(scan(first, 0), 100, 100 + WINDOW);
+
+    final long[] window = first.submit(new Callable<long[]>() {
+      public long[] call() {
+        OFileScanThreadLocal.INSTANCE.set(Boolean.FALSE);
+        return OFileScanThreadLocal.INSTANCE.getReadAheadWindow(file).clone();
+      }
+    }).get();
+    assertWindow(window, 0, 0);
+  }
+
+  /**
+   * Reads 100 bytes of the file at the offset in the thread of the executor, as a scan.
+   *
+   * @return The read ahead window of the thread after the read
+   */
+  private long[] scan(final ExecutorService iThread, final long iOffset) throws Exception {
+    return iThread.submit(new Callable<long[]>() {
+      public long[] call() throws IOException {
+        OFileScanThreadLocal.INSTANCE.set(Boolean.TRUE);
+        file.read(iOffset, new byte[100], 100);
+        return OFileScanThreadLocal.INSTANCE.getReadAheadWindow(file).clone();
+      }
+    }).get();
+  }
+
+  private static void assertWindow(final long[] iWindow, final long iFrom, final long iTo) {
+    Assert.assertEquals(iWindow[0], iFrom);
+    Assert.assertEquals(iWindow[1], iTo);
+  }
+}
@@ -0,0 +1,358 @@
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.config.OStorageConfiguration;
+import com.orientechnologies.orient.core.config.OStorageDataConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.storage.fs.OFileClassic;
+
+/**
+ * Records of the data segments compressed from <code>compressionMinSize</code> bytes: created, updated, moved by the defrag and
+ * read back after reopening, also by a configuration of the version before the setting.
+ */
+@Test
+public class ODataLocalCompressionTest {
+  private static final int      MIN_SIZE = 100;
+  private static final String[] WORDS    = { "orient", "record", "cluster", "segment", "document", "compressed" };
+
+  private String                url;
+  private Object                oldKeepOpen;
+  private Object                oldMinSize;
+  private Object                oldStrategy;
+  private Object                oldInterval;
+
+  @BeforeMethod
+  public void beforeMethod() {
+    oldKeepOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValue();
+    oldMinSize = OGlobalConfiguration.STORAGE_COMPRESSION_MIN_SIZE.getValue();
+    oldStrategy = OGlobalConfiguration.FILE_DEFRAG_STRATEGY.getValue();
+    oldInterval = OGlobalConfiguration.FILE_DEFRAG_INTERVAL.getValue();
+
+    // CLOSE THE STORAGE WITH THE DATABASE: THE CONFIGURATION IS READ AGAIN WHEN IT IS OPEN
+    OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+    OGlobalConfiguration.STORAGE_COMPRESSION_MIN_SIZE.setValue(MIN_SIZE);
+    // NO BACKGROUND DEFRAG STEP: THE TESTS RUN THEM
+    OGlobalConfiguration.FILE_DEFRAG_INTERVAL.setValue(Integer.MAX_VALUE);
+  }
+
+  @AfterMethod
+  public void afterMethod() {
+    new ODatabaseDocumentTx(url).open("admin", "admin").drop();
+
+    OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldKeepOpen);
+    OGlobalConfiguration.STORAGE_COMPRESSION_MIN_SIZE.setValue(oldMinSize);
+    OGlobalConfiguration.FILE_DEFRAG_STRATEGY.setValue(oldStrategy);
+    OGlobalConfiguration.FILE_DEFRAG_INTERVAL.setValue(oldInterval);
+  }
+
+  public void testCrudAndMove() throws IOException {
+    // THE HOLES ARE DEFRAGMENTED AS SOON AS THEY ARE CREATED, MOVING THE RECORDS AROUND THEM
+    OGlobalConfiguration.FILE_DEFRAG_STRATEGY.setValue(0);
+    final Map<ORID, String> records = create("compressionCrud");
+
+    ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      final ODataLocal dataSegment = getDataSegment(db);
+      Assert.assertEquals(dataSegment.getCompressionMinSize(), MIN_SIZE);
+      assertRecords(db, records);
+
+      // THE SIZE CHANGES: THE FLAG FOLLOWS THE NEW CONTENT
+      final Random random = new Random(2);
+      final List<ORID> rids = new ArrayList<ORID>(records.keySet());
+      for (int i = 0; i < 20; ++i) {
+        final ORID rid = rids.get(i);
+        final String value = records.get(rid).length() < MIN_SIZE ? compressible(random) : "small";
+        db.<ODocument> load(rid).field("data", value).save();
+        records.put(rid, value);
+      }
+      assertRecords(db, records);
+
+      assertSameSizeUpdate(db, records);
+
+      // THE DELETES MOVE THE RECORDS BETWEEN THE HOLES
+      final Map<ORID, Long> positions = getPositions(db, records);
+      delete(db, records, 3);
+      assertMoved(db, records, positions);
+      assertRecords(db, records);
+      assertCheck(db);
+    } finally {
+      db.close();
+    }
+
+    db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      assertRecords(db, records);
+      assertCheck(db);
+    } finally {
+      db.close();
+    }
+  }
+
+  public void testDefrag() throws IOException {
+    OGlobalConfiguration.FILE_DEFRAG_STRATEGY.setValue(1);
+    final Map<ORID, String> records = create("compressionDefrag");
+
+    ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      final ODataLocal dataSegment = getDataSegment(db);
+      final Map<ORID, Long> positions = getPositions(db, records);
+      final long size = dataSegment.getSize();
+
+      delete(db, records, 3);
+      Assert.assertFalse(dataSegment.getHolesList().isEmpty());
+
+      long position = 0;
+      while ((position = ((OStorageLocal) db.getStorage()).defragDataSegment(dataSegment, position, 1000, -1)) > -1)
+        ;
+
+      Assert.assertEquals(dataSegment.getHolesList().size(), 0);
+      Assert.assertTrue(dataSegment.getSize() < size, "Size " + dataSegment.getSize() + " not lower than " + size);
+      assertMoved(db, records, positions);
+      assertRecords(db, records);
+      assertCheck(db);
+    } finally {
+      db.close();
+    }
+
+    db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      assertRecords(db, records);
+      assertCheck(db);
+    } finally {
+      db.close();
+    }
+  }
+
+  public void testReopenWithVersion4Configuration() throws IOException {
+    final Map<ORID, String> records = create("compressionVersion4");
+    final File path = new File(url.substring("local:".length()));
+
+    // THE CONFIGURATION AS WRITTEN BEFORE THE COMPRESSION: NO MIN SIZE AFTER THE DATA SEGMENTS
+    ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    final String version4;
+    try {
+      final OStorageConfiguration configuration = db.getStorage().getConfiguration();
+      for (OStorageDataConfiguration d : configuration.dataSegments)
+        d.compressionMinSize = -123456789;
+      version4 = "4" + new String(configuration.toStream()).substring(1).replace("|-123456789", "");
+      for (OStorageDataConfiguration d : configuration.dataSegments)
+        d.compressionMinSize = MIN_SIZE;
+    } finally {
+      db.close();
+    }
+    Assert.assertTrue(version4.startsWith("4|"));
+    writeConfiguration(new File(path, "database.ocf"), version4.getBytes());
+
+    db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      final ODataLocal dataSegment = getDataSegment(db);
+      Assert.assertEquals(dataSegment.getCompressionMinSize(), -1);
+
+      // THE RECORDS COMPRESSED BEFORE ARE STILL READ, THE NEW ONES ARE NOT COMPRESSED
+      assertRecords(db, records);
+      final String value = compressible(new Random(3));
+      final ODocument doc = new ODocument("Item").field("data", value).save();
+      records.put(doc.getIdentity(), value);
+      Assert.assertFalse(dataSegment.isRecordCompressed(getPosition(db, doc.getIdentity())));
+
+      for (Map.Entry<ORID, String> entry : records.entrySet())
+        db.<ODocument> load(entry.getKey()).field("data", entry.getValue() + "!").save();
+      for (Map.Entry<ORID, String> entry : records.entrySet()) {
+        entry.setValue(entry.getValue() + "!");
+        Assert.assertFalse(dataSegment.isRecordCompressed(getPosition(db, entry.getKey())));
+      }
+      assertRecords(db, records);
+      assertCheck(db);
+    } finally {
+      db.close();
+    }
+
+    // SAVED WITH THE CURRENT VERSION
+    db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      Assert.assertEquals(getDataSegment(db).getCompressionMinSize(), -1);
+      assertRecords(db, records);
+    } finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Creates the database with records big enough to be compressed and small ones.
+   *
+   * @return The content of the records
+   */
+  private Map<ORID, String> create(final String iName) throws IOException {
+    final File path = new File(System.getProperty("java.io.tmpdir"), iName);
+    deleteTree(path);
+    url = "local:" + path.getAbsolutePath();
+
+    final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).create();
+    try {
+      db.getMetadata().getSchema().createClass("Item");
+
+      final Random random = new Random(1);
+      final Map<ORID, String> records = new HashMap<ORID, String>();
+      for (int i = 0; i < 300; ++i) {
+        final String value = i % 2 == 0 ? compressible(random) : "small" + i;
+        records.put(new ODocument("Item").field("data", value).save().getIdentity(), value);
+      }
+
+      final ODataLocal dataSegment = getDataSegment(db);
+      int compressed = 0;
+      for (Map.Entry<ORID, String> entry : records.entrySet()) {
+        final long position = getPosition(db, entry.getKey());
+        if (dataSegment.isRecordCompressed(position)) {
+          Assert.assertTrue(entry.getValue().length() >= MIN_SIZE);
+          Assert.assertTrue(dataSegment.getRecordSize(position) < dataSegment.getRecord(position).length);
+          compressed++;
+        } else
+          Assert.assertTrue(entry.getValue().length() < MIN_SIZE);
+      }
+      Assert.assertEquals(compressed, 150);
+      Assert.assertTrue(((OStorageLocal) db.getStorage()).getCompressionRatio() > 1);
+      return records;
+    } finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Overwrites a compressed record with a content of its compressed size that is not compressed, then with the old content again:
+   * the space is reused both times and the flag changes with the content.
+   */
+  private void assertSameSizeUpdate(final ODatabaseDocumentTx iDb, final Map<ORID, String> iRecords) throws IOException {
+    final ODataLocal dataSegment = getDataSegment(iDb);
+    for (ORID rid : iRecords.keySet()) {
+      final long position = getPosition(iDb, rid);
+      if (!dataSegment.isRecordCompressed(position))
+        continue;
+
+      final int size = dataSegment.getRecordSize(position);
+      final byte[] content = dataSegment.getRecord(position);
+      final byte[] uncompressed = new byte[size];
+      new Random(size).nextBytes(uncompressed);
+
+      Assert.assertEquals(dataSegment.setRecord(position, (ORecordId) rid, uncompressed), position);
+      Assert.assertFalse(dataSegment.isRecordCompressed(position));
+      Assert.assertEquals(dataSegment.getRecordSize(position), size);
+      Assert.assertEquals(dataSegment.getRecord(position), uncompressed);
+
+      Assert.assertEquals(dataSegment.setRecord(position, (ORecordId) rid, content), position);
+      Assert.assertTrue(dataSegment.isRecordCompressed(position));
+      Assert.assertEquals(dataSegment.getRecordSize(position), size);
+      Assert.assertEquals(dataSegment.getRecord(position), content);
+      return;
+    }
+    Assert.fail("No compressed record");
+  }
+
+  private static void delete(final ODatabaseDocumentTx iDb, final Map<ORID, String> iRecords, final int iEvery) {
+    int i = 0;
+    for (ORID rid : new ArrayList<ORID>(iRecords.keySet()))
+      if (i++ % iEvery == 0) {
+        iDb.load(rid).delete();
+        iRecords.remove(rid);
+      }
+  }
+
+  /**
+   * Asserts some compressed records moved and are still compressed.
+   */
+  private static void assertMoved(final ODatabaseDocumentTx iDb, final Map<ORID, String> iRecords,
+      final Map<ORID, Long> iPositions) throws IOException {
+    final ODataLocal dataSegment = getDataSegment(iDb);
+    int moved = 0;
+    for (ORID rid : iRecords.keySet()) {
+      final long position = getPosition(iDb, rid);
+      if (position != iPositions.get(rid) && iRecords.get(rid).length() >= MIN_SIZE) {
+        Assert.assertTrue(dataSegment.isRecordCompressed(position), "Record " + rid + " not compressed after moving it");
+        moved++;
+      }
+    }
+    Assert.assertTrue(moved > 0);
+  }
+
+  private static void assertRecords(final ODatabaseDocumentTx iDb, final Map<ORID, String> iRecords) {
+    Assert.assertEquals(iDb.countClass("Item"), iRecords.size());
+    for (Map.Entry<ORID, String> entry : iRecords.entrySet()) {
+      final ODocument doc = iDb.load(entry.getKey(), null, true);
+      Assert.assertNotNull(doc, "Record " + entry.getKey() + " not found");
+      Assert.assertEquals(doc.field("data"), entry.getValue());
+    }
+  }
+
+  private static void assertCheck(final ODatabaseDocumentTx iDb) {
+    final StringBuilder output = new StringBuilder();
+    final boolean ok = ((OStorageLocal) iDb.getStorage()).check(true, new OCommandOutputListener() {
+      public void onMessage(final String iText) {
+        output.append(iText);
+      }
+    });
+    Assert.assertTrue(ok, output.toString());
+    Assert.assertFalse(output.indexOf("WARN") > -1, output.toString());
+  }
+
+  private static Map<ORID, Long> getPositions(final ODatabaseDocumentTx iDb, final Map<ORID, String> iRecords)
+      throws IOException {
+    final Map<ORID, Long> positions = new HashMap<ORID, Long>();
+    for (ORID rid : iRecords.keySet())
+      positions.put(rid, getPosition(iDb, rid));
+    return positions;
+  }
+
+  private static long getPosition(final ODatabaseDocumentTx iDb, final ORID iRid) throws IOException {
+    final OPhysicalPosition ppos = ((OStorageLocal) iDb.getStorage()).getClusterById(iRid.getClusterId()).getPhysicalPosition(
+        new OPhysicalPosition(iRid.getClusterPosition()));
+    return ppos.dataSegmentPos;
+  }
+
+  private static ODataLocal getDataSegment(final ODatabaseDocumentTx iDb) {
+    return ((OStorageLocal) iDb.getStorage()).getDataSegmentById(0);
+  }
+
+  private static void writeConfiguration(final File iFile, final byte[] iContent) throws IOException {
+    final OFileClassic file = new OFileClassic();
+    file.init(iFile.getAbsolutePath(), "rw");
+    file.open();
+    try {
+      file.writeInt(0, iContent.length);
+      file.write(OBinaryProtocol.SIZE_INT, iContent);
+    } finally {
+      file.close();
+    }
+  }
+
+  private static String compressible(final Random iRandom) {
+    final StringBuilder content = new StringBuilder();
+    while (content.length() < 2 * MIN_SIZE + iRandom.nextInt(4 * MIN_SIZE))
+      content.append(WORDS[iRandom.nextInt(WORDS.length)]).append(' ');
+    return content.toString();
+  }
+
+  private static void deleteTree(final File iFile) {
+    if (iFile.isDirectory())
+      for (File f : iFile.listFiles())
+        deleteTree(f);
+    iFile.delete();
+  }
+}
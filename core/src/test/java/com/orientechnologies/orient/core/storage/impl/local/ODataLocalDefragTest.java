@@ -0,0 +1,243 @@
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Background defrag of the data segments (file.defrag.strategy = 1): the holes left by deletes and updates are merged and moved
+ * to the end of the file, which is truncated, while other threads read the records.
+ */
+@Test
+public class ODataLocalDefragTest {
+  private static final int RECORDS = 1000;
+
+  private String           url;
+  private Object           oldKeepOpen;
+  private Object           oldStrategy;
+  private Object           oldInterval;
+  private Object           oldIOBudget;
+  private Object           oldFineGrainedLocking;
+
+  @BeforeMethod
+  public void beforeMethod() {
+    oldKeepOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValue();
+    oldStrategy = OGlobalConfiguration.FILE_DEFRAG_STRATEGY.getValue();
+    oldInterval = OGlobalConfiguration.FILE_DEFRAG_INTERVAL.getValue();
+    oldIOBudget = OGlobalConfiguration.FILE_DEFRAG_IO_BUDGET.getValue();
+    oldFineGrainedLocking = OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.getValue();
+
+    // CLOSE THE STORAGE WITH THE DATABASE: THE DEFRAG SETTINGS ARE READ WHEN IT IS OPEN
+    OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+    OGlobalConfiguration.FILE_DEFRAG_STRATEGY.setValue(1);
+    // FEW RECORDS MOVED BY EACH STEP: MANY STEPS BETWEEN THE READS
+    OGlobalConfiguration.FILE_DEFRAG_IO_BUDGET.setValue(409600);
+  }
+
+  @AfterMethod
+  public void afterMethod() {
+    new ODatabaseDocumentTx(url).open("admin", "admin").drop();
+
+    OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldKeepOpen);
+    OGlobalConfiguration.FILE_DEFRAG_STRATEGY.setValue(oldStrategy);
+    OGlobalConfiguration.FILE_DEFRAG_INTERVAL.setValue(oldInterval);
+    OGlobalConfiguration.FILE_DEFRAG_IO_BUDGET.setValue(oldIOBudget);
+    OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.setValue(oldFineGrainedLocking);
+  }
+
+  public void testDefragWithFineGrainedLocking() throws Exception {
+    defrag("defragFineGrained", true);
+  }
+
+  public void testDefragWithStorageLock() throws Exception {
+    defrag("defragStorageLock", false);
+  }
+
+  private void defrag(final String iName, final boolean iFineGrainedLocking) throws Exception {
+    OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.setValue(iFineGrainedLocking);
+    final File path = new File(System.getProperty("java.io.tmpdir"), iName);
+    deleteTree(path);
+    url = "local:" + path.getAbsolutePath();
+
+    // NO DEFRAG STEP WHILE THE HOLES ARE CREATED
+    OGlobalConfiguration.FILE_DEFRAG_INTERVAL.setValue(Integer.MAX_VALUE);
+    final Map<ORID, String> records = createHoles();
+
+    ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    final long holes;
+    final long size;
+    try {
+      final ODataLocal dataSegment = getDataSegment(db);
+      holes = dataSegment.getHolesList().size();
+      size = dataSegment.getSize();
+      Assert.assertTrue(holes > 10, "Holes: " + holes);
+    } finally {
+      db.close();
+    }
+
+    OGlobalConfiguration.FILE_DEFRAG_INTERVAL.setValue(5);
+    db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      final ODataLocal dataSegment = getDataSegment(db);
+
+      final AtomicBoolean reading = new AtomicBoolean(true);
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      final List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+      try {
+        for (int i = 0; i < 4; ++i)
+          readers.add(executor.submit(new Reader(records, reading, i)));
+
+        final long deadline = System.currentTimeMillis() + 60000;
+        while (!dataSegment.getHolesList().isEmpty() && System.currentTimeMillis() < deadline)
+          Thread.sleep(50);
+
+        reading.set(false);
+        for (Future<Integer> reader : readers)
+          Assert.assertTrue(reader.get() > 0);
+      } finally {
+        executor.shutdown();
+      }
+
+      Assert.assertEquals(dataSegment.getHolesList().size(), 0);
+      Assert.assertTrue(dataSegment.getSize() < size, "Size " + dataSegment.getSize() + " not lower than " + size);
+
+      assertRecords(db, records);
+      assertCheck(db);
+    } finally {
+      db.close();
+    }
+
+    // THE MOVED RECORDS ARE FOUND AFTER REOPENING
+    db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      assertRecords(db, records);
+      assertCheck(db);
+    } finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Creates the records, then deletes some of them and changes the size of others, so they leave holes in the data segment.
+   *
+   * @return The content of the records left
+   */
+  private Map<ORID, String> createHoles() {
+    final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).create();
+    try {
+      db.getMetadata().getSchema().createClass("Item");
+
+      final Random random = new Random(1);
+      final List<ODocument> docs = new ArrayList<ODocument>();
+      for (int i = 0; i < RECORDS; ++i)
+        docs.add(new ODocument("Item").field("data", content(random, 20 + random.nextInt(200))).save());
+
+      final Map<ORID, String> records = new HashMap<ORID, String>();
+      for (int i = 0; i < RECORDS; ++i) {
+        final ODocument doc = docs.get(i);
+        if (i % 3 == 0)
+          doc.delete();
+        else {
+          if (i % 4 == 0)
+            // BIGGER: MOVED AT THE END OF THE FILE
+            doc.field("data", content(random, 500 + random.nextInt(200))).save();
+          else if (i % 5 == 0)
+            doc.field("data", content(random, 5)).save();
+          records.put(doc.getIdentity(), (String) doc.field("data"));
+        }
+      }
+      return records;
+    } finally {
+      db.close();
+    }
+  }
+
+  private static void assertRecords(final ODatabaseDocumentTx iDb, final Map<ORID, String> iRecords) {
+    Assert.assertEquals(iDb.countClass("Item"), iRecords.size());
+    for (Map.Entry<ORID, String> entry : iRecords.entrySet()) {
+      final ODocument doc = iDb.load(entry.getKey(), null, true);
+      Assert.assertNotNull(doc, "Record " + entry.getKey() + " not found");
+      Assert.assertEquals(doc.field("data"), entry.getValue());
+    }
+  }
+
+  private static void assertCheck(final ODatabaseDocumentTx iDb) {
+    final StringBuilder output = new StringBuilder();
+    final boolean ok = ((OStorageLocal) iDb.getStorage()).check(true, new OCommandOutputListener() {
+      public void onMessage(final String iText) {
+        output.append(iText);
+      }
+    });
+    Assert.assertTrue(ok, output.toString());
+    Assert.assertFalse(output.indexOf("WARN") > -1, output.toString());
+  }
+
+  private static ODataLocal getDataSegment(final ODatabaseDocumentTx iDb) {
+    return ((OStorageLocal) iDb.getStorage()).getDataSegmentById(0);
+  }
+
+  private static String content(final Random iRandom, final int iLength) {
+    final StringBuilder content = new StringBuilder(iLength);
+    for (int i = 0; i < iLength; ++i)
+      content.append((char) ('a' + iRandom.nextInt(26)));
+    return content.toString();
+  }
+
+  private static void deleteTree(final File iFile) {
+    if (iFile.isDirectory())
+      for (File f : iFile.listFiles())
+        deleteTree(f);
+    iFile.delete();
+  }
+
+  /**
+   * Reads the records while the defrag moves them, with a database of its own.
+   */
+  private class Reader implements Callable<Integer> {
+    private final List<Map.Entry<ORID, String>> records;
+    private final AtomicBoolean                 reading;
+    private final Random                        random;
+
+    private Reader(final Map<ORID, String> iRecords, final AtomicBoolean iReading, final int iSeed) {
+      records = new ArrayList<Map.Entry<ORID, String>>(iRecords.entrySet());
+      reading = iReading;
+      random = new Random(iSeed);
+    }
+
+    public Integer call() {
+      final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+      try {
+        int reads = 0;
+        while (reading.get() || reads == 0) {
+          final Map.Entry<ORID, String> entry = records.get(random.nextInt(records.size()));
+          final ODocument doc = db.load(entry.getKey(), null, true);
+          Assert.assertNotNull(doc, "Record " + entry.getKey() + " not found");
+          Assert.assertEquals(doc.field("data"), entry.getValue());
+          reads++;
+        }
+        return reads;
+      } finally {
+        db.close();
+      }
+    }
+  }
+}
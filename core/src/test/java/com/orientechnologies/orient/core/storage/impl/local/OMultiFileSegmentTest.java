@@ -0,0 +1,110 @@
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OStorageSegmentConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+
+/**
+ * Mapping of the absolute positions of a segment made of more files to the files: every file takes the space of the max file
+ * size, even if its tail is not filled.
+ */
+@Test
+public class OMultiFileSegmentTest {
+  private static final int             FILE_MAX_SIZE = 4096;
+  private static final int             RECORD_SIZE   = 1000;
+
+  private ODatabaseDocumentTx          db;
+  private OStorageSegmentConfiguration config;
+  private OMultiFileSegment            segment;
+
+  @BeforeMethod
+  public void beforeMethod() throws IOException {
+    final File path = new File(System.getProperty("java.io.tmpdir"), "multiFileSegment");
+    db = new ODatabaseDocumentTx("local:" + path.getAbsolutePath());
+    if (db.exists())
+      db.open("admin", "admin").drop();
+    db = new ODatabaseDocumentTx("local:" + path.getAbsolutePath()).create();
+
+    config = new OStorageSegmentConfiguration(db.getStorage().getConfiguration(), "multi", 100, path.getAbsolutePath());
+    config.fileMaxSize = "4Kb";
+
+    segment = new OMultiFileSegment((OStorageLocal) db.getStorage(), config, ".tst", 0);
+    segment.create(1024);
+  }
+
+  @AfterMethod
+  public void afterMethod() throws IOException {
+    segment.delete();
+    db.drop();
+  }
+
+  public void testPositionMapping() throws IOException {
+    final byte[][] records = new byte[6][];
+    final long[] positions = new long[records.length];
+    final Random random = new Random(1);
+    for (int i = 0; i < records.length; ++i) {
+      records[i] = new byte[RECORD_SIZE];
+      random.nextBytes(records[i]);
+
+      final long[] pos = segment.allocateSpace(RECORD_SIZE);
+      segment.files[(int) pos[0]].write(pos[1], records[i]);
+      positions[i] = segment.getAbsolutePosition(pos);
+    }
+
+    // 4 RECORDS IN THE FIRST FILE, THE REST IN THE SECOND ONE AFTER THE UNFILLED TAIL OF THE FIRST
+    Assert.assertEquals(segment.files.length, 2);
+    final long[] expected = { 0, 1000, 2000, 3000, 4096, 5096 };
+    for (int i = 0; i < positions.length; ++i)
+      Assert.assertEquals(positions[i], expected[i]);
+    Assert.assertEquals(segment.getFilledUpTo(), 6 * RECORD_SIZE);
+
+    assertRelativePosition(3999, 0, 3999);
+    assertRelativePosition(4095, 0, 4095);
+    assertRelativePosition(4096, 1, 0);
+    assertRelativePosition(5096, 1, 1000);
+    for (long position : positions)
+      Assert.assertEquals(segment.getAbsolutePosition(segment.getRelativePosition(position)), position);
+
+    // THE UNFILLED TAIL OF A FILE IS JUMPED
+    Assert.assertEquals(segment.getNextFilledPosition(0), 0);
+    Assert.assertEquals(segment.getNextFilledPosition(3999), 3999);
+    Assert.assertEquals(segment.getNextFilledPosition(4000), 4096);
+    Assert.assertEquals(segment.getNextFilledPosition(4095), 4096);
+    Assert.assertEquals(segment.getNextFilledPosition(6095), 6095);
+    Assert.assertEquals(segment.getNextFilledPosition(6096), -1);
+    Assert.assertEquals(segment.getNextFilledPosition(3 * FILE_MAX_SIZE), -1);
+
+    assertRecords(records, positions);
+
+    // THE FILES ARE MAPPED IN THE SAME WAY AFTER REOPENING
+    segment.close();
+    segment = new OMultiFileSegment((OStorageLocal) db.getStorage(), config, ".tst", 0);
+    segment.open();
+    Assert.assertEquals(segment.getFilledUpTo(), 6 * RECORD_SIZE);
+    Assert.assertEquals(segment.getNextFilledPosition(4000), 4096);
+    assertRecords(records, positions);
+  }
+
+  private void assertRelativePosition(final long iPosition, final long iFileNum, final long iFileOffset) {
+    final long[] pos = segment.getRelativePosition(iPosition);
+    Assert.assertEquals(pos[0], iFileNum);
+    Assert.assertEquals(pos[1], iFileOffset);
+  }
+
+  private void assertRecords(final byte[][] iRecords, final long[] iPositions) throws IOException {
+    for (int i = 0; i < iRecords.length; ++i) {
+      final long[] pos = segment.getRelativePosition(iPositions[i]);
+      final byte[] read = new byte[RECORD_SIZE];
+      segment.files[(int) pos[0]].read(pos[1], read, RECORD_SIZE);
+      Assert.assertEquals(read, iRecords[i]);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Record operations with fine-grained locking (storage.fineGrainedLocking = true): threads update, create, delete and read the
+ * records of the same clusters and of different clusters at the same time. No update must be lost and every record read must
+ * have the version of its content.
+ */
+@Test
+public class OStorageLocalFineGrainedLockingTest {
+  private static final String[] CLASSES  = { "A", "B" };
+  private static final int      COUNTERS = 10;
+  private static final int      UPDATES  = 300;
+  private static final int      CREATES  = 200;
+
+  private String                url;
+  private Object                oldFineGrainedLocking;
+  private Object                oldLevel2Cache;
+  private final List<ORID>      counters = new ArrayList<ORID>();
+
+  @BeforeMethod
+  public void beforeMethod() {
+    oldFineGrainedLocking = OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.getValue();
+    oldLevel2Cache = OGlobalConfiguration.CACHE_LEVEL2_ENABLED.getValue();
+    OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.setValue(true);
+    // READ THE RECORDS FROM THE STORAGE
+    OGlobalConfiguration.CACHE_LEVEL2_ENABLED.setValue(false);
+
+    final File path = new File(System.getProperty("java.io.tmpdir"), "fineGrainedLocking");
+    url = "local:" + path.getAbsolutePath();
+
+    ODatabaseDocumentTx db = new ODatabaseDocumentTx(url);
+    if (db.exists())
+      db.open("admin", "admin").drop();
+
+    db = new ODatabaseDocumentTx(url).create();
+    try {
+      counters.clear();
+      for (String className : CLASSES) {
+        db.getMetadata().getSchema().createClass(className);
+        for (int i = 0; i < COUNTERS; ++i)
+          counters.add(new ODocument(className).field("value", 0).save().getIdentity());
+      }
+    } finally {
+      db.close();
+    }
+  }
+
+  @AfterMethod
+  public void afterMethod() {
+    new ODatabaseDocumentTx(url).open("admin", "admin").drop();
+
+    OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.setValue(oldFineGrainedLocking);
+    OGlobalConfiguration.CACHE_LEVEL2_ENABLED.setValue(oldLevel2Cache);
+  }
+
+  public void testConcurrentRecordOperations() throws Exception {
+    final AtomicIntegerArray increments = new AtomicIntegerArray(counters.size());
+    final AtomicBoolean running = new AtomicBoolean(true);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(10);
+    try {
+      final List<Future<Integer>> updaters = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 4; ++i)
+        updaters.add(executor.submit(new Updater(increments, i)));
+
+      final List<Future<Map<Integer, String>>> creators = new ArrayList<Future<Map<Integer, String>>>();
+      for (int i = 0; i < 4; ++i)
+        creators.add(executor.submit(new Creator(CLASSES[i % CLASSES.length], i)));
+
+      final List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 2; ++i)
+        readers.add(executor.submit(new Reader(running, i)));
+
+      for (Future<Integer> updater : updaters)
+        Assert.assertEquals(updater.get().intValue(), UPDATES);
+
+      final Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+      for (String className : CLASSES)
+        expected.put(className, new HashSet<String>());
+      for (int i = 0; i < creators.size(); ++i)
+        expected.get(CLASSES[i % CLASSES.length]).addAll(creators.get(i).get().values());
+
+      running.set(false);
+      for (Future<Integer> reader : readers)
+        Assert.assertTrue(reader.get() > 0);
+
+      final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+      try {
+        // NO LOST UPDATE: EVERY INCREMENT IS IN THE COUNTER AND IN ITS VERSION
+        for (int i = 0; i < counters.size(); ++i) {
+          final ODocument counter = db.load(counters.get(i), null, true);
+          Assert.assertEquals(counter.field("value"), increments.get(i), "Counter " + counters.get(i));
+          Assert.assertEquals(counter.getVersion(), increments.get(i), "Counter " + counters.get(i));
+        }
+
+        // THE RECORDS CREATED AND NOT DELETED ARE THERE, THE OTHERS ARE GONE
+        for (String className : CLASSES) {
+          final Set<String> found = new HashSet<String>();
+          for (ODocument doc : db.browseClass(className))
+            if (doc.containsField("data"))
+              Assert.assertTrue(found.add((String) doc.field("data")), "Duplicated " + doc.field("data"));
+          Assert.assertTrue(found.equals(expected.get(className)), "Found " + found + ", expected " + expected.get(className));
+          Assert.assertEquals(db.countClass(className), COUNTERS + found.size());
+        }
+
+        final StringBuilder output = new StringBuilder();
+        final boolean ok = ((OStorageLocal) db.getStorage()).check(true, new OCommandOutputListener() {
+          public void onMessage(final String iText) {
+            output.append(iText);
+          }
+        });
+        Assert.assertTrue(ok, output.toString());
+        Assert.assertFalse(output.indexOf("WARN") > -1, output.toString());
+      } finally {
+        db.close();
+      }
+    } finally {
+      running.set(false);
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Increments random counters of both the clusters, retrying when another thread updated the counter in the meanwhile.
+   */
+  private class Updater implements Callable<Integer> {
+    private final AtomicIntegerArray increments;
+    private final Random             random;
+
+    private Updater(final AtomicIntegerArray iIncrements, final int iSeed) {
+      increments = iIncrements;
+      random = new Random(iSeed);
+    }
+
+    public Integer call() {
+      final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+      try {
+        int updates = 0;
+        while (updates < UPDATES) {
+          final int i = random.nextInt(counters.size());
+          final ODocument counter = db.load(counters.get(i), null, true);
+          counter.field("value", (Integer) counter.field("value") + 1);
+          try {
+            counter.save();
+          } catch (OConcurrentModificationException e) {
+            continue;
+          }
+          increments.incrementAndGet(i);
+          updates++;
+        }
+        return updates;
+      } finally {
+        db.close();
+      }
+    }
+  }
+
+  /**
+   * Creates records in the cluster of a class, deleting every other one after the next has been created.
+   * 
+   * @return The contents of the records left, by number
+   */
+  private class Creator implements Callable<Map<Integer, String>> {
+    private final String className;
+    private final int    id;
+
+    private Creator(final String iClassName, final int iId) {
+      className = iClassName;
+      id = iId;
+    }
+
+    public Map<Integer, String> call() {
+      final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+      try {
+        final Map<Integer, String> created = new HashMap<Integer, String>();
+        ODocument previous = null;
+        for (int i = 0; i < CREATES; ++i) {
+          final String data = id + "-" + i;
+          final ODocument doc = new ODocument(className).field("data", data).save();
+          created.put(i, data);
+
+          if (previous != null) {
+            previous.delete();
+            created.remove(i - 1);
+            previous = null;
+          } else
+            previous = doc;
+        }
+        return created;
+      } finally {
+        db.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the counters while they are updated: the value of a counter is always its version and never goes back.
+   */
+  private class Reader implements Callable<Integer> {
+    private final AtomicBoolean running;
+    private final Random        random;
+
+    private Reader(final AtomicBoolean iRunning, final int iSeed) {
+      running = iRunning;
+      random = new Random(iSeed);
+    }
+
+    public Integer call() {
+      final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+      try {
+        final int[] versions = new int[counters.size()];
+        int reads = 0;
+        while (running.get() || reads == 0) {
+          final int i = random.nextInt(counters.size());
+          final ODocument counter = db.load(counters.get(i), null, true);
+          Assert.assertNotNull(counter, "Counter " + counters.get(i) + " not found");
+          Assert.assertEquals(counter.field("value"), counter.getVersion(), "Counter " + counters.get(i));
+          Assert.assertTrue(counter.getVersion() >= versions[i], "Counter " + counters.get(i) + " went back");
+          versions[i] = counter.getVersion();
+          reads++;
+        }
+        return reads;
+      } finally {
+        db.close();
+      }
+    }
+  }
+}
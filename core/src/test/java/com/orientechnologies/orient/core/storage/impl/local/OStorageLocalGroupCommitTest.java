@@ -0,0 +1,140 @@
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.tx.OTransaction;
+
+/**
+ * Group commit (tx.groupCommit = true): the old contents of the records are in the transaction log before the records are
+ * touched, so a transaction applied but not flushed with its group is rolled back at the next open.
+ */
+@Test
+public class OStorageLocalGroupCommitTest {
+  private String url;
+  private Object oldGroupCommit;
+  private ORID   updated;
+  private ORID   deleted;
+
+  @BeforeMethod
+  public void beforeMethod() {
+    oldGroupCommit = OGlobalConfiguration.TX_GROUP_COMMIT.getValue();
+    OGlobalConfiguration.TX_GROUP_COMMIT.setValue(true);
+
+    final File path = new File(System.getProperty("java.io.tmpdir"), "groupCommit");
+    url = "local:" + path.getAbsolutePath();
+
+    ODatabaseDocumentTx db = new ODatabaseDocumentTx(url);
+    if (db.exists())
+      db.open("admin", "admin").drop();
+
+    db = new ODatabaseDocumentTx(url).create();
+    try {
+      db.getMetadata().getSchema().createClass("Item");
+      updated = new ODocument("Item").field("data", "updated").save().getIdentity();
+      deleted = new ODocument("Item").field("data", "deleted").save().getIdentity();
+      new ODocument("Item").field("data", "untouched").save();
+    } finally {
+      db.close();
+    }
+  }
+
+  @AfterMethod
+  public void afterMethod() {
+    new ODatabaseDocumentTx(url).open("admin", "admin").drop();
+
+    OGlobalConfiguration.TX_GROUP_COMMIT.setValue(oldGroupCommit);
+  }
+
+  public void testCrashBeforeFlush() throws Exception {
+    final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    final OStorageLocal storage = (OStorageLocal) db.getStorage();
+
+    db.begin();
+    change(db);
+    final OTransaction tx = db.getTransaction();
+
+    // APPLY THE TRANSACTION LIKE ITS GROUP DOES, WITHOUT THE FLUSH
+    storage.callInLock(new Callable<Void>() {
+      public Void call() throws Exception {
+        storage.getTxManager().commitAllPendingRecords(tx);
+        return null;
+      }
+    }, true);
+
+    Assert.assertTrue(storage.getTxManager().getTxSegment().getFilledUpTo() > 0);
+
+    // CRASH: THE STORAGE IS CLOSED WITH THE TRANSACTION STILL IN THE LOG
+    storage.close(true);
+
+    final ODatabaseDocumentTx reopened = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      assertItems(reopened, "updated", "deleted", "untouched");
+      Assert.assertEquals(((ODocument) reopened.load(updated)).field("data"), "updated");
+      Assert.assertEquals(reopened.load(updated).getVersion(), 0);
+    } finally {
+      reopened.close();
+    }
+  }
+
+  public void testFlushedGroupSurvivesReopen() {
+    ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    final OStorageLocal storage = (OStorageLocal) db.getStorage();
+    final ORID created;
+    try {
+      db.begin();
+      created = change(db);
+      db.commit();
+
+      // THE GROUP HAS BEEN FLUSHED
+      Assert.assertEquals(storage.getTxManager().getTxSegment().getFilledUpTo(), 0);
+    } finally {
+      db.close();
+    }
+    storage.close(true);
+
+    db = new ODatabaseDocumentTx(url).open("admin", "admin");
+    try {
+      assertItems(db, "changed", "untouched", "created");
+      Assert.assertEquals(((ODocument) db.load(updated)).field("data"), "changed");
+      Assert.assertEquals(db.load(updated).getVersion(), 1);
+      Assert.assertEquals(((ODocument) db.load(created)).field("data"), "created");
+    } finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Updates, deletes and creates a record in the transaction of the database.
+   * 
+   * @return The id of the record created
+   */
+  private ORID change(final ODatabaseDocumentTx iDb) {
+    ((ODocument) iDb.load(updated)).field("data", "changed").save();
+    ((ODocument) iDb.load(deleted)).delete();
+    return new ODocument("Item").field("data", "created").save().getIdentity();
+  }
+
+  /**
+   * Checks the contents of the records of the class. A deleted record can be restored, or a record created, at another position.
+   */
+  private static void assertItems(final ODatabaseDocumentTx iDb, final String... iData) {
+    final Set<String> data = new HashSet<String>();
+    for (ODocument doc : iDb.browseClass("Item"))
+      data.add((String) doc.field("data"));
+    Assert.assertTrue(data.equals(new HashSet<String>(Arrays.asList(iData))), "Found " + data);
+    Assert.assertEquals(iDb.countClass("Item"), iData.length);
+  }
+}
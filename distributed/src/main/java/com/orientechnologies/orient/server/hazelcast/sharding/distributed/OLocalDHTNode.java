@@ -174,7 +174,7 @@ public class OLocalDHTNode implements ODHTNode {
 
   private OPhysicalPosition executeCreateRecord(String storageName, ORecordId iRecordId, byte[] iContent, int iRecordVersion,
       byte iRecordType) {
-    ODistributedThreadLocal.INSTANCE.distributedExecution = true;
+    ODistributedThreadLocal.INSTANCE.set(Boolean.TRUE);
     try {
       final ORecordInternal<?> record = Orient.instance().getRecordFactoryManager().newInstance(iRecordType);
 
@@ -192,7 +192,7 @@ public class OLocalDHTNode implements ODHTNode {
         closeDatabase(database);
       }
     } finally {
-      ODistributedThreadLocal.INSTANCE.distributedExecution = false;
+      ODistributedThreadLocal.INSTANCE.set(Boolean.FALSE);
     }
   }
 
@@ -547,11 +547,11 @@ public class OLocalDHTNode implements ODHTNode {
 
                 node.createRecord(storageName, (ORecordId) rec.getIdentity(), rec.toStream(), rec.getVersion(), rec.getRecordType());
 
-                ODistributedThreadLocal.INSTANCE.distributedExecution = true;
+                ODistributedThreadLocal.INSTANCE.set(Boolean.TRUE);
                 try {
                   rec.delete();
                 } finally {
-                  ODistributedThreadLocal.INSTANCE.distributedExecution = false;
+                  ODistributedThreadLocal.INSTANCE.set(Boolean.FALSE);
                 }
               }
             } finally {
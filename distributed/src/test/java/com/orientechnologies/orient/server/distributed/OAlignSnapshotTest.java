@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.distributed;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
+import com.orientechnologies.orient.server.task.OAlignRequestDistributedTask;
+
+/**
+ * Aligns a node that missed more operations than the snapshot threshold: it receives the records of all the clusters of the other
+ * node, in chunks of few records.
+ */
+public class OAlignSnapshotTest {
+  private static final String SOURCE      = "snapsource";
+  private static final String TARGET      = "snaptarget";
+  private static final String FAIL_SOURCE = "snapfailsource";
+  private static final String FAIL_TARGET = "snapfailtarget";
+
+  private static File         home;
+  private static OInJvmNode   source;
+  private static OInJvmNode   failSource;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    home = new File(System.getProperty("java.io.tmpdir"), "orientdb-align-snapshot-test");
+    OInJvmNode.startServer(home, SOURCE, TARGET, FAIL_SOURCE, FAIL_TARGET);
+
+    final ODocument configuration = new ODocument().field("replication-batch-size", 1).field("alignment-chunk-size", 10)
+        .field("alignment-snapshot-threshold", 1);
+
+    // THE SOURCE NODES ARE ISOLATED: THE TARGET NODES MISS ALL THEIR OPERATIONS
+    source = new OInJvmNode(SOURCE, configuration).register();
+    failSource = new OInJvmNode(FAIL_SOURCE, configuration);
+    new OInJvmNode(TARGET, configuration);
+    new OInJvmNode(FAIL_TARGET, configuration);
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    OInJvmNode.stopServer(home, SOURCE, TARGET, FAIL_SOURCE, FAIL_TARGET);
+  }
+
+  @Test
+  public void snapshotAlignsNode() throws Exception {
+    ODatabaseDocumentTx db = OInJvmNode.openDatabase(SOURCE);
+    try {
+      // SCHEMA CHANGED ONLY ON THE SOURCE NODE
+      db.getMetadata().getSchema().getClass("Item").createProperty("key", OType.STRING).createIndex(OClass.INDEX_TYPE.UNIQUE);
+    } finally {
+      db.close();
+    }
+
+    writeRecords(source, 25);
+
+    final long[] snapshotId = source.getDatabaseSynchronizer(SOURCE).getLog().getLastOperationId();
+    align(TARGET, SOURCE);
+
+    final ODatabaseDocumentTx sourceDb = OInJvmNode.openDatabase(SOURCE);
+    final ODatabaseDocumentTx targetDb = OInJvmNode.openDatabase(TARGET);
+    try {
+      Assert.assertTrue(targetDb.getMetadata().getSchema().getClass("Item").existsProperty("key"));
+      final OIndex<?> index = targetDb.getMetadata().getIndexManager().getIndex("Item.key");
+      Assert.assertNotNull(index);
+
+      int records = 0;
+      for (ODocument doc : sourceDb.browseClass("Item")) {
+        final ODocument aligned = targetDb.load(doc.getIdentity());
+        Assert.assertNotNull("Record " + doc.getIdentity() + " not aligned", aligned);
+        Assert.assertEquals(doc.field("key"), aligned.field("key"));
+        Assert.assertEquals(doc.getVersion(), aligned.getVersion());
+        Assert.assertEquals(doc.getIdentity(), index.get(doc.field("key")));
+        records++;
+      }
+      Assert.assertEquals(records, targetDb.countClass("Item"));
+    } finally {
+      sourceDb.close();
+      targetDb.close();
+    }
+
+    final long[] journaled = source.getDatabaseSynchronizer(TARGET).getLog().getLastOperationId();
+    Assert.assertEquals(snapshotId[0], journaled[0]);
+    Assert.assertEquals(snapshotId[1], journaled[1]);
+  }
+
+  @Test
+  public void snapshotWithMissingClusterIsRefused() throws Exception {
+    ODatabaseDocumentTx db = OInJvmNode.openDatabase(FAIL_SOURCE);
+    try {
+      // CLUSTER CREATED ONLY ON THE SOURCE NODE
+      db.getMetadata().getSchema().createClass("Extra");
+    } finally {
+      db.close();
+    }
+
+    writeRecords(failSource, 5);
+
+    db = OInJvmNode.openDatabase(FAIL_TARGET);
+    try {
+      for (int i = 0; i < 3; ++i)
+        new ODocument("Item").field("key", "target." + i).save();
+    } finally {
+      db.close();
+    }
+
+    final OStorageSynchronizer targetSynchronizer = failSource.getDatabaseSynchronizer(FAIL_TARGET);
+    final long[] lastOperationId = targetSynchronizer.getLog().getLastOperationId();
+
+    try {
+      align(FAIL_TARGET, FAIL_SOURCE);
+      Assert.fail("The snapshot of a cluster missing on the node was applied");
+    } catch (ODistributedException e) {
+      // EXPECTED
+    }
+
+    Assert.assertEquals(-1, targetSynchronizer.getSnapshotChunks());
+    final long[] journaled = targetSynchronizer.getLog().getLastOperationId();
+    Assert.assertEquals(lastOperationId[0], journaled[0]);
+    Assert.assertEquals(lastOperationId[1], journaled[1]);
+
+    db = OInJvmNode.openDatabase(FAIL_TARGET);
+    try {
+      // NO RECORD CHANGED
+      Assert.assertFalse(db.getMetadata().getSchema().existsClass("Extra"));
+      final Set<String> keys = new HashSet<String>();
+      for (ODocument doc : db.browseClass("Item"))
+        keys.add((String) doc.field("key"));
+      Assert.assertEquals(new HashSet<String>(Arrays.asList("target.0", "target.1", "target.2")), keys);
+    } finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Creates records on the node through the distributed storage, so they are journaled, then updates and deletes some of them.
+   */
+  private static void writeRecords(final OInJvmNode iNode, final int iTransactions) {
+    final ODatabaseDocumentTx db = OInJvmNode.openDatabase(iNode.getLocalNodeId());
+    try {
+      db.replaceStorage(iNode.getDistributedStorage());
+
+      for (int i = 0; i < iTransactions; ++i) {
+        db.begin();
+        for (int r = 0; r < 4; ++r)
+          new ODocument("Item").field("key", i + "." + r).save();
+        if (db.getMetadata().getSchema().existsClass("Extra"))
+          new ODocument("Extra").field("key", i).save();
+        db.commit();
+      }
+
+      int i = 0;
+      for (ODocument doc : db.browseClass("Item")) {
+        if (i % 5 == 0) {
+          // LEAVE HOLES IN THE CLUSTER
+          db.begin();
+          doc.delete();
+          db.commit();
+        } else if (i % 3 == 0) {
+          db.begin();
+          doc.field("updated", true).save();
+          db.commit();
+        }
+        i++;
+      }
+    } finally {
+      db.close();
+    }
+  }
+
+  /**
+   * Executes on the source node the alignment requested by the target node, which has none of the operations of the source.
+   */
+  private static void align(final String iTarget, final String iSource) throws Exception {
+    final long[] lastOperationId = source.getDatabaseSynchronizer(iTarget).getLog().getLastOperationId();
+    final OAlignRequestDistributedTask request = new OAlignRequestDistributedTask(iTarget, iSource, EXECUTION_MODE.SYNCHRONOUS,
+        lastOperationId[0], lastOperationId[1]);
+    Assert.assertTrue(request.call() > 0);
+  }
+}
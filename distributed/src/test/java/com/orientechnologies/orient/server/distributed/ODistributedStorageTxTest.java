@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.distributed;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.server.OServerMain;
+
+/**
+ * Replicates the transactions committed concurrently on a node to another one. The two nodes run in the same JVM: they are two
+ * databases of the same server, and the operations are sent from one to the other serialized as through the network.
+ */
+public class ODistributedStorageTxTest {
+  private static final String NODE1        = "dtxnode1";
+  private static final String NODE2        = "dtxnode2";
+  private static final int    THREADS      = 8;
+  private static final int    TRANSACTIONS = 50;
+  private static final int    RECORDS      = 3;
+
+  private static File         home;
+  private static OInJvmNode   node1;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    home = new File(System.getProperty("java.io.tmpdir"), "orientdb-distributed-tx-test");
+    OInJvmNode.startServer(home, NODE1, NODE2);
+
+    final ODocument configuration = new ODocument().field("replication-tx-mode", "synchronous")
+        .field("replication-batch-size", 1);
+    node1 = new OInJvmNode(NODE1, configuration).register().connect(NODE2);
+    new OInJvmNode(NODE2, configuration).connect(NODE1);
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    OInJvmNode.stopServer(home, NODE1, NODE2);
+  }
+
+  @Test
+  public void concurrentCommitsAreReplicated() throws Exception {
+    // ONE DISTRIBUTED STORAGE SHARED BY ALL THE CONNECTIONS
+    final ODistributedStorage storage = node1.getDistributedStorage();
+    final String url = OServerMain.server().getStorageURL(NODE1);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < THREADS; ++t) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            final ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open("admin", "admin");
+            try {
+              db.replaceStorage(storage);
+              start.await();
+
+              for (int i = 0; i < TRANSACTIONS; ++i) {
+                db.begin();
+                for (int r = 0; r < RECORDS; ++r)
+                  new ODocument("Item").field("key", thread + "." + i + "." + r).save();
+                db.commit();
+              }
+            } finally {
+              db.close();
+            }
+            return null;
+          }
+        }));
+      }
+
+      start.countDown();
+      for (Future<Void> future : futures)
+        future.get();
+
+    } finally {
+      executor.shutdown();
+    }
+
+    final Set<String> keys1 = readKeys(NODE1);
+    final Set<String> keys2 = readKeys(NODE2);
+    Assert.assertEquals(THREADS * TRANSACTIONS * RECORDS, keys1.size());
+    Assert.assertEquals("Records replicated on " + NODE2, keys1.size(), keys2.size());
+    Assert.assertEquals(keys1, keys2);
+  }
+
+  private static Set<String> readKeys(final String iNode) {
+    final Set<String> keys = new HashSet<String>();
+    final ODatabaseDocumentTx db = OInJvmNode.openDatabase(iNode);
+    try {
+      for (ODocument doc : db.browseClass("Item"))
+        Assert.assertTrue("Duplicated record " + doc.field("key") + " on " + iNode, keys.add((String) doc.field("key")));
+    } finally {
+      db.close();
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.distributed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.command.OCommandRequest;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.OStorageEmbedded;
+import com.orientechnologies.orient.server.OServerMain;
+import com.orientechnologies.orient.server.distributed.conflict.OReplicationConflictResolver;
+import com.orientechnologies.orient.server.task.OAbstractDistributedTask;
+
+/**
+ * Node of a cluster run in the same JVM by the tests: the nodes are the databases of the same server and the id of a node is the
+ * name of its database. The operations sent to another node are serialized and executed in a thread of their own, as by the
+ * executor of the other server.
+ */
+public class OInJvmNode implements ODistributedServerManager {
+  private static final Map<String, OStorageSynchronizer> synchronizers = new ConcurrentHashMap<String, OStorageSynchronizer>();
+  private static final ExecutorService                   executor      = Executors.newCachedThreadPool();
+
+  private final String                                   localNodeId;
+  private final ODocument                                configuration;
+  private final AtomicLong                               serial        = new AtomicLong();
+  private final Lock                                     lock          = new ReentrantLock();
+  private volatile Set<String>                           remoteNodeIds = Collections.emptySet();
+
+  /**
+   * Creates the node of a database and its synchronizer.
+   *
+   * @param iConfiguration
+   *          Distributed configuration of the database
+   */
+  public OInJvmNode(final String iDatabaseName, final ODocument iConfiguration) throws IOException {
+    localNodeId = iDatabaseName;
+    configuration = iConfiguration;
+    synchronizers.put(iDatabaseName, new OStorageSynchronizer(this, iDatabaseName));
+  }
+
+  /**
+   * Starts the server without network with a local database for every node, each one with the class "Item".
+   */
+  public static void startServer(final File iHome, final String... iDatabases) throws Exception {
+    delete(iHome);
+    System.setProperty(Orient.ORIENTDB_HOME, iHome.getAbsolutePath());
+    synchronizers.clear();
+
+    final StringBuilder config = new StringBuilder("<orient-server><storages>");
+    for (String database : iDatabases)
+      config.append("<storage name=\"" + database + "\" path=\"local:"
+          + new File(iHome, "databases/" + database).getAbsolutePath()
+          + "\" userName=\"admin\" userPassword=\"admin\" loaded-at-startup=\"true\" />");
+    config.append("</storages><users>");
+    config.append("<user name=\"root\" password=\"root\" resources=\"*\" />");
+    config.append("<user name=\"replicator\" password=\"replicator\" resources=\"database.passthrough\" />");
+    config.append("</users></orient-server>");
+
+    OServerMain.create().startup(config.toString());
+
+    for (String database : iDatabases) {
+      final ODatabaseDocumentTx db = openDatabase(database);
+      try {
+        db.getMetadata().getSchema().createClass("Item");
+      } finally {
+        db.close();
+      }
+    }
+  }
+
+  /**
+   * Drops the databases, shuts down the server and deletes its directory.
+   */
+  public static void stopServer(final File iHome, final String... iDatabases) {
+    for (String database : iDatabases)
+      openDatabase(database).drop();
+    OServerMain.server().shutdown();
+    delete(iHome);
+  }
+
+  public static ODatabaseDocumentTx openDatabase(final String iDatabase) {
+    return new ODatabaseDocumentTx(OServerMain.server().getStorageURL(iDatabase)).open("admin", "admin");
+  }
+
+  /**
+   * Sets the node as the one the tasks executed by the server work with.
+   */
+  public OInJvmNode register() {
+    OServerMain.server().setVariable("ODistributedAbstractPlugin", this);
+    return this;
+  }
+
+  /**
+   * Sets the nodes the operations of this node are replicated to, none to isolate it.
+   */
+  public OInJvmNode connect(final String... iNodeIds) {
+    remoteNodeIds = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(iNodeIds)));
+    return this;
+  }
+
+  /**
+   * Returns the storage of the database of the node that journals and replicates the operations.
+   */
+  public ODistributedStorage getDistributedStorage() {
+    return new ODistributedStorage(this, synchronizers.get(localNodeId), (OStorageEmbedded) Orient.instance().getStorage(
+        localNodeId));
+  }
+
+  public String getStatus() {
+    return "online";
+  }
+
+  public boolean checkStatus(final String iStatus) {
+    return "online".equals(iStatus);
+  }
+
+  public void setStatus(final String iStatus) {
+  }
+
+  public boolean isOfflineNode(final String iNodeId) {
+    return false;
+  }
+
+  public boolean isLocalNodeMaster(final Object iKey) {
+    return true;
+  }
+
+  public String getMasterNode(final String iDatabaseName, final String iClusterName, final Object iKey) {
+    return localNodeId;
+  }
+
+  public Collection<String> getSynchronousReplicaNodes(final String iDatabaseName, final String iClusterName,
+      final Object iKey) {
+    return getRemoteNodeIds();
+  }
+
+  public Collection<String> getAsynchronousReplicaNodes(final String iDatabaseName, final String iClusterName,
+      final Object iKey) {
+    return Collections.emptySet();
+  }
+
+  public Object routeOperation2Node(final String iClusterName, final Object iKey, final OAbstractDistributedTask<?> iTask)
+      throws ExecutionException {
+    // EVERY NODE IS THE MASTER OF ITS RECORDS
+    try {
+      return iTask.call();
+    } catch (Exception e) {
+      throw new ExecutionException(e);
+    }
+  }
+
+  public Object sendOperation2Node(final String iNodeId, final OAbstractDistributedTask<?> iTask) throws ODistributedException {
+    return sendOperation2Nodes(Collections.singleton(iNodeId), iTask).get(iNodeId);
+  }
+
+  public Map<String, Object> sendOperation2Nodes(final Set<String> iNodeIds, final OAbstractDistributedTask<?> iTask)
+      throws ODistributedException {
+    final Map<String, Object> results = new HashMap<String, Object>();
+    for (String nodeId : iNodeIds)
+      try {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(iTask);
+        out.close();
+
+        final OAbstractDistributedTask<?> task = (OAbstractDistributedTask<?>) new ObjectInputStream(new ByteArrayInputStream(
+            buffer.toByteArray())).readObject();
+        task.setDatabaseName(nodeId);
+
+        results.put(nodeId, executor.submit(task).get());
+      } catch (Exception e) {
+        throw new ODistributedException("Error on executing " + iTask + " on node " + nodeId, e);
+      }
+    return results;
+  }
+
+  public String getLocalNodeId() {
+    return localNodeId;
+  }
+
+  public Set<String> getRemoteNodeIds() {
+    return remoteNodeIds;
+  }
+
+  public Set<String> getRemoteNodeIdsBut(final String iNodeId) {
+    final Set<String> nodeIds = new HashSet<String>(remoteNodeIds);
+    nodeIds.remove(iNodeId);
+    return nodeIds;
+  }
+
+  public ODocument getDatabaseStatus(final String iDatabaseName) {
+    return null;
+  }
+
+  public ODocument getDatabaseConfiguration(final String iDatabaseName) {
+    return configuration;
+  }
+
+  public ODocument getClusterConfiguration() {
+    return null;
+  }
+
+  public ODocument getNodeConfiguration(final String iNode) {
+    return null;
+  }
+
+  public ODocument getLocalNodeConfiguration() {
+    return null;
+  }
+
+  public long getTimeOffset() {
+    return 0;
+  }
+
+  public long getRunId() {
+    return 1;
+  }
+
+  public long incrementDistributedSerial(final String iDatabaseName) {
+    return serial.incrementAndGet();
+  }
+
+  public OStorageSynchronizer getDatabaseSynchronizer(final String iDatabaseName) {
+    return synchronizers.get(iDatabaseName);
+  }
+
+  public void postponeAlignment(final String iNode, final String iDatabaseName) {
+  }
+
+  public void endAlignment(final String iNodeSource, final String iDatabaseName) {
+  }
+
+  public Lock getLock(final String iLockName) {
+    return lock;
+  }
+
+  public Class<? extends OReplicationConflictResolver> getConfictResolverClass() {
+    return IgnoreConflictResolver.class;
+  }
+
+  private static void delete(final File iFile) {
+    if (iFile.isDirectory())
+      for (File f : iFile.listFiles())
+        delete(f);
+    iFile.delete();
+  }
+
+  /**
+   * Conflict resolver that ignores the conflicts: the records created concurrently can take different positions on the nodes.
+   */
+  public static class IgnoreConflictResolver implements OReplicationConflictResolver {
+    public void startup(final ODistributedServerManager iDManager, final String iStorageName) {
+    }
+
+    public void shutdown() {
+    }
+
+    public ODocument getAllConflicts() {
+      return null;
+    }
+
+    public void handleUpdateConflict(final String iRemoteNodeId, final ORecordId iCurrentRID, final int iCurrentVersion,
+        final int iOtherVersion) {
+    }
+
+    public void handleCreateConflict(final String iRemoteNodeId, final ORecordId iCurrentRID, final ORecordId iOtherRID) {
+    }
+
+    public void handleDeleteConflict(final String iRemoteNodeId, final ORecordId iCurrentRID) {
+    }
+
+    public void handleCommandConflict(final String iRemoteNodeId, final OCommandRequest iCommand, final Object iLocalResult,
+        final Object iRemoteResult) {
+    }
+
+    public boolean existConflictsForRecord(final ORecordId iRID) {
+      return false;
+    }
+  }
+}
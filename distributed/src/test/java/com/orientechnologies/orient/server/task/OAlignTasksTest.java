@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OStorageConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.server.OServerMain;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
+
+/**
+ * Serialization of the chunks sent by the alignment and detection of the operations a node already has.
+ */
+public class OAlignTasksTest {
+  private static final long[]        OPERATION_ID = { 3, 1000 };
+  private static File                home;
+  private static ODatabaseDocumentTx db;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    home = new File(System.getProperty("java.io.tmpdir"), "orientdb-align-tasks-test");
+    System.setProperty(Orient.ORIENTDB_HOME, home.getAbsolutePath());
+
+    // THE TASKS READ THE REPLICATOR USER OF THE SERVER
+    OServerMain.create().startup(
+        "<orient-server><users><user name=\"replicator\" password=\"replicator\" resources=\"database.passthrough\" />"
+            + "</users></orient-server>");
+
+    db = new ODatabaseDocumentTx("memory:alignTasksTest").create();
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    db.drop();
+    OServerMain.server().shutdown();
+    home.delete();
+  }
+
+  @Test
+  public void compressedBlockRoundTrip() throws Exception {
+    final byte[] random = new byte[100000];
+    new Random(7).nextBytes(random);
+    final byte[] repeated = new byte[100000];
+    Arrays.fill(repeated, (byte) 'a');
+
+    for (byte[] content : new byte[][] { new byte[0], "x".getBytes(), random, repeated }) {
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      final ObjectOutputStream out = new ObjectOutputStream(buffer);
+      OAbstractDistributedTask.writeCompressed(out, content);
+      out.close();
+
+      final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+      Assert.assertArrayEquals(content, OAbstractDistributedTask.readCompressed(in));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedCompressedBlock() throws Exception {
+    final byte[] content = new byte[1000];
+    new Random(7).nextBytes(content);
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(buffer);
+    out.writeInt(content.length * 2);
+    out.writeInt(content.length);
+    out.write(content);
+    out.close();
+
+    OAbstractDistributedTask.readCompressed(new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+  }
+
+  @Test
+  public void operationsChunkRoundTrip() throws Exception {
+    final OAlignOperationsDistributedTask chunk = sent(new OAlignOperationsDistributedTask());
+    for (int i = 0; i < 100; ++i) {
+      final ORecordId rid = new ORecordId(9, i);
+      chunk.addTask(sent(new OCreateRecordDistributedTask(OPERATION_ID[0], i, rid, ("record " + i).getBytes(), 0, (byte) 'd')));
+      chunk.addTask(sent(new OUpdateRecordDistributedTask(OPERATION_ID[0], i, rid, ("updated " + i).getBytes(), 0, (byte) 'd')));
+      if (i % 2 == 0)
+        chunk.addTask(sent(new ODeleteRecordDistributedTask(OPERATION_ID[0], i, rid, 1)));
+    }
+
+    final OAlignOperationsDistributedTask received = roundTrip(chunk);
+    Assert.assertEquals(chunk.getTasks(), received.getTasks());
+    for (int i = 0; i < chunk.getTasks(); ++i) {
+      final OAbstractRecordDistributedTask<?> sent = (OAbstractRecordDistributedTask<?>) chunk.getTask(i);
+      final OAbstractRecordDistributedTask<?> read = (OAbstractRecordDistributedTask<?>) received.getTask(i);
+      Assert.assertEquals(sent.getClass(), read.getClass());
+      Assert.assertEquals(sent.getRid(), read.getRid());
+      Assert.assertEquals(sent.getVersion(), read.getVersion());
+    }
+  }
+
+  @Test
+  public void snapshotChunkRoundTrip() throws Exception {
+    final OAlignSnapshotDistributedTask chunk = new OAlignSnapshotDistributedTask("node1", "db", OPERATION_ID, 0, "person", 9,
+        2000, 10000, 3000);
+    chunk.setSnapshotClusters(new String[] { "internal", "index", "manindex", "person" }, new int[] { 0, 1, 2, 9 });
+    for (int i = 0; i < 1000; ++i)
+      chunk.addRecord(i % 10 == 0 ? null : new ORawBuffer(("record " + i).getBytes(), i, (byte) 'd'));
+    chunk.setHoles(new long[] { 2000, 2010, 2990 });
+
+    final OAlignSnapshotDistributedTask received = roundTrip(chunk);
+    Assert.assertEquals(chunk.getRecords(), received.getRecords());
+    Assert.assertEquals(chunk.toString(), received.toString());
+  }
+
+  @Test
+  public void snapshotEndRoundTrip() throws Exception {
+    final OStorageConfiguration configuration = new OStorageConfiguration(null);
+    configuration.schemaRecordId = "#0:1";
+    configuration.indexMgrRecordId = null;
+
+    final OAlignSnapshotDistributedTask end = new OAlignSnapshotDistributedTask("node1", "db", OPERATION_ID, 12, configuration);
+    final OAlignSnapshotDistributedTask received = roundTrip(end);
+    Assert.assertEquals(0, received.getRecords());
+    Assert.assertEquals(OPERATION_ID[0], received.getRunId());
+    Assert.assertEquals(OPERATION_ID[1], received.getOperationSerial());
+  }
+
+  @Test
+  public void alreadyAppliedOperations() {
+    final ODocument doc = new ODocument().field("name", "Jay");
+    doc.save();
+    doc.field("name", "Jack").save();
+    final ORecordId rid = (ORecordId) doc.getIdentity();
+    final int version = doc.getVersion();
+
+    final ODocument deleted = new ODocument().field("name", "Joe");
+    deleted.save();
+    final ORecordId deletedRid = (ORecordId) deleted.getIdentity().copy();
+    deleted.delete();
+
+    final ORecordId missingRid = new ORecordId(rid.clusterId, deletedRid.clusterPosition + 100);
+
+    Assert.assertTrue(isAlreadyApplied(new OCreateRecordDistributedTask(1, 1, rid, new byte[0], 0, (byte) 'd')));
+    Assert.assertFalse(isAlreadyApplied(new OCreateRecordDistributedTask(1, 1, missingRid, new byte[0], 0, (byte) 'd')));
+
+    Assert.assertTrue(isAlreadyApplied(new OUpdateRecordDistributedTask(1, 1, rid, new byte[0], version - 1, (byte) 'd')));
+    Assert.assertFalse(isAlreadyApplied(new OUpdateRecordDistributedTask(1, 1, rid, new byte[0], version, (byte) 'd')));
+    Assert.assertFalse(isAlreadyApplied(new OUpdateRecordDistributedTask(1, 1, deletedRid, new byte[0], 0, (byte) 'd')));
+
+    Assert.assertTrue(isAlreadyApplied(new ODeleteRecordDistributedTask(1, 1, deletedRid, 0)));
+    Assert.assertFalse(isAlreadyApplied(new ODeleteRecordDistributedTask(1, 1, rid, version)));
+  }
+
+  private static boolean isAlreadyApplied(final OAbstractRecordDistributedTask<?> iOperation) {
+    return OAlignOperationsDistributedTask.isAlreadyApplied(db.getStorage(), iOperation);
+  }
+
+  /**
+   * Sets the task as the node that aligns another one does before sending it.
+   */
+  private static <T extends OAbstractDistributedTask<?>> T sent(final T iTask) {
+    iTask.setNodeSource("node1");
+    iTask.setDatabaseName("db");
+    iTask.setMode(EXECUTION_MODE.SYNCHRONOUS);
+    return iTask;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends OAbstractDistributedTask<?>> T roundTrip(final T iTask) throws Exception {
+    final byte[] sent = serialize(iTask);
+    final T received = (T) new ObjectInputStream(new ByteArrayInputStream(sent)).readObject();
+
+    // THE TASK READ IS WRITTEN AGAIN WITH THE SAME BYTES: NO FIELD IS LOST
+    Assert.assertArrayEquals(sent, serialize(received));
+    return received;
+  }
+
+  private static byte[] serialize(final Object iTask) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(buffer);
+    out.writeObject(iTask);
+    out.close();
+    return buffer.toByteArray();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.enterprise.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking input stream on top of a non-blocking socket channel. The channel stays in non-blocking mode so it can be registered
+ * with a selector while idle; when there is no data to read the calling thread waits on the selector of the stream up to the
+ * timeout. The selector is closed with the stream.
+ * 
+ * @author Luca Garulli (l.garulli--at--orientechnologies.com)
+ */
+public class OSocketChannelInputStream extends InputStream {
+  private final SocketChannel          channel;
+  private final OSocketChannelSelector selector;
+  private final byte[]                 single = new byte[1];
+
+  /**
+   * @param iChannel
+   *          Channel in non-blocking mode
+   * @param iTimeout
+   *          Timeout in ms to wait for the data, 0 means forever
+   */
+  public OSocketChannelInputStream(final SocketChannel iChannel, final int iTimeout) {
+    channel = iChannel;
+    selector = new OSocketChannelSelector(iChannel, iTimeout);
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int read = read(single, 0, 1);
+    return read == -1 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0)
+      return 0;
+
+    final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    while (true) {
+      final int read = channel.read(buffer);
+      if (read != 0)
+        return read;
+
+      selector.waitFor(SelectionKey.OP_READ);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      channel.close();
+    } finally {
+      selector.close();
+    }
+  }
+
+  OSocketChannelSelector getSelector() {
+    return selector;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.enterprise.channel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking output stream on top of a non-blocking socket channel. When the socket buffer is full the calling thread waits on the
+ * selector of the stream up to the timeout. Any thread can write, also while the channel is registered with the selector of the
+ * listener.
+ * 
+ * @author Luca Garulli (l.garulli--at--orientechnologies.com)
+ */
+public class OSocketChannelOutputStream extends OutputStream {
+  private final SocketChannel          channel;
+  private final OSocketChannelSelector selector;
+
+  /**
+   * @param iChannel
+   *          Channel in non-blocking mode
+   * @param iTimeout
+   *          Timeout in ms to wait for the socket buffer to be free, 0 means forever
+   */
+  public OSocketChannelOutputStream(final SocketChannel iChannel, final int iTimeout) {
+    channel = iChannel;
+    selector = new OSocketChannelSelector(iChannel, iTimeout);
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    while (buffer.hasRemaining())
+      if (channel.write(buffer) == 0)
+        selector.waitFor(SelectionKey.OP_WRITE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      channel.close();
+    } finally {
+      selector.close();
+    }
+  }
+
+  OSocketChannelSelector getSelector() {
+    return selector;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.enterprise.channel;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Selector owned by one stream of a non-blocking socket channel, used to wait until the channel is ready for the operation of the
+ * stream. It is opened at the first wait and closed together with the stream, so no selector outlives the connection.
+ * 
+ * @author Luca Garulli (l.garulli--at--orientechnologies.com)
+ */
+class OSocketChannelSelector {
+  private final SocketChannel channel;
+  private final int           timeout;
+  private Selector            selector;
+  private boolean             closed;
+
+  /**
+   * @param iChannel
+   *          Channel in non-blocking mode
+   * @param iTimeout
+   *          Timeout in ms to wait for the channel, 0 means forever
+   */
+  OSocketChannelSelector(final SocketChannel iChannel, final int iTimeout) {
+    channel = iChannel;
+    timeout = iTimeout;
+  }
+
+  /**
+   * Waits until the channel is ready for the operation.
+   * 
+   * @throws SocketTimeoutException
+   *           if the timeout is reached
+   * @throws AsynchronousCloseException
+   *           if the stream is closed by another thread while waiting
+   */
+  void waitFor(final int iOperation) throws IOException {
+    final Selector sel = open();
+    try {
+      SelectionKey key = channel.keyFor(sel);
+      if (key == null)
+        key = channel.register(sel, iOperation);
+      else
+        key.interestOps(iOperation);
+
+      try {
+        if (sel.select(timeout) == 0 && timeout > 0 && sel.isOpen())
+          throw new SocketTimeoutException("Timeout of " + timeout + "ms reached waiting for data on channel "
+              + channel.socket().getRemoteSocketAddress());
+      } finally {
+        sel.selectedKeys().clear();
+        if (key.isValid())
+          key.interestOps(0);
+      }
+    } catch (ClosedSelectorException e) {
+      throw new AsynchronousCloseException();
+    }
+  }
+
+  /**
+   * Closes the selector, waking up the thread waiting on it if any.
+   */
+  synchronized void close() throws IOException {
+    closed = true;
+    if (selector != null)
+      selector.close();
+  }
+
+  synchronized boolean isOpen() {
+    return selector != null && selector.isOpen();
+  }
+
+  private synchronized Selector open() throws IOException {
+    if (closed)
+      throw new ClosedChannelException();
+    if (selector == null)
+      selector = Selector.open();
+    return selector;
+  }
+}
@@ -17,7 +17,11 @@ package com.orientechnologies.orient.enterprise.channel.binary;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -27,19 +31,25 @@ import com.orientechnologies.orient.core.config.OContextConfiguration;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 
 /**
- * Implementation that supports multiple client requests.
+ * Implementation that supports multiple client requests. Requests of several threads can be in flight at the same time: the thread
+ * that reads a response header belonging to another requester wakes up only that requester. Requests of open sessions are tagged
+ * with a request id (see {@link #nextRequestId()}), so the same session can have more requests in flight and the responses can come
+ * back in any order.
  * 
  * @author Luca Garulli (l.garulli--at--orientechnologies.com)
  * 
  */
 public class OChannelBinaryAsynch extends OChannelBinary {
-  private final ReentrantLock lockRead      = new ReentrantLock(true);
-  private final Condition     readCondition = lockRead.newCondition();
-  private final ReentrantLock lockWrite     = new ReentrantLock();
-  private boolean             channelRead   = false;
-  private byte                currentStatus;
-  private int                 currentSessionId;
-  private final int           maxUnreadResponses;
+  private final ReentrantLock         lockRead      = new ReentrantLock(true);
+  private final Map<Long, Condition>  waiters       = new HashMap<Long, Condition>();
+  private final ReentrantLock         lockWrite     = new ReentrantLock();
+  private final AtomicInteger         requestSerial = new AtomicInteger();
+  private boolean                     channelRead   = false;
+  private byte                        currentStatus;
+  private int                         currentSessionId;
+  private int                         currentRequestId;
+  private volatile int                waiting;
+  private final int                   maxUnreadResponses;
 
   public OChannelBinaryAsynch(final Socket iSocket, final OContextConfiguration iConfig) throws IOException {
     super(iSocket, iConfig);
@@ -50,19 +60,55 @@ public class OChannelBinaryAsynch extends OChannelBinary {
     lockWrite.lock();
   }
 
+  /**
+   * Returns a new id to tag the request being written. Must be called while holding the write lock.
+   */
+  public int nextRequestId() {
+    return requestSerial.incrementAndGet() & Integer.MAX_VALUE;
+  }
+
+  /**
+   * Tells if the requests and responses of the session carry the request id. Depends by the protocol version of the server.
+   */
+  public boolean isRequestTagged(final int iSessionId) {
+    return false;
+  }
+
+  /**
+   * Returns the number of threads waiting for a response on this channel.
+   */
+  public int getWaitingResponses() {
+    return waiting + lockRead.getQueueLength();
+  }
+
   public void endRequest() throws IOException {
     flush();
     lockWrite.unlock();
   }
 
   public void beginResponse(final int iRequesterId) throws IOException {
-    beginResponse(iRequesterId, timeout);
+    beginResponse(iRequesterId, -1, timeout);
   }
 
   public void beginResponse(final int iRequesterId, final long iTimeout) throws IOException {
+    beginResponse(iRequesterId, -1, iTimeout);
+  }
+
+  /**
+   * Waits for the response of a request.
+   * 
+   * @param iRequesterId
+   *          Session id of the requester
+   * @param iRequestId
+   *          Id of the request if tagged, otherwise -1 to accept the first response of the session
+   * @param iTimeout
+   *          Timeout in ms, 0 means no timeout
+   */
+  public void beginResponse(final int iRequesterId, final int iRequestId, final long iTimeout) throws IOException {
     try {
       int unreadResponse = 0;
       final long startClock = iTimeout > 0 ? System.currentTimeMillis() : 0;
+      final Long waiterKey = waiterKey(iRequesterId, iRequestId);
 
       // WAIT FOR THE RESPONSE
       do {
@@ -77,21 +123,22 @@ public class OChannelBinaryAsynch extends OChannelBinary {
           try {
             currentStatus = readByte();
             currentSessionId = readInt();
+            currentRequestId = isRequestTagged(currentSessionId) ? readInt() : -1;
 
             if (debug)
-              OLogManager.instance().debug(this, "%s - Read response: %d-%d", socket.getLocalAddress(), (int) currentStatus,
-                  currentSessionId);
+              OLogManager.instance().debug(this, "%s - Read response: %d-%d-%d", socket.getLocalAddress(), (int) currentStatus,
+                  currentSessionId, currentRequestId);
 
           } catch (IOException e) {
             // UNLOCK THE RESOURCE AND PROPAGATES THE EXCEPTION
-            readCondition.signalAll();
+            signalAllWaiters();
             lockRead.unlock();
             channelRead = false;
             throw e;
           }
         }
 
-        if (currentSessionId == iRequesterId)
+        if (currentSessionId == iRequesterId && (iRequestId < 0 || currentRequestId == iRequestId))
           // IT'S FOR ME
           break;
 
@@ -112,16 +159,32 @@ public class OChannelBinaryAsynch extends OChannelBinary {
             throw new IOException("Timeout on reading response");
           }
 
-          // WAIT 1 SECOND AND RETRY
+          // WAKE UP THE OWNER OF THE RESPONSE IF IT'S ALREADY WAITING, OTHERWISE IT WILL FIND IT WHEN ACQUIRES THE LOCK
+          final Condition owner = waiters.get(waiterKey(currentSessionId, currentRequestId));
+          if (owner != null)
+            owner.signal();
 
-          readCondition.signalAll();
+          Condition condition = waiters.get(waiterKey);
+          if (condition == null) {
+            condition = lockRead.newCondition();
+            waiters.put(waiterKey, condition);
+          }
 
           if (debug)
             OLogManager.instance().debug(this, "Session %d is going to sleep...", iRequesterId);
 
           final long start = System.currentTimeMillis();
 
-          readCondition.await(1, TimeUnit.SECONDS);
+          // WAIT AT MOST 1 SECOND AND RETRY
+          waiting++;
+          try {
+            condition.await(1, TimeUnit.SECONDS);
+          } finally {
+            waiting--;
+            // ANOTHER THREAD OF THE SAME UNTAGGED SESSION COULD BE STILL WAITING ON IT
+            if (!lockRead.hasWaiters(condition))
+              waiters.remove(waiterKey);
+          }
           final long now = System.currentTimeMillis();
 
           if (debug)
@@ -153,10 +216,12 @@ public class OChannelBinaryAsynch extends OChannelBinary {
   public void endResponse() {
     channelRead = false;
 
-    // WAKE UP ALL THE WAITING THREADS
+    // WAKE UP ONE OF THE WAITING THREADS TO READ THE NEXT RESPONSE
 
     try {
-      readCondition.signalAll();
+      final Iterator<Condition> it = waiters.values().iterator();
+      if (it.hasNext())
+        it.next().signal();
       lockRead.unlock();
     } catch (IllegalMonitorStateException e) {
       // IGNORE IT
@@ -171,11 +236,18 @@ public class OChannelBinaryAsynch extends OChannelBinary {
     return lockWrite;
   }
 
+  /**
+   * Returns the maximum time in ms to wait for the channel locks.
+   */
+  public int getLockTimeout() {
+    return timeout;
+  }
+
   @Override
   public void close() {
     if (lockRead.tryLock())
       try {
-        readCondition.signalAll();
+        signalAllWaiters();
       } finally {
         lockRead.unlock();
       }
@@ -192,4 +264,13 @@ public class OChannelBinaryAsynch extends OChannelBinary {
       lockRead.unlock();
     }
   }
+
+  private void signalAllWaiters() {
+    for (Condition c : waiters.values())
+      c.signalAll();
+  }
+
+  private static Long waiterKey(final int iSessionId, final int iRequestId) {
+    return Long.valueOf(((long) iSessionId << 32) | (iRequestId & 0xFFFFFFFFL));
+  }
 }
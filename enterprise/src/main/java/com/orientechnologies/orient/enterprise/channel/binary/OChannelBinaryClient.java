@@ -99,4 +99,9 @@ public class OChannelBinaryClient extends OChannelBinaryAsynch {
   public short getSrvProtocolVersion() {
     return srvProtocolVersion;
   }
+
+  @Override
+  public boolean isRequestTagged(final int iSessionId) {
+    return iSessionId > 0 && srvProtocolVersion >= 13;
+  }
 }
\ No newline at end of file
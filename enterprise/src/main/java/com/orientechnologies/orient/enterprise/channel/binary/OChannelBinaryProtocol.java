@@ -58,9 +58,12 @@ public class OChannelBinaryProtocol {
   public static final byte  REQUEST_RECORD_DELETE                  = 33;
   public static final byte  REQUEST_RECORD_COPY                    = 34;
   public static final byte  REQUEST_RECORD_CHANGE_IDENTITY         = 35; // since 1.2.0
+  public static final byte  REQUEST_RECORD_LOAD_MULTI              = 36; // since protocol 13
 
   public static final byte  REQUEST_COUNT                          = 40; // DEPRECATED: USE REQUEST_DATACLUSTER_COUNT
   public static final byte  REQUEST_COMMAND                        = 41;
+  public static final byte  REQUEST_CURSOR_FETCH                   = 42; // since protocol 13
+  public static final byte  REQUEST_CURSOR_CLOSE                   = 43; // since protocol 13
 
   public static final byte  REQUEST_TX_COMMIT                      = 60;
 
@@ -91,7 +94,9 @@ public class OChannelBinaryProtocol {
   // CONSTANTS
   public static final short RECORD_NULL                            = -2;
   public static final short RECORD_RID                             = -3;
-  public static final int   CURRENT_PROTOCOL_VERSION               = 12; // SENT AS SHORT AS FIRST PACKET AFTER SOCKET CONNECTION
+  public static final int   CURRENT_PROTOCOL_VERSION               = 13; // SENT AS SHORT AS FIRST PACKET AFTER SOCKET CONNECTION
+
+  // SINCE 13 THE REQUESTS OF OPEN SESSIONS (ID > 0) CARRY A REQUEST ID AFTER THE SESSION ID, ECHOED BY THE RESPONSE HEADER
 
   public static OIdentifiable readIdentifiable(final OChannelBinaryClient network) throws IOException {
     final int classId = network.readShort();
@@ -38,14 +38,24 @@ import java.io.IOException;
 import java.net.Socket;
 
 import com.orientechnologies.orient.core.config.OContextConfiguration;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.enterprise.channel.OSocketChannelInputStream;
+import com.orientechnologies.orient.enterprise.channel.OSocketChannelOutputStream;
 
 public class OChannelBinaryServer extends OChannelBinary {
 
 	public OChannelBinaryServer(final Socket iSocket, final OContextConfiguration iConfig) throws IOException {
 		super(iSocket, iConfig);
 
-		inStream = new BufferedInputStream(socket.getInputStream(), socketBufferSize);
-		outStream = new BufferedOutputStream(socket.getOutputStream(), socketBufferSize);
+		if (socket.getChannel() != null && !socket.getChannel().isBlocking()) {
+			// NON-BLOCKING CHANNEL SERVED BY A SELECTOR: THE SOCKET STREAMS WOULD REFUSE TO WORK
+			final int timeout = iConfig.getValueAsInteger(OGlobalConfiguration.NETWORK_SOCKET_TIMEOUT);
+			inStream = new BufferedInputStream(new OSocketChannelInputStream(socket.getChannel(), timeout), socketBufferSize);
+			outStream = new BufferedOutputStream(new OSocketChannelOutputStream(socket.getChannel(), timeout), socketBufferSize);
+		} else {
+			inStream = new BufferedInputStream(socket.getInputStream(), socketBufferSize);
+			outStream = new BufferedOutputStream(socket.getOutputStream(), socketBufferSize);
+		}
 
 		out = new DataOutputStream(outStream);
 		in = new DataInputStream(inStream);
@@ -0,0 +1,147 @@
+package com.orientechnologies.orient.enterprise.channel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Streams on top of a non-blocking socket channel: they wait for the channel up to the timeout and release their selector when
+ * closed.
+ */
+@Test
+public class OSocketChannelStreamTest {
+  private static final int TIMEOUT = 300;
+
+  private ServerSocketChannel server;
+  private SocketChannel       channel;
+  private Socket              client;
+  private ExecutorService     executor;
+
+  @BeforeMethod
+  public void beforeMethod() throws IOException {
+    server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+
+    client = new Socket("127.0.0.1", server.socket().getLocalPort());
+    channel = server.accept();
+    channel.configureBlocking(false);
+
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterMethod
+  public void afterMethod() throws IOException {
+    executor.shutdownNow();
+    client.close();
+    channel.close();
+    server.close();
+  }
+
+  public void testReadWaitsForData() throws Exception {
+    final OSocketChannelInputStream in = new OSocketChannelInputStream(channel, 0);
+
+    final Future<Integer> read = executor.submit(new Callable<Integer>() {
+      public Integer call() throws IOException {
+        return in.read();
+      }
+    });
+    Thread.sleep(100);
+    Assert.assertFalse(read.isDone());
+
+    client.getOutputStream().write(42);
+    Assert.assertEquals(read.get(5, TimeUnit.SECONDS).intValue(), 42);
+
+    // THE CLIENT CLOSING THE CONNECTION ENDS THE STREAM
+    client.close();
+    Assert.assertEquals(in.read(), -1);
+  }
+
+  public void testReadTimeout() throws Exception {
+    final OSocketChannelInputStream in = new OSocketChannelInputStream(channel, TIMEOUT);
+
+    final long start = System.currentTimeMillis();
+    try {
+      in.read(new byte[10], 0, 10);
+      Assert.fail("Read without data must time out");
+    } catch (SocketTimeoutException e) {
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start >= TIMEOUT - 10);
+
+    // THE STREAM IS STILL USABLE AFTER THE TIMEOUT
+    client.getOutputStream().write(new byte[] { 1, 2, 3 });
+    final byte[] buffer = new byte[10];
+    Assert.assertEquals(in.read(buffer, 0, 10), 3);
+    Assert.assertEquals(buffer[2], 3);
+  }
+
+  public void testWriteTimeout() throws Exception {
+    final OSocketChannelOutputStream out = new OSocketChannelOutputStream(channel, TIMEOUT);
+
+    // THE CLIENT NEVER READS: THE SOCKET BUFFERS FILL UP
+    try {
+      out.write(new byte[64 * 1024 * 1024]);
+      Assert.fail("Write to a peer that does not read must time out");
+    } catch (SocketTimeoutException e) {
+    }
+    Assert.assertTrue(out.getSelector().isOpen());
+
+    out.close();
+    Assert.assertFalse(out.getSelector().isOpen());
+    Assert.assertFalse(channel.isOpen());
+  }
+
+  public void testCloseReleasesSelector() throws Exception {
+    final OSocketChannelInputStream in = new OSocketChannelInputStream(channel, TIMEOUT);
+    try {
+      in.read();
+    } catch (SocketTimeoutException e) {
+    }
+    Assert.assertTrue(in.getSelector().isOpen());
+
+    in.close();
+    Assert.assertFalse(in.getSelector().isOpen());
+    Assert.assertFalse(channel.isOpen());
+
+    try {
+      in.read();
+      Assert.fail("Read of a closed stream must fail");
+    } catch (ClosedChannelException e) {
+    }
+  }
+
+  public void testCloseWakesUpWaitingReader() throws Exception {
+    final OSocketChannelInputStream in = new OSocketChannelInputStream(channel, 0);
+
+    final Future<Integer> read = executor.submit(new Callable<Integer>() {
+      public Integer call() throws IOException {
+        return in.read();
+      }
+    });
+    Thread.sleep(100);
+    Assert.assertFalse(read.isDone());
+
+    in.close();
+    try {
+      read.get(5, TimeUnit.SECONDS);
+      Assert.fail("Read waiting on a closed stream must fail");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof ClosedChannelException);
+    }
+    Assert.assertFalse(in.getSelector().isOpen());
+  }
+}
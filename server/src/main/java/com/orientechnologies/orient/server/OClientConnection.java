@@ -17,6 +17,11 @@ package com.orientechnologies.orient.server;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.db.raw.ODatabaseRaw;
@@ -24,16 +29,20 @@ import com.orientechnologies.orient.enterprise.channel.binary.OChannelBinary;
 import com.orientechnologies.orient.server.config.OServerUserConfiguration;
 import com.orientechnologies.orient.server.network.protocol.ONetworkProtocol;
 import com.orientechnologies.orient.server.network.protocol.ONetworkProtocolData;
+import com.orientechnologies.orient.server.network.protocol.binary.OQueryCursor;
 
 public class OClientConnection {
-  public int                      id;
-  public ONetworkProtocol         protocol;
-  public long                     since;
-  public ODatabaseDocumentTx      database;
-  public ODatabaseRaw             rawDatabase;
-  public OServerUserConfiguration serverUser;
+  public int                         id;
+  public ONetworkProtocol            protocol;
+  public long                        since;
+  public ODatabaseDocumentTx         database;
+  public ODatabaseRaw                rawDatabase;
+  public OServerUserConfiguration    serverUser;
 
-  public ONetworkProtocolData     data = new ONetworkProtocolData();
+  public ONetworkProtocolData        data    = new ONetworkProtocolData();
+
+  private Map<Integer, OQueryCursor> cursors = new HashMap<Integer, OQueryCursor>();
+  private int                        cursorSerial;
 
   public OClientConnection(final int iId, final ONetworkProtocol iProtocol) throws IOException {
     this.id = iId;
@@ -42,12 +51,71 @@ public class OClientConnection {
   }
 
   public void close() {
+    final List<OQueryCursor> closing;
+    synchronized (cursors) {
+      closing = new ArrayList<OQueryCursor>(cursors.values());
+      cursors.clear();
+    }
+    for (OQueryCursor cursor : closing)
+      cursor.close();
+
     if (database != null) {
       database.close();
       database = null;
     }
   }
 
+  /**
+   * Keeps the cursor open until it's removed or expires.
+   * 
+   * @return The id of the cursor, unique for this connection
+   */
+  public int addCursor(final OQueryCursor iCursor) {
+    synchronized (cursors) {
+      final int id = ++cursorSerial;
+      cursors.put(id, iCursor);
+      return id;
+    }
+  }
+
+  public OQueryCursor getCursor(final int iCursorId) {
+    synchronized (cursors) {
+      return cursors.get(iCursorId);
+    }
+  }
+
+  public OQueryCursor removeCursor(final int iCursorId) {
+    final OQueryCursor cursor;
+    synchronized (cursors) {
+      cursor = cursors.remove(iCursorId);
+    }
+    if (cursor != null)
+      cursor.close();
+    return cursor;
+  }
+
+  /**
+   * Removes the cursors not used since more than iTimeout ms.
+   * 
+   * @return The number of cursors removed
+   */
+  public int removeExpiredCursors(final long iTimeout) {
+    final List<OQueryCursor> expired = new ArrayList<OQueryCursor>();
+    final long now = System.currentTimeMillis();
+    synchronized (cursors) {
+      for (Iterator<OQueryCursor> it = cursors.values().iterator(); it.hasNext();) {
+        final OQueryCursor cursor = it.next();
+        if (now - cursor.getLastUsedOn() > iTimeout) {
+          it.remove();
+          expired.add(cursor);
+        }
+      }
+    }
+    for (OQueryCursor cursor : expired)
+      cursor.close();
+    return expired.size();
+  }
+
   @Override
   public String toString() {
     return "OClientConnection [id=" + id + ", source="
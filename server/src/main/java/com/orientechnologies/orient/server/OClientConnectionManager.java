@@ -48,6 +48,7 @@ public class OClientConnectionManager extends OSharedResourceAbstract {
 
   public OClientConnectionManager() {
     final int delay = OGlobalConfiguration.SERVER_CHANNEL_CLEAN_DELAY.getValueAsInteger();
+    final long cursorTimeout = OGlobalConfiguration.NETWORK_BINARY_CURSOR_TIMEOUT.getValueAsLong();
 
     Orient.getTimer().schedule(new TimerTask() {
 
@@ -66,6 +67,11 @@ public class OClientConnectionManager extends OSharedResourceAbstract {
               } catch (Exception e) {
               }
               connections.remove(entry.getKey());
+            } else {
+              final int expired = entry.getValue().removeExpiredCursors(cursorTimeout);
+              if (expired > 0)
+                OLogManager.instance().debug(this, "[OClientConnectionManager] removed %d expired cursors of channel %d", expired,
+                    entry.getKey());
             }
           }
         } finally {
@@ -50,6 +50,7 @@ import com.orientechnologies.orient.server.task.OCreateRecordDistributedTask;
 import com.orientechnologies.orient.server.task.ODeleteRecordDistributedTask;
 import com.orientechnologies.orient.server.task.OReadRecordDistributedTask;
 import com.orientechnologies.orient.server.task.OSQLCommandDistributedTask;
+import com.orientechnologies.orient.server.task.OTxDistributedTask;
 import com.orientechnologies.orient.server.task.OUpdateRecordDistributedTask;
 
 /**
@@ -67,12 +68,25 @@ public class ODistributedStorage implements OStorage {
   protected EXECUTION_MODE                  createRecordMode     = EXECUTION_MODE.SYNCHRONOUS;
   protected EXECUTION_MODE                  updateRecordMode     = EXECUTION_MODE.SYNCHRONOUS;
   protected EXECUTION_MODE                  deleteRecordMode     = EXECUTION_MODE.SYNCHRONOUS;
+  protected EXECUTION_MODE                  txMode;
+
+  /**
+   * Locks held by the current thread and transaction to replicate once they are released: the storage is shared by all the
+   * connections. Not set outside {@link #callInLock(Callable, boolean)}.
+   */
+  private final ThreadLocal<LockState>      lockState            = new ThreadLocal<LockState>();
+
+  private static class LockState {
+    private int                depth;
+    private OTxDistributedTask pendingTx;
+  }
 
   public ODistributedStorage(final ODistributedServerManager iCluster, final OStorageSynchronizer dbSynchronizer,
       final OStorageEmbedded wrapped) {
     this.dManager = iCluster;
     this.wrapped = wrapped;
     this.dbSynchronizer = dbSynchronizer;
+    this.txMode = dbSynchronizer.getTransactionMode();
   }
 
   public Object command(final OCommandRequestText iCommand) {
@@ -93,7 +107,7 @@ public class ODistributedStorage implements OStorage {
       distribute = false;
 
     if (distribute)
-      ODistributedThreadLocal.INSTANCE.distributedExecution = true;
+      ODistributedThreadLocal.INSTANCE.set(Boolean.TRUE);
 
     try {
       // EXECUTE IT LOCALLY
@@ -121,13 +135,13 @@ public class ODistributedStorage implements OStorage {
     } finally {
 
       if (distribute)
-        ODistributedThreadLocal.INSTANCE.distributedExecution = false;
+        ODistributedThreadLocal.INSTANCE.set(Boolean.FALSE);
     }
   }
 
   public OPhysicalPosition createRecord(final int iDataSegmentId, final ORecordId iRecordId, final byte[] iContent,
       final int iRecordVersion, final byte iRecordType, final int iMode, final ORecordCallback<Long> iCallback) {
-    if (ODistributedThreadLocal.INSTANCE.distributedExecution)
+    if (ODistributedThreadLocal.INSTANCE.get())
       // ALREADY DISTRIBUTED
       return wrapped.createRecord(iDataSegmentId, iRecordId, iContent, iRecordVersion, iRecordType, iMode, iCallback);
 
@@ -149,7 +163,7 @@ public class ODistributedStorage implements OStorage {
 
   public ORawBuffer readRecord(final ORecordId iRecordId, final String iFetchPlan, final boolean iIgnoreCache,
       final ORecordCallback<ORawBuffer> iCallback) {
-    if (ODistributedThreadLocal.INSTANCE.distributedExecution)
+    if (ODistributedThreadLocal.INSTANCE.get())
       // ALREADY DISTRIBUTED
       return wrapped.readRecord(iRecordId, iFetchPlan, iIgnoreCache, iCallback);
 
@@ -167,7 +181,7 @@ public class ODistributedStorage implements OStorage {
 
   public int updateRecord(final ORecordId iRecordId, final byte[] iContent, final int iVersion, final byte iRecordType,
       final int iMode, final ORecordCallback<Integer> iCallback) {
-    if (ODistributedThreadLocal.INSTANCE.distributedExecution)
+    if (ODistributedThreadLocal.INSTANCE.get())
       // ALREADY DISTRIBUTED
       return wrapped.updateRecord(iRecordId, iContent, iVersion, iRecordType, iMode, iCallback);
 
@@ -187,7 +201,7 @@ public class ODistributedStorage implements OStorage {
 
   public boolean deleteRecord(final ORecordId iRecordId, final int iVersion, final int iMode,
       final ORecordCallback<Boolean> iCallback) {
-    if (ODistributedThreadLocal.INSTANCE.distributedExecution)
+    if (ODistributedThreadLocal.INSTANCE.get())
       // ALREADY DISTRIBUTED
       return wrapped.deleteRecord(iRecordId, iVersion, iMode, iCallback);
 
@@ -253,12 +267,39 @@ public class ODistributedStorage implements OStorage {
     return wrapped.getLevel2Cache();
   }
 
+  /**
+   * Commits the transaction locally, then replicates all its records to the other nodes in one call. If the commit is executed
+   * inside {@link #callInLock(Callable, boolean)}, as by the database, the records are replicated once the lock is released.
+   */
   public void commit(final OTransaction iTx) {
-    throw new ODistributedException("Transactions are not supported in distributed environment");
+    if (ODistributedThreadLocal.INSTANCE.get()) {
+      // ALREADY DISTRIBUTED
+      wrapped.commit(iTx);
+      return;
+    }
+
+    final OTxDistributedTask task = new OTxDistributedTask(dManager.getLocalNodeId(), wrapped.getName(), txMode, iTx);
+    if (task.getTasks() == 0) {
+      wrapped.commit(iTx);
+      return;
+    }
+
+    // LOG THE OPERATIONS BEFORE TO COMMIT THEM
+    task.journal(dbSynchronizer.getLog());
+
+    wrapped.commit(iTx);
+
+    task.setAsCommitted(dbSynchronizer);
+
+    final LockState state = lockState.get();
+    if (state != null)
+      state.pendingTx = task;
+    else
+      replicateTransaction(task);
   }
 
   public void rollback(final OTransaction iTx) {
-    throw new ODistributedException("Transactions are not supported in distributed environment");
+    wrapped.rollback(iTx);
   }
 
   public OStorageConfiguration getConfiguration() {
@@ -375,7 +416,26 @@ public class ODistributedStorage implements OStorage {
   }
 
   public <V> V callInLock(final Callable<V> iCallable, final boolean iExclusiveLock) {
-    return wrapped.callInLock(iCallable, iExclusiveLock);
+    LockState state = lockState.get();
+    if (state == null) {
+      state = new LockState();
+      lockState.set(state);
+    }
+
+    state.depth++;
+    try {
+      return wrapped.callInLock(iCallable, iExclusiveLock);
+    } finally {
+      state.depth--;
+
+      if (state.depth == 0) {
+        lockState.remove();
+
+        if (state.pendingTx != null)
+          // REPLICATE THE TRANSACTION COMMITTED INSIDE THE LOCK WITHOUT KEEPING THE STORAGE LOCKED
+          replicateTransaction(state.pendingTx);
+      }
+    }
   }
 
   public ODataSegment getDataSegmentById(final int iDataSegmentId) {
@@ -414,6 +474,15 @@ public class ODistributedStorage implements OStorage {
     return wrapped.getLock();
   }
 
+  protected void replicateTransaction(final OTxDistributedTask iTask) {
+    final Map<String, Object> distributedResult = dbSynchronizer.distributeOperation(iTask);
+
+    if (distributedResult != null)
+      for (Entry<String, Object> entry : distributedResult.entrySet())
+        if (entry.getValue() != null)
+          iTask.handleConflict(entry.getKey(), iTask.getLocalResult(), entry.getValue());
+  }
+
   protected String getClusterNameFromRID(final ORecordId iRecordId) {
     return OStorageSynchronizer.getClusterNameByRID(wrapped, iRecordId);
   }
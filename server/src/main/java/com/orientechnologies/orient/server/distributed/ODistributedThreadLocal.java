@@ -16,13 +16,17 @@
 package com.orientechnologies.orient.server.distributed;
 
 /**
- * Thread local to know when the request comes from distributed requester avoiding loops.
+ * Thread local to know when the request comes from distributed requester avoiding loops. The flag is per thread, so the operations
+ * applied in parallel by the alignment don't affect each other.
  * 
  * @author Luca
  * 
  */
 public class ODistributedThreadLocal extends ThreadLocal<Boolean> {
-  public static ODistributedThreadLocal INSTANCE             = new ODistributedThreadLocal();
+  public static ODistributedThreadLocal INSTANCE = new ODistributedThreadLocal();
 
-  public boolean                        distributedExecution = false;
+  @Override
+  protected Boolean initialValue() {
+    return Boolean.FALSE;
+  }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.distributed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
+import com.orientechnologies.orient.server.task.OAbstractDistributedTask;
+import com.orientechnologies.orient.server.task.OMultipleDistributedTasks;
+
+/**
+ * Coalesces the record operations to replicate: the operations queued while the previous group is being sent are sent together in
+ * one {@link OMultipleDistributedTasks}, up to <code>maxSize</code> operations per group. With a delay the first operation of a
+ * group waits up to that many milliseconds for others to join it. The operations in SYNCHRONOUS mode wait for their group to be
+ * executed by the target nodes, the others return immediately.
+ */
+public class OReplicationBatch implements Runnable {
+  private final ODistributedServerManager cluster;
+  private final String                    databaseName;
+  private final int                       maxSize;
+  private final long                      delay;
+  private final List<Operation>           pending = new ArrayList<Operation>();
+  private Thread                          sender;
+
+  public OReplicationBatch(final ODistributedServerManager iCluster, final String iDatabaseName, final int iMaxSize,
+      final long iDelay) {
+    cluster = iCluster;
+    databaseName = iDatabaseName;
+    maxSize = iMaxSize;
+    delay = iDelay;
+  }
+
+  /**
+   * Queues an operation to replicate.
+   *
+   * @param iTargetNodes
+   *          Nodes to send the operation to
+   * @param iTask
+   *          Operation to replicate
+   * @return The result of each target node if the operation is SYNCHRONOUS, otherwise null
+   */
+  public Map<String, Object> replicate(final Set<String> iTargetNodes, final OAbstractDistributedTask<?> iTask) {
+    final Operation operation = new Operation(iTargetNodes, iTask);
+
+    synchronized (pending) {
+      pending.add(operation);
+
+      if (sender == null) {
+        sender = new Thread(this, "OrientDB replication " + databaseName);
+        sender.setDaemon(true);
+        sender.start();
+      }
+
+      pending.notifyAll();
+    }
+
+    if (!operation.synchronous)
+      return null;
+
+    synchronized (operation) {
+      while (!operation.done)
+        try {
+          operation.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ODistributedException("Interrupted while waiting for the replication of " + iTask);
+        }
+    }
+
+    if (operation.error != null)
+      throw operation.error;
+
+    return operation.result;
+  }
+
+  public void run() {
+    while (true) {
+      final List<Operation> group = new ArrayList<Operation>();
+
+      synchronized (pending) {
+        try {
+          while (pending.isEmpty())
+            pending.wait();
+
+          // GIVE TIME TO THE OTHER OPERATIONS OF THE BURST TO JOIN THE GROUP
+          final long deadline = System.currentTimeMillis() + delay;
+          for (long wait = delay; pending.size() < maxSize && wait > 0; wait = deadline - System.currentTimeMillis())
+            pending.wait(wait);
+
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+
+        for (Iterator<Operation> it = pending.iterator(); it.hasNext() && group.size() < maxSize;) {
+          group.add(it.next());
+          it.remove();
+        }
+      }
+
+      send(group);
+    }
+  }
+
+  protected void send(final List<Operation> iGroup) {
+    // THE OPERATIONS COMING FROM DIFFERENT NODES COULD HAVE DIFFERENT TARGETS
+    final Map<Set<String>, List<Operation>> groupsByTargets = new LinkedHashMap<Set<String>, List<Operation>>();
+    for (Operation operation : iGroup) {
+      List<Operation> operations = groupsByTargets.get(operation.targetNodes);
+      if (operations == null) {
+        operations = new ArrayList<Operation>();
+        groupsByTargets.put(operation.targetNodes, operations);
+      }
+      operations.add(operation);
+    }
+
+    for (Entry<Set<String>, List<Operation>> entry : groupsByTargets.entrySet()) {
+      final List<Operation> operations = entry.getValue();
+
+      boolean synchronous = false;
+      for (Operation operation : operations)
+        synchronous |= operation.synchronous;
+
+      // THE GROUP IS LOGGED ONLY AS SINGLE OPERATIONS: REUSE THE SERIAL OF THE FIRST ONE
+      final OAbstractDistributedTask<?> first = operations.get(0).task;
+      final OMultipleDistributedTasks tasks = new OMultipleDistributedTasks(cluster.getLocalNodeId(), databaseName,
+          synchronous ? EXECUTION_MODE.SYNCHRONOUS : EXECUTION_MODE.ASYNCHRONOUS, first.getRunId(), first.getOperationSerial());
+      for (Operation operation : operations)
+        tasks.addTask(operation.task);
+
+      try {
+        final Map<String, Object> results = cluster.sendOperation2Nodes(entry.getKey(), tasks);
+
+        for (int i = 0; i < operations.size(); ++i) {
+          final Map<String, Object> result = new HashMap<String, Object>();
+          for (Entry<String, Object> nodeResult : results.entrySet()) {
+            final Object[] nodeResults = (Object[]) nodeResult.getValue();
+            result.put(nodeResult.getKey(), nodeResults != null ? nodeResults[i] : null);
+          }
+          operations.get(i).setResult(result, null);
+        }
+
+      } catch (RuntimeException e) {
+        OLogManager.instance().error(this, "DISTRIBUTED -> error on replicating %d operation(s) against nodes %s", e,
+            operations.size(), entry.getKey());
+
+        for (Operation operation : operations)
+          operation.setResult(null, e);
+      }
+    }
+  }
+
+  private static class Operation {
+    private final Set<String>                 targetNodes;
+    private final OAbstractDistributedTask<?> task;
+    private final boolean                     synchronous;
+    private Map<String, Object>               result;
+    private RuntimeException                  error;
+    private boolean                           done;
+
+    private Operation(final Set<String> iTargetNodes, final OAbstractDistributedTask<?> iTask) {
+      targetNodes = iTargetNodes;
+      task = iTask;
+      synchronous = iTask.getMode() == EXECUTION_MODE.SYNCHRONOUS;
+    }
+
+    private synchronized void setResult(final Map<String, Object> iResult, final RuntimeException iError) {
+      result = iResult;
+      error = iError;
+      done = true;
+      notifyAll();
+    }
+  }
+}
@@ -19,23 +19,49 @@ import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
 import com.orientechnologies.common.parser.OSystemVariableResolver;
 import com.orientechnologies.orient.core.Orient;
 import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.storage.OCluster;
 import com.orientechnologies.orient.core.storage.ORawBuffer;
 import com.orientechnologies.orient.core.storage.OStorage;
 import com.orientechnologies.orient.server.OServerMain;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
 import com.orientechnologies.orient.server.distributed.conflict.OReplicationConflictResolver;
 import com.orientechnologies.orient.server.journal.ODatabaseJournal;
 import com.orientechnologies.orient.server.task.OAbstractDistributedTask;
 import com.orientechnologies.orient.server.task.OAbstractDistributedTask.STATUS;
+import com.orientechnologies.orient.server.task.OAbstractRecordDistributedTask;
 import com.orientechnologies.orient.server.task.OReadRecordDistributedTask;
 
 /**
- * Manages replication across clustered nodes.
+ * Manages replication across clustered nodes. The database configuration can set:
+ * <ul>
+ * <li><b>replication-tx-mode</b>: how the transactions are replicated, "synchronous" (default) to wait for the other nodes to
+ * apply them, "asynchronous" to return once they are sent</li>
+ * <li><b>replication-batch-size</b>: maximum number of record operations replicated together in one call, default 100. 1 sends
+ * every operation in a call of its own</li>
+ * <li><b>replication-batch-delay</b>: milliseconds an operation waits for others to replicate them together, default 0 that
+ * groups only the operations queued while the previous group is being sent</li>
+ * <li><b>alignment-chunk-size</b>: maximum number of journal operations, or records of a snapshot, sent together to a node that
+ * is aligning, default 1000</li>
+ * <li><b>alignment-threads</b>: threads that apply in parallel the operations received by a node that is aligning, default 0 that
+ * uses one per processor</li>
+ * <li><b>alignment-snapshot-threshold</b>: number of operations missed by a node above which the content of the clusters is sent
+ * instead of the journal, default 100000. 0 always sends the journal</li>
+ * </ul>
+ * The number of operations a node that is aligning has still to receive is available in the profiler as
+ * <code>distributed.&lt;database&gt;.alignment.lag</code>.
  * 
  * @author Luca Garulli (l.garulli--at--orientechnologies.com)
  * 
@@ -45,11 +71,63 @@ public class OStorageSynchronizer {
   private String                       storageName;
   private ODatabaseJournal             log;
   private OReplicationConflictResolver resolver;
+  private EXECUTION_MODE               transactionMode            = EXECUTION_MODE.SYNCHRONOUS;
+  private OReplicationBatch            batch;
+  private int                          alignmentChunkSize         = 1000;
+  private int                          alignmentThreads           = 0;
+  private int                          alignmentSnapshotThreshold = 100000;
+  private volatile long                alignmentLag;
+  private ThreadPoolExecutor           alignmentExecutor;
+  private volatile int                 snapshotChunks             = -1;
 
   public OStorageSynchronizer(final ODistributedServerManager iCluster, final String storageName) throws IOException {
     cluster = iCluster;
+    this.storageName = storageName;
     final OStorage storage = openStorage(storageName);
 
+    final ODocument cfg = iCluster.getDatabaseConfiguration(storageName);
+    if (cfg != null) {
+      final String txMode = cfg.field("replication-tx-mode");
+      if (txMode != null)
+        transactionMode = EXECUTION_MODE.valueOf(txMode.toUpperCase());
+
+      final Number chunkSize = cfg.field("alignment-chunk-size");
+      if (chunkSize != null)
+        alignmentChunkSize = Math.max(1, chunkSize.intValue());
+      final Number threads = cfg.field("alignment-threads");
+      if (threads != null)
+        alignmentThreads = threads.intValue();
+      final Number snapshotThreshold = cfg.field("alignment-snapshot-threshold");
+      if (snapshotThreshold != null)
+        alignmentSnapshotThreshold = snapshotThreshold.intValue();
+    }
+
+    alignmentExecutor = new ThreadPoolExecutor(getAlignmentThreads(), getAlignmentThreads(), 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger id = new AtomicInteger();
+
+          public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(Orient.getThreadGroup(), r, "OrientDB alignment " + storageName + " #"
+                + id.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    // NO THREADS WHILE THE NODE IS NOT ALIGNING
+    alignmentExecutor.allowCoreThreadTimeOut(true);
+
+    Orient.instance().getProfiler().registerHookValue("distributed." + storageName + ".alignment.lag", new OProfilerHookValue() {
+      public Object getValue() {
+        return alignmentLag;
+      }
+    });
+
+    final Number batchSize = cfg != null ? (Number) cfg.field("replication-batch-size") : null;
+    final Number batchDelay = cfg != null ? (Number) cfg.field("replication-batch-delay") : null;
+    if (batchSize == null || batchSize.intValue() > 1)
+      batch = new OReplicationBatch(iCluster, storageName, batchSize != null ? batchSize.intValue() : 100,
+          batchDelay != null ? batchDelay.longValue() : 0);
+
     try {
       resolver = iCluster.getConfictResolverClass().newInstance();
       resolver.startup(iCluster, storageName);
@@ -91,11 +169,25 @@ public class OStorageSynchronizer {
   }
 
   public Map<String, Object> distributeOperation(final byte operation, final ORecordId rid, final OAbstractDistributedTask<?> iTask) {
+    return distributeOperation(iTask);
+  }
+
+  /**
+   * Sends the operation to all the other nodes but the one it comes from. The record operations can be grouped with others in one
+   * call.
+   * 
+   * @return The result of each node, or null if the operation is not executed synchronously
+   */
+  public Map<String, Object> distributeOperation(final OAbstractDistributedTask<?> iTask) {
     final Set<String> targetNodes = cluster.getRemoteNodeIdsBut(iTask.getNodeSource());
     if (!targetNodes.isEmpty()) {
       // RESET THE SOURCE TO AVOID LOOPS
       iTask.setNodeSource(cluster.getLocalNodeId());
       iTask.setStatus(STATUS.REMOTE_EXEC);
+
+      if (batch != null && iTask instanceof OAbstractRecordDistributedTask<?>)
+        return batch.replicate(targetNodes, iTask);
+
       return cluster.sendOperation2Nodes(targetNodes, iTask);
     }
     return null;
@@ -114,6 +206,58 @@ public class OStorageSynchronizer {
     return log;
   }
 
+  /**
+   * Returns the execution mode of the replication of the transactions.
+   */
+  public EXECUTION_MODE getTransactionMode() {
+    return transactionMode;
+  }
+
+  public int getAlignmentChunkSize() {
+    return alignmentChunkSize;
+  }
+
+  /**
+   * Returns the threads to apply the operations received by the alignment.
+   */
+  public int getAlignmentThreads() {
+    return alignmentThreads > 0 ? alignmentThreads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Returns the executor of the threads that apply the operations received by the alignment, shared by all its chunks.
+   */
+  public ExecutorService getAlignmentExecutor() {
+    return alignmentExecutor;
+  }
+
+  public int getAlignmentSnapshotThreshold() {
+    return alignmentSnapshotThreshold;
+  }
+
+  /**
+   * Returns the number of chunks applied of the snapshot being received, -1 if no snapshot is being received or one of its chunks
+   * failed.
+   */
+  public int getSnapshotChunks() {
+    return snapshotChunks;
+  }
+
+  public void setSnapshotChunks(final int iChunks) {
+    snapshotChunks = iChunks;
+  }
+
+  /**
+   * Returns the number of operations, or records of a snapshot, still to receive by the alignment in progress.
+   */
+  public long getAlignmentLag() {
+    return alignmentLag;
+  }
+
+  public void setAlignmentLag(final long iLag) {
+    alignmentLag = iLag;
+  }
+
   @Override
   public String toString() {
     return storageName;
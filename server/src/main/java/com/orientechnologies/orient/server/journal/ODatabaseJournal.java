@@ -55,7 +55,7 @@ import com.orientechnologies.orient.server.task.OUpdateRecordDistributedTask;
  * Where:
  * <ul>
  *   <li> <b>STATUS</b> = [ 0 = doing, 1 = done ] </li>
- *   <li> <b>OPERAT</b> = [ 1 = update, 2 = delete, 3 = create, 4 = sql command ] </li>
+ *   <li> <b>OPERAT</b> = [ 1 = update, 2 = delete, 3 = create, 4 = sql command, 5 = snapshot ] </li>
  *   <li> <b>RUN ID</b> = is the running id. It's the timestamp the server is started, or inside a cluster is the timestamp when the cluster is started</li>
  *   <li> <b>OPERAT ID</b> = is the unique id of the operation. First operation is 0</li>
  * </ul>
@@ -63,7 +63,7 @@ import com.orientechnologies.orient.server.task.OUpdateRecordDistributedTask;
  */
 public class ODatabaseJournal {
   public enum OPERATION_TYPES {
-    RECORD_CREATE, RECORD_UPDATE, RECORD_DELETE, SQL_COMMAND
+    RECORD_CREATE, RECORD_UPDATE, RECORD_DELETE, SQL_COMMAND, SNAPSHOT
   }
 
   public static final String              DIRECTORY             = "log";
@@ -114,7 +114,7 @@ public class ODatabaseJournal {
    * Returns the last operation id.
    */
   public long[] getOperationId(final long iOffset) throws IOException {
-    final int filled = file.getFilledUpTo();
+    final long filled = file.getFilledUpTo();
     if (filled == 0 || iOffset <= 0 || iOffset > filled)
       return new long[] { -1, -1 };
 
@@ -278,6 +278,15 @@ public class ODatabaseJournal {
         file.write(offset + OFFSET_VARDATA, cmdText.getBytes());
         break;
       }
+
+      case SNAPSHOT: {
+        // ONLY THE OPERATION ID: THE DATABASE CONTAINS ALL THE OPERATIONS UP TO IT
+        if (OLogManager.instance().isDebugEnabled())
+          OLogManager.instance().warn(this, "Journaled snapshot as #%d.%d", iRunId, iOperationId);
+
+        offset = writeOperationLogHeader(iOperationType, varSize);
+        break;
+      }
       }
 
       file.writeLong(offset + OFFSET_VARDATA + varSize + OBinaryProtocol.SIZE_INT, iRunId);
@@ -353,6 +362,10 @@ public class ODatabaseJournal {
         task = new OSQLCommandDistributedTask(runId, operationId, new String(buffer));
         break;
       }
+
+      case SNAPSHOT:
+        // NOTHING TO REPLAY
+        break;
       }
 
       if (task != null)
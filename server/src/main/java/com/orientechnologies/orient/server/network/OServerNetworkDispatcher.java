@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.server.network.protocol.ONetworkProtocol;
+
+/**
+ * Serves the connections of a listener without a thread per connection. The sockets of the idle connections are watched by a few
+ * selector threads: when a request arrives the connection is handed to a bounded pool of workers that executes it with the
+ * protocol's usual blocking code, then the connection goes back to its selector. Pipelined requests already buffered are executed
+ * in a row by the same worker.
+ * 
+ * @author Luca Garulli (l.garulli--at--orientechnologies.com)
+ */
+public class OServerNetworkDispatcher {
+  private final String             name;
+  private final OSelectorThread[]  selectors;
+  private final ThreadPoolExecutor workers;
+  private final AtomicInteger      nextSelector = new AtomicInteger();
+  private final AtomicInteger      connections  = new AtomicInteger();
+  private volatile boolean         active       = true;
+
+  public OServerNetworkDispatcher(final String iName, final int iSelectors, final int iWorkers) throws IOException {
+    name = iName;
+
+    workers = new ThreadPoolExecutor(iWorkers, iWorkers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          private final AtomicInteger id = new AtomicInteger();
+
+          public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(Orient.getThreadGroup(), r, "OrientDB " + name + " worker #" + id.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    // IDLE SERVER: NO WORKER THREADS
+    workers.allowCoreThreadTimeOut(true);
+
+    selectors = new OSelectorThread[Math.max(1, iSelectors)];
+    for (int i = 0; i < selectors.length; ++i) {
+      selectors[i] = new OSelectorThread(i);
+      selectors[i].start();
+    }
+
+    Orient.instance().getProfiler().registerHookValue("server.network." + name + ".connections", new OProfilerHookValue() {
+      public Object getValue() {
+        return connections.get();
+      }
+    });
+    Orient.instance().getProfiler().registerHookValue("server.network." + name + ".workers", new OProfilerHookValue() {
+      public Object getValue() {
+        return workers.getPoolSize();
+      }
+    });
+  }
+
+  /**
+   * Starts serving the connection of an already configured protocol. The socket channel must be in non-blocking mode.
+   */
+  public void register(final ONetworkProtocol iProtocol) {
+    connections.incrementAndGet();
+    iProtocol.startup();
+
+    selectors[(nextSelector.getAndIncrement() & Integer.MAX_VALUE) % selectors.length].arm(iProtocol);
+  }
+
+  public void shutdown() {
+    active = false;
+
+    Orient.instance().getProfiler().unregisterHookValue("server.network." + name + ".connections");
+    Orient.instance().getProfiler().unregisterHookValue("server.network." + name + ".workers");
+
+    for (OSelectorThread s : selectors)
+      s.selector.wakeup();
+    workers.shutdown();
+  }
+
+  protected void serve(final ONetworkProtocol iProtocol, final OSelectorThread iSelector) {
+    try {
+      do {
+        iProtocol.executeNext();
+        // PIPELINED REQUESTS COULD BE ALREADY IN THE BUFFER: THE SELECTOR WOULDN'T SIGNAL THEM
+      } while (active && isAlive(iProtocol) && iProtocol.getChannel().inStream.available() > 0);
+
+    } catch (Throwable t) {
+      OLogManager.instance().debug(this, "Error on serving the request of the client %s", t, iProtocol.getChannel());
+      iProtocol.sendShutdown();
+    }
+
+    if (active && isAlive(iProtocol))
+      iSelector.arm(iProtocol);
+    else
+      close(iProtocol);
+  }
+
+  protected void close(final ONetworkProtocol iProtocol) {
+    connections.decrementAndGet();
+    try {
+      iProtocol.shutdown();
+    } catch (Throwable t) {
+      OLogManager.instance().debug(this, "Error on closing the connection %s", t, iProtocol.getChannel());
+    }
+  }
+
+  private boolean isAlive(final ONetworkProtocol iProtocol) {
+    return !iProtocol.isShutdownRequested() && iProtocol.getChannel().socket.getChannel().isOpen();
+  }
+
+  protected class OSelectorThread extends Thread {
+    private final Selector                selector;
+    private final Queue<ONetworkProtocol> toArm = new ConcurrentLinkedQueue<ONetworkProtocol>();
+
+    public OSelectorThread(final int iId) throws IOException {
+      super(Orient.getThreadGroup(), "OrientDB " + name + " selector #" + iId);
+      setDaemon(true);
+      selector = Selector.open();
+    }
+
+    /**
+     * Schedules the connection to be watched for the next request. Keys are only changed by the selector thread: the call would
+     * block while the selector is selecting.
+     */
+    public void arm(final ONetworkProtocol iProtocol) {
+      toArm.offer(iProtocol);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (active && !isInterrupted()) {
+          selector.select();
+
+          ONetworkProtocol p;
+          while ((p = toArm.poll()) != null)
+            register(p);
+
+          final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            final SelectionKey key = it.next();
+            it.remove();
+
+            try {
+              // NOT WATCHED UNTIL THE WORKER HAS EXECUTED THE REQUEST
+              key.interestOps(0);
+            } catch (CancelledKeyException e) {
+              // CHANNEL CLOSED IN THE MEANTIME
+              close((ONetworkProtocol) key.attachment());
+              continue;
+            }
+            dispatch((ONetworkProtocol) key.attachment());
+          }
+        }
+      } catch (Throwable t) {
+        if (active)
+          OLogManager.instance().error(this, "Error on selecting the connections of %s", t, name);
+      } finally {
+        // NO MORE THREADS WOULD SERVE THEM: CLOSE THE CONNECTIONS
+        for (SelectionKey key : selector.keys())
+          close((ONetworkProtocol) key.attachment());
+        try {
+          selector.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+
+    private void register(final ONetworkProtocol iProtocol) {
+      final SocketChannel channel = iProtocol.getChannel().socket.getChannel();
+      try {
+        final SelectionKey key = channel.keyFor(selector);
+        if (key == null)
+          channel.register(selector, SelectionKey.OP_READ, iProtocol);
+        else
+          key.interestOps(SelectionKey.OP_READ);
+      } catch (Exception e) {
+        // CLOSED IN THE MEANTIME
+        close(iProtocol);
+      }
+    }
+
+    private void dispatch(final ONetworkProtocol iProtocol) {
+      try {
+        workers.execute(new Runnable() {
+          public void run() {
+            serve(iProtocol, OSelectorThread.this);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        close(iProtocol);
+      }
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 
 import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.orient.core.Orient;
@@ -34,6 +35,7 @@ import com.orientechnologies.orient.server.OServer;
 import com.orientechnologies.orient.server.config.OServerCommandConfiguration;
 import com.orientechnologies.orient.server.config.OServerParameterConfiguration;
 import com.orientechnologies.orient.server.network.protocol.ONetworkProtocol;
+import com.orientechnologies.orient.server.network.protocol.binary.OBinaryNetworkProtocolAbstract;
 import com.orientechnologies.orient.server.network.protocol.http.command.OServerCommand;
 
 public class OServerNetworkListener extends Thread {
@@ -46,6 +48,7 @@ public class OServerNetworkListener extends Thread {
   private OContextConfiguration             configuration;
   private OServer                           server;
   private ONetworkProtocol                  protocol;
+  private OServerNetworkDispatcher          dispatcher;
 
   @SuppressWarnings("unchecked")
   public OServerNetworkListener(final OServer iServer, final String iHostName, final String iHostPortRange,
@@ -53,12 +56,29 @@ public class OServerNetworkListener extends Thread {
       final OServerParameterConfiguration[] iParameters, final OServerCommandConfiguration[] iCommands) {
     super(Orient.getThreadGroup(), "OrientDB " + iProtocol.getSimpleName() + " listen at " + iHostName + ":" + iHostPortRange);
     server = iServer;
-
-    listen(iHostName, iHostPortRange, iProtocolName);
     protocolType = iProtocol;
 
     readParameters(iServer.getContextConfiguration(), iParameters);
 
+    boolean nio = configuration.getValueAsBoolean(OGlobalConfiguration.NETWORK_BINARY_NIO);
+    if (nio && !OBinaryNetworkProtocolAbstract.class.isAssignableFrom(iProtocol)) {
+      OLogManager.instance().warn(this, "NIO mode is supported only by binary protocols: %s connections will use a thread each",
+          iProtocolName);
+      nio = false;
+    }
+
+    listen(iHostName, iHostPortRange, iProtocolName, nio);
+
+    if (nio)
+      try {
+        dispatcher = new OServerNetworkDispatcher(iProtocolName + "." + inboundAddr.getPort(),
+            configuration.getValueAsInteger(OGlobalConfiguration.NETWORK_BINARY_NIO_SELECTORS),
+            configuration.getValueAsInteger(OGlobalConfiguration.NETWORK_BINARY_NIO_WORKERS));
+      } catch (IOException e) {
+        OLogManager.instance().error(this, "Unable to create the selectors for %s connections", e, iProtocolName);
+        System.exit(1);
+      }
+
     if (iCommands != null) {
       // CREATE COMMANDS
       commands = new OServerCommand[iCommands.length];
@@ -84,6 +104,9 @@ public class OServerNetworkListener extends Thread {
       protocol = null;
     }
 
+    if (dispatcher != null)
+      dispatcher.shutdown();
+
     if (serverSocket != null)
       try {
         serverSocket.close();
@@ -96,14 +119,25 @@ public class OServerNetworkListener extends Thread {
    * 
    * @param iHostPortRange
    * @param iHostName
+   * @param iNIO
+   *          if true the server socket is created by a channel, so the accepted sockets can be served by selectors
    */
-  private void listen(final String iHostName, final String iHostPortRange, final String iProtocolName) {
+  private void listen(final String iHostName, final String iHostPortRange, final String iProtocolName, final boolean iNIO) {
     final int[] ports = getPorts(iHostPortRange);
 
     for (int port : ports) {
       inboundAddr = new InetSocketAddress(iHostName, port);
       try {
-        serverSocket = new java.net.ServerSocket(port, 0, InetAddress.getByName(iHostName));
+        if (iNIO) {
+          serverSocket = ServerSocketChannel.open().socket();
+          try {
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName(iHostName), port), 0);
+          } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+          }
+        } else
+          serverSocket = new java.net.ServerSocket(port, 0, InetAddress.getByName(iHostName));
 
         if (serverSocket.isBound()) {
           OLogManager.instance().info(this,
@@ -134,7 +168,7 @@ public class OServerNetworkListener extends Thread {
   @Override
   public void run() {
     try {
-      while (active) {
+      while (active && !serverSocket.isClosed()) {
         try {
           // listen for and accept a client connection to serverSocket
           final Socket socket = serverSocket.accept();
@@ -146,6 +180,12 @@ public class OServerNetworkListener extends Thread {
           // CREATE A NEW PROTOCOL INSTANCE
           protocol = protocolType.newInstance();
 
+          if (dispatcher != null) {
+            // THE CONNECTION WILL BE SERVED BY THE SELECTORS, NOT BY ITS OWN THREAD
+            socket.getChannel().configureBlocking(false);
+            protocol.setDispatched(true);
+          }
+
           // CONFIGURE THE PROTOCOL FOR THE INCOMING CONNECTION
           protocol.config(server, socket, configuration);
 
@@ -155,8 +195,11 @@ public class OServerNetworkListener extends Thread {
               protocol.registerCommand(c);
             }
 
+          if (dispatcher != null)
+            dispatcher.register(protocol);
+
         } catch (Throwable e) {
-          if (active)
+          if (active && !serverSocket.isClosed())
             OLogManager.instance().error(this, "Error on client connection", e);
         } finally {
         }
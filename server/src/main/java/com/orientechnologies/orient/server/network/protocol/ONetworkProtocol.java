@@ -24,7 +24,9 @@ import com.orientechnologies.orient.enterprise.channel.OChannel;
 import com.orientechnologies.orient.server.OServer;
 
 public abstract class ONetworkProtocol extends OSoftThread {
-  protected OServer server;
+  protected OServer        server;
+  private boolean          dispatched        = false;
+  private volatile boolean shutdownRequested = false;
 
   public ONetworkProtocol(ThreadGroup group, String name) {
     super(group, name);
@@ -49,4 +51,36 @@ public abstract class ONetworkProtocol extends OSoftThread {
   public OServer getServer() {
     return server;
   }
+
+  /**
+   * Tells if the requests are dispatched by the selector of the listener (see {@link #executeNext()}) instead of being read by
+   * the protocol's own thread.
+   */
+  public boolean isDispatched() {
+    return dispatched;
+  }
+
+  /**
+   * Must be called before {@link #config(OServer, Socket, OContextConfiguration)}: dispatched protocols don't start their thread.
+   */
+  public void setDispatched(final boolean iDispatched) {
+    dispatched = iDispatched;
+  }
+
+  /**
+   * Serves the next request in the calling thread. Used by the selector of the listener when data is available on the socket.
+   */
+  public void executeNext() throws Exception {
+    execute();
+  }
+
+  @Override
+  public void sendShutdown() {
+    shutdownRequested = true;
+    super.sendShutdown();
+  }
+
+  public boolean isShutdownRequested() {
+    return shutdownRequested;
+  }
 }
@@ -61,6 +61,7 @@ public abstract class OBinaryNetworkProtocolAbstract extends ONetworkProtocol {
   protected OChannelBinaryServer channel;
   protected int                  requestType;
   protected int                  clientTxId;
+  protected int                  clientRequestId;
   private final Level            logClientExceptions;
   private final boolean          logClientFullStackTrace;
 
@@ -105,6 +106,7 @@ public abstract class OBinaryNetworkProtocolAbstract extends ONetworkProtocol {
     requestType = -1;
 
     clientTxId = 0;
+    clientRequestId = -1;
 
     try {
       requestType = channel.readByte();
@@ -147,6 +149,8 @@ public abstract class OBinaryNetworkProtocolAbstract extends ONetworkProtocol {
   protected void sendOk(final int iClientTxId) throws IOException {
     channel.writeByte(OChannelBinaryProtocol.RESPONSE_STATUS_OK);
     channel.writeInt(iClientTxId);
+    if (clientRequestId > -1)
+      channel.writeInt(clientRequestId);
   }
 
   protected void sendError(final int iClientTxId, final Throwable t) throws IOException {
@@ -155,6 +159,8 @@ public abstract class OBinaryNetworkProtocolAbstract extends ONetworkProtocol {
     try {
       channel.writeByte(OChannelBinaryProtocol.RESPONSE_STATUS_ERROR);
       channel.writeInt(iClientTxId);
+      if (clientRequestId > -1)
+        channel.writeInt(clientRequestId);
 
       Throwable current;
       if (t instanceof OLockException && t.getCause() instanceof ODatabaseException)
@@ -18,13 +18,17 @@ package com.orientechnologies.orient.server.network.protocol.binary;
 import java.io.IOException;
 import java.net.Socket;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
 import com.orientechnologies.common.io.OIOException;
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.command.OCommandExecutor;
+import com.orientechnologies.orient.core.command.OCommandManager;
 import com.orientechnologies.orient.core.command.OCommandRequestInternal;
 import com.orientechnologies.orient.core.command.OCommandRequestText;
 import com.orientechnologies.orient.core.command.OCommandResultListener;
@@ -38,7 +42,9 @@ import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.db.raw.ODatabaseRaw;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.exception.OCommandExecutionException;
 import com.orientechnologies.orient.core.exception.OConfigurationException;
+import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
 import com.orientechnologies.orient.core.exception.OSecurityAccessException;
 import com.orientechnologies.orient.core.exception.OSecurityException;
 import com.orientechnologies.orient.core.exception.OStorageException;
@@ -51,6 +57,8 @@ import com.orientechnologies.orient.core.fetch.remote.ORemoteFetchListener;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.metadata.security.ODatabaseSecurityResources;
+import com.orientechnologies.orient.core.metadata.security.ORole;
 import com.orientechnologies.orient.core.metadata.security.OUser;
 import com.orientechnologies.orient.core.query.OQuery;
 import com.orientechnologies.orient.core.record.ORecord;
@@ -59,6 +67,8 @@ import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.record.impl.ORecordBytes;
 import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerStringAbstract;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerAnyStreamable;
+import com.orientechnologies.orient.core.sql.OCommandExecutorSQLDelegate;
+import com.orientechnologies.orient.core.sql.OCommandExecutorSQLSelect;
 import com.orientechnologies.orient.core.storage.OCluster;
 import com.orientechnologies.orient.core.storage.OStorageProxy;
 import com.orientechnologies.orient.core.storage.impl.memory.OStorageMemory;
@@ -79,6 +89,7 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
   protected OUser             account;
 
   private String              dbType;
+  private short               clientProtocolVersion = -1;
 
   public ONetworkProtocolBinary() {
     super("OrientDB <- BinaryClient/?");
@@ -98,7 +109,8 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
     // SEND PROTOCOL VERSION
     channel.writeShort((short) OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION);
     channel.flush();
-    start();
+    if (!isDispatched())
+      start();
 
     setName("OrientDB <- BinaryClient (" + iSocket.getRemoteSocketAddress() + ")");
   }
@@ -119,6 +131,14 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
         connection.data.protocolVersion = protocolId;
     }
 
+    if (connection != null && connection.data.protocolVersion > -1)
+      // ALL THE SESSIONS SERVED BY A SOCKET BELONG TO THE SAME CLIENT: REMEMBER ITS VERSION ALSO FOR THE SESSIONS EXPIRED LATER
+      clientProtocolVersion = connection.data.protocolVersion;
+
+    if (clientTxId > 0 && clientProtocolVersion >= 13)
+      // THE CLIENT TAGS THE REQUESTS OF OPEN SESSIONS, EVEN IF EXPIRED ON THE SERVER: THE ID IS SENT BACK WITH THE RESPONSE
+      clientRequestId = channel.readInt();
+
     if (connection != null) {
       ODatabaseRecordThreadLocal.INSTANCE.set(connection.database);
       ++connection.data.totalRequests;
@@ -130,6 +150,13 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
         shutdown();
         throw new OIOException("Found unknown session " + clientTxId);
       }
+
+      if (clientTxId > 0 && clientProtocolVersion < 0) {
+        // NO SESSION OF THE CLIENT SEEN ON THIS SOCKET: IT'S UNKNOWN IF THE REQUEST IS TAGGED, SO THE NEXT REQUESTS COULD BE READ
+        // OUT OF FRAME. DROP THE SOCKET, THE CLIENT OPENS A NEW ONE
+        shutdown();
+        throw new OIOException("Found unknown session " + clientTxId + " on a socket with unknown protocol version");
+      }
     }
 
     OServerHandlerHelper.invokeHandlerCallbackOnBeforeClientRequest(connection, (byte) requestType);
@@ -250,6 +277,18 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
       readRecord();
       break;
 
+    case OChannelBinaryProtocol.REQUEST_RECORD_LOAD_MULTI:
+      readRecords();
+      break;
+
+    case OChannelBinaryProtocol.REQUEST_CURSOR_FETCH:
+      fetchCursor();
+      break;
+
+    case OChannelBinaryProtocol.REQUEST_CURSOR_CLOSE:
+      closeCursor();
+      break;
+
     case OChannelBinaryProtocol.REQUEST_RECORD_CREATE:
       createRecord();
       break;
@@ -934,7 +973,9 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
   protected void command() throws IOException {
     setDataCommandInfo("Execute remote command");
 
-    final boolean asynch = channel.readByte() == 'a';
+    final byte mode = channel.readByte();
+    final boolean asynch = mode == 'a';
+    final int pageSize = mode == 'c' ? channel.readInt() : -1;
 
     final OCommandRequestText command = (OCommandRequestText) OStreamSerializerAnyStreamable.INSTANCE.fromStream(channel
         .readBytes());
@@ -943,6 +984,11 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
 
     connection.data.commandDetail = command.getText();
 
+    if (mode == 'c') {
+      openCursor(command, pageSize);
+      return;
+    }
+
     // ENABLES THE CACHE TO IMPROVE PERFORMANCE OF COMPLEX COMMANDS LIKE TRAVERSE
     // connection.database.getLevel1Cache().setEnable(true);
     beginResponse();
@@ -1034,6 +1080,122 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
     }
   }
 
+  /**
+   * Opens a cursor on the query and sends its first page. If the query has more results the cursor is kept open by the connection
+   * until the client fetches all the pages, closes it or it expires.
+   */
+  protected void openCursor(final OCommandRequestText iCommand, final int iPageSize) throws IOException {
+    connection.database.command(iCommand);
+
+    final OCommandExecutor executor = OCommandManager.instance().getExecutor(iCommand);
+    executor.setProgressListener(iCommand.getProgressListener());
+    executor.parse(iCommand);
+
+    if (iCommand.isIdempotent() && !executor.isIdempotent())
+      throw new OCommandExecutionException("Cannot execute non idempotent command");
+
+    final OCommandExecutor delegate = executor instanceof OCommandExecutorSQLDelegate ? ((OCommandExecutorSQLDelegate) executor)
+        .getDelegate() : executor;
+
+    final OQueryCursor cursor;
+    if (delegate instanceof OCommandExecutorSQLSelect) {
+      ((OCommandExecutorSQLSelect) delegate).openCursor(iCommand.getParameters());
+      cursor = new OQueryCursor(iCommand, (OCommandExecutorSQLSelect) delegate);
+    } else {
+      // NOT A SELECT: EXECUTE IT AT ONCE AND SEND THE RESULT IN PAGES
+      final Object result = executor.execute(iCommand.getParameters());
+      if (result instanceof Collection<?>)
+        cursor = new OQueryCursor(iCommand, ((Collection<?>) result).iterator());
+      else
+        cursor = new OQueryCursor(iCommand, Collections.singletonList(result).iterator());
+    }
+
+    final List<OIdentifiable> page = cursor.fetch(iPageSize);
+    final int cursorId = cursor.isEnd() ? -1 : connection.addCursor(cursor);
+
+    beginResponse();
+    try {
+      sendOk(clientTxId);
+      writeCursorPage(cursor, page, cursorId);
+    } finally {
+      endResponse();
+    }
+  }
+
+  protected void fetchCursor() throws IOException {
+    setDataCommandInfo("Fetch cursor");
+
+    int cursorId = channel.readInt();
+    final int pageSize = channel.readInt();
+
+    final OQueryCursor cursor = connection.getCursor(cursorId);
+    if (cursor == null)
+      throw new OCommandExecutionException("Cursor " + cursorId + " not found: it has been closed or it is expired");
+
+    connection.data.commandDetail = cursor.getCommand().getText();
+
+    final List<OIdentifiable> page = cursor.fetch(pageSize);
+    if (cursor.isEnd()) {
+      connection.removeCursor(cursorId);
+      cursorId = -1;
+    }
+
+    beginResponse();
+    try {
+      sendOk(clientTxId);
+      writeCursorPage(cursor, page, cursorId);
+    } finally {
+      endResponse();
+    }
+  }
+
+  protected void closeCursor() throws IOException {
+    setDataCommandInfo("Close cursor");
+
+    connection.removeCursor(channel.readInt());
+
+    beginResponse();
+    try {
+      sendOk(clientTxId);
+    } finally {
+      endResponse();
+    }
+  }
+
+  /**
+   * Writes the records of the page followed by the records to load in the client cache according to the fetch plan and the id of
+   * the cursor, or -1 if the cursor is at the end and has been closed.
+   */
+  protected void writeCursorPage(final OQueryCursor iCursor, final List<OIdentifiable> iPage, final int iCursorId)
+      throws IOException {
+    final OCommandRequestText command = iCursor.getCommand();
+    final String fetchPlanString = command instanceof OQuery<?> ? ((OQuery<?>) command).getFetchPlan() : null;
+    final Map<String, Integer> fetchPlan = fetchPlanString != null && fetchPlanString.length() > 0 ? OFetchHelper
+        .buildFetchPlan(fetchPlanString) : null;
+    final Set<ODocument> recordsToSend = new HashSet<ODocument>();
+
+    for (OIdentifiable o : iPage) {
+      channel.writeByte((byte) 1); // ONE MORE RECORD
+      writeIdentifiable(o);
+
+      if (fetchPlan != null && o instanceof ODocument) {
+        final ODocument doc = (ODocument) o;
+        final OFetchListener listener = new ORemoteFetchListener(recordsToSend);
+        final OFetchContext context = new ORemoteFetchContext();
+        OFetchHelper.fetch(doc, doc, fetchPlan, listener, context);
+      }
+    }
+
+    // SEND RECORDS TO LOAD IN CLIENT CACHE
+    for (ODocument doc : recordsToSend) {
+      channel.writeByte((byte) 2); // CLIENT CACHE RECORD. IT ISN'T PART OF THE RESULT SET
+      writeIdentifiable(doc);
+    }
+
+    channel.writeByte((byte) 0); // NO MORE RECORDS
+    channel.writeInt(iCursorId);
+  }
+
   /**
    * Use DATACLUSTER_COUNT
    * 
@@ -1210,6 +1372,85 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
     }
   }
 
+  /**
+   * Loads a list of records. Each record is written as soon as it's loaded, so the client can start to consume the first ones while
+   * the others are still being read.
+   */
+  protected void readRecords() throws IOException {
+    setDataCommandInfo("Load records");
+
+    final int total = channel.readInt();
+    final ORecordId[] rids = new ORecordId[total];
+    for (int i = 0; i < total; ++i)
+      rids[i] = channel.readRID();
+    final String fetchPlanString = channel.readString();
+    final boolean ignoreCache = channel.readByte() == 1;
+
+    // CHECK SECURITY AND FETCH PLAN BEFORE TO START THE RESPONSE, ONCE STARTED ERRORS CAN BE ONLY SENT PER RECORD
+    OFetchHelper.checkFetchPlanValid(fetchPlanString);
+    for (ORecordId rid : rids)
+      connection.database.checkSecurity(ODatabaseSecurityResources.CLUSTER, ORole.PERMISSION_READ,
+          connection.database.getClusterNameById(rid.getClusterId()));
+
+    final Map<String, Integer> fetchPlan = fetchPlanString.length() > 0 ? OFetchHelper.buildFetchPlan(fetchPlanString) : null;
+    final Set<ODocument> recordsToSend = fetchPlan != null ? new HashSet<ODocument>() : null;
+
+    beginResponse();
+    try {
+      sendOk(clientTxId);
+
+      for (ORecordId rid : rids) {
+        final ORecordInternal<?> record;
+        try {
+          record = connection.database.load(rid, fetchPlanString, ignoreCache);
+        } catch (ORecordNotFoundException e) {
+          // THE MEMORY STORAGE THROWS IT FOR THE POSITIONS PAST THE END OF THE CLUSTER
+          channel.writeByte((byte) 0); // NOT FOUND
+          continue;
+        } catch (Exception e) {
+          OLogManager.instance().error(this, "Error on loading record %s", e, rid);
+          channel.writeByte((byte) -1); // ERROR
+          channel.writeString(e.getClass().getName());
+          channel.writeString(e.getMessage());
+          continue;
+        }
+
+        if (record == null) {
+          channel.writeByte((byte) 0); // NOT FOUND
+          continue;
+        }
+
+        channel.writeByte((byte) 1); // HAS RECORD
+        channel.writeBytes(record.toStream());
+        channel.writeInt(record.getVersion());
+        channel.writeByte(record.getRecordType());
+
+        if (fetchPlan != null && record instanceof ODocument) {
+          // BUILD THE SERVER SIDE RECORD TO ACCES TO THE FETCH PLAN
+          final ODocument doc = (ODocument) record;
+          final OFetchListener listener = new ORemoteFetchListener(recordsToSend);
+          final OFetchContext context = new ORemoteFetchContext();
+          OFetchHelper.fetch(doc, doc, fetchPlan, listener, context);
+        }
+      }
+
+      if (recordsToSend != null)
+        // SEND RECORDS TO LOAD IN CLIENT CACHE
+        for (ODocument d : recordsToSend) {
+          if (d.getIdentity().isValid()) {
+            channel.writeByte((byte) 2); // CLIENT CACHE
+            // RECORD. IT ISN'T PART OF THE RESULT SET
+            writeIdentifiable(d);
+          }
+        }
+
+      channel.writeByte((byte) 0); // NO MORE RECORDS
+
+    } finally {
+      endResponse();
+    }
+  }
+
   protected void endResponse() throws IOException {
     channel.flush();
     channel.releaseExclusiveLock();
@@ -1228,6 +1469,7 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
     connection.data.driverName = channel.readString();
     connection.data.driverVersion = channel.readString();
     connection.data.protocolVersion = channel.readShort();
+    clientProtocolVersion = connection.data.protocolVersion;
     connection.data.clientId = channel.readString();
   }
 
@@ -1267,11 +1509,6 @@ public class ONetworkProtocolBinary extends OBinaryNetworkProtocolAbstract {
     OClientConnectionManager.instance().disconnect(connection);
   }
 
-  protected void sendOk(final int iClientTxId) throws IOException {
-    channel.writeByte(OChannelBinaryProtocol.RESPONSE_STATUS_OK);
-    channel.writeInt(iClientTxId);
-  }
-
   private void listDatabases() throws IOException {
     checkServerAccess("server.dblist");
     final ODocument result = new ODocument();
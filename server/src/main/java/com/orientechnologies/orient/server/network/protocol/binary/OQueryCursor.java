@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.network.protocol.binary;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.orientechnologies.orient.core.command.OCommandRequestText;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.sql.OCommandExecutorSQLSelect;
+
+/**
+ * Query kept open on the server between the requests of the client that fetch its results in pages. SELECT queries are executed
+ * while the pages are fetched, the result of the other commands is computed at once and only sent in pages.
+ * 
+ * @author Luca Garulli
+ * 
+ */
+public class OQueryCursor {
+  private final OCommandRequestText       command;
+  private final OCommandExecutorSQLSelect select;
+  private final Iterator<?>               result;
+  private long                            lastUsedOn;
+
+  public OQueryCursor(final OCommandRequestText iCommand, final OCommandExecutorSQLSelect iSelect) {
+    command = iCommand;
+    select = iSelect;
+    result = null;
+    lastUsedOn = System.currentTimeMillis();
+  }
+
+  public OQueryCursor(final OCommandRequestText iCommand, final Iterator<?> iResult) {
+    command = iCommand;
+    select = null;
+    result = iResult;
+    lastUsedOn = System.currentTimeMillis();
+  }
+
+  public synchronized List<OIdentifiable> fetch(final int iMaxResults) {
+    lastUsedOn = System.currentTimeMillis();
+
+    if (select != null)
+      return select.fetchPage(iMaxResults);
+
+    final List<OIdentifiable> page = new ArrayList<OIdentifiable>();
+    while (page.size() < iMaxResults && result.hasNext()) {
+      final Object o = result.next();
+      if (o instanceof OIdentifiable)
+        page.add((OIdentifiable) o);
+    }
+    return page;
+  }
+
+  public synchronized boolean isEnd() {
+    return select != null ? select.isCursorEnd() : !result.hasNext();
+  }
+
+  /**
+   * Releases the resources of the query. Called when the cursor is closed by the client, expires or its connection is closed.
+   */
+  public synchronized void close() {
+    if (select != null)
+      select.closeCursor();
+  }
+
+  public OCommandRequestText getCommand() {
+    return command;
+  }
+
+  public long getLastUsedOn() {
+    return lastUsedOn;
+  }
+}
@@ -432,6 +432,7 @@ public abstract class ONetworkProtocolHttpAbstract extends ONetworkProtocol {
     connection.data.commandInfo = "Listening";
     connection.data.commandDetail = null;
 
+    long timer = -1;
     try {
       channel.socket.setSoTimeout(socketTimeout);
       connection.data.lastCommandReceived = -1;
@@ -444,7 +445,8 @@ public abstract class ONetworkProtocolHttpAbstract extends ONetworkProtocol {
       }
 
       channel.socket.setSoTimeout(socketTimeout);
-      connection.data.lastCommandReceived = Orient.instance().getProfiler().startChrono();
+      connection.data.lastCommandReceived = System.currentTimeMillis();
+      timer = Orient.instance().getProfiler().startChrono();
 
       requestContent.setLength(0);
       request.isMultipart = false;
@@ -517,9 +519,8 @@ public abstract class ONetworkProtocolHttpAbstract extends ONetworkProtocol {
 
       readAllContent(request);
     } finally {
-      if (connection.data.lastCommandReceived > -1)
-        Orient.instance().getProfiler()
-            .stopChrono("server.http." + listeningAddress + ".request", connection.data.lastCommandReceived);
+      if (timer > -1)
+        Orient.instance().getProfiler().stopChrono("server.http." + listeningAddress + ".request", timer);
     }
   }
 
@@ -15,11 +15,15 @@
  */
 package com.orientechnologies.orient.server.task;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.concurrent.Callable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
@@ -199,4 +203,51 @@ public abstract class OAbstractDistributedTask<T> implements Callable<T>, Extern
     if (!inheritedDatabase)
       iDatabase.close();
   }
+
+  /**
+   * Writes a block of bytes compressed with deflate.
+   */
+  protected static void writeCompressed(final ObjectOutput out, final byte[] iContent) throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream(iContent.length / 2 + 64);
+    final byte[] buffer = new byte[8192];
+
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(iContent);
+      deflater.finish();
+      while (!deflater.finished())
+        compressed.write(buffer, 0, deflater.deflate(buffer));
+    } finally {
+      deflater.end();
+    }
+
+    out.writeInt(iContent.length);
+    out.writeInt(compressed.size());
+    out.write(compressed.toByteArray());
+  }
+
+  /**
+   * Reads a block of bytes written by {@link #writeCompressed(ObjectOutput, byte[])}.
+   */
+  protected static byte[] readCompressed(final ObjectInput in) throws IOException {
+    final byte[] content = new byte[in.readInt()];
+    final byte[] compressed = new byte[in.readInt()];
+    in.readFully(compressed);
+
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      for (int read = 0; read < content.length;) {
+        final int inflated = inflater.inflate(content, read, content.length - read);
+        if (inflated == 0 && (inflater.finished() || inflater.needsInput()))
+          throw new IOException("Compressed block is truncated: " + read + " bytes read of " + content.length);
+        read += inflated;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Compressed block is corrupted: " + e.getMessage());
+    } finally {
+      inflater.end();
+    }
+    return content;
+  }
 }
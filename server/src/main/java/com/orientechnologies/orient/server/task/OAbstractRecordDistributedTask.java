@@ -87,7 +87,7 @@ public abstract class OAbstractRecordDistributedTask<T> extends OAbstractDistrib
     else
       operationLogOffset = -1;
 
-    ODistributedThreadLocal.INSTANCE.distributedExecution = true;
+    ODistributedThreadLocal.INSTANCE.set(Boolean.TRUE);
     try {
       // EXECUTE IT LOCALLY
       final T localResult = executeOnLocalNode(dbSynchronizer);
@@ -128,7 +128,7 @@ public abstract class OAbstractRecordDistributedTask<T> extends OAbstractDistrib
       return null;
 
     } finally {
-      ODistributedThreadLocal.INSTANCE.distributedExecution = false;
+      ODistributedThreadLocal.INSTANCE.set(Boolean.FALSE);
     }
   }
 
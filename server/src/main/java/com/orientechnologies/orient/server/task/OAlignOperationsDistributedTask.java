@@ -0,0 +1,258 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.OStorage;
+import com.orientechnologies.orient.server.OServerMain;
+import com.orientechnologies.orient.server.distributed.ODistributedException;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
+import com.orientechnologies.orient.server.distributed.OStorageSynchronizer;
+
+/**
+ * Compressed chunk of journal operations sent to a node that is aligning. The record operations are applied by the alignment
+ * threads of the database, one cluster per thread, so the operations against the same record are applied in the order of the
+ * journal. The other operations, like SQL commands, are applied alone once the operations before them are done.<br/>
+ * The operations the node already has, because they were sent again or are contained in a snapshot, are skipped.
+ */
+public class OAlignOperationsDistributedTask extends OAbstractDistributedTask<Integer> {
+  private static final long                 serialVersionUID = 1L;
+
+  private List<OAbstractDistributedTask<?>> tasks            = new ArrayList<OAbstractDistributedTask<?>>();
+  private long                              total;
+  private long                              sent;
+
+  public OAlignOperationsDistributedTask() {
+  }
+
+  /**
+   * @param iTotal
+   *          Number of operations to send by the whole alignment
+   */
+  public OAlignOperationsDistributedTask(final String nodeSource, final String iDbName, final EXECUTION_MODE iMode,
+      final long iTotal) {
+    super(nodeSource, iDbName, iMode);
+    total = iTotal;
+  }
+
+  @Override
+  public Integer call() throws Exception {
+    OLogManager.instance().warn(this, "DISTRIBUTED <-[%s/%s] aligning %d operation(s), %d of %d already received", nodeSource,
+        databaseName, tasks.size(), sent, total);
+
+    final OStorageSynchronizer dbSynchronizer = getDatabaseSynchronizer();
+    final long start = Orient.instance().getProfiler().startChrono();
+
+    int applied = 0;
+    int begin = 0;
+    for (int i = 0; i <= tasks.size(); ++i)
+      if (i == tasks.size() || !(tasks.get(i) instanceof OAbstractRecordDistributedTask<?>)) {
+        applied += applyRecordOperations(tasks.subList(begin, i), dbSynchronizer.getAlignmentExecutor());
+
+        if (i < tasks.size()) {
+          tasks.get(i).call();
+          applied++;
+        }
+        begin = i + 1;
+      }
+
+    dbSynchronizer.setAlignmentLag(Math.max(0, total - sent - tasks.size()));
+
+    Orient.instance().getProfiler().updateCounter("distributed." + databaseName + ".alignment.applied", applied);
+    Orient.instance().getProfiler().stopChrono("distributed." + databaseName + ".alignment.chunk", start);
+
+    return applied;
+  }
+
+  @Override
+  public void writeExternal(final ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeLong(total);
+    out.writeLong(sent);
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final ObjectOutputStream stream = new ObjectOutputStream(buffer);
+    stream.writeInt(tasks.size());
+    for (int i = 0; i < tasks.size(); ++i)
+      stream.writeObject(tasks.get(i));
+    stream.close();
+
+    writeCompressed(out, buffer.toByteArray());
+  }
+
+  @Override
+  public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    total = in.readLong();
+    sent = in.readLong();
+
+    final ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(readCompressed(in)));
+    final int taskSize = stream.readInt();
+    for (int i = 0; i < taskSize; ++i)
+      tasks.add((OAbstractDistributedTask<?>) stream.readObject());
+    stream.close();
+  }
+
+  @Override
+  public String getName() {
+    return "align_operations";
+  }
+
+  @Override
+  public String toString() {
+    return getName() + "(" + tasks.size() + " operations)";
+  }
+
+  public int getTasks() {
+    return tasks.size();
+  }
+
+  public void addTask(final OAbstractDistributedTask<?> operation) {
+    tasks.add(operation);
+  }
+
+  public OAbstractDistributedTask<?> getTask(final int i) {
+    return tasks.get(i);
+  }
+
+  /**
+   * Removes the operations sent, counting them as received by the node that is aligning.
+   */
+  public void clearTasks() {
+    sent += tasks.size();
+    tasks.clear();
+  }
+
+  /**
+   * Applies the record operations in parallel, one cluster per thread.
+   *
+   * @return The number of operations applied
+   */
+  protected int applyRecordOperations(final List<OAbstractDistributedTask<?>> iOperations, final ExecutorService iExecutor)
+      throws InterruptedException {
+    if (iOperations.isEmpty())
+      return 0;
+
+    // GROUP THE OPERATIONS BY CLUSTER KEEPING THEIR ORDER
+    final Map<Integer, List<OAbstractRecordDistributedTask<?>>> clusters;
+    clusters = new LinkedHashMap<Integer, List<OAbstractRecordDistributedTask<?>>>();
+    for (OAbstractDistributedTask<?> operation : iOperations) {
+      final OAbstractRecordDistributedTask<?> recordOperation = (OAbstractRecordDistributedTask<?>) operation;
+      List<OAbstractRecordDistributedTask<?>> clusterOperations = clusters.get(recordOperation.getRid().getClusterId());
+      if (clusterOperations == null) {
+        clusterOperations = new ArrayList<OAbstractRecordDistributedTask<?>>();
+        clusters.put(recordOperation.getRid().getClusterId(), clusterOperations);
+      }
+      clusterOperations.add(recordOperation);
+    }
+
+    final List<Future<Integer>> futures = new ArrayList<Future<Integer>>(clusters.size());
+    for (List<OAbstractRecordDistributedTask<?>> clusterOperations : clusters.values())
+      futures.add(iExecutor.submit(new ClusterAlignment(clusterOperations)));
+
+    int applied = 0;
+    Throwable error = null;
+    for (Future<Integer> future : futures)
+      try {
+        if (error != null)
+          // THE CLUSTERS NOT STARTED YET ARE SKIPPED, THE OTHERS ARE WAITED FOR BEFORE THE NEXT OPERATIONS
+          future.cancel(false);
+        if (!future.isCancelled())
+          applied += future.get();
+      } catch (ExecutionException e) {
+        if (error == null)
+          error = e.getCause();
+      }
+
+    if (error != null)
+      throw new ODistributedException("Error on applying the operations of the alignment", error);
+    return applied;
+  }
+
+  /**
+   * Tells if the node already has the result of the operation.
+   */
+  protected static boolean isAlreadyApplied(final OStorage iStorage, final OAbstractRecordDistributedTask<?> iOperation) {
+    final ORecordId rid = iOperation.getRid();
+    // THE POSITIONS AFTER THE LAST ONE OF THE CLUSTER ARE EMPTY: SOME STORAGES REFUSE TO READ THEM
+    final ORawBuffer record = rid.clusterPosition > iStorage.getClusterDataRange(rid.clusterId)[1] ? null : iStorage.readRecord(
+        rid, null, false, null);
+
+    if (iOperation instanceof OCreateRecordDistributedTask)
+      return record != null;
+    else if (iOperation instanceof OUpdateRecordDistributedTask)
+      return record != null && record.version > iOperation.getVersion();
+    else if (iOperation instanceof ODeleteRecordDistributedTask)
+      return record == null;
+    return false;
+  }
+
+  /**
+   * Applies in order the operations against the records of a cluster, with a database of its own the operations share.
+   */
+  private class ClusterAlignment implements Callable<Integer> {
+    private final List<OAbstractRecordDistributedTask<?>> operations;
+
+    private ClusterAlignment(final List<OAbstractRecordDistributedTask<?>> iOperations) {
+      operations = iOperations;
+    }
+
+    public Integer call() throws Exception {
+      final ODatabaseDocumentTx database = (ODatabaseDocumentTx) OServerMain.server().openDatabase("document", databaseName,
+          replicatorUser.name, replicatorUser.password);
+      try {
+        final OStorage storage = Orient.instance().getStorage(databaseName);
+
+        int applied = 0;
+        for (OAbstractRecordDistributedTask<?> operation : operations) {
+          if (isAlreadyApplied(storage, operation)) {
+            if (OLogManager.instance().isDebugEnabled())
+              OLogManager.instance().debug(this, "DISTRIBUTED <-[%s/%s] skipped operation already applied %s", nodeSource,
+                  databaseName, operation);
+            continue;
+          }
+
+          operation.call();
+          applied++;
+        }
+        return applied;
+
+      } finally {
+        database.close();
+      }
+    }
+  }
+}
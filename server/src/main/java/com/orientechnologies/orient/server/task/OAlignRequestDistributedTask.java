@@ -19,28 +19,37 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.metadata.OMetadata;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.OStorage;
 import com.orientechnologies.orient.server.distributed.ODistributedServerManager;
 import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
 import com.orientechnologies.orient.server.distributed.OStorageSynchronizer;
 import com.orientechnologies.orient.server.journal.ODatabaseJournal;
 
 /**
- * Distributed align request task used for synchronization.
+ * Distributed align request task used for synchronization. The operations in the journal after the last one of the requester
+ * node are sent in compressed chunks; when they are too many the records of the clusters are sent instead, followed by the
+ * operations executed in the meantime.
  * 
  * @author Luca Garulli (l.garulli--at--orientechnologies.com)
  * 
  */
 public class OAlignRequestDistributedTask extends OAbstractDistributedTask<Integer> {
-  private static final long  serialVersionUID = 1L;
+  private static final long         serialVersionUID  = 1L;
+  private static final List<String> METADATA_CLUSTERS = Arrays.asList(OMetadata.CLUSTER_INTERNAL_NAME,
+                                                          OMetadata.CLUSTER_INDEX_NAME, OMetadata.CLUSTER_MANUAL_INDEX_NAME);
 
-  protected long             lastRunId;
-  protected long             lastOperationId;
-  protected static final int OP_BUFFER        = 150;
+  protected long                    lastRunId;
+  protected long                    lastOperationId;
 
   public OAlignRequestDistributedTask() {
   }
@@ -74,12 +83,27 @@ public class OAlignRequestDistributedTask extends OAbstractDistributedTask<Integ
     if (alignmentLock.tryLock())
       try {
         aligned = 0;
-        final OMultipleDistributedTasks tasks = new OMultipleDistributedTasks(localNode, databaseName, EXECUTION_MODE.SYNCHRONOUS);
-        final List<Long> positions = new ArrayList<Long>();
 
-        for (Iterator<Long> it = log.browse(new long[] { lastRunId, lastOperationId }); it.hasNext();) {
-          final long pos = it.next();
+        List<Long> operations = browse(log, new long[] { lastRunId, lastOperationId });
+
+        final int snapshotThreshold = synchronizer.getAlignmentSnapshotThreshold();
+        if (snapshotThreshold > 0 && operations.size() > snapshotThreshold) {
+          // TOO MANY OPERATIONS TO REPLAY: SEND THE RECORDS, THEN THE OPERATIONS EXECUTED WHILE THEY ARE SENT
+          final long[] snapshotOperationId = log.getLastOperationId();
+
+          OLogManager.instance().warn(this, "DISTRIBUTED ->[%s/%s] %d operations to align: sending the snapshot of the clusters",
+              nodeSource, databaseName, operations.size());
 
+          aligned += sendSnapshot(dManager, synchronizer, snapshotOperationId);
+          operations = browse(log, snapshotOperationId);
+        }
+
+        final OAlignOperationsDistributedTask tasks = new OAlignOperationsDistributedTask(localNode, databaseName,
+            EXECUTION_MODE.SYNCHRONOUS, operations.size());
+        final List<Long> positions = new ArrayList<Long>();
+        final int chunkSize = synchronizer.getAlignmentChunkSize();
+
+        for (long pos : operations) {
           final OAbstractDistributedTask<?> operation = log.getOperation(pos);
           if (operation == null) {
             OLogManager.instance().warn(this, "DISTRIBUTED ->[%s/%s] skipped operation #%d.%d", nodeSource, databaseName,
@@ -87,7 +111,8 @@ public class OAlignRequestDistributedTask extends OAbstractDistributedTask<Integ
             continue;
           }
 
-          OLogManager.instance().warn(this, "DISTRIBUTED ->[%s/%s] operation %s", nodeSource, databaseName, operation);
+          if (OLogManager.instance().isDebugEnabled())
+            OLogManager.instance().debug(this, "DISTRIBUTED ->[%s/%s] operation %s", nodeSource, databaseName, operation);
 
           operation.setNodeSource(localNode);
           operation.setDatabaseName(databaseName);
@@ -96,7 +121,7 @@ public class OAlignRequestDistributedTask extends OAbstractDistributedTask<Integ
           tasks.addTask(operation);
           positions.add(pos);
 
-          if (tasks.getTasks() >= OP_BUFFER)
+          if (tasks.getTasks() >= chunkSize)
             aligned += flushBufferedTasks(dManager, synchronizer, tasks, positions);
         }
 
@@ -119,24 +144,113 @@ public class OAlignRequestDistributedTask extends OAbstractDistributedTask<Integ
   }
 
   protected int flushBufferedTasks(final ODistributedServerManager dManager, final OStorageSynchronizer synchronizer,
-      final OMultipleDistributedTasks tasks, final List<Long> positions) throws IOException {
+      final OAlignOperationsDistributedTask tasks, final List<Long> positions) throws IOException {
 
     // SEND TO THE REQUESTER NODE THE TASK TO EXECUTE
-    @SuppressWarnings("unused")
-    final Object[] result = (Object[]) dManager.sendOperation2Node(nodeSource, tasks);
+    dManager.sendOperation2Node(nodeSource, tasks);
 
     for (int i = 0; i < positions.size(); ++i)
       tasks.getTask(i).setAsCompleted(synchronizer, positions.get(i));
 
     final int aligned = tasks.getTasks();
+    Orient.instance().getProfiler().updateCounter("distributed." + databaseName + ".alignment.sent", aligned);
 
-    // REUSE THE MULTIPLE TASK
+    // REUSE THE CHUNK
     tasks.clearTasks();
     positions.clear();
 
     return aligned;
   }
 
+  /**
+   * Sends the records of all the clusters. The clusters of the metadata, of the indexes and of the manual indexes are sent first,
+   * so the requester node has the schema and the indexes of the records; it rebuilds the automatic indexes at the end.
+   * 
+   * @return The number of records sent
+   */
+  protected int sendSnapshot(final ODistributedServerManager dManager, final OStorageSynchronizer synchronizer,
+      final long[] iSnapshotOperationId) {
+    final String localNode = dManager.getLocalNodeId();
+    final OStorage storage = Orient.instance().getStorage(databaseName);
+    final int chunkSize = synchronizer.getAlignmentChunkSize();
+
+    final List<String> clusterNames = new ArrayList<String>();
+    for (String clusterName : METADATA_CLUSTERS)
+      if (storage.getClusterIdByName(clusterName) > -1)
+        clusterNames.add(clusterName);
+    for (String clusterName : storage.getClusterNames())
+      if (!METADATA_CLUSTERS.contains(clusterName.toLowerCase()))
+        clusterNames.add(clusterName);
+
+    final int[] clusterIds = new int[clusterNames.size()];
+    long total = 0;
+    for (int i = 0; i < clusterIds.length; ++i) {
+      clusterIds[i] = storage.getClusterIdByName(clusterNames.get(i));
+      total += storage.getClusterDataRange(clusterIds[i])[1] + 1;
+    }
+
+    int sent = 0;
+    int chunks = 0;
+    for (int c = 0; c < clusterIds.length; ++c) {
+      final String clusterName = clusterNames.get(c);
+      final int clusterId = clusterIds[c];
+      final long lastPosition = storage.getClusterDataRange(clusterId)[1];
+      final List<Long> holes = new ArrayList<Long>();
+
+      OAlignSnapshotDistributedTask chunk = new OAlignSnapshotDistributedTask(localNode, databaseName, iSnapshotOperationId,
+          chunks, clusterName, clusterId, 0, total, sent);
+      if (chunks == 0)
+        chunk.setSnapshotClusters(clusterNames.toArray(new String[clusterNames.size()]), clusterIds);
+
+      for (long position = 0; position <= lastPosition; ++position) {
+        final ORawBuffer record = storage.readRecord(new ORecordId(clusterId, position), null, false, null);
+        if (record == null)
+          holes.add(position);
+        chunk.addRecord(record);
+
+        if (chunk.getRecords() >= chunkSize && position < lastPosition) {
+          sent += sendSnapshotChunk(dManager, chunk);
+          chunk = new OAlignSnapshotDistributedTask(localNode, databaseName, iSnapshotOperationId, ++chunks, clusterName,
+              clusterId, position + 1, total, sent);
+        }
+      }
+
+      // THE LAST CHUNK OF THE CLUSTER, ALSO WHEN EMPTY TO REMOVE THE RECORDS OF THE REQUESTER NODE
+      final long[] holePositions = new long[holes.size()];
+      for (int i = 0; i < holePositions.length; ++i)
+        holePositions[i] = holes.get(i);
+      chunk.setHoles(holePositions);
+
+      sent += sendSnapshotChunk(dManager, chunk);
+      chunks++;
+    }
+
+    dManager.sendOperation2Node(nodeSource, new OAlignSnapshotDistributedTask(localNode, databaseName, iSnapshotOperationId,
+        chunks, storage.getConfiguration()));
+
+    OLogManager.instance().warn(this, "DISTRIBUTED ->[%s/%s] sent the snapshot of %d clusters, %d records, up to #%d.%d", nodeSource,
+        databaseName, clusterNames.size(), sent, iSnapshotOperationId[0], iSnapshotOperationId[1]);
+
+    return sent;
+  }
+
+  protected int sendSnapshotChunk(final ODistributedServerManager dManager, final OAlignSnapshotDistributedTask chunk) {
+    dManager.sendOperation2Node(nodeSource, chunk);
+
+    Orient.instance().getProfiler().updateCounter("distributed." + databaseName + ".alignment.snapshotSent", chunk.getRecords());
+    return chunk.getRecords();
+  }
+
+  /**
+   * Collects the positions in the journal of the operations after the one received.
+   */
+  protected static List<Long> browse(final ODatabaseJournal log, final long[] iLastOperationId) throws IOException {
+    final List<Long> positions = new ArrayList<Long>();
+    for (Iterator<Long> it = log.browse(iLastOperationId); it.hasNext();)
+      positions.add(it.next());
+    return positions;
+  }
+
   @Override
   public void writeExternal(final ObjectOutput out) throws IOException {
     super.writeExternal(out);
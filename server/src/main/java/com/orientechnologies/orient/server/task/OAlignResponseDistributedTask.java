@@ -22,6 +22,7 @@ import java.io.ObjectOutput;
 import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.orient.server.distributed.ODistributedServerManager;
 import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
+import com.orientechnologies.orient.server.distributed.OStorageSynchronizer;
 
 /**
  * Distributed align response task to communicate the result of alignment.
@@ -56,6 +57,10 @@ public class OAlignResponseDistributedTask extends OAbstractDistributedTask<Inte
       // ALIGNMENT DONE
       OLogManager.instance().warn(this, "DISTRIBUTED <-[%s/%s] alignment ended: %d operation(s)", nodeSource, databaseName, aligned);
 
+      final OStorageSynchronizer dbSynchronizer = getDatabaseSynchronizer();
+      if (dbSynchronizer != null)
+        dbSynchronizer.setAlignmentLag(0);
+
       dManager.endAlignment(nodeSource, databaseName);
     }
     return null;
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OStorageConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.metadata.schema.OSchemaProxy;
+import com.orientechnologies.orient.core.record.impl.ORecordBytes;
+import com.orientechnologies.orient.core.storage.OCluster;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.OStorage;
+import com.orientechnologies.orient.server.distributed.ODistributedException;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
+import com.orientechnologies.orient.server.distributed.ODistributedThreadLocal;
+import com.orientechnologies.orient.server.distributed.OStorageSynchronizer;
+import com.orientechnologies.orient.server.journal.ODatabaseJournal;
+import com.orientechnologies.orient.server.journal.ODatabaseJournal.OPERATION_TYPES;
+
+/**
+ * Compressed chunk of the records of a cluster sent to a node that missed too many operations to align it with the journal. The
+ * first chunk of a cluster empties it, then the records are created in the same positions with the same versions: the holes are
+ * filled with empty records deleted by the last chunk of the cluster. The first record of the internal cluster keeps the content
+ * of the node, since it is the storage configuration.<br/>
+ * The chunks are numbered: a chunk is refused if any chunk before it was not applied. The first chunk lists all the clusters of
+ * the snapshot, so the node refuses it before changing any record if one of them is missing. The chunk without cluster ends the
+ * snapshot: if all the chunks were applied it reloads the schema and the indexes, rebuilds the automatic indexes and journals the
+ * id of the last operation contained in the snapshot, so the next alignment starts from it.
+ */
+public class OAlignSnapshotDistributedTask extends OAbstractDistributedTask<Integer> {
+  private static final long   serialVersionUID = 1L;
+  private static final byte[] EMPTY            = new byte[0];
+
+  private int                 chunk;
+  private String              clusterName;
+  private int                 clusterId;
+  private long                firstPosition;
+  private List<ORawBuffer>    records          = new ArrayList<ORawBuffer>();
+  private long[]              holes;
+  private long                total;
+  private long                sent;
+  private String              schemaRecordId;
+  private String              indexMgrRecordId;
+  private String[]            snapshotClusterNames;
+  private int[]               snapshotClusterIds;
+
+  public OAlignSnapshotDistributedTask() {
+  }
+
+  /**
+   * Creates the chunk that ends the snapshot.
+   *
+   * @param iSnapshotOperationId
+   *          Id of the last operation contained in the snapshot
+   * @param iChunks
+   *          Number of chunks sent before this one
+   * @param iConfiguration
+   *          Configuration of the storage sent, with the identities of the schema and of the index manager
+   */
+  public OAlignSnapshotDistributedTask(final String nodeSource, final String iDbName, final long[] iSnapshotOperationId,
+      final int iChunks, final OStorageConfiguration iConfiguration) {
+    this(nodeSource, iDbName, iSnapshotOperationId, iChunks, null, -1, 0, 0, 0);
+    schemaRecordId = iConfiguration.schemaRecordId;
+    indexMgrRecordId = iConfiguration.indexMgrRecordId;
+  }
+
+  /**
+   * Creates a chunk of the records of a cluster.
+   *
+   * @param iChunk
+   *          Number of the chunk in the snapshot, starting from 0
+   * @param iFirstPosition
+   *          Position of the first record of the chunk
+   * @param iTotal
+   *          Number of records to send by the whole snapshot
+   * @param iSent
+   *          Number of records already sent
+   */
+  public OAlignSnapshotDistributedTask(final String nodeSource, final String iDbName, final long[] iSnapshotOperationId,
+      final int iChunk, final String iClusterName, final int iClusterId, final long iFirstPosition, final long iTotal,
+      final long iSent) {
+    super(iSnapshotOperationId[0], iSnapshotOperationId[1]);
+    this.nodeSource = nodeSource;
+    this.databaseName = iDbName;
+    this.mode = EXECUTION_MODE.SYNCHRONOUS;
+    chunk = iChunk;
+    clusterName = iClusterName;
+    clusterId = iClusterId;
+    firstPosition = iFirstPosition;
+    total = iTotal;
+    sent = iSent;
+  }
+
+  @Override
+  public Integer call() throws Exception {
+    final OStorageSynchronizer dbSynchronizer = getDatabaseSynchronizer();
+
+    if (clusterName == null)
+      return endSnapshot(dbSynchronizer);
+
+    // THE SNAPSHOT FAILS UNTIL THE CHUNK IS APPLIED
+    final int applied = dbSynchronizer.getSnapshotChunks();
+    dbSynchronizer.setSnapshotChunks(-1);
+    if (chunk > 0 && applied != chunk)
+      throw new ODistributedException("Chunk " + chunk + " of the snapshot of cluster " + clusterName
+          + " refused: the chunks before it were not applied");
+
+    final OStorage storage = Orient.instance().getStorage(databaseName);
+    if (chunk == 0 && snapshotClusterNames != null)
+      // A NEW SNAPSHOT STARTS: ALL ITS CLUSTERS MUST EXIST BEFORE ANY RECORD IS REPLACED
+      for (int i = 0; i < snapshotClusterNames.length; ++i)
+        getCluster(storage, snapshotClusterNames[i], snapshotClusterIds[i]);
+
+    final OCluster cluster = getCluster(storage, clusterName, clusterId);
+
+    ORawBuffer configuration = null;
+    if (firstPosition == 0) {
+      OLogManager.instance().warn(this, "DISTRIBUTED <-[%s/%s] replacing the records of cluster %s with the snapshot", nodeSource,
+          databaseName, clusterName);
+
+      if (clusterId == OStorageConfiguration.CONFIG_RID.clusterId)
+        configuration = storage.readRecord(OStorageConfiguration.CONFIG_RID, null, false, null);
+
+      cluster.truncate();
+      storage.getLevel2Cache().freeCluster(clusterId);
+    }
+
+    long position = firstPosition;
+    for (ORawBuffer snapshotRecord : records) {
+      // KEEP THE CONFIGURATION OF THIS STORAGE
+      final ORawBuffer record = configuration != null && position == OStorageConfiguration.CONFIG_RID.clusterPosition
+          ? configuration : snapshotRecord;
+
+      final ORecordId rid = new ORecordId(clusterId, ORID.CLUSTER_POS_INVALID);
+      final OPhysicalPosition ppos;
+      if (record != null)
+        ppos = storage.createRecord(cluster.getDataSegmentId(), rid, record.buffer, record.version, record.recordType, 0, null);
+      else
+        ppos = storage.createRecord(cluster.getDataSegmentId(), rid, EMPTY, 0, ORecordBytes.RECORD_TYPE, 0, null);
+
+      if (ppos.clusterPosition != position)
+        throw new ODistributedException("Snapshot of cluster " + clusterName + " is out of order: record at position " + position
+            + " created at " + ppos.clusterPosition);
+      position++;
+    }
+
+    if (holes != null)
+      for (long hole : holes)
+        storage.deleteRecord(new ORecordId(clusterId, hole), -1, 0, null);
+
+    dbSynchronizer.setSnapshotChunks(chunk + 1);
+    dbSynchronizer.setAlignmentLag(Math.max(0, total - sent - records.size()));
+    Orient.instance().getProfiler().updateCounter("distributed." + databaseName + ".alignment.snapshotRecords", records.size());
+
+    return records.size();
+  }
+
+  @Override
+  public void writeExternal(final ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeInt(chunk);
+    out.writeBoolean(clusterName != null);
+    if (clusterName == null) {
+      writeString(out, schemaRecordId);
+      writeString(out, indexMgrRecordId);
+      return;
+    }
+
+    out.writeUTF(clusterName);
+    out.writeInt(clusterId);
+    out.writeLong(firstPosition);
+    out.writeLong(total);
+    out.writeLong(sent);
+
+    out.writeInt(snapshotClusterNames != null ? snapshotClusterNames.length : -1);
+    if (snapshotClusterNames != null)
+      for (int i = 0; i < snapshotClusterNames.length; ++i) {
+        out.writeUTF(snapshotClusterNames[i]);
+        out.writeInt(snapshotClusterIds[i]);
+      }
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream stream = new DataOutputStream(buffer);
+    stream.writeInt(records.size());
+    for (ORawBuffer record : records)
+      if (record == null)
+        stream.writeInt(-1);
+      else {
+        stream.writeInt(record.buffer.length);
+        stream.write(record.buffer);
+        stream.writeInt(record.version);
+        stream.writeByte(record.recordType);
+      }
+
+    stream.writeInt(holes != null ? holes.length : -1);
+    if (holes != null)
+      for (long hole : holes)
+        stream.writeLong(hole);
+    stream.close();
+
+    writeCompressed(out, buffer.toByteArray());
+  }
+
+  @Override
+  public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    chunk = in.readInt();
+    if (!in.readBoolean()) {
+      schemaRecordId = readString(in);
+      indexMgrRecordId = readString(in);
+      return;
+    }
+
+    clusterName = in.readUTF();
+    clusterId = in.readInt();
+    firstPosition = in.readLong();
+    total = in.readLong();
+    sent = in.readLong();
+
+    final int clusterCount = in.readInt();
+    if (clusterCount > -1) {
+      snapshotClusterNames = new String[clusterCount];
+      snapshotClusterIds = new int[clusterCount];
+      for (int i = 0; i < clusterCount; ++i) {
+        snapshotClusterNames[i] = in.readUTF();
+        snapshotClusterIds[i] = in.readInt();
+      }
+    }
+
+    final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(readCompressed(in)));
+    final int recordCount = stream.readInt();
+    for (int i = 0; i < recordCount; ++i) {
+      final int size = stream.readInt();
+      if (size == -1)
+        records.add(null);
+      else {
+        final byte[] content = new byte[size];
+        stream.readFully(content);
+        records.add(new ORawBuffer(content, stream.readInt(), stream.readByte()));
+      }
+    }
+
+    final int holeCount = stream.readInt();
+    if (holeCount > -1) {
+      holes = new long[holeCount];
+      for (int i = 0; i < holeCount; ++i)
+        holes[i] = stream.readLong();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "align_snapshot";
+  }
+
+  @Override
+  public String toString() {
+    return clusterName == null ? getName() + "(end)" : getName() + "(" + clusterName + " from " + firstPosition + ", "
+        + records.size() + " records)";
+  }
+
+  /**
+   * Adds the record in the next position, null if the position is empty.
+   */
+  public void addRecord(final ORawBuffer iRecord) {
+    records.add(iRecord);
+  }
+
+  public int getRecords() {
+    return records.size();
+  }
+
+  /**
+   * Sets the empty positions of the cluster, to delete once all the records are created.
+   */
+  public void setHoles(final long[] iHoles) {
+    holes = iHoles;
+  }
+
+  /**
+   * Sets the names and the ids of all the clusters of the snapshot, sent by its first chunk.
+   */
+  public void setSnapshotClusters(final String[] iNames, final int[] iIds) {
+    snapshotClusterNames = iNames;
+    snapshotClusterIds = iIds;
+  }
+
+  protected OCluster getCluster(final OStorage iStorage, final String iName, final int iId) {
+    final OCluster cluster = iStorage.getClusterById(iId);
+    if (cluster == null || !cluster.getName().equalsIgnoreCase(iName))
+      throw new ODistributedException("Cannot apply the snapshot of cluster " + iName + ": cluster not found with id " + iId);
+    return cluster;
+  }
+
+  protected int endSnapshot(final OStorageSynchronizer dbSynchronizer) throws IOException {
+    final int applied = dbSynchronizer.getSnapshotChunks();
+    dbSynchronizer.setSnapshotChunks(-1);
+    if (applied != chunk)
+      throw new ODistributedException("Snapshot up to operation #" + runId + "." + operationSerial + " not applied: "
+          + Math.max(0, applied) + " chunks applied of " + chunk);
+
+    OLogManager.instance().warn(this, "DISTRIBUTED <-[%s/%s] snapshot received up to operation #%d.%d: rebuilding the indexes",
+        nodeSource, databaseName, runId, operationSerial);
+
+    final OStorageConfiguration configuration = Orient.instance().getStorage(databaseName).getConfiguration();
+    configuration.schemaRecordId = schemaRecordId;
+    configuration.indexMgrRecordId = indexMgrRecordId;
+    configuration.update();
+
+    final ODatabaseDocumentTx database = openDatabase();
+    ODistributedThreadLocal.INSTANCE.set(Boolean.TRUE);
+    try {
+      ((OSchemaProxy) database.getMetadata().getSchema()).load();
+      database.getMetadata().getIndexManager().reload();
+
+      for (OIndex<?> index : database.getMetadata().getIndexManager().getIndexes())
+        if (index.isAutomatic())
+          index.rebuild();
+    } finally {
+      ODistributedThreadLocal.INSTANCE.set(Boolean.FALSE);
+      closeDatabase(database);
+    }
+
+    // THE NEXT ALIGNMENT ASKS FOR THE OPERATIONS AFTER THE SNAPSHOT
+    final ODatabaseJournal log = dbSynchronizer.getLog();
+    log.changeOperationStatus(log.journalOperation(runId, operationSerial, OPERATION_TYPES.SNAPSHOT, null), null);
+
+    return 0;
+  }
+
+  private static void writeString(final ObjectOutput out, final String iValue) throws IOException {
+    out.writeBoolean(iValue != null);
+    if (iValue != null)
+      out.writeUTF(iValue);
+  }
+
+  private static String readString(final ObjectInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -41,6 +41,19 @@ public class OMultipleDistributedTasks extends OAbstractDistributedTask<Object[]
     super(nodeSource, iDbName, iMode);
   }
 
+  /**
+   * Creates a group of operations that reuses the serial of an operation already assigned, to avoid asking the cluster for another
+   * one.
+   */
+  public OMultipleDistributedTasks(final String nodeSource, final String iDbName, final EXECUTION_MODE iMode, final long iRunId,
+      final long iOperationId) {
+    super(iRunId, iOperationId);
+    this.nodeSource = nodeSource;
+    this.databaseName = iDbName;
+    this.mode = iMode;
+    this.status = STATUS.REMOTE_EXEC;
+  }
+
   @Override
   public Object[] call() throws Exception {
     OLogManager.instance().warn(this, "DISTRIBUTED <-[%s/%s] executing group of %d command(s)", nodeSource, databaseName,
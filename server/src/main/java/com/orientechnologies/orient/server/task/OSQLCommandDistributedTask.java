@@ -60,7 +60,7 @@ public class OSQLCommandDistributedTask extends OAbstractDistributedTask<Object>
       throw new OServerOfflineException();
 
     final ODatabaseDocumentTx db = openDatabase();
-    ODistributedThreadLocal.INSTANCE.distributedExecution = true;
+    ODistributedThreadLocal.INSTANCE.set(Boolean.TRUE);
     try {
 
       Object result = openDatabase().command(new OCommandSQL(text));
@@ -72,7 +72,7 @@ public class OSQLCommandDistributedTask extends OAbstractDistributedTask<Object>
       return null;
 
     } finally {
-      ODistributedThreadLocal.INSTANCE.distributedExecution = false;
+      ODistributedThreadLocal.INSTANCE.set(Boolean.FALSE);
       closeDatabase(db);
     }
   }
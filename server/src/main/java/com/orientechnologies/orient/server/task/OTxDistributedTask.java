@@ -0,0 +1,293 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.task;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.ORecordOperation;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.tx.OTransaction;
+import com.orientechnologies.orient.server.distributed.ODistributedException;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager;
+import com.orientechnologies.orient.server.distributed.ODistributedServerManager.EXECUTION_MODE;
+import com.orientechnologies.orient.server.distributed.ODistributedThreadLocal;
+import com.orientechnologies.orient.server.distributed.OServerOfflineException;
+import com.orientechnologies.orient.server.distributed.OStorageSynchronizer;
+import com.orientechnologies.orient.server.journal.ODatabaseJournal;
+
+/**
+ * Distributed task that replicates all the records written by a transaction in one single call. The replicas apply the records in
+ * a transaction, so either all of them or none are written. All the operations share the serial of the transaction in the journal.
+ */
+public class OTxDistributedTask extends OAbstractDistributedTask<Object[]> {
+  private static final long                       serialVersionUID = 1L;
+
+  private List<OAbstractRecordDistributedTask<?>> tasks            = new ArrayList<OAbstractRecordDistributedTask<?>>();
+  private transient List<ORecordInternal<?>>      records;
+  private transient Object[]                      localResult;
+  private transient long[]                        logOffsets;
+
+  public OTxDistributedTask() {
+  }
+
+  /**
+   * Collects the records written by a transaction before it is committed. Their content is read once the transaction is committed,
+   * by {@link #setAsCommitted(OStorageSynchronizer)}.
+   */
+  public OTxDistributedTask(final String nodeSource, final String iDbName, final EXECUTION_MODE iMode, final OTransaction iTx) {
+    super(nodeSource, iDbName, iMode);
+
+    records = new ArrayList<ORecordInternal<?>>();
+    for (ORecordOperation op : iTx.getCurrentRecordEntries()) {
+      final ORecordInternal<?> record = op.getRecord();
+      if (op.type != ORecordOperation.DELETED && !record.isDirty())
+        // NOT WRITTEN BY THE COMMIT
+        continue;
+
+      final ORecordId rid = (ORecordId) record.getIdentity();
+      final OAbstractRecordDistributedTask<?> task;
+
+      switch (op.type) {
+      case ORecordOperation.CREATED:
+        task = new OCreateRecordDistributedTask(runId, operationSerial, rid, null, record.getVersion(), record.getRecordType());
+        break;
+      case ORecordOperation.UPDATED:
+        task = new OUpdateRecordDistributedTask(runId, operationSerial, rid, null, record.getVersion(), record.getRecordType());
+        break;
+      case ORecordOperation.DELETED:
+        task = new ODeleteRecordDistributedTask(runId, operationSerial, rid, record.getVersion());
+        break;
+      default:
+        continue;
+      }
+
+      task.setNodeSource(nodeSource);
+      task.setDatabaseName(iDbName);
+      task.setMode(iMode);
+      tasks.add(task);
+      records.add(record);
+    }
+  }
+
+  @Override
+  public Object[] call() throws Exception {
+    OLogManager.instance().warn(this, "DISTRIBUTED <-[%s/%s] executing transaction #%d.%d of %d operation(s)", nodeSource,
+        databaseName, runId, operationSerial, tasks.size());
+
+    final ODistributedServerManager dManager = getDistributedServerManager();
+    if (status != STATUS.ALIGN && !dManager.checkStatus("online") && !nodeSource.equals(dManager.getLocalNodeId()))
+      // NODE NOT ONLINE, REFUSE THE OPEPRATION
+      throw new OServerOfflineException(dManager.getLocalNodeId(),
+          "Cannot execute the operation because the server is offline: current status: " + dManager.getStatus());
+
+    final OStorageSynchronizer dbSynchronizer = getDatabaseSynchronizer();
+
+    // LOG THE OPERATIONS BEFORE TO EXECUTE THEM
+    journal(dbSynchronizer.getLog());
+
+    ODistributedThreadLocal.INSTANCE.set(Boolean.TRUE);
+    try {
+      // EXECUTE IT LOCALLY
+      executeOnLocalNode();
+
+      setAsCompleted(dbSynchronizer);
+
+      if (mode != EXECUTION_MODE.FIRE_AND_FORGET)
+        return localResult;
+
+      // FIRE AND FORGET MODE: AVOID THE PAYLOAD AS RESULT
+      return null;
+
+    } finally {
+      ODistributedThreadLocal.INSTANCE.set(Boolean.FALSE);
+    }
+  }
+
+  /**
+   * Logs all the operations of the transaction in the journal as not completed.
+   */
+  public void journal(final ODatabaseJournal iLog) {
+    logOffsets = new long[tasks.size()];
+    try {
+      for (int i = 0; i < tasks.size(); ++i) {
+        final OAbstractRecordDistributedTask<?> task = tasks.get(i);
+        logOffsets[i] = iLog.journalOperation(runId, operationSerial, task.getOperationType(), task);
+      }
+    } catch (IOException e) {
+      OLogManager.instance().error(this, "DISTRIBUTED <-[%s] error on logging transaction #%d.%d", e, nodeSource, runId,
+          operationSerial);
+      throw new ODistributedException("Error on logging transaction", e);
+    }
+  }
+
+  /**
+   * Reads the records as written by the committed transaction and sets their operations as completed in the journal.
+   */
+  public void setAsCommitted(final OStorageSynchronizer dbSynchronizer) {
+    localResult = new Object[tasks.size()];
+
+    for (int i = 0; i < tasks.size(); ++i) {
+      final OAbstractRecordDistributedTask<?> task = tasks.get(i);
+      final ORecordInternal<?> record = records.get(i);
+
+      if (task instanceof OCreateRecordDistributedTask) {
+        final OCreateRecordDistributedTask create = (OCreateRecordDistributedTask) task;
+        create.rid = (ORecordId) record.getIdentity().copy();
+        create.content = record.toStream();
+        localResult[i] = new OPhysicalPosition(create.rid.getClusterPosition(), record.getVersion());
+      } else if (task instanceof OUpdateRecordDistributedTask) {
+        ((OUpdateRecordDistributedTask) task).content = record.toStream();
+        localResult[i] = record.getVersion();
+      } else
+        localResult[i] = Boolean.TRUE;
+    }
+    records = null;
+
+    setAsCompleted(dbSynchronizer);
+  }
+
+  /**
+   * Compares the result of the transaction on a remote node with the local one, handling the conflicts record by record.
+   */
+  @Override
+  public void handleConflict(final String iRemoteNode, final Object iLocalResult, final Object iRemoteResult) {
+    final Object[] local = (Object[]) iLocalResult;
+    final Object[] remote = (Object[]) iRemoteResult;
+
+    for (int i = 0; i < tasks.size(); ++i) {
+      final Object l = local[i];
+      final Object r = remote != null && i < remote.length ? remote[i] : null;
+      if (l != r && (l == null || !l.equals(r)))
+        // CONFLICT
+        tasks.get(i).handleConflict(iRemoteNode, l, r);
+    }
+  }
+
+  public Object[] getLocalResult() {
+    return localResult;
+  }
+
+  public int getTasks() {
+    return tasks.size();
+  }
+
+  @Override
+  public void writeExternal(final ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeInt(tasks.size());
+    for (int i = 0; i < tasks.size(); ++i)
+      out.writeObject(tasks.get(i));
+  }
+
+  @Override
+  public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    final int taskSize = in.readInt();
+    for (int i = 0; i < taskSize; ++i)
+      tasks.add((OAbstractRecordDistributedTask<?>) in.readObject());
+  }
+
+  @Override
+  public String getName() {
+    return "transaction";
+  }
+
+  @Override
+  public String toString() {
+    return getName() + "(#" + runId + "." + operationSerial + " " + tasks.size() + " operations)";
+  }
+
+  protected void executeOnLocalNode() {
+    final ODatabaseDocumentTx database = openDatabase();
+    try {
+      final ORecordInternal<?>[] written = new ORecordInternal<?>[tasks.size()];
+
+      database.begin();
+      try {
+        for (int i = 0; i < tasks.size(); ++i) {
+          final OAbstractRecordDistributedTask<?> task = tasks.get(i);
+
+          if (task instanceof OCreateRecordDistributedTask) {
+            final OCreateRecordDistributedTask create = (OCreateRecordDistributedTask) task;
+            final ORecordInternal<?> record = Orient.instance().getRecordFactoryManager().newInstance(create.recordType);
+            record.fill(new ORecordId(create.rid.getClusterId(), ORID.CLUSTER_POS_INVALID), create.version, create.content, true);
+            record.save(database.getClusterNameById(create.rid.getClusterId()));
+            written[i] = record;
+
+          } else if (task instanceof OUpdateRecordDistributedTask) {
+            final OUpdateRecordDistributedTask update = (OUpdateRecordDistributedTask) task;
+            final ORecordInternal<?> record = Orient.instance().getRecordFactoryManager().newInstance(update.recordType);
+            record.fill(update.rid, update.version, update.content, true);
+            record.save();
+            written[i] = record;
+
+          } else {
+            final ORecordInternal<?> record = database.load(task.rid);
+            if (record != null) {
+              record.setVersion(task.version);
+              record.delete();
+            }
+            written[i] = record;
+          }
+        }
+
+        database.commit();
+
+      } catch (RuntimeException e) {
+        database.rollback();
+        throw e;
+      }
+
+      localResult = new Object[tasks.size()];
+      for (int i = 0; i < tasks.size(); ++i) {
+        final OAbstractRecordDistributedTask<?> task = tasks.get(i);
+        final ORecordInternal<?> record = written[i];
+
+        if (task instanceof OCreateRecordDistributedTask) {
+          task.rid = (ORecordId) record.getIdentity();
+          localResult[i] = new OPhysicalPosition(task.rid.getClusterPosition(), record.getVersion());
+        } else if (task instanceof OUpdateRecordDistributedTask)
+          localResult[i] = record.getVersion();
+        else
+          localResult[i] = record != null;
+      }
+
+    } finally {
+      closeDatabase(database);
+    }
+  }
+
+  private void setAsCompleted(final OStorageSynchronizer dbSynchronizer) {
+    try {
+      for (int i = 0; i < tasks.size(); ++i)
+        tasks.get(i).setAsCompleted(dbSynchronizer, logOffsets[i]);
+    } catch (IOException e) {
+      OLogManager.instance().error(this, "DISTRIBUTED <-[%s] error on changing the log status for transaction #%d.%d", e,
+          nodeSource, runId, operationSerial);
+      throw new ODistributedException("Error on changing the log status", e);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package com.orientechnologies.orient.server.network.protocol.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.enterprise.channel.binary.OChannelBinaryProtocol;
+import com.orientechnologies.orient.server.OClientConnectionManager;
+import com.orientechnologies.orient.server.OServerMain;
+import com.orientechnologies.orient.server.network.OServerNetworkListener;
+
+/**
+ * Framing of the binary requests: since protocol 13 the requests of the open sessions carry a request id, also when the session
+ * expired on the server. The requests are written on a raw socket to check the bytes read and sent back by the server.
+ */
+@Test
+public class ONetworkProtocolBinaryTest {
+  private static final int TIMEOUT = 5000;
+
+  private File             home;
+  private Socket           socket;
+  private DataOutputStream out;
+  private DataInputStream  in;
+
+  @BeforeClass
+  public void beforeClass() throws Exception {
+    home = new File(System.getProperty("java.io.tmpdir"), "orientdb-binary-protocol-test");
+    home.mkdirs();
+    System.setProperty(Orient.ORIENTDB_HOME, home.getAbsolutePath());
+
+    OServerMain.create().startup(
+        "<orient-server><network><protocols><protocol name=\"binary\" implementation=\""
+            + ONetworkProtocolBinary.class.getName() + "\" /></protocols><listeners>"
+            + "<listener protocol=\"binary\" ip-address=\"127.0.0.1\" port-range=\"2530-2560\" /></listeners></network>"
+            + "<users><user name=\"root\" password=\"root\" resources=\"*\" /></users></orient-server>");
+    OServerMain.server().activate();
+  }
+
+  @AfterClass
+  public void afterClass() {
+    OServerMain.server().shutdown();
+  }
+
+  @BeforeMethod
+  public void beforeMethod() throws IOException {
+    openSocket();
+  }
+
+  @AfterMethod
+  public void afterMethod() throws IOException {
+    socket.close();
+  }
+
+  public void testRequestIdIsSentBack() throws IOException {
+    final int sessionId = connect(OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION);
+
+    listDatabases(sessionId, 7);
+    listDatabases(sessionId, 3);
+  }
+
+  public void testExpiredSessionKeepsTheFraming() throws IOException {
+    final int expiredId = connect(OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION);
+    final int sessionId = connect(OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION);
+    OClientConnectionManager.instance().disconnect(expiredId);
+
+    // THE CLIENT CLOSES THE EXPIRED SESSION: NO RESPONSE, BUT THE REQUEST ID MUST BE CONSUMED
+    out.writeByte(OChannelBinaryProtocol.REQUEST_DB_CLOSE);
+    out.writeInt(expiredId);
+    out.writeInt(8);
+    out.flush();
+
+    listDatabases(sessionId, 9);
+  }
+
+  public void testUnknownSessionOnNewSocketDropsTheSocket() throws IOException {
+    final int expiredId = connect(OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION);
+    OClientConnectionManager.instance().disconnect(expiredId);
+
+    // NO SESSION SEEN ON THE NEW SOCKET YET: THE SERVER CANNOT TELL IF THE REQUEST IS TAGGED
+    openSocket();
+    out.writeByte(OChannelBinaryProtocol.REQUEST_DB_CLOSE);
+    out.writeInt(expiredId);
+    out.writeInt(8);
+    out.flush();
+
+    try {
+      Assert.assertEquals(in.read(), -1);
+    } catch (IOException e) {
+      // CONNECTION RESET
+    }
+
+    openSocket();
+    listDatabases(connect(OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION), 1);
+  }
+
+  public void testOldClientRequestsAreNotTagged() throws IOException {
+    final int sessionId = connect(12);
+
+    listDatabases(sessionId, -1);
+    listDatabases(sessionId, -1);
+  }
+
+  private void openSocket() throws IOException {
+    if (socket != null)
+      socket.close();
+
+    final OServerNetworkListener listener = OServerMain.server().getListenerByProtocol(ONetworkProtocolBinary.class);
+    socket = new Socket("127.0.0.1", listener.getInboundAddr().getPort());
+    socket.setSoTimeout(TIMEOUT);
+    // EVERY REQUEST IS SENT IN ONE WRITE: THE SERVER CAN CLOSE THE SOCKET AS SOON AS IT READ THE SESSION
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    in = new DataInputStream(socket.getInputStream());
+
+    Assert.assertEquals(in.readShort(), OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION);
+  }
+
+  /**
+   * Opens a server session declaring the protocol version.
+   * 
+   * @return The id of the session
+   */
+  private int connect(final int iProtocolVersion) throws IOException {
+    out.writeByte(OChannelBinaryProtocol.REQUEST_CONNECT);
+    out.writeInt(-1);
+    writeString("test");
+    writeString("1.0");
+    out.writeShort(iProtocolVersion);
+    writeString(null);
+    writeString("root");
+    writeString("root");
+    out.flush();
+
+    // SESSIONS NOT OPEN YET ARE NOT TAGGED
+    Assert.assertEquals(in.readByte(), OChannelBinaryProtocol.RESPONSE_STATUS_OK);
+    Assert.assertEquals(in.readInt(), -1);
+    return in.readInt();
+  }
+
+  /**
+   * Lists the databases in the session, tagging the request with the id if it's not -1, and checks the response is complete.
+   */
+  private void listDatabases(final int iSessionId, final int iRequestId) throws IOException {
+    out.writeByte(OChannelBinaryProtocol.REQUEST_DB_LIST);
+    out.writeInt(iSessionId);
+    if (iRequestId > -1)
+      out.writeInt(iRequestId);
+    out.flush();
+
+    Assert.assertEquals(in.readByte(), OChannelBinaryProtocol.RESPONSE_STATUS_OK);
+    Assert.assertEquals(in.readInt(), iSessionId);
+    if (iRequestId > -1)
+      Assert.assertEquals(in.readInt(), iRequestId);
+
+    final byte[] content = new byte[in.readInt()];
+    in.readFully(content);
+    Assert.assertTrue(new String(content).contains("databases"));
+  }
+
+  private void writeString(final String iValue) throws IOException {
+    if (iValue == null)
+      out.writeInt(-1);
+    else {
+      out.writeInt(iValue.length());
+      out.writeBytes(iValue);
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.orientechnologies.orient.test.database.auto;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,13 +33,13 @@ import org.testng.annotations.Test;
 import com.orientechnologies.orient.core.db.ODatabaseComplex.OPERATION_MODE;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentPool;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
-import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.index.OIndex;
 import com.orientechnologies.orient.core.iterator.ORecordIteratorCluster;
 import com.orientechnologies.orient.core.metadata.schema.OType;
 import com.orientechnologies.orient.core.record.ORecordAbstract;
+import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.serialization.OBase64Utils;
 import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
@@ -254,19 +255,12 @@ public class CRUDDocumentPhysicalTest {
       vDoc.field("nick", "JayM3");
       vDoc.save();
 
-      Set<OIndex<?>> indexes = database.getMetadata().getSchema().getClass("Profile").getProperty("nick").getIndexes();
+      final OIndex<?> index = database.getMetadata().getSchema().getClass("Profile").getClassIndex("Profile.nick");
+      Assert.assertNotNull(index);
 
-      Assert.assertEquals(indexes.size(), 1);
-
-      OIndex indexDefinition = indexes.iterator().next();
-      OIdentifiable vOldName = (OIdentifiable) indexDefinition.get("JayM1");
-      Assert.assertNull(vOldName);
-
-      OIdentifiable vIntermediateName = (OIdentifiable) indexDefinition.get("JayM2");
-      Assert.assertNull(vIntermediateName);
-
-      OIdentifiable vNewName = (OIdentifiable) indexDefinition.get("JayM3");
-      Assert.assertNotNull(vNewName);
+      Assert.assertNull(index.get("JayM1"));
+      Assert.assertNull(index.get("JayM2"));
+      Assert.assertNotNull(index.get("JayM3"));
 
     } finally {
       database.close();
@@ -289,20 +283,17 @@ public class CRUDDocumentPhysicalTest {
       vDoc.field("nick", "Jack").field("name", "Jack").field("surname", "Bauer");
       vDoc.save();
 
-      Collection<OIndex<?>> indexes = database.getMetadata().getSchema().getClass("Profile").getProperty("name").getIndexes();
-      Assert.assertEquals(indexes.size(), 1);
+      final OIndex<?> indexName = database.getMetadata().getSchema().getClass("Profile").getClassIndex("Profile.name");
+      Assert.assertNotNull(indexName);
 
-      OIndex<?> indexName = indexes.iterator().next();
       // We must get 2 records for "nameA".
-      Collection<OIdentifiable> vName1 = (Collection<OIdentifiable>) indexName.get("Jack");
-      Assert.assertEquals(vName1.size(), 2);
+      Assert.assertEquals(((Collection<?>) indexName.get("Jack")).size(), 2);
 
       // Remove this last record.
       database.delete(vDoc);
 
       // We must get 1 record for "nameA".
-      vName1 = (Collection<OIdentifiable>) indexName.get("Jack");
-      Assert.assertEquals(vName1.size(), 1);
+      Assert.assertEquals(((Collection<?>) indexName.get("Jack")).size(), 1);
 
     } finally {
       database.close();
@@ -830,6 +821,42 @@ public class CRUDDocumentPhysicalTest {
     }
   }
 
+  @Test
+  public void testBatchSaveLoadDelete() {
+    database = ODatabaseDocumentPool.global().acquire(url, "admin", "admin");
+
+    try {
+      final List<ODocument> docs = new ArrayList<ODocument>();
+      for (int i = 0; i < TOT_RECORDS; ++i)
+        docs.add(new ODocument("BatchRecord").field("id", i));
+
+      database.save(docs);
+      Assert.assertEquals(database.countClass("BatchRecord"), TOT_RECORDS);
+
+      final List<ORID> rids = new ArrayList<ORID>();
+      for (ODocument d : docs) {
+        Assert.assertTrue(d.getIdentity().isPersistent());
+        rids.add(d.getIdentity().copy());
+      }
+      rids.add(new ORecordId(docs.get(0).getIdentity().getClusterId(), Integer.MAX_VALUE));
+
+      database.getLevel1Cache().clear();
+      final List<ORecordInternal<?>> loaded = database.load(rids, null);
+      Assert.assertEquals(loaded.size(), TOT_RECORDS + 1);
+      for (int i = 0; i < TOT_RECORDS; ++i) {
+        Assert.assertEquals(loaded.get(i).getIdentity(), rids.get(i));
+        Assert.assertEquals(((ODocument) loaded.get(i)).field("id"), i);
+      }
+      Assert.assertNull(loaded.get(TOT_RECORDS));
+
+      database.delete(rids.subList(0, TOT_RECORDS));
+      Assert.assertEquals(database.countClass("BatchRecord"), 0);
+
+    } finally {
+      database.close();
+    }
+  }
+
   public void testSerialization() {
     final byte[] streamOrigin = "Account@html:{\"path\":\"html/layout\"},config:{\"title\":\"Github Admin\",\"modules\":(githubDisplay:\"github_display\")},complex:(simple1:\"string1\",one_level1:(simple2:\"string2\"),two_levels:(simple3:\"string3\",one_level2:(simple4:\"string4\")))"
         .getBytes();
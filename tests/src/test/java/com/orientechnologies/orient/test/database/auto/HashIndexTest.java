@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.auto;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexException;
+import com.orientechnologies.orient.core.index.OSimpleKeyIndexDefinition;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+@Test(groups = { "index" })
+public class HashIndexTest extends AbstractIndexReuseTest {
+  private static final String TEST_CLASS = "HashIndexTestClass";
+  private static final int    TOT        = 1000;
+
+  @Parameters("url")
+  public HashIndexTest(final String iURL) {
+    super(iURL);
+  }
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    super.setUp();
+
+    if (database.isClosed())
+      database.open("admin", "admin");
+
+    final OSchema schema = database.getMetadata().getSchema();
+    final OClass oClass = schema.createClass(TEST_CLASS);
+    oClass.createProperty("name", OType.STRING);
+    oClass.createProperty("city", OType.STRING);
+    oClass.createProperty("age", OType.INTEGER);
+    schema.save();
+
+    database.command(new OCommandSQL("CREATE INDEX " + TEST_CLASS + ".name UNIQUE_HASH")).execute();
+    oClass.createIndex("hashCityAge", OClass.INDEX_TYPE.NOTUNIQUE_HASH, "city", "age");
+
+    for (int i = 0; i < TOT; i++)
+      new ODocument(TEST_CLASS).field("name", "n" + i).field("city", "c" + (i % 5)).field("age", i % 10).save();
+
+    database.close();
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception {
+    if (database.isClosed())
+      database.open("admin", "admin");
+
+    database.command(new OCommandSQL("DELETE FROM " + TEST_CLASS)).execute();
+    database.getMetadata().getSchema().dropClass(TEST_CLASS);
+    database.getMetadata().getIndexManager().dropIndex("manualHash");
+
+    database.close();
+  }
+
+  public void testIndexType() {
+    final OIndex<?> index = database.getMetadata().getIndexManager().getIndex(TEST_CLASS + ".name");
+    Assert.assertEquals(index.getType(), OClass.INDEX_TYPE.UNIQUE_HASH.toString());
+    Assert.assertEquals(index.getKeySize(), TOT);
+
+    final OIdentifiable value = (OIdentifiable) index.get("n123");
+    Assert.assertEquals(((ODocument) value.getRecord()).field("name"), "n123");
+    Assert.assertNull(index.get("n" + TOT));
+  }
+
+  public void testEqualityUsesIndex() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+    if (oldIndexUsage == -1) {
+      oldIndexUsage = 0;
+    }
+
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>("select from " + TEST_CLASS
+        + " where name = 'n500'"));
+    Assert.assertEquals(result.size(), 1);
+    Assert.assertEquals(result.get(0).field("name"), "n500");
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage + 1);
+  }
+
+  public void testInUsesIndex() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+    if (oldIndexUsage == -1) {
+      oldIndexUsage = 0;
+    }
+
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>("select from " + TEST_CLASS
+        + " where name in ['n1', 'n2', 'n3', 'missing']"));
+    Assert.assertEquals(result.size(), 3);
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage + 1);
+  }
+
+  public void testRangeDoesNotUseIndex() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>("select from " + TEST_CLASS
+        + " where name > 'n990'"));
+    Assert.assertEquals(result.size(), 9);
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage);
+  }
+
+  public void testCompositeEqualityUsesIndex() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+    if (oldIndexUsage == -1) {
+      oldIndexUsage = 0;
+    }
+
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>("select from " + TEST_CLASS
+        + " where city = 'c1' and age = 1"));
+    Assert.assertEquals(result.size(), TOT / 10);
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage + 1);
+  }
+
+  public void testCompositePartialKeyDoesNotUseIndex() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>("select from " + TEST_CLASS
+        + " where city = 'c1'"));
+    Assert.assertEquals(result.size(), TOT / 5);
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage);
+  }
+
+  public void testDuplicatedKey() {
+    try {
+      new ODocument(TEST_CLASS).field("name", "n1").save();
+
+      // IT SHOULD GIVE ERROR ON DUPLICATED KEY
+      Assert.fail();
+
+    } catch (OIndexException e) {
+      Assert.assertTrue(true);
+    }
+  }
+
+  @Test(dependsOnMethods = { "testIndexType", "testEqualityUsesIndex", "testInUsesIndex", "testRangeDoesNotUseIndex",
+      "testDuplicatedKey" })
+  public void testUpdateAndDelete() {
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>("select from " + TEST_CLASS
+        + " where name = 'n10'"));
+    final ODocument doc = result.get(0);
+    doc.field("name", "renamed").save();
+
+    final OIndex<?> index = database.getMetadata().getIndexManager().getIndex(TEST_CLASS + ".name");
+    Assert.assertNull(index.get("n10"));
+    Assert.assertEquals(index.get("renamed"), doc.getIdentity());
+
+    doc.delete();
+    Assert.assertNull(index.get("renamed"));
+    Assert.assertEquals(index.getKeySize(), TOT - 1);
+  }
+
+  public void testManualIndex() {
+    final OIndex<?> index = database.getMetadata().getIndexManager()
+        .createIndex("manualHash", OClass.INDEX_TYPE.UNIQUE_HASH.toString(), new OSimpleKeyIndexDefinition(OType.INTEGER), null, null);
+
+    final int clusterId = database.getDefaultClusterId();
+    for (int i = 0; i < 5000; i++)
+      index.put(i, new ORecordId(clusterId, i));
+
+    Assert.assertEquals(index.getKeySize(), 5000);
+    Assert.assertEquals(index.get(4321), new ORecordId(clusterId, 4321));
+    Assert.assertEquals(index.get(4321l), new ORecordId(clusterId, 4321));
+    Assert.assertTrue(index.contains(0));
+    Assert.assertFalse(index.contains(5000));
+
+    Assert.assertTrue(index.remove(100));
+    Assert.assertFalse(index.remove(100));
+    Assert.assertNull(index.get(100));
+
+    final Collection<OIdentifiable> values = index.getValues(Arrays.asList(1, 2, 100, 6000));
+    Assert.assertEquals(values.size(), 2);
+
+    try {
+      index.getValuesBetween(1, 10);
+      Assert.fail();
+    } catch (OIndexException e) {
+      Assert.assertTrue(true);
+    }
+
+    database.getMetadata().getIndexManager().reload();
+
+    final OIndex<?> reloaded = database.getMetadata().getIndexManager().getIndex("manualHash");
+    Assert.assertEquals(reloaded.getKeySize(), 4999);
+    Assert.assertEquals(reloaded.get(4999), new ORecordId(clusterId, 4999));
+    Assert.assertNull(reloaded.get(100));
+
+    int keys = 0;
+    for (Object key : reloaded.keys()) {
+      Assert.assertTrue(((Integer) key) < 5000);
+      keys++;
+    }
+    Assert.assertEquals(keys, 4999);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.auto;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+
+@Test(groups = { "index" })
+public class IndexRebuildTest {
+  private static final String TEST_CLASS = "IndexRebuildTestClass";
+  private static final int    TOT        = 3000;
+
+  private ODatabaseDocumentTx database;
+
+  @Parameters(value = "url")
+  public IndexRebuildTest(final String iURL) {
+    database = new ODatabaseDocumentTx(iURL);
+  }
+
+  @BeforeClass
+  public void beforeClass() {
+    database.open("admin", "admin");
+
+    final OClass oClass = database.getMetadata().getSchema().createClass(TEST_CLASS);
+    oClass.createProperty("name", OType.STRING);
+    oClass.createProperty("group", OType.INTEGER);
+    oClass.createProperty("tags", OType.EMBEDDEDLIST, OType.STRING);
+
+    oClass.createIndex("rebuildName", OClass.INDEX_TYPE.UNIQUE, "name");
+    oClass.createIndex("rebuildGroup", OClass.INDEX_TYPE.NOTUNIQUE, "group");
+    oClass.createIndex("rebuildTags", OClass.INDEX_TYPE.NOTUNIQUE, "tags");
+
+    // INSERT THE KEYS OUT OF ORDER
+    for (int i = 0; i < TOT; i++) {
+      final int n = (i * 7919) % TOT;
+      new ODocument(TEST_CLASS).field("name", "n" + n).field("group", n % 100).field("tags", Arrays.asList("t" + n % 7, "t" + n % 11))
+          .save();
+    }
+
+    database.close();
+  }
+
+  @AfterClass
+  public void afterClass() {
+    database.open("admin", "admin");
+    database.command(new OCommandSQL("DELETE FROM " + TEST_CLASS)).execute();
+    database.getMetadata().getSchema().dropClass(TEST_CLASS);
+    database.close();
+  }
+
+  @BeforeMethod
+  public void beforeMethod() {
+    database.open("admin", "admin");
+  }
+
+  @AfterMethod
+  public void afterMethod() {
+    database.close();
+  }
+
+  public void testParallelRebuild() {
+    final Object parallel = OGlobalConfiguration.INDEX_REBUILD_PARALLEL.getValue();
+    final Object threads = OGlobalConfiguration.INDEX_REBUILD_THREADS.getValue();
+    final Object sortBuffer = OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.getValue();
+
+    OGlobalConfiguration.INDEX_REBUILD_PARALLEL.setValue(true);
+    OGlobalConfiguration.INDEX_REBUILD_THREADS.setValue(3);
+    // SMALL BUFFER TO SPILL THE SORTED KEYS TO FILES
+    OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.setValue(500);
+    try {
+      for (String indexName : new String[] { "rebuildName", "rebuildGroup", "rebuildTags" }) {
+        final OIndex<?> index = database.getMetadata().getIndexManager().getIndex(indexName);
+        final long keySize = index.getKeySize();
+        final long size = index.getSize();
+
+        final Number indexed = database.command(new OCommandSQL("REBUILD INDEX " + indexName)).execute();
+        Assert.assertEquals(indexed.intValue(), TOT);
+
+        Assert.assertEquals(index.getKeySize(), keySize);
+        Assert.assertEquals(index.getSize(), size);
+      }
+
+      final OIndex<?> nameIndex = database.getMetadata().getIndexManager().getIndex("rebuildName");
+      Assert.assertEquals(nameIndex.getKeySize(), TOT);
+
+      final ODocument doc = ((OIdentifiable) nameIndex.get("n123")).getRecord();
+      Assert.assertEquals(doc.field("name"), "n123");
+
+      String previous = null;
+      for (Object key : nameIndex.keys()) {
+        if (previous != null)
+          Assert.assertTrue(previous.compareTo((String) key) < 0);
+        previous = (String) key;
+      }
+
+      final OIndex<?> groupIndex = database.getMetadata().getIndexManager().getIndex("rebuildGroup");
+      Assert.assertEquals(groupIndex.getKeySize(), 100);
+      Assert.assertEquals(((Collection<?>) groupIndex.get(42)).size(), TOT / 100);
+
+      final OIndex<?> tagsIndex = database.getMetadata().getIndexManager().getIndex("rebuildTags");
+      Assert.assertEquals(tagsIndex.getKeySize(), 11);
+      Assert.assertEquals(((Collection<?>) tagsIndex.get("t10")).size(), TOT / 11 + (TOT % 11 > 10 ? 1 : 0));
+
+    } finally {
+      OGlobalConfiguration.INDEX_REBUILD_PARALLEL.setValue(parallel);
+      OGlobalConfiguration.INDEX_REBUILD_THREADS.setValue(threads);
+      OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.setValue(sortBuffer);
+    }
+  }
+}
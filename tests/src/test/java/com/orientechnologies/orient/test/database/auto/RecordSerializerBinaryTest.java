@@ -0,0 +1,207 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.auto;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.db.ODatabase.ATTRIBUTES;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.record.binary.ORecordSerializerBinary;
+import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerSchemaAware2CSV;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+
+@Test(groups = { "crud", "record-vobject" })
+public class RecordSerializerBinaryTest {
+  private ODatabaseDocumentTx database;
+
+  @BeforeClass
+  public void init() {
+    database = new ODatabaseDocumentTx("memory:binaryRecordFormat").create();
+  }
+
+  @AfterClass
+  public void deinit() {
+    database.drop();
+  }
+
+  public void alterDatabase() {
+    Assert.assertEquals(database.get(ATTRIBUTES.RECORDFORMAT), "csv");
+    Assert.assertTrue(database.getRecordSerializer() instanceof ORecordSerializerSchemaAware2CSV);
+
+    database.command(new OCommandSQL("alter database recordformat binary")).execute();
+
+    Assert.assertEquals(database.get(ATTRIBUTES.RECORDFORMAT), "binary");
+    Assert.assertSame(database.getRecordSerializer(), ORecordSerializerBinary.INSTANCE);
+    Assert.assertEquals(new ODocument().field("name", "binary").toStream()[0], ORecordSerializerBinary.FORMAT_MARKER);
+  }
+
+  @Test(dependsOnMethods = "alterDatabase")
+  public void roundTrip() {
+    final ODocument linked = new ODocument("BinaryLinked").field("name", "linked");
+    linked.save();
+
+    final ODocument doc = new ODocument("BinaryAll");
+    doc.field("string", "Città");
+    doc.field("int", -123456);
+    doc.field("long", 1234567890123l);
+    doc.field("short", (short) 12);
+    doc.field("byte", (byte) 7);
+    doc.field("float", 12.5f);
+    doc.field("double", -0.25d);
+    doc.field("boolean", true);
+    doc.field("date", new Date(1000000000000l));
+    doc.field("binary", new byte[] { 1, 2, 3, 0, 32 });
+    doc.field("decimal", new BigDecimal("-123.456"));
+    doc.field("null", (Object) null);
+
+    final ODocument embedded = new ODocument().field("street", "Piazza Navona").field("number", 1);
+    doc.field("embedded", embedded.addOwner(doc));
+
+    final List<Object> list = new ArrayList<Object>();
+    list.add("a");
+    list.add(2);
+    list.add(null);
+    list.add(new ODocument().field("inList", true));
+    doc.field("embeddedList", list);
+
+    final Set<String> set = new HashSet<String>();
+    set.add("x");
+    set.add("y");
+    doc.field("embeddedSet", set);
+
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put("one", 1);
+    map.put("doc", new ODocument().field("inMap", "yes"));
+    doc.field("embeddedMap", map);
+
+    doc.field("link", linked);
+
+    final List<OIdentifiable> linkList = new ArrayList<OIdentifiable>();
+    linkList.add(linked.getIdentity());
+    linkList.add(new ORecordId(linked.getIdentity().getClusterId(), 1000));
+    doc.field("linkList", linkList);
+
+    final Set<OIdentifiable> linkSet = new HashSet<OIdentifiable>();
+    linkSet.add(linked.getIdentity());
+    doc.field("linkSet", linkSet);
+
+    final Map<String, OIdentifiable> linkMap = new HashMap<String, OIdentifiable>();
+    linkMap.put("linked", linked.getIdentity());
+    doc.field("linkMap", linkMap);
+
+    doc.save();
+
+    final ODocument loaded = reload(doc.getIdentity());
+
+    Assert.assertEquals(loaded.getClassName(), "BinaryAll");
+    Assert.assertEquals(loaded.field("string"), "Città");
+    Assert.assertEquals(loaded.field("int"), -123456);
+    Assert.assertEquals(loaded.field("long"), 1234567890123l);
+    Assert.assertEquals(loaded.field("short"), (short) 12);
+    Assert.assertEquals(loaded.field("byte"), (byte) 7);
+    Assert.assertEquals(loaded.field("float"), 12.5f);
+    Assert.assertEquals(loaded.field("double"), -0.25d);
+    Assert.assertEquals(loaded.field("boolean"), true);
+    Assert.assertEquals(loaded.field("date"), new Date(1000000000000l));
+    Assert.assertEquals((byte[]) loaded.field("binary"), new byte[] { 1, 2, 3, 0, 32 });
+    Assert.assertEquals(loaded.field("decimal"), new BigDecimal("-123.456"));
+    Assert.assertTrue(loaded.containsField("null"));
+    Assert.assertNull(loaded.field("null"));
+
+    final ODocument loadedEmbedded = loaded.field("embedded");
+    Assert.assertTrue(loadedEmbedded.hasOwners());
+    Assert.assertEquals(loadedEmbedded.field("street"), "Piazza Navona");
+    Assert.assertEquals(loadedEmbedded.field("number"), 1);
+
+    final List<Object> loadedList = loaded.field("embeddedList");
+    Assert.assertEquals(loadedList.size(), 4);
+    Assert.assertEquals(loadedList.get(0), "a");
+    Assert.assertEquals(loadedList.get(1), 2);
+    Assert.assertNull(loadedList.get(2));
+    Assert.assertEquals(((ODocument) loadedList.get(3)).field("inList"), true);
+
+    Assert.assertEquals(loaded.field("embeddedSet"), set);
+
+    final Map<String, Object> loadedMap = loaded.field("embeddedMap");
+    Assert.assertEquals(loadedMap.get("one"), 1);
+    Assert.assertEquals(((ODocument) loadedMap.get("doc")).field("inMap"), "yes");
+
+    Assert.assertEquals(((OIdentifiable) loaded.field("link")).getIdentity(), linked.getIdentity());
+
+    final List<OIdentifiable> loadedLinkList = loaded.field("linkList");
+    Assert.assertEquals(loadedLinkList.size(), 2);
+    Assert.assertEquals(loadedLinkList.get(0).getIdentity(), linked.getIdentity());
+
+    final Collection<OIdentifiable> loadedLinkSet = loaded.field("linkSet");
+    Assert.assertEquals(loadedLinkSet.size(), 1);
+    Assert.assertEquals(loadedLinkSet.iterator().next().getIdentity(), linked.getIdentity());
+
+    final Map<String, OIdentifiable> loadedLinkMap = loaded.field("linkMap");
+    Assert.assertEquals(loadedLinkMap.get("linked").getIdentity(), linked.getIdentity());
+  }
+
+  @Test(dependsOnMethods = "alterDatabase")
+  public void readSingleField() {
+    final ODocument doc = new ODocument("BinaryPartial").field("first", "1").field("second", 2).field("third", 3l);
+    final byte[] stream = doc.toStream();
+
+    final ODocument partial = new ODocument();
+    ORecordSerializerBinary.INSTANCE.fromStream(stream, partial, new String[] { "second" });
+
+    Assert.assertEquals(partial.getClassName(), "BinaryPartial");
+    Assert.assertEquals(partial.fields(), 1);
+    Assert.assertEquals(partial.field("second"), 2);
+  }
+
+  public void csvRecordsAreStillReadable() {
+    final ODocument doc = new ODocument().field("name", "csv");
+    final byte[] csvStream = ORecordSerializerSchemaAware2CSV.INSTANCE.toStream(doc, false);
+
+    final ODocument fromBinary = new ODocument();
+    ORecordSerializerBinary.INSTANCE.fromStream(csvStream, fromBinary, null);
+    Assert.assertEquals(fromBinary.field("name"), "csv");
+
+    final byte[] binaryStream = ORecordSerializerBinary.INSTANCE.toStream(doc, false);
+    Assert.assertEquals(binaryStream[0], ORecordSerializerBinary.FORMAT_MARKER);
+
+    final ODocument fromCsv = new ODocument();
+    ORecordSerializerSchemaAware2CSV.INSTANCE.fromStream(binaryStream, fromCsv, null);
+    Assert.assertEquals(fromCsv.field("name"), "csv");
+  }
+
+  private ODocument reload(final ORID iRid) {
+    final byte[] stream = database.getStorage().readRecord((ORecordId) iRid, null, false, null).buffer;
+    Assert.assertEquals(stream[0], ORecordSerializerBinary.FORMAT_MARKER);
+    return new ODocument(iRid).fromStream(stream);
+  }
+}
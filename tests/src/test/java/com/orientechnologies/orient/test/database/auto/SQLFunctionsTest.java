@@ -101,6 +101,46 @@ public class SQLFunctionsTest {
     database.close();
   }
 
+  @Test
+  public void queryCountWithoutWhere() {
+    database.open("admin", "admin");
+    List<ODocument> result = database.command(new OSQLSynchQuery<ODocument>("select count(*) as total from Account")).execute();
+
+    Assert.assertEquals(result.size(), 1);
+    Assert.assertEquals(((Number) result.get(0).field("total")).longValue(), database.countClass("Account"));
+
+    // ANSWERED BY THE CLUSTER COUNTS WITHOUT BROWSING THE RECORDS
+    final ODocument explain = database.command(new OCommandSQL("explain select count(*) as total from Account")).execute();
+    Assert.assertNull(explain.field("documentReads"));
+
+    database.close();
+  }
+
+  @Test
+  public void queryAggregatesWithWhere() {
+    database.open("admin", "admin");
+
+    long count = 0;
+    long sum = 0;
+    for (ODocument d : database.browseClass("Account")) {
+      final Number id = d.field("id");
+      if (id != null && id.intValue() > 0) {
+        count++;
+        sum += id.longValue();
+      }
+    }
+    Assert.assertTrue(count > 0);
+
+    List<ODocument> result = database.command(
+        new OSQLSynchQuery<ODocument>("select count(*) as total, sum(id) as sum from Account where id > 0")).execute();
+
+    Assert.assertEquals(result.size(), 1);
+    Assert.assertEquals(((Number) result.get(0).field("total")).longValue(), count);
+    Assert.assertEquals(((Number) result.get(0).field("sum")).longValue(), sum);
+
+    database.close();
+  }
+
   @Test
   public void queryDistinct() {
     database.open("admin", "admin");
@@ -2465,4 +2465,82 @@ public class SQLSelectIndexReuseTest extends AbstractIndexReuseTest {
     Assert.assertEquals(result.field("count", Long.class), 1l);
     doc.delete();
   }
+
+  @Test
+  public void testOrderByIndexedFieldWithLimit() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+    if (oldIndexUsage == -1) {
+      oldIndexUsage = 0;
+    }
+
+    final List<ODocument> result = database.command(
+        new OSQLSynchQuery<ODocument>("select * from sqlSelectIndexReuseTestClass where prop3 > 20 order by prop3 limit 5")).execute();
+
+    Assert.assertEquals(result.size(), 5);
+    for (int i = 0; i < 5; i++)
+      Assert.assertEquals(result.get(i).<Integer> field("prop3").intValue(), 21 + i);
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage + 1);
+
+    // THE INDEX IS BROWSED ONLY UNTIL THE LIMIT
+    final ODocument explain = database.command(
+        new OCommandSQL("explain select * from sqlSelectIndexReuseTestClass where prop3 > 20 order by prop3 limit 5")).execute();
+    Assert.assertEquals(((Number) explain.field("indexReads")).intValue(), 5);
+  }
+
+  @Test
+  public void testOrderByIndexedFieldDescWithSkip() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+    if (oldIndexUsage == -1) {
+      oldIndexUsage = 0;
+    }
+
+    final List<ODocument> result = database.command(
+        new OSQLSynchQuery<ODocument>(
+            "select * from sqlSelectIndexReuseTestClass where prop3 < 50 order by prop3 desc limit 3 skip 2")).execute();
+
+    Assert.assertEquals(result.size(), 3);
+    for (int i = 0; i < 3; i++)
+      Assert.assertEquals(result.get(i).<Integer> field("prop3").intValue(), 47 - i);
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage + 1);
+  }
+
+  @Test
+  public void testOrderByIndexedFieldBetween() {
+    final List<ODocument> result = database.command(
+        new OSQLSynchQuery<ODocument>(
+            "select * from sqlSelectIndexReuseTestClass where prop3 between 10 and 30 order by prop3 desc limit 4")).execute();
+
+    Assert.assertEquals(result.size(), 4);
+    for (int i = 0; i < 4; i++)
+      Assert.assertEquals(result.get(i).<Integer> field("prop3").intValue(), 30 - i);
+  }
+
+  @Test
+  public void testOrderByCompositeIndexNextField() {
+    long oldIndexUsage = profiler.getCounter("db.demo.query.indexUsed");
+    if (oldIndexUsage == -1) {
+      oldIndexUsage = 0;
+    }
+
+    List<ODocument> result = database.command(
+        new OSQLSynchQuery<ODocument>("select * from sqlSelectIndexReuseTestClass where prop1 = 3 order by prop2 desc")).execute();
+
+    Assert.assertEquals(result.size(), 10);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(result.get(i).<Integer> field("prop1").intValue(), 3);
+      Assert.assertEquals(result.get(i).<Integer> field("prop2").intValue(), 9 - i);
+    }
+
+    result = database.command(
+        new OSQLSynchQuery<ODocument>(
+            "select * from sqlSelectIndexReuseTestClass where prop1 = 3 and prop2 >= 4 order by prop2 limit 3")).execute();
+
+    Assert.assertEquals(result.size(), 3);
+    for (int i = 0; i < 3; i++)
+      Assert.assertEquals(result.get(i).<Integer> field("prop2").intValue(), 4 + i);
+
+    Assert.assertEquals(profiler.getCounter("db.demo.query.indexUsed"), oldIndexUsage + 2);
+  }
 }
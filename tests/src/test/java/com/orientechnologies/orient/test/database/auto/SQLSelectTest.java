@@ -32,6 +32,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
 
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.db.graph.OGraphDatabase;
@@ -46,6 +47,7 @@ import com.orientechnologies.orient.core.metadata.schema.OType;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.sql.OCommandSQL;
 import com.orientechnologies.orient.core.sql.OCommandSQLParsingException;
+import com.orientechnologies.orient.core.sql.query.OSQLCursorQuery;
 import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 
 /**
@@ -1324,8 +1326,8 @@ public class SQLSelectTest {
         .execute();
 
     Assert.assertTrue(result2.size() != 0);
-    Assert.assertTrue(((ODocument) result2.get(0)).field("$names") instanceof Collection<?>);
-    Assert.assertFalse(((Collection<?>) ((ODocument) result2.get(0)).field("$names")).isEmpty());
+    Assert.assertTrue(result2.get(0).field("$names") instanceof Collection<?>);
+    Assert.assertFalse(((Collection<?>) result2.get(0).field("$names")).isEmpty());
   }
 
   @Test
@@ -1369,6 +1371,177 @@ public class SQLSelectTest {
     Assert.assertEquals(bigger.get(Calendar.YEAR), currentYear.get(Calendar.YEAR));
   }
 
+  @Test
+  public void queryCursor() {
+    final List<ODocument> expected = database.query(new OSQLSynchQuery<ODocument>("select from Account"));
+    Assert.assertTrue(expected.size() > 3);
+
+    final List<ODocument> result = database.query(new OSQLCursorQuery<ODocument>("select from Account", 3));
+
+    int i = 0;
+    for (ODocument d : result)
+      Assert.assertEquals(d.getIdentity(), expected.get(i++).getIdentity());
+    Assert.assertEquals(i, expected.size());
+    Assert.assertEquals(result.size(), expected.size());
+
+    final List<ODocument> count = database.query(new OSQLCursorQuery<ODocument>("select count(*) from Account", 3));
+    Assert.assertEquals(count.size(), 1);
+    Assert.assertEquals(((Number) count.get(0).field("count")).intValue(), expected.size());
+  }
+
+  @Test
+  public void queryOrderByTopRecords() {
+    final List<ODocument> all = database.query(new OSQLSynchQuery<ODocument>("select from Profile order by name desc"));
+    Assert.assertTrue(all.size() > 10);
+
+    final List<ODocument> top = database.query(new OSQLSynchQuery<ODocument>("select from Profile order by name desc limit 5 skip 3"));
+    assertSameRecords(top, all.subList(3, 8));
+
+    final List<ODocument> skipped = database.query(new OSQLSynchQuery<ODocument>("select from Profile order by name desc skip 3"));
+    assertSameRecords(skipped, all.subList(3, all.size()));
+  }
+
+  @Test
+  public void queryOrderBySpilledToDisk() {
+    if (database.getURL().startsWith("remote:"))
+      // THE SORT BUFFER WOULD BE CHANGED ONLY ON THE CLIENT
+      return;
+
+    final List<ODocument> expected = database.query(new OSQLSynchQuery<ODocument>("select from Profile order by name asc, nick asc"));
+    Assert.assertTrue(expected.size() > 10);
+
+    final Object sortBuffer = OGlobalConfiguration.QUERY_SORT_BUFFER.getValue();
+    OGlobalConfiguration.QUERY_SORT_BUFFER.setValue(3);
+    try {
+      final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>("select from Profile order by name asc, nick asc"));
+      assertSameRecords(result, expected);
+
+      final List<ODocument> top = database.query(new OSQLSynchQuery<ODocument>("select from Profile order by name asc, nick asc limit 5"));
+      assertSameRecords(top, expected.subList(0, 5));
+
+      final List<ODocument> cursor = database.query(new OSQLCursorQuery<ODocument>("select from Profile order by name asc, nick asc", 4));
+      assertSameRecords(cursor, expected);
+    } finally {
+      OGlobalConfiguration.QUERY_SORT_BUFFER.setValue(sortBuffer);
+    }
+  }
+
+  @Test
+  public void queryGroupBy() {
+    final Map<Object, Long> expected = countProfilesByName();
+
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>(
+        "select name, count(*) as total from Profile group by name"));
+    Assert.assertEquals(result.size(), expected.size());
+    for (ODocument d : result)
+      Assert.assertEquals(d.field("total"), expected.get(d.field("name")));
+  }
+
+  @Test
+  public void queryGroupByHavingOrderBy() {
+    final Map<Object, Long> expected = countProfilesByName();
+
+    final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>(
+        "select name, count(*) as total from Profile group by name having total > 1 order by total desc, name asc"));
+
+    int groups = 0;
+    for (Long total : expected.values())
+      if (total > 1)
+        groups++;
+    Assert.assertEquals(result.size(), groups);
+
+    long lastTotal = Long.MAX_VALUE;
+    for (ODocument d : result) {
+      final long total = d.<Long> field("total");
+      Assert.assertEquals(total, expected.get(d.field("name")).longValue());
+      Assert.assertTrue(total > 1 && total <= lastTotal);
+      lastTotal = total;
+    }
+
+    final List<ODocument> top = database.query(new OSQLSynchQuery<ODocument>(
+        "select name, count(*) as total from Profile group by name order by name asc limit 2 skip 1"));
+    final List<ODocument> all = database.query(new OSQLSynchQuery<ODocument>(
+        "select name, count(*) as total from Profile group by name order by name asc"));
+    Assert.assertEquals(top.size(), 2);
+    Assert.assertEquals(top.get(0).field("name"), all.get(1).field("name"));
+    Assert.assertEquals(top.get(1).field("name"), all.get(2).field("name"));
+  }
+
+  @Test
+  public void queryGroupBySpilledToDisk() {
+    final Map<Object, Long> expected = countProfilesByName();
+    Assert.assertTrue(expected.size() > 3);
+
+    final Object groupByBuffer = OGlobalConfiguration.QUERY_GROUP_BY_BUFFER.getValue();
+    OGlobalConfiguration.QUERY_GROUP_BY_BUFFER.setValue(2);
+    try {
+      final List<ODocument> result = database.query(new OSQLSynchQuery<ODocument>(
+          "select name, count(*) as total from Profile where name is not null group by name"));
+      Assert.assertEquals(result.size(), expected.size() - (expected.containsKey(null) ? 1 : 0));
+
+      final Set<Object> names = new HashSet<Object>();
+      for (ODocument d : result) {
+        Assert.assertTrue(names.add(d.field("name")));
+        Assert.assertEquals(d.field("total"), expected.get(d.field("name")));
+      }
+    } finally {
+      OGlobalConfiguration.QUERY_GROUP_BY_BUFFER.setValue(groupByBuffer);
+    }
+  }
+
+  @Test
+  public void queryParallel() {
+    final Object threads = OGlobalConfiguration.QUERY_PARALLEL_THREADS.getValue();
+    OGlobalConfiguration.QUERY_PARALLEL_THREADS.setValue(4);
+    try {
+      final List<ODocument> sequential = database.query(new OSQLSynchQuery<ODocument>(
+          "select from Profile where name is not null"));
+      final List<ODocument> parallel = database.query(new OSQLSynchQuery<ODocument>(
+          "select from Profile where name is not null parallel"));
+      Assert.assertFalse(sequential.isEmpty());
+      Assert.assertEquals(parallel.size(), sequential.size());
+
+      final Set<ORID> rids = new HashSet<ORID>();
+      for (ODocument d : sequential)
+        rids.add(d.getIdentity());
+      for (ODocument d : parallel)
+        Assert.assertTrue(rids.remove(d.getIdentity()));
+
+      final List<ODocument> limited = database.query(new OSQLSynchQuery<ODocument>("select from Profile limit 3 parallel"));
+      Assert.assertEquals(limited.size(), 3);
+
+      final List<ODocument> ordered = database.query(new OSQLSynchQuery<ODocument>(
+          "select from Profile where name is not null order by name parallel"));
+      final List<ODocument> expected = database.query(new OSQLSynchQuery<ODocument>(
+          "select from Profile where name is not null order by name"));
+      Assert.assertEquals(ordered.size(), expected.size());
+      for (int i = 0; i < ordered.size(); ++i)
+        Assert.assertEquals(ordered.get(i).field("name"), expected.get(i).field("name"));
+
+      final List<ODocument> count = database.query(new OSQLSynchQuery<ODocument>(
+          "select count(*) from Profile where name is not null parallel"));
+      Assert.assertEquals(((Number) count.get(0).field("count")).intValue(), sequential.size());
+    } finally {
+      OGlobalConfiguration.QUERY_PARALLEL_THREADS.setValue(threads);
+    }
+  }
+
+  private Map<Object, Long> countProfilesByName() {
+    final Map<Object, Long> counts = new HashMap<Object, Long>();
+    for (ODocument d : database.browseClass("Profile")) {
+      final Long count = counts.get(d.field("name"));
+      counts.put(d.field("name"), count == null ? 1l : count + 1);
+    }
+    return counts;
+  }
+
+  private static void assertSameRecords(final List<ODocument> iResult, final List<ODocument> iExpected) {
+    int i = 0;
+    for (ODocument d : iResult)
+      Assert.assertEquals(d.getIdentity(), iExpected.get(i++).getIdentity());
+    Assert.assertEquals(i, iExpected.size());
+  }
+
   @Test
   public void queryWithTwoRidInWhere() {
     int clusterId = database.getClusterIdByName("profile");
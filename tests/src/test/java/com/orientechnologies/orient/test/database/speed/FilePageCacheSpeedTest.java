@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.storage.fs.OFileClassic;
+import com.orientechnologies.orient.test.database.base.OrientMonoThreadTest;
+
+/**
+ * Reads and writes values at random positions of two classic files, one accessed through the page cache and one directly through
+ * its channel, comparing the times.
+ */
+@Test(enabled = false)
+public class FilePageCacheSpeedTest extends OrientMonoThreadTest {
+  private static final int FILE_SIZE   = 32 * 1024 * 1024;
+  private static final int WRITE_RATIO = 10;
+
+  private final Random     random      = new Random();
+  private final long[]     times       = new long[2];
+  private OFileClassic     plain;
+  private OFileClassic     cached;
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    FilePageCacheSpeedTest test = new FilePageCacheSpeedTest();
+    test.data.go(test);
+  }
+
+  public FilePageCacheSpeedTest() {
+    super(1000000);
+  }
+
+  @Override
+  public void init() throws IOException {
+    final String path = System.getProperty("java.io.tmpdir") + "/filePageCacheSpeedTest";
+
+    OGlobalConfiguration.FILE_CACHE_SIZE.setValue(0);
+    plain = createFile(path + ".plain");
+
+    OGlobalConfiguration.FILE_CACHE_SIZE.setValue(FILE_SIZE * 2);
+    cached = createFile(path + ".cached");
+  }
+
+  @Override
+  public void cycle() throws IOException {
+    final long position = random.nextInt(FILE_SIZE / 4) * 4;
+    final boolean write = data.getCyclesDone() % WRITE_RATIO == 0;
+
+    access(plain, position, write, 0);
+    access(cached, position, write, 1);
+  }
+
+  @Override
+  public void deinit() {
+    System.out.println("Channel access: " + times[0] / 1000000 + "ms, page cache: " + times[1] / 1000000 + "ms");
+    super.deinit();
+
+    try {
+      plain.delete();
+      cached.delete();
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot delete the files of the test", e);
+    }
+  }
+
+  private OFileClassic createFile(final String iPath) throws IOException {
+    final OFileClassic file = new OFileClassic().init(iPath, "rw");
+    if (file.exists())
+      file.delete();
+    file.create(-1);
+    file.allocateSpace(FILE_SIZE);
+    file.write(0, new byte[FILE_SIZE]);
+    file.synch();
+    return file;
+  }
+
+  private void access(final OFileClassic iFile, final long iPosition, final boolean iWrite, final int iTime) throws IOException {
+    final long start = System.nanoTime();
+    if (iWrite)
+      iFile.writeInt(iPosition, (int) iPosition);
+    else
+      iFile.readInt(iPosition);
+    times[iTime] += System.nanoTime() - start;
+  }
+}
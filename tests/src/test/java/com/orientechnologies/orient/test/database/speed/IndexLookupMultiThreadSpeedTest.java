@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.util.Collection;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.test.database.base.OrientMultiThreadTest;
+import com.orientechnologies.orient.test.database.base.OrientThreadTest;
+
+/**
+ * Looks up keys against a UNIQUE and a NOTUNIQUE index from many threads. Lookups share the index lock, so the elapsed time should
+ * go down with the number of threads up to the available CPUs.
+ */
+@Test(enabled = false)
+public class IndexLookupMultiThreadSpeedTest extends OrientMultiThreadTest {
+	private static final int	KEYS	= 100000;
+	private ODatabaseDocument	database;
+
+	public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+		if (iArgs.length > 0)
+			System.setProperty("url", iArgs[0]);
+
+		int tot = iArgs.length > 1 ? Integer.parseInt(iArgs[1]) : 1000000;
+		int threads = iArgs.length > 2 ? Integer.parseInt(iArgs[2]) : 4;
+
+		IndexLookupMultiThreadSpeedTest test = new IndexLookupMultiThreadSpeedTest(tot, threads);
+		test.data.go(test);
+	}
+
+	public IndexLookupMultiThreadSpeedTest(int tot, int threads) {
+		super(tot, threads, LookupThread.class);
+	}
+
+	@Override
+	public void init() {
+		database = new ODatabaseDocumentTx(System.getProperty("url"));
+		if (database.getURL().startsWith("remote:"))
+			database.open("admin", "admin");
+		else if (database.exists())
+			database.open("admin", "admin");
+		else
+			database.create();
+
+		OClass c = database.getMetadata().getSchema().getClass("Lookup");
+		if (c != null)
+			return;
+
+		c = database.getMetadata().getSchema().createClass("Lookup");
+		c.createProperty("key", OType.INTEGER).createIndex(OClass.INDEX_TYPE.UNIQUE);
+		c.createProperty("name", OType.STRING).createIndex(OClass.INDEX_TYPE.NOTUNIQUE);
+
+		database.declareIntent(new OIntentMassiveInsert());
+		final ODocument record = new ODocument();
+		for (int i = 0; i < KEYS; ++i) {
+			record.reset();
+			record.setClassName("Lookup");
+			record.field("key", i);
+			record.field("name", "key-" + i);
+			record.save();
+		}
+		database.declareIntent(null);
+
+		System.out.println("\nCreated " + KEYS + " records to look up");
+	}
+
+	@Test(enabled = false)
+	public static class LookupThread extends OrientThreadTest {
+		private ODatabaseDocument	database;
+		private OIndex<?>					unique;
+		private OIndex<?>					notUnique;
+		private final Random			random	= new Random();
+
+		@Override
+		public void init() {
+			database = new ODatabaseDocumentTx(System.getProperty("url")).open("admin", "admin");
+			unique = database.getMetadata().getIndexManager().getIndex("Lookup.key");
+			notUnique = database.getMetadata().getIndexManager().getIndex("Lookup.name");
+		}
+
+		public void cycle() {
+			final int key = random.nextInt(KEYS);
+			Assert.assertNotNull(unique.get(key));
+			Assert.assertEquals(((Collection<?>) notUnique.get("key-" + key)).size(), 1);
+		}
+
+		@Override
+		public void deinit() throws Exception {
+			if (database != null)
+				database.close();
+			super.deinit();
+		}
+	}
+
+	@Override
+	public void deinit() {
+		if (database != null)
+			database.close();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.cache.OCache;
+import com.orientechnologies.orient.core.cache.OCacheLocator;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.test.database.base.OrientMultiThreadTest;
+import com.orientechnologies.orient.test.database.base.OrientThreadTest;
+
+/**
+ * Reads concurrently from the level-2 cache implementation configured in "cache.level2.impl". Compare
+ * -Dcache.level2.impl=com.orientechnologies.orient.core.cache.ODefaultCache against
+ * -Dcache.level2.impl=com.orientechnologies.orient.core.cache.OConcurrentCache.
+ */
+@Test(enabled = false)
+public class Level2CacheConcurrentReadSpeedTest extends OrientMultiThreadTest {
+  private static final int RECORDS = 100000;
+  private static OCache    cache;
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    Level2CacheConcurrentReadSpeedTest test = new Level2CacheConcurrentReadSpeedTest();
+    test.data.go(test);
+  }
+
+  public Level2CacheConcurrentReadSpeedTest() {
+    super(10000000, 64, ReadThread.class);
+  }
+
+  @Override
+  public void init() {
+    OGlobalConfiguration.CACHE_LEVEL2_SIZE.setValue(RECORDS);
+    cache = new OCacheLocator().secondaryCache("speedTest");
+    cache.enable();
+
+    for (int i = 0; i < RECORDS; ++i)
+      cache.put(new ODocument(new ORecordId(1, i)));
+
+    System.out.println("\nCache implementation: " + cache.getClass().getName() + ", records: " + cache.size());
+  }
+
+  @Test(enabled = false)
+  public static class ReadThread extends OrientThreadTest {
+    private final Random    random = new Random();
+    private final ORecordId rid    = new ORecordId(1, 0);
+
+    public void cycle() {
+      rid.clusterPosition = random.nextInt(RECORDS);
+
+      cache.lock(rid);
+      try {
+        cache.get(rid);
+      } finally {
+        cache.unlock(rid);
+      }
+    }
+  }
+
+  @Override
+  public void deinit() {
+    cache.shutdown();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.impl.local.ODataLocal;
+import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
+import com.orientechnologies.orient.test.database.base.OrientMonoThreadTest;
+
+/**
+ * Creates the same documents of {@link LocalCreateDocumentSpeedTest}, plus a few verbose fields, in two local databases: one with
+ * the records compressed and one without. Then reads all of them back, comparing the times and the size of the data segments.
+ */
+@Test(enabled = false)
+public class LocalCreateCompressedDocumentSpeedTest extends OrientMonoThreadTest {
+  private static final int    COMPRESSION_MIN_SIZE = 64;
+
+  private final long[]        plainTimes           = new long[2];
+  private final long[]        compressedTimes      = new long[2];
+  private ODatabaseDocumentTx plain;
+  private ODatabaseDocumentTx compressed;
+  private Date                date                 = new Date();
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    LocalCreateCompressedDocumentSpeedTest test = new LocalCreateCompressedDocumentSpeedTest();
+    test.data.go(test);
+  }
+
+  public LocalCreateCompressedDocumentSpeedTest() {
+    super(200000);
+  }
+
+  @Override
+  public void init() {
+    OGlobalConfiguration.CACHE_LEVEL2_ENABLED.setValue(false);
+
+    final String path = System.getProperty("java.io.tmpdir") + "/compressionSpeedTest";
+    plain = createDatabase("local:" + path + "/plain", -1);
+    compressed = createDatabase("local:" + path + "/compressed", COMPRESSION_MIN_SIZE);
+  }
+
+  @Override
+  public void cycle() {
+    create(plain, plainTimes);
+    create(compressed, compressedTimes);
+  }
+
+  @Override
+  public void deinit() {
+    read(plain, plainTimes);
+    read(compressed, compressedTimes);
+
+    final ODataLocal plainData = ((OStorageLocal) plain.getStorage()).getDataSegmentById(0);
+    final ODataLocal compressedData = ((OStorageLocal) compressed.getStorage()).getDataSegmentById(0);
+
+    System.out.println(String.format("%-10s plain=%6dms compressed=%6dms", "create", plainTimes[0] / 1000000,
+        compressedTimes[0] / 1000000));
+    System.out.println(String.format("%-10s plain=%6dms compressed=%6dms", "read", plainTimes[1] / 1000000,
+        compressedTimes[1] / 1000000));
+    System.out.println(String.format("%-10s plain=%6dKb compressed=%6dKb ratio=%.2f", "data", plainData.getSize() / 1024,
+        compressedData.getSize() / 1024, ((OStorageLocal) compressed.getStorage()).getCompressionRatio()));
+
+    plain.drop();
+    compressed.drop();
+    super.deinit();
+  }
+
+  private ODatabaseDocumentTx createDatabase(final String iURL, final int iCompressionMinSize) {
+    ODatabaseDocumentTx database = new ODatabaseDocumentTx(iURL);
+    if (database.exists())
+      database.open("admin", "admin").drop();
+
+    database = new ODatabaseDocumentTx(iURL).create();
+    try {
+      ((OStorageLocal) database.getStorage()).getDataSegmentById(0).setCompressionMinSize(iCompressionMinSize);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    database.getMetadata().getSchema().createClass("Account");
+    database.declareIntent(new OIntentMassiveInsert());
+    return database;
+  }
+
+  private void create(final ODatabaseDocumentTx iDatabase, final long[] iTimes) {
+    ODatabaseRecordThreadLocal.INSTANCE.set(iDatabase);
+
+    final ODocument record = new ODocument("Account");
+    record.field("id", data.getCyclesDone());
+    record.field("name", "Luca");
+    record.field("surname", "Garulli");
+    record.field("birthDate", date);
+    record.field("salary", 3000f + data.getCyclesDone());
+    record.field("description", "Account number " + data.getCyclesDone()
+        + " opened by the customer at the main branch, the customer asked to receive the statements by e-mail");
+
+    final List<ODocument> addresses = new ArrayList<ODocument>();
+    for (String type : new String[] { "home", "office", "billing" }) {
+      final ODocument address = new ODocument();
+      address.field("type", type);
+      address.field("street", "Piazza di Spagna " + data.getCyclesDone() % 100);
+      address.field("city", "Rome");
+      address.field("country", "Italy");
+      addresses.add(address.addOwner(record));
+    }
+    record.field("addresses", addresses);
+
+    final long time = System.nanoTime();
+    record.save();
+    iTimes[0] += System.nanoTime() - time;
+  }
+
+  private void read(final ODatabaseDocumentTx iDatabase, final long[] iTimes) {
+    ODatabaseRecordThreadLocal.INSTANCE.set(iDatabase);
+    iDatabase.getLevel1Cache().invalidate();
+
+    final long time = System.nanoTime();
+    for (ORecordInternal<?> record : iDatabase.browseCluster("account"))
+      record.getIdentity();
+    iTimes[1] += System.nanoTime() - time;
+  }
+}
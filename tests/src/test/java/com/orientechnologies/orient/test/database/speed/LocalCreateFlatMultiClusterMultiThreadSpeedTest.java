@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabase;
+import com.orientechnologies.orient.core.db.ODataSegmentStrategy;
+import com.orientechnologies.orient.core.db.record.ODatabaseFlat;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ORecordFlat;
+import com.orientechnologies.orient.core.storage.OStorage.CLUSTER_TYPE;
+import com.orientechnologies.orient.core.tx.OTransaction.TXTYPE;
+import com.orientechnologies.orient.test.database.base.OrientMultiThreadTest;
+import com.orientechnologies.orient.test.database.base.OrientThreadTest;
+
+/**
+ * Multi-cluster variant of {@link LocalCreateFlatMultiThreadSpeedTest}: every thread writes into one of the "flat0".."flatN"
+ * clusters, each one with its own data segment. Run it with -DfineGrainedLocking=true and -DfineGrainedLocking=false and a growing
+ * number of clusters (-Dclusters=N) to see how the write throughput scales.
+ */
+@Test(enabled = false)
+public class LocalCreateFlatMultiClusterMultiThreadSpeedTest extends OrientMultiThreadTest {
+  private static final int           CLUSTERS = Integer.parseInt(System.getProperty("clusters", "8"));
+  private static final AtomicInteger threadId = new AtomicInteger();
+
+  protected ODatabaseFlat            database;
+  private long                       foundObjects;
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.setValue(Boolean.parseBoolean(System.getProperty("fineGrainedLocking",
+        "true")));
+
+    LocalCreateFlatMultiClusterMultiThreadSpeedTest test = new LocalCreateFlatMultiClusterMultiThreadSpeedTest();
+    test.data.go(test);
+  }
+
+  public LocalCreateFlatMultiClusterMultiThreadSpeedTest() {
+    super(1000000, 16, CreateObjectsThread.class);
+  }
+
+  @Override
+  public void init() {
+    database = new ODatabaseFlat(System.getProperty("url"));
+    if (database.exists())
+      database.open("admin", "admin");
+    else
+      database.create();
+
+    for (int i = 0; i < CLUSTERS; ++i)
+      if (database.getClusterIdByName("flat" + i) == -1) {
+        database.addDataSegment("flatdata" + i, null);
+        database.addCluster("flat" + i, CLUSTER_TYPE.PHYSICAL);
+      }
+
+    foundObjects = countRecords();
+
+    System.out.println("\nFine grained locking: " + OGlobalConfiguration.STORAGE_FINE_GRAINED_LOCKING.getValueAsBoolean()
+        + ", clusters: " + CLUSTERS);
+    System.out.println("Total objects in flat clusters before the test: " + foundObjects);
+  }
+
+  @Test(enabled = false)
+  public static class CreateObjectsThread extends OrientThreadTest {
+    protected ODatabaseFlat database;
+    protected ORecordFlat   record;
+    protected String        clusterName;
+
+    @Override
+    public void init() {
+      database = new ODatabaseFlat(System.getProperty("url")).open("admin", "admin");
+      record = database.newInstance();
+      final int clusterIndex = threadId.getAndIncrement() % CLUSTERS;
+      clusterName = "flat" + clusterIndex;
+
+      final int dataSegmentId = database.getDataSegmentIdByName("flatdata" + clusterIndex);
+      database.setDataSegmentStrategy(new ODataSegmentStrategy() {
+        public int assignDataSegmentId(final ODatabase iDatabase, final ORecord<?> iRecord) {
+          return dataSegmentId;
+        }
+      });
+      database.declareIntent(new OIntentMassiveInsert());
+      database.begin(TXTYPE.NOTX);
+    }
+
+    public void cycle() {
+      record.reset();
+      record.value("id:" + data.getCyclesDone() + ",name:'Luca',surname:'Garulli',salary:" + (data.getCyclesDone() + 3000) + ".00")
+          .save(clusterName);
+
+      if (data.getCyclesDone() == data.getCycles() - 1)
+        database.commit();
+    }
+
+    @Override
+    public void deinit() throws Exception {
+      database.close();
+      super.deinit();
+    }
+  }
+
+  @Override
+  public void deinit() {
+    long total = countRecords();
+
+    System.out.println("\nTotal objects in flat clusters after the test: " + total);
+    System.out.println("Created " + (total - foundObjects));
+    Assert.assertEquals(threadCycles, total - foundObjects);
+
+    if (database != null)
+      database.close();
+  }
+
+  private long countRecords() {
+    long total = 0;
+    for (int i = 0; i < CLUSTERS; ++i)
+      total += database.countClusterElements("flat" + i);
+    return total;
+  }
+}
@@ -21,21 +21,34 @@ import java.io.UnsupportedEncodingException;
 import com.orientechnologies.common.test.SpeedTestMonoThread;
 import com.orientechnologies.orient.core.db.raw.ODatabaseRaw;
 import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.intent.OIntentMassiveRead;
 import com.orientechnologies.orient.core.storage.ORawBuffer;
 
+/**
+ * Reads all the records of a cluster. Run it with -DmassiveRead=false to compare the times without the massive read intent, that
+ * reads ahead the files of the cluster.
+ */
 public class ReadAllClusterObjectsSpeedTest extends SpeedTestMonoThread {
 	private static final String	CLUSTER_NAME	= "Animal";
 	private final static int		RECORDS				= 1;
 	private ODatabaseRaw				db;
 	private int									objectsRead;
 
+	public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+		ReadAllClusterObjectsSpeedTest test = new ReadAllClusterObjectsSpeedTest();
+		test.data.go(test);
+	}
+
 	public ReadAllClusterObjectsSpeedTest() {
 		super(RECORDS);
 	}
 
 	@Override
 	public void init() throws IOException {
-		db = new ODatabaseRaw("embedded:database/test");
+		db = new ODatabaseRaw(System.getProperty("url")).open("admin", "admin");
+
+		if (Boolean.parseBoolean(System.getProperty("massiveRead", "true")))
+			db.declareIntent(new OIntentMassiveRead());
 	}
 
 	@Override
@@ -44,11 +57,12 @@ public class ReadAllClusterObjectsSpeedTest extends SpeedTestMonoThread {
 		objectsRead = 0;
 
 		int clusterId = db.getClusterIdByName(CLUSTER_NAME);
+		final long[] range = db.getStorage().getClusterDataRange(clusterId);
 
 		final ORecordId rid = new ORecordId(clusterId);
-		for (int i = 0; i < db.countClusterElements(CLUSTER_NAME); ++i) {
+		for (long i = range[0]; i > -1 && i <= range[1]; ++i) {
 			rid.clusterPosition = i;
-			
+
 			buffer = db.read(rid, null, false);
 			if (buffer != null)
 				++objectsRead;
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.record.ORecordSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.record.binary.ORecordSerializerBinary;
+import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerSchemaAware2CSV;
+import com.orientechnologies.orient.test.database.base.OrientMonoThreadTest;
+
+/**
+ * Compares the CSV and the binary record serializers on the same document: full serialization, full deserialization and the read
+ * of a single field.
+ */
+@Test(enabled = false)
+public class RecordSerializerBinarySpeedTest extends OrientMonoThreadTest {
+  private static final String[]   SINGLE_FIELD = new String[] { "salary" };
+
+  private final ORecordSerializer csv          = ORecordSerializerSchemaAware2CSV.INSTANCE;
+  private final ORecordSerializer binary       = ORecordSerializerBinary.INSTANCE;
+  private final long[]            csvTimes     = new long[3];
+  private final long[]            binaryTimes  = new long[3];
+  private ODatabaseDocumentTx     database;
+  private ODocument               document;
+  private byte[]                  csvContent;
+  private byte[]                  binaryContent;
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    RecordSerializerBinarySpeedTest test = new RecordSerializerBinarySpeedTest();
+    test.data.go(test);
+  }
+
+  public RecordSerializerBinarySpeedTest() {
+    super(200000);
+  }
+
+  @Override
+  public void init() {
+    database = new ODatabaseDocumentTx("memory:serializerSpeedTest").create();
+
+    document = new ODocument();
+    document.field("id", 123456);
+    document.field("name", "Luca");
+    document.field("surname", "Garulli");
+    document.field("birthDate", new Date());
+    document.field("salary", 3000.5f);
+    document.field("score", 1234567890123l);
+    document.field("location", new ORecordId(10, 123456));
+
+    final List<String> tags = new ArrayList<String>();
+    for (int i = 0; i < 10; ++i)
+      tags.add("tag" + i);
+    document.field("tags", tags);
+
+    final Map<String, Object> address = new HashMap<String, Object>();
+    address.put("city", "Rome");
+    address.put("zip", 100);
+    document.field("address", address);
+
+    final ODocument home = new ODocument();
+    home.field("street", "Piazza Navona");
+    home.field("number", 1);
+    document.field("home", home.addOwner(document));
+
+    csvContent = csv.toStream(document, false);
+    binaryContent = binary.toStream(document, false);
+    System.out.println("Record size: csv=" + csvContent.length + " binary=" + binaryContent.length + " bytes");
+  }
+
+  @Override
+  public void cycle() {
+    run(csv, csvContent, csvTimes);
+    run(binary, binaryContent, binaryTimes);
+  }
+
+  @Override
+  public void deinit() {
+    final String[] operations = { "toStream", "fromStream", "fromStream(1 field)" };
+    for (int i = 0; i < operations.length; ++i)
+      System.out.println(String.format("%-20s csv=%6dms binary=%6dms", operations[i], csvTimes[i] / 1000000,
+          binaryTimes[i] / 1000000));
+
+    database.drop();
+    super.deinit();
+  }
+
+  private void run(final ORecordSerializer iSerializer, final byte[] iContent, final long[] iTimes) {
+    long time = System.nanoTime();
+    iSerializer.toStream(document, false);
+    iTimes[0] += System.nanoTime() - time;
+
+    time = System.nanoTime();
+    iSerializer.fromStream(iContent, new ODocument(), null);
+    iTimes[1] += System.nanoTime() - time;
+
+    time = System.nanoTime();
+    iSerializer.fromStream(iContent, new ODocument(), SINGLE_FIELD);
+    iTimes[2] += System.nanoTime() - time;
+  }
+}
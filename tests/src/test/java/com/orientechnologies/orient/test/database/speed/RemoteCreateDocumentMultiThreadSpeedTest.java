@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.util.Date;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.test.database.base.OrientMultiThreadTest;
+import com.orientechnologies.orient.test.database.base.OrientThreadTest;
+
+/**
+ * Multi-threaded version of {@link RemoteCreateDocumentSpeedTest}: every thread saves documents synchronously with its own
+ * database, so its own session, sharing the channels of the remote storage. Run it with -Dclient.channel.maxPool=1 to have all
+ * the threads pipelining their requests on a single socket, and with -Dthreads to change the number of threads (default 64).
+ */
+@Test(enabled = false)
+public class RemoteCreateDocumentMultiThreadSpeedTest extends OrientMultiThreadTest {
+  private ODatabaseDocument database;
+  private long              beginRecords;
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    RemoteCreateDocumentMultiThreadSpeedTest test = new RemoteCreateDocumentMultiThreadSpeedTest();
+    test.data.go(test);
+  }
+
+  public RemoteCreateDocumentMultiThreadSpeedTest() {
+    super(100000, Integer.parseInt(System.getProperty("threads", "64")), CreateThread.class);
+  }
+
+  @Override
+  public void init() {
+    Orient.instance().getProfiler().startRecording();
+
+    database = new ODatabaseDocumentTx(System.getProperty("url")).open("admin", "admin");
+
+    beginRecords = database.countClass("Account");
+    System.out.println("Total accounts: " + beginRecords);
+  }
+
+  @Test(enabled = false)
+  public static class CreateThread extends OrientThreadTest {
+    private ODatabaseDocument database;
+    private ODocument         record;
+    private Date              date = new Date();
+
+    @Override
+    public void init() {
+      database = new ODatabaseDocumentTx(System.getProperty("url")).open("admin", "admin");
+      record = database.newInstance();
+    }
+
+    public void cycle() {
+      record.reset();
+
+      record.setClassName("Account");
+      record.field("id", data.getCyclesDone());
+      record.field("name", "Luca");
+      record.field("surname", "Garulli");
+      record.field("birthDate", date);
+      record.field("salary", 3000f + data.getCyclesDone());
+
+      database.save(record);
+    }
+
+    @Override
+    public void deinit() throws Exception {
+      database.close();
+    }
+  }
+
+  @Override
+  public void deinit() {
+    final long endRecords = database.countClass("Account");
+    System.out.println("Total accounts: " + endRecords + ". Expected: " + (beginRecords + threadCycles));
+
+    System.out.println(Orient.instance().getProfiler().dump());
+
+    if (database != null)
+      database.close();
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OContextConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.enterprise.channel.binary.OChannelBinaryClient;
+import com.orientechnologies.orient.enterprise.channel.binary.OChannelBinaryProtocol;
+import com.orientechnologies.orient.test.database.base.OrientMultiThreadTest;
+import com.orientechnologies.orient.test.database.base.OrientThreadTest;
+
+/**
+ * Keeps thousands of idle binary connections open against a running server while a few threads measure the latency of remote
+ * record loads. Run it once against a listener with the "network.binary.nio" parameter set to false and once set to true, then
+ * compare the "test.remote.load" chrono percentiles and the memory and thread count of the server process. Use
+ * -Dconnections=5000 (the default), -Dhost, -Dport and -Durl to point it to the server. The client process needs a file
+ * descriptor limit above the number of connections.
+ */
+@Test(enabled = false)
+public class RemoteIdleConnectionsSpeedTest extends OrientMultiThreadTest {
+  private final List<OChannelBinaryClient> idle = new ArrayList<OChannelBinaryClient>();
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    RemoteIdleConnectionsSpeedTest test = new RemoteIdleConnectionsSpeedTest();
+    test.data.go(test);
+  }
+
+  public RemoteIdleConnectionsSpeedTest() {
+    super(100000, 8, LoadThread.class);
+  }
+
+  @Override
+  public void init() throws IOException {
+    Orient.instance().getProfiler().startRecording();
+
+    final String host = System.getProperty("host", "localhost");
+    final int port = Integer.parseInt(System.getProperty("port", "2424"));
+    final int connections = Integer.parseInt(System.getProperty("connections", "5000"));
+
+    final OContextConfiguration config = new OContextConfiguration();
+    for (int i = 0; i < connections; ++i)
+      idle.add(new OChannelBinaryClient(host, port, config, OChannelBinaryProtocol.CURRENT_PROTOCOL_VERSION));
+
+    System.out.println("\nOpened " + idle.size() + " idle connections to " + host + ":" + port);
+  }
+
+  @Test(enabled = false)
+  public static class LoadThread extends OrientThreadTest {
+    private ODatabaseDocumentTx database;
+    private final ORecordId     rid = new ORecordId(0, 0);
+
+    @Override
+    public void init() {
+      database = new ODatabaseDocumentTx(System.getProperty("url")).open("admin", "admin");
+    }
+
+    public void cycle() {
+      final long timer = Orient.instance().getProfiler().startChrono();
+      database.getStorage().readRecord(rid, null, false, null);
+      Orient.instance().getProfiler().stopChrono("test.remote.load", timer);
+    }
+
+    @Override
+    public void deinit() throws Exception {
+      database.close();
+    }
+  }
+
+  @Override
+  public void deinit() {
+    System.out.println(Orient.instance().getProfiler().dump());
+
+    for (OChannelBinaryClient channel : idle)
+      channel.close();
+    idle.clear();
+  }
+}
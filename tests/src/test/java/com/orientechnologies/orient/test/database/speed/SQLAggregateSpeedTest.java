@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+import com.orientechnologies.orient.test.database.base.OrientMonoThreadTest;
+
+/**
+ * Measures the aggregate queries, that must not keep the browsed records in memory, and the COUNT without conditions, answered by
+ * the cluster counts.
+ */
+@Test(enabled = false)
+public class SQLAggregateSpeedTest extends OrientMonoThreadTest {
+  private static final String CLASS_NAME = "Payment";
+  private static final int    RECORDS    = 500000;
+
+  private ODatabaseDocumentTx database;
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    SQLAggregateSpeedTest test = new SQLAggregateSpeedTest();
+    test.data.go(test);
+  }
+
+  public SQLAggregateSpeedTest() {
+    super(10);
+  }
+
+  @Override
+  public void init() {
+    database = new ODatabaseDocumentTx(System.getProperty("url", "memory:aggregatespeed"));
+    if (database.exists())
+      database.open("admin", "admin");
+    else
+      database.create();
+
+    database.getMetadata().getSchema().getOrCreateClass(CLASS_NAME);
+    if (database.countClass(CLASS_NAME) == 0) {
+      database.declareIntent(new OIntentMassiveInsert());
+      final ODocument doc = new ODocument();
+      for (int i = 0; i < RECORDS; ++i) {
+        doc.reset();
+        doc.setClassName(CLASS_NAME);
+        doc.field("id", i);
+        doc.field("amount", i % 1000);
+        doc.field("customer", "customer" + (i % 5000));
+        doc.save();
+      }
+      database.declareIntent(null);
+    }
+
+    System.out.println("Aggregating " + database.countClass(CLASS_NAME) + " records, free memory: "
+        + Runtime.getRuntime().freeMemory());
+  }
+
+  @Override
+  public void cycle() {
+    final List<ODocument> aggregates = database.query(new OSQLSynchQuery<ODocument>(
+        "select count(*) as total, sum(amount) as sum, avg(amount) as avg from " + CLASS_NAME + " where amount > 100"));
+
+    final List<ODocument> count = database.query(new OSQLSynchQuery<ODocument>("select count(*) as total from " + CLASS_NAME));
+
+    System.out.println("Aggregates: " + aggregates.get(0) + ", count: " + count.get(0) + ", free memory: "
+        + Runtime.getRuntime().freeMemory());
+  }
+
+  @Override
+  public void deinit() {
+    if (database != null)
+      database.close();
+    super.deinit();
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2012 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.tx.OTransaction.TXTYPE;
+import com.orientechnologies.orient.test.database.base.OrientMultiThreadTest;
+import com.orientechnologies.orient.test.database.base.OrientThreadTest;
+
+/**
+ * Measures the commits/sec of small transactions executed by many threads with the synch of the storage and of the transaction log
+ * enabled. Run it with -DgroupCommit=true and -DgroupCommit=false to compare the group commit against the classic commit.
+ */
+@Test(enabled = false)
+public class TxGroupCommitMultiThreadSpeedTest extends OrientMultiThreadTest {
+  private ODatabaseDocument database;
+  private long              foundObjects;
+  private long              startTime;
+
+  public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+    OGlobalConfiguration.TX_COMMIT_SYNCH.setValue(true);
+    OGlobalConfiguration.TX_LOG_SYNCH.setValue(true);
+    OGlobalConfiguration.TX_GROUP_COMMIT.setValue(Boolean.parseBoolean(System.getProperty("groupCommit", "true")));
+
+    TxGroupCommitMultiThreadSpeedTest test = new TxGroupCommitMultiThreadSpeedTest();
+    test.data.go(test);
+  }
+
+  public TxGroupCommitMultiThreadSpeedTest() {
+    super(20000, 50, CommitThread.class);
+  }
+
+  @Override
+  public void init() {
+    database = new ODatabaseDocumentTx(System.getProperty("url"));
+    if (database.exists())
+      database.drop();
+
+    database.create();
+    database.getMetadata().getSchema().createClass("Account");
+
+    foundObjects = 0;
+
+    System.out.println("\nGroup commit: " + OGlobalConfiguration.TX_GROUP_COMMIT.getValueAsBoolean());
+    startTime = System.currentTimeMillis();
+  }
+
+  @Test(enabled = false)
+  public static class CommitThread extends OrientThreadTest {
+    private ODatabaseDocument database;
+
+    @Override
+    public void init() {
+      database = new ODatabaseDocumentTx(System.getProperty("url")).open("admin", "admin");
+    }
+
+    public void cycle() {
+      database.begin(TXTYPE.OPTIMISTIC);
+
+      final ODocument record = database.newInstance("Account");
+      record.field("id", data.getCyclesDone());
+      record.field("name", "Luca");
+      record.field("surname", "Garulli");
+      record.field("salary", 3000f + data.getCyclesDone());
+      record.save();
+
+      database.commit();
+    }
+
+    @Override
+    public void deinit() throws Exception {
+      if (database != null)
+        database.close();
+      super.deinit();
+    }
+  }
+
+  @Override
+  public void deinit() {
+    final long elapsed = System.currentTimeMillis() - startTime;
+    final long total = database.countClusterElements("Account");
+
+    System.out.println("\nTotal objects in Account cluster after the test: " + total);
+    System.out.println("Committed " + (total - foundObjects) + " transactions in " + elapsed + "ms: "
+        + ((total - foundObjects) * 1000 / Math.max(elapsed, 1)) + " commits/sec");
+    Assert.assertEquals(total - foundObjects, threadCycles);
+
+    if (database != null)
+      database.close();
+  }
+}